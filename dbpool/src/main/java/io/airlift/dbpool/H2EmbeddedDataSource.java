@@ -44,7 +44,7 @@ public class H2EmbeddedDataSource extends ManagedDataSource
     public H2EmbeddedDataSource(H2EmbeddedDataSourceConfig config)
             throws Exception
     {
-        super(config.getMaxConnections(), config.getMaxConnectionWait());
+        super(config);
 
         Preconditions.checkNotNull(config.getFilename());
         if (config.getFilename().isEmpty()) {
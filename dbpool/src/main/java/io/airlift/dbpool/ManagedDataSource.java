@@ -20,6 +20,7 @@ import io.airlift.units.Duration;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
 
+import javax.annotation.PreDestroy;
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
 import javax.sql.DataSource;
@@ -29,21 +30,79 @@ import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.units.Duration.nanosSince;
 import static java.lang.Math.ceil;
-
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A data source that limits the number of concurrent connections and pools idle
+ * connections.
+ * <p>
+ * Returned connections are pushed onto a lock free idle stack before the permit of
+ * the borrower is released, so a borrower woken up by the release finds the
+ * connection waiting for it. A background thread closes connections that have been
+ * idle for longer than the max idle time or have exceeded their max lifetime,
+ * validates connections that have been idle for longer than the validation interval
+ * and keeps at least min idle connections open. Connections that have been idle for
+ * longer than the validation interval are also validated when they are leased.
+ * <p>
+ * Pooling is disabled when the max idle time is zero, in which case connections are
+ * closed when they are returned.
+ */
 public abstract class ManagedDataSource implements DataSource
 {
+    private static final Duration HOUSEKEEPING_INTERVAL = new Duration(1, TimeUnit.SECONDS);
+
     private final ManagedSemaphore semaphore;
     private final AtomicInteger maxConnectionWaitMillis = new AtomicInteger(100);
     private final ManagedDataSourceStats stats = new ManagedDataSourceStats();
 
+    private final int minIdleConnections;
+    private final long maxIdleTimeNanos;
+    private final long maxLifetimeNanos;
+    private final long validationIntervalNanos;
+
+    // most recently returned connections are at the head, so idle connections
+    // beyond the working set age out at the tail
+    private final Deque<PooledConnectionHolder> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleConnectionCount = new AtomicInteger();
+    private final ScheduledExecutorService housekeepingExecutor;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean fillScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
     protected ManagedDataSource(int maxConnections, Duration maxConnectionWait)
+    {
+        this(maxConnections, maxConnectionWait, 0, new Duration(0, MILLISECONDS), new Duration(0, MILLISECONDS), new Duration(0, MILLISECONDS));
+    }
+
+    protected ManagedDataSource(ManagedDataSourceConfig<?> config)
+    {
+        this(config.getMaxConnections(),
+                config.getMaxConnectionWait(),
+                config.getMinIdleConnections(),
+                config.getMaxConnectionIdleTime(),
+                config.getMaxConnectionLifetime(),
+                config.getConnectionValidationInterval());
+    }
+
+    private ManagedDataSource(int maxConnections,
+            Duration maxConnectionWait,
+            int minIdleConnections,
+            Duration maxIdleTime,
+            Duration maxLifetime,
+            Duration validationInterval)
     {
         if (maxConnections < 1) {
             throw new IllegalArgumentException("maxConnections must be at least 1: maxConnections=" + maxConnections);
@@ -51,21 +110,85 @@ public abstract class ManagedDataSource implements DataSource
         if (maxConnectionWait == null) {
             throw new NullPointerException("maxConnectionWait is null");
         }
+        if (minIdleConnections < 0) {
+            throw new IllegalArgumentException("minIdleConnections is negative: minIdleConnections=" + minIdleConnections);
+        }
+        if (maxIdleTime == null) {
+            throw new NullPointerException("maxIdleTime is null");
+        }
+        if (maxLifetime == null) {
+            throw new NullPointerException("maxLifetime is null");
+        }
+        if (validationInterval == null) {
+            throw new NullPointerException("validationInterval is null");
+        }
         semaphore = new ManagedSemaphore(maxConnections);
         maxConnectionWaitMillis.set(Ints.checkedCast(maxConnectionWait.toMillis()));
+
+        this.maxIdleTimeNanos = maxIdleTime.roundTo(NANOSECONDS);
+        this.minIdleConnections = isPoolingEnabled() ? minIdleConnections : 0;
+        this.maxLifetimeNanos = maxLifetime.roundTo(NANOSECONDS);
+        this.validationIntervalNanos = validationInterval.roundTo(NANOSECONDS);
+
+        if (isPoolingEnabled()) {
+            housekeepingExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("dbpool-" + getClass().getSimpleName() + "-%s"));
+        }
+        else {
+            housekeepingExecutor = null;
+        }
+    }
+
+    /**
+     * Starts the background thread that maintains the pool, and opens connections
+     * until there are at least min idle connections.  This is called on the first
+     * {@link #getConnection()}, but can be called earlier to warm up the pool.
+     */
+    public void start()
+    {
+        if (housekeepingExecutor == null || !started.compareAndSet(false, true)) {
+            return;
+        }
+        long interval = HOUSEKEEPING_INTERVAL.roundTo(NANOSECONDS);
+        housekeepingExecutor.scheduleWithFixedDelay(this::housekeeping, 0, interval, NANOSECONDS);
+    }
+
+    /**
+     * Closes all idle connections and stops the background thread.  Connections
+     * that are checked out are closed when they are returned.
+     */
+    @PreDestroy
+    public void close()
+    {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (housekeepingExecutor != null) {
+            housekeepingExecutor.shutdownNow();
+        }
+        for (PooledConnectionHolder holder = pollIdleConnection(); holder != null; holder = pollIdleConnection()) {
+            closeQuietly(holder.getPooledConnection());
+        }
     }
 
     @Override
     public Connection getConnection()
             throws SQLException
     {
+        if (closed.get()) {
+            throw new SQLException(getClass().getSimpleName() + " has been closed");
+        }
+        start();
+
         long start = System.nanoTime();
         try {
             acquirePermit();
 
             boolean checkedOut = false;
             try {
-                Connection connection = createConnection();
+                Connection connection = checkoutIdleConnection();
+                if (connection == null) {
+                    connection = createConnection();
+                }
                 checkedOut = true;
                 return connection;
             }
@@ -82,18 +205,30 @@ public abstract class ManagedDataSource implements DataSource
 
     protected Connection createConnection()
             throws SQLException
+    {
+        return prepareConnection(openConnection());
+    }
+
+    /**
+     * Opens a new connection.  This is called concurrently by request threads and by the
+     * background thread that keeps min idle connections open, so implementations must be
+     * thread safe.
+     */
+    protected abstract PooledConnection createConnectionInternal()
+            throws SQLException;
+
+    private PooledConnectionHolder openConnection()
+            throws SQLException
     {
         boolean success = false;
         try {
-            // todo do not create on caller's thread
             long start = System.nanoTime();
             PooledConnection pooledConnection = createConnectionInternal();
-            Connection connection = prepareConnection(pooledConnection);
             stats.connectionCreated(nanosSince(start));
 
             success = true;
 
-            return connection;
+            return new PooledConnectionHolder(pooledConnection);
         }
         finally {
             if (!success) {
@@ -102,30 +237,226 @@ public abstract class ManagedDataSource implements DataSource
         }
     }
 
-    protected abstract PooledConnection createConnectionInternal()
-            throws SQLException;
-
-    protected Connection prepareConnection(PooledConnection pooledConnection)
+    private Connection prepareConnection(PooledConnectionHolder holder)
             throws SQLException
     {
+        PooledConnection pooledConnection = holder.getPooledConnection();
         Connection connection = pooledConnection.getConnection();
-        pooledConnection.addConnectionEventListener(new NoPoolConnectionEventListener());
+        pooledConnection.addConnectionEventListener(new PooledConnectionEventListener(holder));
         return connection;
     }
 
-    protected void connectionReturned(PooledConnection pooledConnection, long checkoutTime)
+    private Connection checkoutIdleConnection()
+    {
+        for (PooledConnectionHolder holder = pollIdleConnection(); holder != null; holder = pollIdleConnection()) {
+            long now = System.nanoTime();
+            if (isExpired(holder, now)) {
+                stats.connectionExpired();
+                closeInBackground(holder);
+                continue;
+            }
+
+            try {
+                PooledConnection pooledConnection = holder.getPooledConnection();
+                Connection connection = pooledConnection.getConnection();
+                if (needsValidation(holder, now) && !isValid(connection)) {
+                    stats.validationErrorOccurred();
+                    closeInBackground(holder);
+                    continue;
+                }
+                pooledConnection.addConnectionEventListener(new PooledConnectionEventListener(holder));
+                stats.connectionReused();
+                scheduleFill();
+                return connection;
+            }
+            catch (SQLException e) {
+                stats.validationErrorOccurred();
+                closeInBackground(holder);
+            }
+        }
+        return null;
+    }
+
+    private void connectionReturned(PooledConnectionHolder holder)
+    {
+        long now = System.nanoTime();
+        holder.setLastUsedNanos(now);
+
+        if (!isPoolingEnabled() || closed.get()) {
+            closeQuietly(holder.getPooledConnection());
+        }
+        else if (isExpired(holder, now)) {
+            stats.connectionExpired();
+            closeInBackground(holder);
+        }
+        else if (semaphore.getActivePermits() + idleConnectionCount.get() > getMaxConnections()) {
+            // the pool has shrunk
+            closeInBackground(holder);
+        }
+        else {
+            idleConnections.addFirst(holder);
+            idleConnectionCount.incrementAndGet();
+
+            // close may have drained the pool concurrently
+            if (closed.get() && idleConnections.remove(holder)) {
+                idleConnectionCount.decrementAndGet();
+                closeQuietly(holder.getPooledConnection());
+            }
+        }
+    }
+
+    private void connectionDestroyed(PooledConnectionHolder holder)
+    {
+        closeInBackground(holder);
+    }
+
+    private PooledConnectionHolder pollIdleConnection()
+    {
+        PooledConnectionHolder holder = idleConnections.pollFirst();
+        if (holder != null) {
+            idleConnectionCount.decrementAndGet();
+        }
+        return holder;
+    }
+
+    private void housekeeping()
     {
         try {
-            // todo do not close on caller's thread
-            pooledConnection.close();
+            evictIdleConnections();
+            fillPool();
         }
-        catch (SQLException ignored) {
-            // hey we tried
+        catch (RuntimeException ignored) {
+            // keep the housekeeping task scheduled
         }
     }
 
-    protected void connectionDestroyed(PooledConnection pooledConnection, long checkoutTime)
+    private void evictIdleConnections()
     {
+        // walk from the least recently used connection, so the connections
+        // above min idle are the ones that are closed for being idle too long
+        PooledConnectionHolder[] holders = idleConnections.toArray(new PooledConnectionHolder[0]);
+        for (int i = holders.length - 1; i >= 0; i--) {
+            PooledConnectionHolder holder = holders[i];
+            long now = System.nanoTime();
+            boolean expired = isExpired(holder, now);
+            boolean idleTooLong = now - holder.getLastUsedNanos() >= maxIdleTimeNanos && idleConnectionCount.get() > minIdleConnections;
+            if (!expired && !idleTooLong && !needsValidation(holder, now)) {
+                continue;
+            }
+
+            // remove the connection before touching it, so it is never used by a borrower and the pool at the same time
+            if (!idleConnections.removeFirstOccurrence(holder)) {
+                continue;
+            }
+            idleConnectionCount.decrementAndGet();
+
+            if (expired) {
+                stats.connectionExpired();
+                closeQuietly(holder.getPooledConnection());
+            }
+            else if (idleTooLong) {
+                closeQuietly(holder.getPooledConnection());
+            }
+            else if (isValid(holder)) {
+                idleConnections.addLast(holder);
+                idleConnectionCount.incrementAndGet();
+            }
+            else {
+                stats.validationErrorOccurred();
+                closeQuietly(holder.getPooledConnection());
+            }
+        }
+    }
+
+    private void fillPool()
+    {
+        fillScheduled.set(false);
+        while (!closed.get() &&
+                idleConnectionCount.get() < minIdleConnections &&
+                semaphore.getActivePermits() + idleConnectionCount.get() < getMaxConnections()) {
+            PooledConnectionHolder holder;
+            try {
+                holder = openConnection();
+            }
+            catch (SQLException e) {
+                // try again on the next run
+                return;
+            }
+            idleConnections.addLast(holder);
+            idleConnectionCount.incrementAndGet();
+        }
+    }
+
+    private void scheduleFill()
+    {
+        if (idleConnectionCount.get() < minIdleConnections && fillScheduled.compareAndSet(false, true)) {
+            executeInBackground(this::fillPool);
+        }
+    }
+
+    private void closeInBackground(PooledConnectionHolder holder)
+    {
+        executeInBackground(() -> closeQuietly(holder.getPooledConnection()));
+    }
+
+    private void executeInBackground(Runnable task)
+    {
+        if (housekeepingExecutor == null || housekeepingExecutor.isShutdown()) {
+            task.run();
+            return;
+        }
+        try {
+            housekeepingExecutor.execute(task);
+        }
+        catch (RuntimeException e) {
+            // the executor was shut down concurrently
+            task.run();
+        }
+    }
+
+    private boolean isPoolingEnabled()
+    {
+        return maxIdleTimeNanos > 0;
+    }
+
+    private boolean isExpired(PooledConnectionHolder holder, long now)
+    {
+        return maxLifetimeNanos > 0 && now - holder.getCreatedNanos() >= maxLifetimeNanos;
+    }
+
+    private boolean needsValidation(PooledConnectionHolder holder, long now)
+    {
+        return now - Math.max(holder.getLastUsedNanos(), holder.getLastValidatedNanos()) >= validationIntervalNanos;
+    }
+
+    private boolean isValid(PooledConnectionHolder holder)
+    {
+        try {
+            if (isValid(holder.getPooledConnection().getConnection())) {
+                holder.setLastValidatedNanos(System.nanoTime());
+                return true;
+            }
+            return false;
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isValid(Connection connection)
+            throws SQLException
+    {
+        return connection.isValid(Math.max(1, getLoginTimeout()));
+    }
+
+    private static void closeQuietly(PooledConnection pooledConnection)
+    {
+        try {
+            pooledConnection.close();
+        }
+        catch (SQLException ignored) {
+            // hey we tried
+        }
     }
 
     @Managed
@@ -155,6 +486,12 @@ public abstract class ManagedDataSource implements DataSource
         return semaphore.getActivePermits();
     }
 
+    @Managed
+    public int getConnectionsIdle()
+    {
+        return idleConnectionCount.get();
+    }
+
     @Managed
     public int getMaxConnections()
     {
@@ -263,11 +600,17 @@ public abstract class ManagedDataSource implements DataSource
         }
     }
 
-    protected class NoPoolConnectionEventListener implements ConnectionEventListener
+    private class PooledConnectionEventListener implements ConnectionEventListener
     {
+        private final PooledConnectionHolder holder;
         private final long checkoutTime = System.nanoTime();
         private final AtomicBoolean returned = new AtomicBoolean();
 
+        private PooledConnectionEventListener(PooledConnectionHolder holder)
+        {
+            this.holder = holder;
+        }
+
         @Override
         public void connectionClosed(ConnectionEvent event)
         {
@@ -276,19 +619,16 @@ public abstract class ManagedDataSource implements DataSource
                 return;
             }
 
-            PooledConnection pooledConnection = null;
             try {
-                pooledConnection = (PooledConnection) event.getSource();
-                pooledConnection.removeConnectionEventListener(this);
+                holder.getPooledConnection().removeConnectionEventListener(this);
 
                 stats.connectionReturned(nanosSince(checkoutTime));
+
+                // pool the connection before releasing the permit, so the waiter that is woken up finds it
+                connectionReturned(holder);
             }
             finally {
                 semaphore.release();
-
-                if (pooledConnection != null) {
-                    connectionReturned(pooledConnection, checkoutTime);
-                }
             }
         }
 
@@ -300,21 +640,59 @@ public abstract class ManagedDataSource implements DataSource
                 return;
             }
 
-            PooledConnection pooledConnection = null;
             try {
-                pooledConnection = (PooledConnection) event.getSource();
-                pooledConnection.removeConnectionEventListener(this);
+                holder.getPooledConnection().removeConnectionEventListener(this);
 
                 stats.connectionErrorOccurred();
+
+                connectionDestroyed(holder);
             }
             finally {
                 semaphore.release();
-
-                if (pooledConnection != null) {
-                    connectionDestroyed(pooledConnection, checkoutTime);
-                }
             }
         }
     }
 
+    private static class PooledConnectionHolder
+    {
+        private final PooledConnection pooledConnection;
+        private final long createdNanos = System.nanoTime();
+        private volatile long lastUsedNanos = createdNanos;
+        private volatile long lastValidatedNanos = createdNanos;
+
+        private PooledConnectionHolder(PooledConnection pooledConnection)
+        {
+            this.pooledConnection = pooledConnection;
+        }
+
+        public PooledConnection getPooledConnection()
+        {
+            return pooledConnection;
+        }
+
+        public long getCreatedNanos()
+        {
+            return createdNanos;
+        }
+
+        public long getLastUsedNanos()
+        {
+            return lastUsedNanos;
+        }
+
+        public void setLastUsedNanos(long lastUsedNanos)
+        {
+            this.lastUsedNanos = lastUsedNanos;
+        }
+
+        public long getLastValidatedNanos()
+        {
+            return lastValidatedNanos;
+        }
+
+        public void setLastValidatedNanos(long lastValidatedNanos)
+        {
+            this.lastValidatedNanos = lastValidatedNanos;
+        }
+    }
 }
@@ -19,6 +19,9 @@ import io.airlift.configuration.Config;
 import io.airlift.configuration.DefunctConfig;
 import io.airlift.units.Duration;
 
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,6 +47,10 @@ public class ManagedDataSourceConfig<T extends ManagedDataSourceConfig<T>>
 {
     private int maxConnections = 10;
     private Duration maxConnectionWait = new Duration(500, TimeUnit.MILLISECONDS);
+    private int minIdleConnections = 0;
+    private Duration maxConnectionIdleTime = new Duration(10, TimeUnit.MINUTES);
+    private Duration maxConnectionLifetime = new Duration(30, TimeUnit.MINUTES);
+    private Duration connectionValidationInterval = new Duration(30, TimeUnit.SECONDS);
 
     /**
      * Gets the maximum number of concurrent connections allowed by the data
@@ -94,4 +101,92 @@ public class ManagedDataSourceConfig<T extends ManagedDataSourceConfig<T>>
         return (T) this;
 
     }
+
+    /**
+     * Gets the number of idle connections the data source keeps open, so
+     * that bursts of requests do not have to wait for connections to be
+     * established.
+     */
+    @Min(0)
+    public int getMinIdleConnections()
+    {
+        return minIdleConnections;
+    }
+
+    /**
+     * Sets the number of idle connections the data source keeps open, so
+     * that bursts of requests do not have to wait for connections to be
+     * established.
+     */
+    @Config("db.connections.min-idle")
+    public T setMinIdleConnections(int minIdleConnections)
+    {
+        this.minIdleConnections = minIdleConnections;
+        return (T) this;
+    }
+
+    /**
+     * Gets the maximum time a connection is kept open while it is not used.
+     * A value of zero disables pooling, and connections are closed as soon
+     * as they are returned.
+     */
+    @NotNull
+    public Duration getMaxConnectionIdleTime()
+    {
+        return maxConnectionIdleTime;
+    }
+
+    /**
+     * Sets the maximum time a connection is kept open while it is not used.
+     * A value of zero disables pooling, and connections are closed as soon
+     * as they are returned.
+     */
+    @Config("db.connections.max-idle-time")
+    public T setMaxConnectionIdleTime(Duration maxConnectionIdleTime)
+    {
+        this.maxConnectionIdleTime = maxConnectionIdleTime;
+        return (T) this;
+    }
+
+    /**
+     * Gets the maximum time a connection is used before it is closed and
+     * replaced.  A value of zero means connections never expire.
+     */
+    @NotNull
+    public Duration getMaxConnectionLifetime()
+    {
+        return maxConnectionLifetime;
+    }
+
+    /**
+     * Sets the maximum time a connection is used before it is closed and
+     * replaced.  A value of zero means connections never expire.
+     */
+    @Config("db.connections.max-lifetime")
+    public T setMaxConnectionLifetime(Duration maxConnectionLifetime)
+    {
+        this.maxConnectionLifetime = maxConnectionLifetime;
+        return (T) this;
+    }
+
+    /**
+     * Gets the time after which an idle connection is validated before it
+     * is handed out again.
+     */
+    @NotNull
+    public Duration getConnectionValidationInterval()
+    {
+        return connectionValidationInterval;
+    }
+
+    /**
+     * Sets the time after which an idle connection is validated before it
+     * is handed out again.
+     */
+    @Config("db.connections.validation-interval")
+    public T setConnectionValidationInterval(Duration connectionValidationInterval)
+    {
+        this.connectionValidationInterval = connectionValidationInterval;
+        return (T) this;
+    }
 }
@@ -29,6 +29,9 @@ public final class ManagedDataSourceStats
     private final TimeStat held = new TimeStat();
     private final AtomicLong connectionErrorCount = new AtomicLong();
     private final AtomicLong creationErrorCount = new AtomicLong();
+    private final AtomicLong validationErrorCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
 
     @Managed
     @Nested
@@ -63,6 +66,24 @@ public final class ManagedDataSourceStats
         return creationErrorCount.get();
     }
 
+    @Managed
+    public long getValidationErrorCount()
+    {
+        return validationErrorCount.get();
+    }
+
+    @Managed
+    public long getConnectionExpiredCount()
+    {
+        return expiredCount.get();
+    }
+
+    @Managed
+    public long getConnectionReusedCount()
+    {
+        return reusedCount.get();
+    }
+
     void connectionCheckedOut(Duration elapsedTime)
     {
         checkout.add(elapsedTime);
@@ -87,4 +108,19 @@ public final class ManagedDataSourceStats
     {
         connectionErrorCount.incrementAndGet();
     }
+
+    void validationErrorOccurred()
+    {
+        validationErrorCount.incrementAndGet();
+    }
+
+    void connectionExpired()
+    {
+        expiredCount.incrementAndGet();
+    }
+
+    void connectionReused()
+    {
+        reusedCount.incrementAndGet();
+    }
 }
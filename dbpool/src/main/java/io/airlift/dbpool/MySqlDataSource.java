@@ -28,12 +28,13 @@ public class MySqlDataSource extends ManagedDataSource
 {
     private final ServiceSelector serviceSelector;
     private final int defaultFetchSize;
-    private UUID currentServer;
-    private MysqlConnectionPoolDataSource dataSource;
+    // replaced as a whole, since connections are created concurrently by request threads
+    // and by the housekeeping thread of the pool
+    private volatile CurrentServer currentServer = new CurrentServer(null, null);
 
     public MySqlDataSource(ServiceSelector serviceSelector, MySqlDataSourceConfig config)
     {
-        super(config.getMaxConnections(), config.getMaxConnectionWait());
+        super(config);
 
         this.serviceSelector = serviceSelector;
         this.defaultFetchSize = config.getDefaultFetchSize();
@@ -42,24 +43,23 @@ public class MySqlDataSource extends ManagedDataSource
     protected PooledConnection createConnectionInternal()
             throws SQLException
     {
+        CurrentServer current = this.currentServer;
+
         // attempt to get a connection from the current datasource if we have one
         SQLException lastException = null;
-        if (dataSource != null) {
+        if (current.dataSource != null) {
             try {
-                return dataSource.getPooledConnection();
+                return current.dataSource.getPooledConnection();
             }
             catch (SQLException e) {
                 lastException = e;
             }
         }
 
-        // drop reference to current datasource
-        dataSource = null;
-
         // attempt to create a connection to each mysql server (except for the one that we know is bad)
         for (ServiceDescriptor serviceDescriptor : serviceSelector.selectAllServices()) {
             // skip the current server since it is having problems
-            if (serviceDescriptor.getId().equals(currentServer)) {
+            if (serviceDescriptor.getId().equals(current.serverId)) {
                 continue;
             }
 
@@ -80,8 +80,7 @@ public class MySqlDataSource extends ManagedDataSource
                 PooledConnection connection = dataSource.getPooledConnection();
 
                 // that worked so save the datasource and server id
-                this.dataSource = dataSource;
-                this.currentServer = serviceDescriptor.getId();
+                currentServer = new CurrentServer(serviceDescriptor.getId(), dataSource);
                 return connection;
             }
             catch (SQLException e) {
@@ -89,8 +88,8 @@ public class MySqlDataSource extends ManagedDataSource
             }
         }
 
-        // no servers found, clear the current server id since we no longer have a server at all
-        currentServer = null;
+        // no servers found, clear the current server since we no longer have a server at all
+        currentServer = new CurrentServer(null, null);
 
         // throw the last exception we got
         if (lastException != null) {
@@ -98,4 +97,16 @@ public class MySqlDataSource extends ManagedDataSource
         }
         throw new SQLException(String.format("No mysql servers of type '%s' available in pool '%s'", serviceSelector.getType(), serviceSelector.getPool()));
     }
+
+    private static class CurrentServer
+    {
+        private final UUID serverId;
+        private final MysqlConnectionPoolDataSource dataSource;
+
+        private CurrentServer(UUID serverId, MysqlConnectionPoolDataSource dataSource)
+        {
+            this.serverId = serverId;
+            this.dataSource = dataSource;
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package io.airlift.dbpool;
 
 import io.airlift.dbpool.MockConnectionPoolDataSource.MockConnection;
+import io.airlift.dbpool.MockConnectionPoolDataSource.MockPooledConnection;
 import io.airlift.units.Duration;
 import org.testng.annotations.Test;
 
@@ -34,6 +35,7 @@ import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 import static io.airlift.testing.Assertions.assertGreaterThan;
 import static io.airlift.testing.Assertions.assertInstanceOf;
@@ -43,6 +45,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
@@ -494,4 +497,137 @@ public class ManagedDataSourceTest
         catch (UnsupportedOperationException expected) {
         }
     }
+
+    @Test
+    public void testPooledConnectionIsReused()
+            throws Exception
+    {
+        ManagedDataSource dataSource = new MockManagedDataSource(new MockConnectionPoolDataSource(), new MySqlDataSourceConfig());
+        try {
+            MockConnection connection = (MockConnection) dataSource.getConnection();
+            MockPooledConnection pooledConnection = connection.getPooledConnection();
+            connection.close();
+            assertEquals(dataSource.getConnectionsActive(), 0);
+            assertEquals(dataSource.getConnectionsIdle(), 1);
+            assertFalse(pooledConnection.isClosed());
+
+            connection = (MockConnection) dataSource.getConnection();
+            assertSame(connection.getPooledConnection(), pooledConnection);
+            assertEquals(dataSource.getConnectionsIdle(), 0);
+            assertEquals(dataSource.getStats().getCreate().getAllTime().getCount(), 1.0);
+            assertEquals(dataSource.getStats().getConnectionReusedCount(), 1);
+            connection.close();
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testMinIdleConnections()
+            throws Exception
+    {
+        MySqlDataSourceConfig config = new MySqlDataSourceConfig()
+                .setMaxConnections(5)
+                .setMinIdleConnections(3);
+        ManagedDataSource dataSource = new MockManagedDataSource(new MockConnectionPoolDataSource(), config);
+        try {
+            dataSource.start();
+            assertEventually(() -> dataSource.getConnectionsIdle() == 3);
+
+            // leasing an idle connection triggers a refill
+            Connection connection = dataSource.getConnection();
+            assertEventually(() -> dataSource.getConnectionsIdle() == 3);
+            assertEquals(dataSource.getStats().getCreate().getAllTime().getCount(), 4.0);
+
+            // the returned connection is kept in addition to the min idle connections
+            connection.close();
+            assertEquals(dataSource.getConnectionsIdle(), 4);
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testInvalidConnectionIsReplaced()
+            throws Exception
+    {
+        MockConnectionPoolDataSource poolDataSource = new MockConnectionPoolDataSource();
+        MySqlDataSourceConfig config = new MySqlDataSourceConfig()
+                .setConnectionValidationInterval(new Duration(0, MILLISECONDS));
+        ManagedDataSource dataSource = new MockManagedDataSource(poolDataSource, config);
+        try {
+            MockConnection connection = (MockConnection) dataSource.getConnection();
+            MockPooledConnection pooledConnection = connection.getPooledConnection();
+            connection.close();
+
+            poolDataSource.invalid = true;
+            connection = (MockConnection) dataSource.getConnection();
+            assertNotSame(connection.getPooledConnection(), pooledConnection);
+            assertEquals(dataSource.getStats().getValidationErrorCount(), 1);
+            assertEventually(pooledConnection::isClosed);
+            connection.close();
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testExpiredConnectionIsClosed()
+            throws Exception
+    {
+        MySqlDataSourceConfig config = new MySqlDataSourceConfig()
+                .setMaxConnectionLifetime(new Duration(1, MILLISECONDS));
+        ManagedDataSource dataSource = new MockManagedDataSource(new MockConnectionPoolDataSource(), config);
+        try {
+            MockConnection connection = (MockConnection) dataSource.getConnection();
+            MockPooledConnection pooledConnection = connection.getPooledConnection();
+            Thread.sleep(10);
+            connection.close();
+
+            assertEquals(dataSource.getConnectionsIdle(), 0);
+            assertEquals(dataSource.getStats().getConnectionExpiredCount(), 1);
+            assertEventually(pooledConnection::isClosed);
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testCloseClosesIdleConnections()
+            throws Exception
+    {
+        ManagedDataSource dataSource = new MockManagedDataSource(new MockConnectionPoolDataSource(), new MySqlDataSourceConfig());
+        MockConnection idle = (MockConnection) dataSource.getConnection();
+        MockConnection active = (MockConnection) dataSource.getConnection();
+        idle.close();
+
+        dataSource.close();
+        assertTrue(idle.getPooledConnection().isClosed());
+        assertFalse(active.getPooledConnection().isClosed());
+
+        // connections returned after close are closed
+        active.close();
+        assertTrue(active.getPooledConnection().isClosed());
+
+        try {
+            dataSource.getConnection();
+            fail("Expected SQLException");
+        }
+        catch (SQLException expected) {
+        }
+    }
+
+    private static void assertEventually(BooleanSupplier condition)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            assertTrue(nanosSince(start).compareTo(new Duration(10, SECONDS)) < 0, "condition not met within 10 seconds");
+            Thread.sleep(10);
+        }
+    }
 }
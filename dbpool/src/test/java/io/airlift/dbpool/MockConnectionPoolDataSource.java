@@ -47,11 +47,13 @@ import java.util.logging.Logger;
 
 public class MockConnectionPoolDataSource implements ConnectionPoolDataSource
 {
-    long creationSleep;
-    SQLException createException;
-    SQLException closeException;
+    // read by the housekeeping thread of the data source under test
+    volatile long creationSleep;
+    volatile SQLException createException;
+    volatile SQLException closeException;
     PrintWriter logWriter;
     int loginTimeout;
+    volatile boolean invalid;
 
     @Override
     public MockPooledConnection getPooledConnection()
@@ -116,7 +118,7 @@ public class MockConnectionPoolDataSource implements ConnectionPoolDataSource
     public static class MockPooledConnection implements PooledConnection
     {
         private final MockConnectionPoolDataSource dataSource;
-        private boolean closed = false;
+        private volatile boolean closed = false;
         private List<ConnectionEventListener> connectionEventListeners = new CopyOnWriteArrayList<ConnectionEventListener>();
 
         public MockPooledConnection(MockConnectionPoolDataSource dataSource)
@@ -144,6 +146,16 @@ public class MockConnectionPoolDataSource implements ConnectionPoolDataSource
             }
         }
 
+        public boolean isClosed()
+        {
+            return closed;
+        }
+
+        public boolean isValid()
+        {
+            return !closed && !dataSource.invalid;
+        }
+
         public void closeOccurred()
         {
             for (ConnectionEventListener connectionEventListener : connectionEventListeners) {
@@ -195,6 +207,11 @@ public class MockConnectionPoolDataSource implements ConnectionPoolDataSource
             this.mockPooledConnection = mockPooledConnection;
         }
 
+        public MockPooledConnection getPooledConnection()
+        {
+            return mockPooledConnection;
+        }
+
         @Override
         public void close()
                 throws SQLException
@@ -528,7 +545,7 @@ public class MockConnectionPoolDataSource implements ConnectionPoolDataSource
         public boolean isValid(int timeout)
                 throws SQLException
         {
-            throw new UnsupportedOperationException();
+            return mockPooledConnection.isValid();
         }
 
         @Override
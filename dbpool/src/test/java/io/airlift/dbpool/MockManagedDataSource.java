@@ -36,6 +36,12 @@ public class MockManagedDataSource extends ManagedDataSource
         this.poolDataSource = poolDataSource;
     }
 
+    public MockManagedDataSource(MockConnectionPoolDataSource poolDataSource, ManagedDataSourceConfig<?> config)
+    {
+        super(config);
+        this.poolDataSource = poolDataSource;
+    }
+
     @Override
     protected PooledConnection createConnectionInternal()
             throws SQLException
@@ -32,7 +32,11 @@ public class TestH2EmbeddedDataSourceConfig
                 .setMaxMemoryRows(10000)
                 .setMvccEnabled(true)
                 .setMaxConnections(10)
-                .setMaxConnectionWait(new Duration(500, TimeUnit.MILLISECONDS)));
+                .setMaxConnectionWait(new Duration(500, TimeUnit.MILLISECONDS))
+                .setMinIdleConnections(0)
+                .setMaxConnectionIdleTime(new Duration(10, TimeUnit.MINUTES))
+                .setMaxConnectionLifetime(new Duration(30, TimeUnit.MINUTES))
+                .setConnectionValidationInterval(new Duration(30, TimeUnit.SECONDS)));
     }
 
     @Test
@@ -51,6 +55,10 @@ public class TestH2EmbeddedDataSourceConfig
                 .put("db.mvcc.enabled", "FALSE")
                 .put("db.connections.max", "12")
                 .put("db.connections.wait", "42s")
+                .put("db.connections.min-idle", "3")
+                .put("db.connections.max-idle-time", "5m")
+                .put("db.connections.max-lifetime", "1h")
+                .put("db.connections.validation-interval", "10s")
                 .build();
 
         H2EmbeddedDataSourceConfig expected = new H2EmbeddedDataSourceConfig()
@@ -65,7 +73,11 @@ public class TestH2EmbeddedDataSourceConfig
                 .setMaxMemoryRows(5000)
                 .setMvccEnabled(false)
                 .setMaxConnections(12)
-                .setMaxConnectionWait(new Duration(42, TimeUnit.SECONDS));
+                .setMaxConnectionWait(new Duration(42, TimeUnit.SECONDS))
+                .setMinIdleConnections(3)
+                .setMaxConnectionIdleTime(new Duration(5, TimeUnit.MINUTES))
+                .setMaxConnectionLifetime(new Duration(1, TimeUnit.HOURS))
+                .setConnectionValidationInterval(new Duration(10, TimeUnit.SECONDS));
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -52,6 +52,7 @@ public class Announcer
     private final DiscoveryAnnouncementClient announcementClient;
     private final ScheduledExecutorService executor;
     private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean destroyed = new AtomicBoolean(false);
 
     private final ExponentialBackOff errorBackOff = new ExponentialBackOff(
             new Duration(1, MILLISECONDS),
@@ -86,9 +87,18 @@ public class Announcer
         }
     }
 
+    /**
+     * Stops announcing and removes the announcements from discovery. This may be called
+     * before the announcer's own {@link PreDestroy}, such as by an HTTP server that must be
+     * unannounced before it drains; subsequent calls have no effect.
+     */
     @PreDestroy
     public void destroy()
     {
+        if (!destroyed.compareAndSet(false, true)) {
+            return;
+        }
+
         executor.shutdownNow();
         try {
             executor.awaitTermination(30, TimeUnit.SECONDS);
@@ -97,10 +97,16 @@ public class DiscoveryBinder
     }
 
     public void bindHttpSelector(ServiceType serviceType)
+    {
+        bindHttpSelector(serviceType, HttpServiceSelectionStrategies.random());
+    }
+
+    public void bindHttpSelector(ServiceType serviceType, HttpServiceSelectionStrategy strategy)
     {
         Preconditions.checkNotNull(serviceType, "serviceType is null");
+        Preconditions.checkNotNull(strategy, "strategy is null");
         bindSelector(serviceType);
-        binder.bind(HttpServiceSelector.class).annotatedWith(serviceType).toProvider(new HttpServiceSelectorProvider(serviceType.value())).in(Scopes.SINGLETON);
+        binder.bind(HttpServiceSelector.class).annotatedWith(serviceType).toProvider(new HttpServiceSelectorProvider(serviceType.value(), strategy)).in(Scopes.SINGLETON);
     }
 
     static class HttpAnnouncementProvider implements Provider<ServiceAnnouncement>
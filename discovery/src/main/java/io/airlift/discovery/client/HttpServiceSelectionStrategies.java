@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public final class HttpServiceSelectionStrategies
+{
+    private static final HttpServiceSelectionStrategy RANDOM = (uris, serviceDescriptors) -> ThreadLocalRandom.current().nextInt(uris.size());
+
+    private HttpServiceSelectionStrategies()
+    {
+    }
+
+    /**
+     * Chooses an endpoint uniformly at random.
+     */
+    public static HttpServiceSelectionStrategy random()
+    {
+        return RANDOM;
+    }
+
+    /**
+     * Cycles through the endpoints in order.
+     */
+    public static HttpServiceSelectionStrategy roundRobin()
+    {
+        AtomicInteger next = new AtomicInteger();
+        return (uris, serviceDescriptors) -> (next.getAndIncrement() & Integer.MAX_VALUE) % uris.size();
+    }
+
+    /**
+     * Picks two endpoints at random and chooses the one with fewer in flight
+     * requests, which avoids piling onto slow servers without the herding
+     * caused by always choosing the least loaded endpoint.
+     *
+     * @param inFlightRequests returns the number of in flight requests for an
+     * endpoint, such as {@code JettyHttpClient::getInFlightRequests}
+     */
+    public static HttpServiceSelectionStrategy powerOfTwoChoices(ToIntFunction<URI> inFlightRequests)
+    {
+        checkNotNull(inFlightRequests, "inFlightRequests is null");
+        return (uris, serviceDescriptors) -> {
+            int size = uris.size();
+            if (size == 1) {
+                return 0;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            if (inFlightRequests.applyAsInt(uris.get(second)) < inFlightRequests.applyAsInt(uris.get(first))) {
+                return second;
+            }
+            return first;
+        };
+    }
+
+    /**
+     * Chooses an endpoint at random with a probability proportional to the weight
+     * announced in the specified service property. Endpoints that do not announce a
+     * valid weight have a weight of one.
+     */
+    public static HttpServiceSelectionStrategy weighted(String weightProperty)
+    {
+        return new WeightedStrategy(weightProperty);
+    }
+
+    private static class WeightedStrategy
+            implements HttpServiceSelectionStrategy
+    {
+        private final String weightProperty;
+        private volatile Weights weights = new Weights(null, new double[0]);
+
+        private WeightedStrategy(String weightProperty)
+        {
+            this.weightProperty = checkNotNull(weightProperty, "weightProperty is null");
+        }
+
+        @Override
+        public int select(List<URI> uris, List<ServiceDescriptor> serviceDescriptors)
+        {
+            Weights weights = this.weights;
+            if (weights.serviceDescriptors != serviceDescriptors) {
+                weights = new Weights(serviceDescriptors, cumulativeWeights(serviceDescriptors));
+                this.weights = weights;
+            }
+
+            double[] cumulativeWeights = weights.cumulativeWeights;
+            double total = cumulativeWeights[cumulativeWeights.length - 1];
+            if (total <= 0) {
+                return ThreadLocalRandom.current().nextInt(cumulativeWeights.length);
+            }
+
+            double value = ThreadLocalRandom.current().nextDouble(total);
+            int index = Arrays.binarySearch(cumulativeWeights, value);
+            if (index < 0) {
+                return -index - 1;
+            }
+            // landed exactly on a boundary, which belongs to the next endpoint with a non-zero weight
+            while (cumulativeWeights[index] == value) {
+                index++;
+            }
+            return index;
+        }
+
+        private double[] cumulativeWeights(List<ServiceDescriptor> serviceDescriptors)
+        {
+            double[] cumulativeWeights = new double[serviceDescriptors.size()];
+            double total = 0;
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                total += weight(serviceDescriptors.get(i));
+                cumulativeWeights[i] = total;
+            }
+            return cumulativeWeights;
+        }
+
+        private double weight(ServiceDescriptor serviceDescriptor)
+        {
+            String value = serviceDescriptor.getProperties().get(weightProperty);
+            if (value == null) {
+                return 1;
+            }
+            try {
+                double weight = Double.parseDouble(value);
+                if (weight >= 0 && !Double.isInfinite(weight)) {
+                    return weight;
+                }
+            }
+            catch (NumberFormatException ignored) {
+            }
+            return 1;
+        }
+
+        private static class Weights
+        {
+            private final List<ServiceDescriptor> serviceDescriptors;
+            private final double[] cumulativeWeights;
+
+            private Weights(List<ServiceDescriptor> serviceDescriptors, double[] cumulativeWeights)
+            {
+                this.serviceDescriptors = serviceDescriptors;
+                this.cumulativeWeights = cumulativeWeights;
+            }
+        }
+    }
+}
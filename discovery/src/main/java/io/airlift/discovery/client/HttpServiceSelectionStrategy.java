@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Chooses which endpoint of a service {@link HttpServiceSelectorImpl} returns first.
+ * The remaining endpoints follow in announcement order, so callers that fail over
+ * try them next.
+ * <p>
+ * Strategies are called on every selection and should not allocate. The lists are
+ * only replaced when the set of services changes, so per-endpoint state can be
+ * cached by list identity.
+ *
+ * @see HttpServiceSelectionStrategies
+ */
+public interface HttpServiceSelectionStrategy
+{
+    /**
+     * Returns the index of the endpoint to try first.
+     *
+     * @param uris the endpoints, never empty
+     * @param serviceDescriptors the service descriptor that announced each endpoint
+     */
+    int select(List<URI> uris, List<ServiceDescriptor> serviceDescriptors);
+}
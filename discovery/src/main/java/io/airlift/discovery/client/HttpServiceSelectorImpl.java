@@ -17,21 +17,32 @@ package io.airlift.discovery.client;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
+
+import static io.airlift.discovery.client.HttpServiceSelectionStrategies.random;
 
 public class HttpServiceSelectorImpl implements HttpServiceSelector
 {
     private final ServiceSelector serviceSelector;
+    private final HttpServiceSelectionStrategy strategy;
+    private volatile Endpoints endpoints = new Endpoints(ImmutableList.<ServiceDescriptor>of());
 
     public HttpServiceSelectorImpl(ServiceSelector serviceSelector)
+    {
+        this(serviceSelector, random());
+    }
+
+    public HttpServiceSelectorImpl(ServiceSelector serviceSelector, HttpServiceSelectionStrategy strategy)
     {
         Preconditions.checkNotNull(serviceSelector, "serviceSelector is null");
+        Preconditions.checkNotNull(strategy, "strategy is null");
         this.serviceSelector = serviceSelector;
+        this.strategy = strategy;
     }
 
     @Override
@@ -49,38 +60,130 @@ public class HttpServiceSelectorImpl implements HttpServiceSelector
     @Override
     public List<URI> selectHttpService()
     {
-        List<ServiceDescriptor> serviceDescriptors = Lists.newArrayList(serviceSelector.selectAllServices());
-        if (serviceDescriptors.isEmpty()) {
+        List<ServiceDescriptor> serviceDescriptors = serviceSelector.selectAllServices();
+
+        // the caching selector returns the same list until the services change,
+        // so the URIs only need to be parsed once per refresh
+        Endpoints endpoints = this.endpoints;
+        if (endpoints.serviceDescriptors != serviceDescriptors) {
+            endpoints = new Endpoints(serviceDescriptors);
+            this.endpoints = endpoints;
+        }
+
+        if (endpoints.uris.isEmpty()) {
             return ImmutableList.of();
         }
+        return endpoints.rotations[strategy.select(endpoints.uris, endpoints.uriServiceDescriptors)];
+    }
+
+    private static class Endpoints
+    {
+        private final List<ServiceDescriptor> serviceDescriptors;
+
+        // endpoints the strategy chooses from: https if any service announced it, otherwise http
+        private final List<URI> uris;
+        private final List<ServiceDescriptor> uriServiceDescriptors;
+
+        // the result for each choice of the strategy, favoring https over http
+        private final List<URI>[] rotations;
 
-        // favor https over http
-        List<URI> httpsUri = Lists.newArrayList();
-        for (ServiceDescriptor serviceDescriptor : serviceDescriptors) {
-            String https = serviceDescriptor.getProperties().get("https");
-            if (https != null) {
-                try {
-                    httpsUri.add(new URI(https));
+        @SuppressWarnings("unchecked")
+        private Endpoints(List<ServiceDescriptor> serviceDescriptors)
+        {
+            this.serviceDescriptors = serviceDescriptors;
+
+            ImmutableList.Builder<URI> httpsUris = ImmutableList.builder();
+            ImmutableList.Builder<ServiceDescriptor> httpsServiceDescriptors = ImmutableList.builder();
+            ImmutableList.Builder<URI> httpUris = ImmutableList.builder();
+            ImmutableList.Builder<ServiceDescriptor> httpServiceDescriptors = ImmutableList.builder();
+            for (ServiceDescriptor serviceDescriptor : serviceDescriptors) {
+                URI https = parseUri(serviceDescriptor.getProperties().get("https"));
+                if (https != null) {
+                    httpsUris.add(https);
+                    httpsServiceDescriptors.add(serviceDescriptor);
                 }
-                catch (URISyntaxException ignored) {
+                URI http = parseUri(serviceDescriptor.getProperties().get("http"));
+                if (http != null) {
+                    httpUris.add(http);
+                    httpServiceDescriptors.add(serviceDescriptor);
                 }
             }
+
+            URI[] primary = toArray(httpsUris.build());
+            URI[] secondary = toArray(httpUris.build());
+            if (primary.length > 0) {
+                uris = ImmutableList.copyOf(primary);
+                uriServiceDescriptors = httpsServiceDescriptors.build();
+            }
+            else {
+                primary = secondary;
+                secondary = new URI[0];
+                uris = ImmutableList.copyOf(primary);
+                uriServiceDescriptors = httpServiceDescriptors.build();
+            }
+
+            rotations = new List[primary.length];
+            for (int i = 0; i < primary.length; i++) {
+                rotations[i] = new RotatedList(primary, i, secondary, secondary.length == 0 ? 0 : i % secondary.length);
+            }
         }
-        List<URI> httpUri = Lists.newArrayList();
-        for (ServiceDescriptor serviceDescriptor : serviceDescriptors) {
-            String http = serviceDescriptor.getProperties().get("http");
-            if (http != null) {
-                try {
-                    httpUri.add(new URI(http));
-                }
-                catch (URISyntaxException ignored) {
-                }
+
+        private static URI[] toArray(List<URI> uris)
+        {
+            return uris.toArray(new URI[uris.size()]);
+        }
+
+        private static URI parseUri(String uri)
+        {
+            if (uri == null) {
+                return null;
+            }
+            try {
+                return new URI(uri);
+            }
+            catch (URISyntaxException ignored) {
+                return null;
             }
         }
+    }
 
-        // return random(https) + random(http)
-        Collections.shuffle(httpsUri);
-        Collections.shuffle(httpUri);
-        return ImmutableList.<URI>builder().addAll(httpsUri).addAll(httpUri).build();
+    /**
+     * Immutable view of the primary URIs starting at one offset followed by the
+     * secondary URIs starting at another, wrapping around within each group.
+     */
+    private static class RotatedList
+            extends AbstractList<URI>
+            implements RandomAccess
+    {
+        private final URI[] primary;
+        private final int primaryOffset;
+        private final URI[] secondary;
+        private final int secondaryOffset;
+
+        private RotatedList(URI[] primary, int primaryOffset, URI[] secondary, int secondaryOffset)
+        {
+            this.primary = primary;
+            this.primaryOffset = primaryOffset;
+            this.secondary = secondary;
+            this.secondaryOffset = secondaryOffset;
+        }
+
+        @Override
+        public URI get(int index)
+        {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+            }
+            if (index < primary.length) {
+                return primary[(primaryOffset + index) % primary.length];
+            }
+            return secondary[(secondaryOffset + index - primary.length) % secondary.length];
+        }
+
+        @Override
+        public int size()
+        {
+            return primary.length + secondary.length;
+        }
     }
 }
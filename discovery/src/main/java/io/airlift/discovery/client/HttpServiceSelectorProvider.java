@@ -27,12 +27,20 @@ class HttpServiceSelectorProvider
         implements Provider<HttpServiceSelector>
 {
     private final String type;
+    private final HttpServiceSelectionStrategy strategy;
     private Injector injector;
 
     public HttpServiceSelectorProvider(String type)
+    {
+        this(type, HttpServiceSelectionStrategies.random());
+    }
+
+    public HttpServiceSelectorProvider(String type, HttpServiceSelectionStrategy strategy)
     {
         Preconditions.checkNotNull(type);
+        Preconditions.checkNotNull(strategy, "strategy is null");
         this.type = type;
+        this.strategy = strategy;
     }
 
     @Inject
@@ -47,7 +55,7 @@ class HttpServiceSelectorProvider
 
         ServiceSelector serviceSelector = injector.getInstance(Key.get(ServiceSelector.class, serviceType(type)));
 
-        HttpServiceSelector httpServiceSelector = new HttpServiceSelectorImpl(serviceSelector);
+        HttpServiceSelector httpServiceSelector = new HttpServiceSelectorImpl(serviceSelector, strategy);
         return httpServiceSelector;
     }
 
@@ -66,6 +74,9 @@ class HttpServiceSelectorProvider
         if (!type.equals(that.type)) {
             return false;
         }
+        if (!strategy.equals(that.strategy)) {
+            return false;
+        }
 
         return true;
     }
@@ -73,6 +84,6 @@ class HttpServiceSelectorProvider
     @Override
     public int hashCode()
     {
-        return type.hashCode();
+        return 31 * type.hashCode() + strategy.hashCode();
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.discovery.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.discovery.client.testing.StaticServiceSelector;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static io.airlift.discovery.client.HttpServiceSelectionStrategies.powerOfTwoChoices;
+import static io.airlift.discovery.client.HttpServiceSelectionStrategies.roundRobin;
+import static io.airlift.discovery.client.HttpServiceSelectionStrategies.weighted;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestHttpServiceSelectorImpl
+{
+    @Test
+    public void testEmpty()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector());
+        assertEquals(selector.selectHttpService(), ImmutableList.of());
+    }
+
+    @Test
+    public void testFavorsHttps()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a", "https", "https://a")),
+                service(ImmutableMap.of("http", "http://b")),
+                service(ImmutableMap.of("http", "http://c", "https", "https://c"))));
+
+        for (int i = 0; i < 100; i++) {
+            List<URI> uris = selector.selectHttpService();
+            assertEquals(uris.size(), 5);
+            assertEquals(ImmutableSet.copyOf(uris.subList(0, 2)), ImmutableSet.of(URI.create("https://a"), URI.create("https://c")));
+            assertEquals(ImmutableSet.copyOf(uris.subList(2, 5)), ImmutableSet.of(URI.create("http://a"), URI.create("http://b"), URI.create("http://c")));
+        }
+    }
+
+    @Test
+    public void testIgnoresInvalidUris()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a", "https", "not a uri")),
+                service(ImmutableMap.of("http", "http://b"))));
+
+        assertEquals(ImmutableSet.copyOf(selector.selectHttpService()), ImmutableSet.of(URI.create("http://a"), URI.create("http://b")));
+    }
+
+    @Test
+    public void testRoundRobin()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a")),
+                service(ImmutableMap.of("http", "http://b")),
+                service(ImmutableMap.of("http", "http://c"))),
+                roundRobin());
+
+        URI a = URI.create("http://a");
+        URI b = URI.create("http://b");
+        URI c = URI.create("http://c");
+        assertEquals(selector.selectHttpService(), ImmutableList.of(a, b, c));
+        assertEquals(selector.selectHttpService(), ImmutableList.of(b, c, a));
+        assertEquals(selector.selectHttpService(), ImmutableList.of(c, a, b));
+        assertEquals(selector.selectHttpService(), ImmutableList.of(a, b, c));
+    }
+
+    @Test
+    public void testReusesParsedEndpoints()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a")),
+                service(ImmutableMap.of("http", "http://b"))),
+                roundRobin());
+
+        List<URI> first = selector.selectHttpService();
+        selector.selectHttpService();
+        assertSame(selector.selectHttpService(), first);
+    }
+
+    @Test
+    public void testPowerOfTwoChoices()
+    {
+        Map<URI, Integer> inFlightRequests = new HashMap<>();
+        inFlightRequests.put(URI.create("http://a"), 10);
+        inFlightRequests.put(URI.create("http://b"), 0);
+
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a")),
+                service(ImmutableMap.of("http", "http://b"))),
+                powerOfTwoChoices(inFlightRequests::get));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(selector.selectHttpService().get(0), URI.create("http://b"));
+        }
+    }
+
+    @Test
+    public void testWeighted()
+    {
+        HttpServiceSelector selector = new HttpServiceSelectorImpl(new StaticServiceSelector(
+                service(ImmutableMap.of("http", "http://a", "weight", "3")),
+                service(ImmutableMap.of("http", "http://b", "weight", "0")),
+                service(ImmutableMap.of("http", "http://c"))),
+                weighted("weight"));
+
+        Map<URI, Integer> selections = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            selections.merge(selector.selectHttpService().get(0), 1, Integer::sum);
+        }
+
+        assertEquals(selections.get(URI.create("http://b")), null);
+        int a = selections.get(URI.create("http://a"));
+        int c = selections.get(URI.create("http://c"));
+        assertEquals(a + c, 10_000);
+        assertTrue(a > 2 * c, "expected about three times as many selections of a as of c: " + selections);
+    }
+
+    private static ServiceDescriptor service(Map<String, String> properties)
+    {
+        return new ServiceDescriptor(UUID.randomUUID(), "node", "apple", "general", "location", ServiceState.RUNNING, properties);
+    }
+}
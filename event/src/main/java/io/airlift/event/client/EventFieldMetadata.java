@@ -16,11 +16,15 @@
 package io.airlift.event.client;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.Collection;
@@ -29,8 +33,8 @@ import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
-import static com.google.common.base.Objects.firstNonNull;
 import static io.airlift.event.client.EventDataType.validateFieldValueType;
+import static java.lang.invoke.MethodType.methodType;
 
 class EventFieldMetadata
 {
@@ -54,7 +58,9 @@ class EventFieldMetadata
     }
 
     private final String name;
+    private final SerializableString serializedName;
     private final Method method;
+    private final MethodHandle getter;
     private final EventDataType eventDataType;
     private final EventTypeMetadata<?> nestedType;
     private final ContainerType containerType;
@@ -65,20 +71,38 @@ class EventFieldMetadata
         Preconditions.checkArgument((eventDataType == null) || (nestedType == null), "both eventDataType and nestedType are set");
 
         this.name = name;
+        this.serializedName = new SerializedString(name);
         this.method = method;
+        this.getter = getterFor(method);
         this.eventDataType = eventDataType;
         this.nestedType = nestedType;
         this.containerType = containerType;
     }
 
+    /**
+     * Creates a method handle that invokes the getter directly on an untyped event,
+     * which avoids the argument array and access checks of reflective invocation.
+     */
+    private static MethodHandle getterFor(Method method)
+    {
+        try {
+            // method has been made accessible, so a public lookup can be used for private event classes
+            return MethodHandles.publicLookup().unreflect(method)
+                    .asType(methodType(Object.class, Object.class));
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access event field method " + method.toGenericString(), e);
+        }
+    }
+
     private Object getValue(Object event)
             throws InvalidEventException
     {
         try {
-            return method.invoke(event);
+            return (Object) getter.invokeExact(event);
         }
-        catch (Exception e) {
-            throw new InvalidEventException(firstNonNull(e.getCause(), e),
+        catch (Throwable e) {
+            throw new InvalidEventException(e,
                     "Unable to get value of event field %s: Exception occurred while invoking [%s]", name, method.toGenericString());
         }
     }
@@ -86,7 +110,8 @@ class EventFieldMetadata
     public void writeField(JsonGenerator jsonGenerator, Object event)
             throws IOException
     {
-        writeField(jsonGenerator, event, new ArrayDeque<>());
+        // the object stack is only needed for nested events, so it is allocated on first use
+        writeField(jsonGenerator, event, null);
     }
 
     private void writeField(JsonGenerator jsonGenerator, Object event, Deque<Object> objectStack)
@@ -94,7 +119,7 @@ class EventFieldMetadata
     {
         Object value = getValue(event);
         if (value != null) {
-            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeFieldName(serializedName);
             if (containerType == ContainerType.ITERABLE) {
                 validateFieldValueType(value, Iterable.class);
                 writeArray(jsonGenerator, (Iterable<?>) value, objectStack);
@@ -160,6 +185,9 @@ class EventFieldMetadata
     private void writeObject(JsonGenerator jsonGenerator, Object value, Deque<Object> objectStack)
             throws IOException
     {
+        if (objectStack == null) {
+            objectStack = new ArrayDeque<>();
+        }
         checkForCycles(value, objectStack);
         objectStack.push(value);
         jsonGenerator.writeStartObject();
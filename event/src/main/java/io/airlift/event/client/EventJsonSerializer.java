@@ -16,6 +16,8 @@
 package io.airlift.event.client;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.google.common.base.Preconditions;
@@ -25,21 +27,32 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class EventJsonSerializer<T>
         extends JsonSerializer<T>
 {
+    private static final SerializableString TYPE_FIELD = new SerializedString("type");
+    private static final SerializableString UUID_FIELD = new SerializedString("uuid");
+    private static final SerializableString HOST_FIELD = new SerializedString("host");
+    private static final SerializableString TIMESTAMP_FIELD = new SerializedString("timestamp");
+    private static final SerializableString DATA_FIELD = new SerializedString("data");
+
     private final EventTypeMetadata<T> eventTypeMetadata;
-    private final String hostName;
+    private final SerializableString typeName;
+    private final SerializableString hostName;
+    private final EventFieldMetadata[] fields;
 
     public EventJsonSerializer(EventTypeMetadata<T> eventTypeMetadata)
     {
         Preconditions.checkNotNull(eventTypeMetadata, "eventTypeMetadata is null");
 
         this.eventTypeMetadata = eventTypeMetadata;
+        this.typeName = new SerializedString(eventTypeMetadata.getTypeName());
+        this.fields = eventTypeMetadata.getFields().toArray(new EventFieldMetadata[0]);
         if (eventTypeMetadata.getHostField() == null) {
             try {
-                hostName = InetAddress.getLocalHost().getHostName();
+                hostName = new SerializedString(InetAddress.getLocalHost().getHostName());
             }
             catch (UnknownHostException e) {
                 throw new IllegalArgumentException("Unable to determine local host name");
@@ -62,32 +75,36 @@ public class EventJsonSerializer<T>
     {
         jsonGenerator.writeStartObject();
 
-        jsonGenerator.writeStringField("type", eventTypeMetadata.getTypeName());
+        jsonGenerator.writeFieldName(TYPE_FIELD);
+        jsonGenerator.writeString(typeName);
 
         if (eventTypeMetadata.getUuidField() != null) {
             eventTypeMetadata.getUuidField().writeField(jsonGenerator, event);
         }
         else {
-            jsonGenerator.writeStringField("uuid", UUID.randomUUID().toString());
+            jsonGenerator.writeFieldName(UUID_FIELD);
+            jsonGenerator.writeString(randomUuid().toString());
         }
 
         if (eventTypeMetadata.getHostField() != null) {
             eventTypeMetadata.getHostField().writeField(jsonGenerator, event);
         }
         else {
-            jsonGenerator.writeStringField("host", hostName);
+            jsonGenerator.writeFieldName(HOST_FIELD);
+            jsonGenerator.writeString(hostName);
         }
 
         if (eventTypeMetadata.getTimestampField() != null) {
             eventTypeMetadata.getTimestampField().writeField(jsonGenerator, event);
         }
         else {
-            jsonGenerator.writeFieldName("timestamp");
+            jsonGenerator.writeFieldName(TIMESTAMP_FIELD);
             EventDataType.DATETIME.writeFieldValue(jsonGenerator, new DateTime());
         }
 
-        jsonGenerator.writeObjectFieldStart("data");
-        for (EventFieldMetadata field : eventTypeMetadata.getFields()) {
+        jsonGenerator.writeFieldName(DATA_FIELD);
+        jsonGenerator.writeStartObject();
+        for (EventFieldMetadata field : fields) {
             field.writeField(jsonGenerator, event);
         }
         jsonGenerator.writeEndObject();
@@ -95,4 +112,17 @@ public class EventJsonSerializer<T>
         jsonGenerator.writeEndObject();
         jsonGenerator.flush();
     }
+
+    /**
+     * Generates a version 4 (random) UUID. Unlike {@link UUID#randomUUID()}, this does not
+     * use a shared {@code SecureRandom}, which all serializing threads would contend on.
+     * Event ids only need to be unique, not unpredictable.
+     */
+    private static UUID randomUuid()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xC000_0000_0000_0000L)) | 0x8000_0000_0000_0000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
 }
@@ -18,12 +18,18 @@ package io.airlift.event.client;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class TestJsonEventSerializer
 {
@@ -42,4 +48,28 @@ public class TestJsonEventSerializer
         String json = out.toString(Charsets.UTF_8.name());
         assertEquals(json, TestingUtils.getNormalizedJson("event.json"));
     }
+
+    @Test
+    public void testGeneratedUuid()
+            throws Exception
+    {
+        JsonEventSerializer eventSerializer = new JsonEventSerializer(DummyEventClass.class);
+        DummyEventClass event = new DummyEventClass(1.0, 2, "three", true);
+
+        Set<UUID> uuids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonGenerator jsonGenerator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+            eventSerializer.serialize(event, jsonGenerator);
+
+            JsonNode json = new ObjectMapper().readTree(out.toByteArray());
+            UUID uuid = UUID.fromString(json.get("uuid").asText());
+            assertEquals(uuid.version(), 4);
+            assertEquals(uuid.variant(), 2);
+            assertTrue(uuids.add(uuid));
+
+            assertEquals(json.get("type").asText(), "Dummy");
+            assertEquals(json.get("data").get("stringValue").asText(), "three");
+        }
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import io.airlift.http.client.StreamingResponseHandler.Demand;
+import io.airlift.units.Duration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Adapts a {@link StreamingResponseHandler} to clients that buffer the whole
+ * response by replaying the buffered body in blocks.
+ */
+class BufferedStreamingResponseHandler<T, E extends Exception>
+        implements ResponseHandler<T, E>
+{
+    private static final int BLOCK_SIZE = 8192;
+    private static final Duration DEFAULT_DEMAND_TIMEOUT = new Duration(1, TimeUnit.MINUTES);
+
+    private final StreamingResponseHandler<T, E> handler;
+    private final Duration demandTimeout;
+
+    public BufferedStreamingResponseHandler(StreamingResponseHandler<T, E> handler)
+    {
+        this(handler, DEFAULT_DEMAND_TIMEOUT);
+    }
+
+    /**
+     * @param demandTimeout how long to wait for the handler to request the next block before
+     * failing the response
+     */
+    public BufferedStreamingResponseHandler(StreamingResponseHandler<T, E> handler, Duration demandTimeout)
+    {
+        this.handler = checkNotNull(handler, "handler is null");
+        this.demandTimeout = checkNotNull(demandTimeout, "demandTimeout is null");
+    }
+
+    @Override
+    public T handleException(Request request, Exception exception)
+            throws E
+    {
+        return handler.handleException(request, exception);
+    }
+
+    @Override
+    public T handle(Request request, Response response)
+            throws E
+    {
+        handler.handleResponse(request, response);
+
+        byte[] block = new byte[BLOCK_SIZE];
+        ByteBuffer content = ByteBuffer.wrap(block);
+        try (InputStream inputStream = response.getInputStream()) {
+            while (true) {
+                int length = inputStream.read(block);
+                if (length < 0) {
+                    break;
+                }
+                if (length == 0) {
+                    continue;
+                }
+                content.clear().limit(length);
+
+                LatchDemand demand = new LatchDemand();
+                handler.handleContent(request, content, demand);
+                // the block is reused, so wait until the handler is done with it
+                if (!demand.awaitRequest(demandTimeout)) {
+                    return handler.handleException(request, new TimeoutException("Response handler did not request more content within " + demandTimeout));
+                }
+            }
+        }
+        catch (IOException e) {
+            return handler.handleException(request, e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return handler.handleException(request, e);
+        }
+
+        return handler.handleComplete(request);
+    }
+
+    private static class LatchDemand
+            implements Demand
+    {
+        private final CountDownLatch requested = new CountDownLatch(1);
+
+        @Override
+        public void request()
+        {
+            requested.countDown();
+        }
+
+        public boolean awaitRequest(Duration timeout)
+                throws InterruptedException
+        {
+            return requested.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
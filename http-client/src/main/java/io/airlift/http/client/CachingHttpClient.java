@@ -0,0 +1,569 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractFuture;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.DataSize;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.AGE;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.VARY;
+import static java.util.Locale.ENGLISH;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Caches the responses to GET requests in memory, as directed by their {@code Cache-Control}
+ * headers. Responses are fresh for their {@code max-age}, and stale responses that have an
+ * {@code ETag} are revalidated with {@code If-None-Match}; a {@code 304 Not Modified} is
+ * answered with the cached body. Responses are cached separately for each combination of
+ * values of the request headers named by {@code Vary}. Entries are evicted in least recently
+ * used order when the cache exceeds its maximum size in bytes.
+ *
+ * <p>Responses that can be stored are buffered, since the body must be read before it can be
+ * cached. All other responses are passed to the response handler as the delegate returns them.</p>
+ */
+@Beta
+public class CachingHttpClient
+        implements HttpClient
+{
+    private static final int NOT_MODIFIED = 304;
+    private static final int MAX_VARYING_RESOURCES = 10_000;
+
+    private final HttpClient delegate;
+    private final Ticker ticker;
+    private final long maxSizeInBytes;
+    private final Cache<String, CachedResponse> cache;
+    // request headers named by Vary in the latest response for each resource that has one
+    private final Cache<String, List<String>> varyHeaders;
+
+    private final CounterStat hit = new CounterStat();
+    private final CounterStat miss = new CounterStat();
+    private final CounterStat revalidation = new CounterStat();
+
+    public CachingHttpClient(HttpClient delegate, DataSize maxSize)
+    {
+        this(delegate, maxSize, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingHttpClient(HttpClient delegate, DataSize maxSize, Ticker ticker)
+    {
+        this.delegate = checkNotNull(delegate, "delegate is null");
+        checkNotNull(maxSize, "maxSize is null");
+        checkArgument(maxSize.toBytes() > 0, "maxSize must be positive");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        this.maxSizeInBytes = maxSize.toBytes();
+        // a single segment, so the size bound and the LRU order apply to the whole cache
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, CachedResponse response) -> key.length() + response.getSizeInBytes())
+                .build();
+        this.varyHeaders = CacheBuilder.newBuilder()
+                .maximumSize(MAX_VARYING_RESOURCES)
+                .build();
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        if (!isCacheable(request)) {
+            return delegate.execute(request, responseHandler);
+        }
+
+        String resourceKey = resourceKey(request);
+        String key = cacheKey(resourceKey, request);
+        CachedResponse cached = lookup(key, request);
+        if (cached != null && cached.isFresh(ticker.read())) {
+            hit.update(1);
+            return responseHandler.handle(request, cached);
+        }
+        miss.update(1);
+        return delegate.execute(conditional(request, cached), new CachingResponseHandler<>(resourceKey, key, request, cached, responseHandler));
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(request, responseHandler);
+        }
+
+        String resourceKey = resourceKey(request);
+        String key = cacheKey(resourceKey, request);
+        CachedResponse cached = lookup(key, request);
+        if (cached != null && cached.isFresh(ticker.read())) {
+            hit.update(1);
+            CachedResponseFuture<T> future = new CachedResponseFuture<>();
+            try {
+                future.set(responseHandler.handle(request, cached));
+            }
+            catch (Throwable e) {
+                future.setException(e);
+            }
+            return future;
+        }
+        miss.update(1);
+        return delegate.executeAsync(conditional(request, cached), new CachingResponseHandler<>(resourceKey, key, request, cached, responseHandler));
+    }
+
+    @Override
+    public RequestStats getStats()
+    {
+        return delegate.getStats();
+    }
+
+    @Override
+    public long getMaxContentLength()
+    {
+        return delegate.getMaxContentLength();
+    }
+
+    @Override
+    public void close()
+    {
+        cache.invalidateAll();
+        varyHeaders.invalidateAll();
+        delegate.close();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getHit()
+    {
+        return hit;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getMiss()
+    {
+        return miss;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRevalidation()
+    {
+        return revalidation;
+    }
+
+    @Managed
+    public long getEntries()
+    {
+        return cache.size();
+    }
+
+    @Managed
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+        varyHeaders.invalidateAll();
+    }
+
+    private static boolean isCacheable(Request request)
+    {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return false;
+        }
+        // the caller is validating its own copy of the response
+        if (!getHeaderValues(request.getHeaders(), IF_NONE_MATCH).isEmpty() || !getHeaderValues(request.getHeaders(), IF_MODIFIED_SINCE).isEmpty()) {
+            return false;
+        }
+        for (String value : getHeaderValues(request.getHeaders(), CACHE_CONTROL)) {
+            String directives = value.toLowerCase(ENGLISH);
+            if (directives.contains("no-cache") || directives.contains("no-store")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String resourceKey(Request request)
+    {
+        return request.getMethod().toUpperCase(ENGLISH) + " " + request.getUri();
+    }
+
+    /**
+     * Returns the key of the cached response for the request, which includes the values of the
+     * request headers named by {@code Vary} in the latest response for the resource.
+     */
+    private String cacheKey(String resourceKey, Request request)
+    {
+        List<String> names = varyHeaders.getIfPresent(resourceKey);
+        if (names == null) {
+            return resourceKey;
+        }
+        return cacheKey(resourceKey, request, names);
+    }
+
+    private static String cacheKey(String resourceKey, Request request, List<String> varyHeaders)
+    {
+        StringBuilder key = new StringBuilder(resourceKey);
+        for (String name : varyHeaders) {
+            for (String value : getHeaderValues(request.getHeaders(), name)) {
+                key.append('\n').append(name).append(": ").append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    private CachedResponse lookup(String key, Request request)
+    {
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached == null || !cached.matchesVary(request)) {
+            return null;
+        }
+        return cached;
+    }
+
+    private static Request conditional(Request request, CachedResponse cached)
+    {
+        if (cached == null || cached.getETag() == null) {
+            return request;
+        }
+        return Request.Builder.fromRequest(request)
+                .setHeader(IF_NONE_MATCH, cached.getETag())
+                .build();
+    }
+
+    private static List<String> parseVaryHeaders(ListMultimap<String, String> headers)
+    {
+        ImmutableList.Builder<String> names = ImmutableList.builder();
+        for (String value : getHeaderValues(headers, VARY)) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(ENGLISH);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names.build();
+    }
+
+    private static CacheControl parseCacheControl(ListMultimap<String, String> headers)
+    {
+        List<String> values = getHeaderValues(headers, CACHE_CONTROL);
+        try {
+            return CacheControl.valueOf(String.join(",", values));
+        }
+        catch (IllegalArgumentException e) {
+            // malformed directives, so the response must not be cached
+            return null;
+        }
+    }
+
+    private static long freshSeconds(CacheControl cacheControl, ListMultimap<String, String> headers)
+    {
+        if (cacheControl == null || cacheControl.isNoCache() || cacheControl.getMaxAge() <= 0) {
+            return 0;
+        }
+        long age = 0;
+        List<String> ageValues = getHeaderValues(headers, AGE);
+        if (!ageValues.isEmpty()) {
+            try {
+                age = Long.parseLong(ageValues.get(0).trim());
+            }
+            catch (NumberFormatException ignored) {
+            }
+        }
+        return Math.max(0, cacheControl.getMaxAge() - age);
+    }
+
+    private static List<String> getHeaderValues(ListMultimap<String, String> headers, String name)
+    {
+        ImmutableList.Builder<String> values = ImmutableList.builder();
+        for (Entry<String, String> entry : headers.entries()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                values.add(entry.getValue());
+            }
+        }
+        return values.build();
+    }
+
+    private class CachingResponseHandler<T, E extends Exception>
+            implements ResponseHandler<T, E>
+    {
+        private final String resourceKey;
+        private final String key;
+        private final Request request;
+        private final CachedResponse cached;
+        private final ResponseHandler<T, E> responseHandler;
+
+        private CachingResponseHandler(String resourceKey, String key, Request request, CachedResponse cached, ResponseHandler<T, E> responseHandler)
+        {
+            this.resourceKey = resourceKey;
+            this.key = key;
+            this.request = request;
+            this.cached = cached;
+            this.responseHandler = responseHandler;
+        }
+
+        @Override
+        public T handleException(Request ignored, Exception exception)
+                throws E
+        {
+            return responseHandler.handleException(request, exception);
+        }
+
+        @Override
+        public T handle(Request ignored, Response response)
+                throws E
+        {
+            long now = ticker.read();
+
+            if (response.getStatusCode() == NOT_MODIFIED && cached != null) {
+                revalidation.update(1);
+                CachedResponse revalidated = cached.revalidated(response, now);
+                cache.put(key, revalidated);
+                return responseHandler.handle(request, revalidated);
+            }
+
+            if (!isStorable(response)) {
+                cache.invalidate(key);
+                return responseHandler.handle(request, response);
+            }
+
+            byte[] body;
+            try (InputStream input = response.getInputStream()) {
+                body = ByteStreams.toByteArray(input);
+            }
+            catch (IOException e) {
+                return responseHandler.handleException(request, e);
+            }
+
+            CachedResponse buffered = new CachedResponse(request, response, body, now);
+            List<String> names = buffered.getVaryHeaders();
+            if (names.isEmpty()) {
+                varyHeaders.invalidate(resourceKey);
+                cache.put(resourceKey, buffered);
+            }
+            else {
+                varyHeaders.put(resourceKey, names);
+                cache.put(cacheKey(resourceKey, request, names), buffered);
+            }
+            return responseHandler.handle(request, buffered);
+        }
+
+        private boolean isStorable(Response response)
+        {
+            if (response.getStatusCode() != 200) {
+                return false;
+            }
+            ListMultimap<String, String> headers = response.getHeaders();
+            CacheControl cacheControl = parseCacheControl(headers);
+            if (cacheControl == null || cacheControl.isNoStore() || parseVaryHeaders(headers).contains("*")) {
+                return false;
+            }
+            if (freshSeconds(cacheControl, headers) <= 0 && response.getHeader(ETAG) == null) {
+                return false;
+            }
+            // a body larger than the whole cache would be evicted as soon as it is stored
+            String contentLength = response.getHeader(CONTENT_LENGTH);
+            if (contentLength != null) {
+                try {
+                    return Long.parseLong(contentLength.trim()) <= maxSizeInBytes;
+                }
+                catch (NumberFormatException ignored) {
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class CachedResponse
+            implements Response
+    {
+        private final int statusCode;
+        private final String statusMessage;
+        private final ListMultimap<String, String> headers;
+        private final byte[] body;
+        private final String eTag;
+        private final List<String> varyHeaders;
+        private final ListMultimap<String, String> varyValues;
+        // ticker time after which the response must be revalidated
+        private final long expiration;
+
+        private CachedResponse(Request request, Response response, byte[] body, long now)
+        {
+            this.statusCode = response.getStatusCode();
+            this.statusMessage = response.getStatusMessage();
+            this.headers = ImmutableListMultimap.copyOf(response.getHeaders());
+            this.body = body;
+            this.eTag = response.getHeader(ETAG);
+
+            this.varyHeaders = parseVaryHeaders(headers);
+            this.varyValues = varyValues(request, this.varyHeaders);
+            this.expiration = now + SECONDS.toNanos(freshSeconds(parseCacheControl(headers), headers));
+        }
+
+        private CachedResponse(CachedResponse response, long expiration)
+        {
+            this.statusCode = response.statusCode;
+            this.statusMessage = response.statusMessage;
+            this.headers = response.headers;
+            this.body = response.body;
+            this.eTag = response.eTag;
+            this.varyHeaders = response.varyHeaders;
+            this.varyValues = response.varyValues;
+            this.expiration = expiration;
+        }
+
+        /**
+         * Returns a copy of this response that is fresh for the lifetime given by the
+         * {@code 304 Not Modified} response, or by this response if it has none.
+         */
+        public CachedResponse revalidated(Response notModified, long now)
+        {
+            ListMultimap<String, String> headers = notModified.getHeaders();
+            if (getHeaderValues(headers, CACHE_CONTROL).isEmpty()) {
+                headers = this.headers;
+            }
+            return new CachedResponse(this, now + SECONDS.toNanos(freshSeconds(parseCacheControl(headers), headers)));
+        }
+
+        public boolean isFresh(long now)
+        {
+            return now - expiration < 0;
+        }
+
+        public String getETag()
+        {
+            return eTag;
+        }
+
+        public List<String> getVaryHeaders()
+        {
+            return varyHeaders;
+        }
+
+        public boolean matchesVary(Request request)
+        {
+            return varyHeaders.isEmpty() || varyValues.equals(varyValues(request, varyHeaders));
+        }
+
+        public int getSizeInBytes()
+        {
+            int size = body.length;
+            for (Entry<String, String> entry : headers.entries()) {
+                size += entry.getKey().length() + entry.getValue().length();
+            }
+            return size;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusMessage()
+        {
+            return statusMessage;
+        }
+
+        @Override
+        public String getHeader(String name)
+        {
+            List<String> values = getHeaderValues(headers, name);
+            if (values.isEmpty()) {
+                return null;
+            }
+            return values.get(0);
+        }
+
+        @Override
+        public ListMultimap<String, String> getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return body.length;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(body);
+        }
+
+        private static ListMultimap<String, String> varyValues(Request request, List<String> varyHeaders)
+        {
+            ImmutableListMultimap.Builder<String, String> values = ImmutableListMultimap.builder();
+            for (String name : varyHeaders) {
+                values.putAll(name, getHeaderValues(request.getHeaders(), name));
+            }
+            return values.build();
+        }
+    }
+
+    private static class CachedResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        @Override
+        public String getState()
+        {
+            return "CACHED";
+        }
+
+        @Override
+        protected boolean set(T value)
+        {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable)
+        {
+            return super.setException(throwable);
+        }
+    }
+}
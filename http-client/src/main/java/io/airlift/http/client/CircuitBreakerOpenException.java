@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+
+import java.net.URI;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Thrown when a request is rejected without being sent because the circuit breaker of
+ * its destination is open.
+ */
+@Beta
+public class CircuitBreakerOpenException
+        extends RuntimeException
+{
+    private final URI uri;
+
+    public CircuitBreakerOpenException(URI uri)
+    {
+        super("Circuit breaker is open for " + requireNonNull(uri, "uri is null"));
+        this.uri = uri;
+    }
+
+    public URI getUri()
+    {
+        return uri;
+    }
+}
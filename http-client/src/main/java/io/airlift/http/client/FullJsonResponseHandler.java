@@ -21,6 +21,7 @@ import com.google.common.io.ByteStreams;
 import com.google.common.net.MediaType;
 import io.airlift.http.client.FullJsonResponseHandler.JsonResponse;
 import io.airlift.json.JsonCodec;
+import io.airlift.json.SmileCodec;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -36,17 +37,29 @@ public class FullJsonResponseHandler<T>
         implements ResponseHandler<JsonResponse<T>, RuntimeException>
 {
     private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
+    private static final MediaType MEDIA_TYPE_SMILE = MediaType.parse(SmileCodec.SMILE_CONTENT_TYPE);
 
     public static <T> FullJsonResponseHandler<T> createFullJsonResponseHandler(JsonCodec<T> jsonCodec)
     {
-        return new FullJsonResponseHandler<>(jsonCodec);
+        return new FullJsonResponseHandler<>(jsonCodec, null);
+    }
+
+    /**
+     * Creates a handler that decodes the response with the smile codec when the server
+     * responds with {@value SmileCodec#SMILE_CONTENT_TYPE}, and with the json codec otherwise.
+     */
+    public static <T> FullJsonResponseHandler<T> createFullJsonResponseHandler(JsonCodec<T> jsonCodec, SmileCodec<T> smileCodec)
+    {
+        return new FullJsonResponseHandler<>(jsonCodec, checkNotNull(smileCodec, "smileCodec is null"));
     }
 
     private final JsonCodec<T> jsonCodec;
+    private final SmileCodec<T> smileCodec;
 
-    private FullJsonResponseHandler(JsonCodec<T> jsonCodec)
+    private FullJsonResponseHandler(JsonCodec<T> jsonCodec, SmileCodec<T> smileCodec)
     {
-        this.jsonCodec = jsonCodec;
+        this.jsonCodec = checkNotNull(jsonCodec, "jsonCodec is null");
+        this.smileCodec = smileCodec;
     }
 
     @Override
@@ -60,7 +73,11 @@ public class FullJsonResponseHandler<T>
     {
         byte[] bytes = readResponseBytes(response);
         String contentType = response.getHeader(CONTENT_TYPE);
-        if ((contentType == null) || !MediaType.parse(contentType).is(MEDIA_TYPE_JSON)) {
+        MediaType mediaType = (contentType == null) ? null : MediaType.parse(contentType);
+        if ((mediaType != null) && (smileCodec != null) && mediaType.is(MEDIA_TYPE_SMILE)) {
+            return new JsonResponse<>(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), smileCodec, bytes);
+        }
+        if ((mediaType == null) || !mediaType.is(MEDIA_TYPE_JSON)) {
             return new JsonResponse<>(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), bytes);
         }
         return new JsonResponse<>(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), jsonCodec, bytes);
@@ -123,6 +140,29 @@ public class FullJsonResponseHandler<T>
             this.exception = exception;
         }
 
+        @SuppressWarnings("ThrowableInstanceNeverThrown")
+        public JsonResponse(int statusCode, String statusMessage, ListMultimap<String, String> headers, SmileCodec<T> smileCodec, byte[] smileBytes)
+        {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = ImmutableListMultimap.copyOf(headers);
+
+            this.jsonBytes = null;
+            this.responseBytes = checkNotNull(smileBytes, "smileBytes is null");
+
+            T value = null;
+            IllegalArgumentException exception = null;
+            try {
+                value = smileCodec.fromBytes(smileBytes);
+            }
+            catch (IllegalArgumentException e) {
+                exception = new IllegalArgumentException("Unable to create " + smileCodec.getType() + " from Smile response", e);
+            }
+            this.hasValue = (exception == null);
+            this.value = value;
+            this.exception = exception;
+        }
+
         public int getStatusCode()
         {
             return statusCode;
@@ -0,0 +1,368 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import io.airlift.stats.ExponentialDecay;
+import io.airlift.stats.QuantileDigest;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.http.client.HttpUriBuilder.uriBuilderFrom;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Sends requests to a list of candidate servers, such as the URIs returned by
+ * {@code HttpServiceSelector.selectHttpService()}. The scheme, host and port of each request
+ * are replaced by those of the candidate, and the path and query are kept.
+ *
+ * <p>Idempotent requests that have not completed within a percentile of recent response times
+ * are hedged by sending a second attempt to the next candidate. The first response wins and the
+ * other attempt is cancelled. Idempotent requests that fail are retried on the next candidate.
+ * Hedges and retries are both drawn from a {@link RetryBudget} and are recorded in the
+ * {@link RequestStats} of the delegate client. Other requests are sent to the first candidate
+ * only.</p>
+ */
+@Beta
+public class HedgingHttpClient
+        implements HttpClient
+{
+    private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+
+    // the hedge delay is recomputed from the response times after this many responses
+    private static final int SAMPLES_PER_UPDATE = 16;
+
+    private final HttpClient delegate;
+    private final Supplier<List<URI>> candidates;
+    private final ScheduledExecutorService executor;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+    private final RetryBudget retryBudget;
+
+    @GuardedBy("this")
+    private final QuantileDigest responseTimes = new QuantileDigest(0.01, ExponentialDecay.computeAlpha(0.1, 60));
+    @GuardedBy("this")
+    private long samples;
+    // negative until enough response times have been recorded to estimate the percentile
+    private volatile long hedgeDelayNanos = -1;
+
+    public HedgingHttpClient(HttpClient delegate, Supplier<List<URI>> candidates, ScheduledExecutorService executor)
+    {
+        this(delegate, candidates, executor, 0.95, new Duration(10, MILLISECONDS), new RetryBudget(0.1, 10));
+    }
+
+    public HedgingHttpClient(
+            HttpClient delegate,
+            Supplier<List<URI>> candidates,
+            ScheduledExecutorService executor,
+            double hedgePercentile,
+            Duration minHedgeDelay,
+            RetryBudget retryBudget)
+    {
+        this.delegate = checkNotNull(delegate, "delegate is null");
+        this.candidates = checkNotNull(candidates, "candidates is null");
+        this.executor = checkNotNull(executor, "executor is null");
+        checkArgument(hedgePercentile > 0 && hedgePercentile < 1, "hedgePercentile must be between 0 and 1");
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelayNanos = checkNotNull(minHedgeDelay, "minHedgeDelay is null").roundTo(NANOSECONDS);
+        this.retryBudget = checkNotNull(retryBudget, "retryBudget is null");
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        try {
+            return executeAsync(request, responseHandler).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.propagateIfPossible(cause);
+            // the delegate only fails with the exceptions thrown by the response handler
+            @SuppressWarnings("unchecked")
+            E exception = (E) cause;
+            throw exception;
+        }
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        List<URI> uris = ImmutableList.copyOf(candidates.get());
+        if (uris.isEmpty()) {
+            return delegate.executeAsync(request, responseHandler);
+        }
+
+        retryBudget.deposit();
+        HedgedResponseFuture<T, E> future = new HedgedResponseFuture<>(request, responseHandler, uris);
+        future.start();
+        return future;
+    }
+
+    @Override
+    public RequestStats getStats()
+    {
+        return delegate.getStats();
+    }
+
+    @Override
+    public long getMaxContentLength()
+    {
+        return delegate.getMaxContentLength();
+    }
+
+    @Override
+    public void close()
+    {
+        delegate.close();
+    }
+
+    @Managed
+    public Duration getHedgeDelay()
+    {
+        long delay = hedgeDelayNanos;
+        if (delay < 0) {
+            return null;
+        }
+        return new Duration(delay, NANOSECONDS).convertToMostSuccinctTimeUnit();
+    }
+
+    @Managed
+    @Nested
+    public RetryBudget getRetryBudget()
+    {
+        return retryBudget;
+    }
+
+    private synchronized void recordResponseTime(long nanos)
+    {
+        responseTimes.add(nanos);
+        samples++;
+        if (samples % SAMPLES_PER_UPDATE == 0) {
+            hedgeDelayNanos = Math.max(minHedgeDelayNanos, responseTimes.getQuantile(hedgePercentile));
+        }
+    }
+
+    private static Request withCandidate(Request request, URI candidate)
+    {
+        HttpUriBuilder uri = uriBuilderFrom(request.getUri())
+                .scheme(candidate.getScheme())
+                .host(candidate.getHost());
+        if (candidate.getPort() == -1) {
+            uri.defaultPort();
+        }
+        else {
+            uri.port(candidate.getPort());
+        }
+        return Request.Builder.fromRequest(request)
+                .setUri(uri.build())
+                .build();
+    }
+
+    private class HedgedResponseFuture<T, E extends Exception>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private final Request request;
+        private final ResponseHandler<T, E> responseHandler;
+        private final List<URI> candidates;
+        private final boolean idempotent;
+
+        @GuardedBy("this")
+        private final List<HttpResponseFuture<T>> attempts = new ArrayList<>();
+        @GuardedBy("this")
+        private int nextCandidate;
+        @GuardedBy("this")
+        private int outstanding;
+        @GuardedBy("this")
+        private ScheduledFuture<?> hedgeTimer;
+
+        private HedgedResponseFuture(Request request, ResponseHandler<T, E> responseHandler, List<URI> candidates)
+        {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.candidates = candidates;
+            this.idempotent = IDEMPOTENT_METHODS.contains(request.getMethod().toUpperCase());
+        }
+
+        private void start()
+        {
+            URI candidate;
+            synchronized (this) {
+                candidate = candidates.get(nextCandidate++);
+                outstanding++;
+            }
+            send(candidate);
+
+            long delay = hedgeDelayNanos;
+            if (idempotent && delay >= 0 && candidates.size() > 1 && !isDone()) {
+                ScheduledFuture<?> timer = executor.schedule(this::hedge, delay, NANOSECONDS);
+                synchronized (this) {
+                    hedgeTimer = timer;
+                }
+                if (isDone()) {
+                    timer.cancel(false);
+                }
+            }
+        }
+
+        private void hedge()
+        {
+            URI candidate;
+            synchronized (this) {
+                if (isDone() || nextCandidate >= candidates.size()) {
+                    return;
+                }
+                if (!retryBudget.tryAcquire()) {
+                    getStats().recordRetryBudgetExhausted();
+                    return;
+                }
+                candidate = candidates.get(nextCandidate++);
+                outstanding++;
+            }
+            getStats().recordHedge();
+            send(candidate);
+        }
+
+        private void send(URI candidate)
+        {
+            long start = System.nanoTime();
+            // the delegate may complete the attempt on this thread, so it is called without holding the lock
+            HttpResponseFuture<T> attempt = delegate.executeAsync(withCandidate(request, candidate), responseHandler);
+            boolean cancel;
+            synchronized (this) {
+                cancel = isDone();
+                if (!cancel) {
+                    attempts.add(attempt);
+                }
+            }
+            if (cancel) {
+                attempt.cancel(true);
+            }
+
+            Futures.addCallback(attempt, new FutureCallback<T>()
+            {
+                @Override
+                public void onSuccess(T result)
+                {
+                    if (set(result)) {
+                        recordResponseTime(System.nanoTime() - start);
+                        cancelAttempts();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    attemptFailed(t);
+                }
+            });
+        }
+
+        private void attemptFailed(Throwable throwable)
+        {
+            URI candidate = null;
+            synchronized (this) {
+                outstanding--;
+                if (isDone()) {
+                    return;
+                }
+                if (idempotent && nextCandidate < candidates.size()) {
+                    if (retryBudget.tryAcquire()) {
+                        candidate = candidates.get(nextCandidate++);
+                        outstanding++;
+                    }
+                    else {
+                        getStats().recordRetryBudgetExhausted();
+                    }
+                }
+                if (candidate == null && outstanding > 0) {
+                    // a hedged attempt is still running and may succeed
+                    return;
+                }
+            }
+
+            if (candidate != null) {
+                getStats().recordRetry();
+                send(candidate);
+            }
+            else if (setException(throwable)) {
+                cancelAttempts();
+            }
+        }
+
+        private void cancelAttempts()
+        {
+            List<HttpResponseFuture<T>> attempts;
+            ScheduledFuture<?> timer;
+            synchronized (this) {
+                attempts = ImmutableList.copyOf(this.attempts);
+                timer = hedgeTimer;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            for (HttpResponseFuture<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (!super.cancel(mayInterruptIfRunning)) {
+                return false;
+            }
+            cancelAttempts();
+            return true;
+        }
+
+        @Override
+        public synchronized String getState()
+        {
+            if (attempts.isEmpty()) {
+                return "SENDING_REQUEST";
+            }
+            return attempts.get(attempts.size() - 1).getState() + " (attempt " + attempts.size() + ")";
+        }
+    }
+}
@@ -29,6 +29,17 @@ public interface HttpClient
 
     <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler);
 
+    /**
+     * Executes the request and delivers the response body to the handler as it is
+     * received. Clients that cannot stream the body buffer it and then replay it
+     * to the handler. The body is not subject to the maximum content length when
+     * it is streamed.
+     */
+    default <T, E extends Exception> HttpResponseFuture<T> executeStreaming(Request request, StreamingResponseHandler<T, E> responseHandler)
+    {
+        return executeAsync(request, new BufferedStreamingResponseHandler<>(responseHandler));
+    }
+
     RequestStats getStats();
 
     long getMaxContentLength();
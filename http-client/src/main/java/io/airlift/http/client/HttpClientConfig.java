@@ -25,6 +25,7 @@ import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
 import io.airlift.units.MinDuration;
 
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -50,6 +51,17 @@ public class HttpClientConfig
     private boolean authenticationEnabled;
     private String kerberosPrincipal;
     private String kerberosRemoteServiceName;
+    private boolean useDirectBuffers;
+    private int selectorCount = 2;
+
+    private boolean circuitBreakerEnabled;
+    private int circuitBreakerWindowSize = 100;
+    private int circuitBreakerMinimumCalls = 20;
+    private int circuitBreakerFailureRateThreshold = 50;
+    private int circuitBreakerSlowCallRateThreshold = 100;
+    private Duration circuitBreakerSlowCallDuration = new Duration(1, TimeUnit.MINUTES);
+    private Duration circuitBreakerOpenDuration = new Duration(30, TimeUnit.SECONDS);
+    private int circuitBreakerHalfOpenCalls = 5;
 
     @NotNull
     @MinDuration("0ms")
@@ -234,4 +246,146 @@ public class HttpClientConfig
         this.kerberosRemoteServiceName = serviceName;
         return this;
     }
+
+    public boolean isUseDirectBuffers()
+    {
+        return useDirectBuffers;
+    }
+
+    @Config("http-client.use-direct-buffers")
+    @ConfigDescription("Allocate pooled request and response body buffers off heap")
+    public HttpClientConfig setUseDirectBuffers(boolean useDirectBuffers)
+    {
+        this.useDirectBuffers = useDirectBuffers;
+        return this;
+    }
+
+    @Min(1)
+    public int getSelectorCount()
+    {
+        return selectorCount;
+    }
+
+    @Config("http-client.selector-count")
+    @ConfigDescription("Number of selector threads that perform non-blocking I/O for all connections")
+    public HttpClientConfig setSelectorCount(int selectorCount)
+    {
+        this.selectorCount = selectorCount;
+        return this;
+    }
+
+    public boolean isCircuitBreakerEnabled()
+    {
+        return circuitBreakerEnabled;
+    }
+
+    @Config("http-client.circuit-breaker.enabled")
+    @ConfigDescription("Fail requests to a destination fast while too many of its recent requests failed or were slow")
+    public HttpClientConfig setCircuitBreakerEnabled(boolean circuitBreakerEnabled)
+    {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getCircuitBreakerWindowSize()
+    {
+        return circuitBreakerWindowSize;
+    }
+
+    @Config("http-client.circuit-breaker.window-size")
+    @ConfigDescription("Number of recent requests to a destination used to compute the failure and slow call rates")
+    public HttpClientConfig setCircuitBreakerWindowSize(int circuitBreakerWindowSize)
+    {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getCircuitBreakerMinimumCalls()
+    {
+        return circuitBreakerMinimumCalls;
+    }
+
+    @Config("http-client.circuit-breaker.minimum-calls")
+    @ConfigDescription("Number of requests to a destination required before its circuit breaker can open")
+    public HttpClientConfig setCircuitBreakerMinimumCalls(int circuitBreakerMinimumCalls)
+    {
+        this.circuitBreakerMinimumCalls = circuitBreakerMinimumCalls;
+        return this;
+    }
+
+    @Min(1)
+    @Max(100)
+    public int getCircuitBreakerFailureRateThreshold()
+    {
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    @Config("http-client.circuit-breaker.failure-rate-threshold")
+    @ConfigDescription("Percentage of failed requests at which the circuit breaker opens")
+    public HttpClientConfig setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold)
+    {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+        return this;
+    }
+
+    @Min(1)
+    @Max(100)
+    public int getCircuitBreakerSlowCallRateThreshold()
+    {
+        return circuitBreakerSlowCallRateThreshold;
+    }
+
+    @Config("http-client.circuit-breaker.slow-call-rate-threshold")
+    @ConfigDescription("Percentage of slow requests at which the circuit breaker opens")
+    public HttpClientConfig setCircuitBreakerSlowCallRateThreshold(int circuitBreakerSlowCallRateThreshold)
+    {
+        this.circuitBreakerSlowCallRateThreshold = circuitBreakerSlowCallRateThreshold;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getCircuitBreakerSlowCallDuration()
+    {
+        return circuitBreakerSlowCallDuration;
+    }
+
+    @Config("http-client.circuit-breaker.slow-call-duration")
+    @ConfigDescription("Requests that take longer than this are slow")
+    public HttpClientConfig setCircuitBreakerSlowCallDuration(Duration circuitBreakerSlowCallDuration)
+    {
+        this.circuitBreakerSlowCallDuration = circuitBreakerSlowCallDuration;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getCircuitBreakerOpenDuration()
+    {
+        return circuitBreakerOpenDuration;
+    }
+
+    @Config("http-client.circuit-breaker.open-duration")
+    @ConfigDescription("Time an open circuit breaker rejects requests before letting trial requests through")
+    public HttpClientConfig setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration)
+    {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        return this;
+    }
+
+    @Min(1)
+    public int getCircuitBreakerHalfOpenCalls()
+    {
+        return circuitBreakerHalfOpenCalls;
+    }
+
+    @Config("http-client.circuit-breaker.half-open-calls")
+    @ConfigDescription("Number of trial requests that must succeed to close a half-open circuit breaker")
+    public HttpClientConfig setCircuitBreakerHalfOpenCalls(int circuitBreakerHalfOpenCalls)
+    {
+        this.circuitBreakerHalfOpenCalls = circuitBreakerHalfOpenCalls;
+        return this;
+    }
 }
@@ -34,6 +34,9 @@ public class RequestStats
     private final TimeStat responseTime;
     private final DistributionStat readBytes;
     private final DistributionStat writtenBytes;
+    private final CounterStat hedge;
+    private final CounterStat retry;
+    private final CounterStat retryBudgetExhausted;
 
     @Inject
     public RequestStats()
@@ -43,6 +46,9 @@ public class RequestStats
         responseTime = new TimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
+        hedge = new CounterStat();
+        retry = new CounterStat();
+        retryBudgetExhausted = new CounterStat();
     }
 
     public void record(String method,
@@ -63,6 +69,21 @@ public class RequestStats
         writtenBytes.add(requestSizeInBytes);
     }
 
+    public void recordHedge()
+    {
+        hedge.update(1);
+    }
+
+    public void recordRetry()
+    {
+        retry.update(1);
+    }
+
+    public void recordRetryBudgetExhausted()
+    {
+        retryBudgetExhausted.update(1);
+    }
+
     @Managed
     @Flatten
     public CounterStat getRequest()
@@ -97,4 +118,25 @@ public class RequestStats
     {
         return writtenBytes;
     }
+
+    @Managed
+    @Nested
+    public CounterStat getHedge()
+    {
+        return hedge;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetry()
+    {
+        return retry;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRetryBudgetExhausted()
+    {
+        return retryBudgetExhausted;
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token bucket that limits retries to a fraction of the requests sent. Each request deposits
+ * {@code ratio} tokens, up to {@code maxTokens}, and each retry withdraws a whole token. Over
+ * time at most {@code ratio} retries are sent per request, with bursts of up to
+ * {@code maxTokens} retries, so retries cannot multiply the load on a failing server.
+ */
+@Beta
+@ThreadSafe
+public class RetryBudget
+{
+    // tokens are tracked in thousandths so that fractional deposits do not need floating point
+    private static final long UNITS_PER_TOKEN = 1000;
+
+    private final long depositUnits;
+    private final long maxUnits;
+    private final AtomicLong balance;
+
+    public RetryBudget(double ratio, int maxTokens)
+    {
+        checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+        checkArgument(maxTokens >= 0, "maxTokens is negative");
+
+        depositUnits = Math.round(ratio * UNITS_PER_TOKEN);
+        maxUnits = maxTokens * UNITS_PER_TOKEN;
+        balance = new AtomicLong(maxUnits);
+    }
+
+    /**
+     * Records that a request was sent.
+     */
+    public void deposit()
+    {
+        // the bucket is full most of the time, so avoid writing to the shared counter
+        if (balance.get() < maxUnits) {
+            balance.updateAndGet(units -> Math.min(maxUnits, units + depositUnits));
+        }
+    }
+
+    /**
+     * Withdraws the token for a retry.
+     *
+     * @return false if the budget is exhausted and the retry must not be sent
+     */
+    public boolean tryAcquire()
+    {
+        while (true) {
+            long units = balance.get();
+            if (units < UNITS_PER_TOKEN) {
+                return false;
+            }
+            if (balance.compareAndSet(units, units - UNITS_PER_TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    @Managed
+    public double getAvailableTokens()
+    {
+        return (double) balance.get() / UNITS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+import io.airlift.json.SmileCodec;
+
+/**
+ * Generates a request body in the Smile binary format. The request should be sent
+ * with a content type of {@value SmileCodec#SMILE_CONTENT_TYPE}.
+ */
+@Beta
+public class SmileBodyGenerator<T> extends StaticBodyGenerator
+{
+    public static <T> SmileBodyGenerator<T> smileBodyGenerator(SmileCodec<T> smileCodec, T instance)
+    {
+        return new SmileBodyGenerator<>(smileCodec, instance);
+    }
+
+    private SmileBodyGenerator(SmileCodec<T> smileCodec, T instance)
+    {
+        super(smileCodec.toBytes(instance));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.annotations.Beta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handles a response body as it is received instead of after it has been
+ * buffered in memory. The body is delivered in blocks, and the next block
+ * is only delivered after the handler signals demand for it, which lets a
+ * slow consumer push back on the server.
+ */
+@Beta
+public interface StreamingResponseHandler<T, E extends Exception>
+{
+    T handleException(Request request, Exception exception)
+            throws E;
+
+    /**
+     * Called when the status and headers have been received. The body of the
+     * response is not available from {@link Response#getInputStream()}.
+     */
+    void handleResponse(Request request, Response response)
+            throws E;
+
+    /**
+     * Called for each block of the body. The content buffer is only valid until
+     * {@link Demand#request()} is called, and no more content is delivered until
+     * then. Demand may be signaled from any thread, after this method returns.
+     */
+    void handleContent(Request request, ByteBuffer content, Demand demand)
+            throws E;
+
+    /**
+     * Called after all content has been delivered.
+     */
+    T handleComplete(Request request)
+            throws E;
+
+    interface Demand
+    {
+        /**
+         * Releases the current block of content and requests the next one.
+         * Calls after the first have no effect.
+         */
+        void request();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pools buffers in power of two size classes, keeping at most a fixed number of bytes across
+ * all classes and both heap and direct buffers. Acquired sizes are rounded up to the next class.
+ * Buffers larger than the largest class, and buffers released while the pool is full, are left
+ * to the garbage collector, so a burst of large bodies does not pin memory afterwards.
+ */
+@ThreadSafe
+class BoundedByteBufferPool
+        implements ByteBufferPool
+{
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final long maxPooledBytes;
+    private final List<Queue<ByteBuffer>> heapBuffers;
+    private final List<Queue<ByteBuffer>> directBuffers;
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    public BoundedByteBufferPool(int minBufferSize, int maxBufferSize, long maxPooledBytes)
+    {
+        checkArgument(Integer.bitCount(minBufferSize) == 1, "minBufferSize must be a power of two");
+        checkArgument(Integer.bitCount(maxBufferSize) == 1, "maxBufferSize must be a power of two");
+        checkArgument(maxBufferSize >= minBufferSize, "maxBufferSize must be at least minBufferSize");
+        checkArgument(maxPooledBytes >= 0, "maxPooledBytes must be >= 0");
+        this.minBufferSize = minBufferSize;
+        this.maxBufferSize = maxBufferSize;
+        this.maxPooledBytes = maxPooledBytes;
+        int sizeClasses = sizeClass(maxBufferSize) + 1;
+        heapBuffers = newQueues(sizeClasses);
+        directBuffers = newQueues(sizeClasses);
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        if (size > maxBufferSize) {
+            return allocate(size, direct);
+        }
+
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = queues(direct).get(sizeClass).poll();
+        if (buffer == null) {
+            return allocate(minBufferSize << sizeClass, direct);
+        }
+        pooledBytes.addAndGet(-buffer.capacity());
+        BufferUtil.clear(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1 || capacity < minBufferSize || capacity > maxBufferSize) {
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        queues(buffer.isDirect()).get(sizeClass(capacity)).offer(buffer);
+    }
+
+    public long getPooledBytes()
+    {
+        return pooledBytes.get();
+    }
+
+    private int sizeClass(int size)
+    {
+        // the number of doublings from the smallest buffer size to the smallest class that fits
+        int ceiling = size <= minBufferSize ? minBufferSize : Integer.highestOneBit(size - 1) << 1;
+        return Integer.numberOfTrailingZeros(ceiling) - Integer.numberOfTrailingZeros(minBufferSize);
+    }
+
+    private List<Queue<ByteBuffer>> queues(boolean direct)
+    {
+        return direct ? directBuffers : heapBuffers;
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct)
+    {
+        return direct ? BufferUtil.allocateDirect(size) : BufferUtil.allocate(size);
+    }
+
+    private static List<Queue<ByteBuffer>> newQueues(int sizeClasses)
+    {
+        ImmutableList.Builder<Queue<ByteBuffer>> queues = ImmutableList.builder();
+        for (int i = 0; i < sizeClasses; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+        }
+        return queues.build();
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.log.Logger;
+import io.airlift.units.Duration;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Circuit breaker for a single destination. While closed, the outcome of the most recent
+ * requests is kept in a sliding window, and the breaker opens when the failure rate or the
+ * slow call rate in the window reaches its threshold. An open breaker rejects requests until
+ * the open duration has passed, then lets a few trial requests through. It closes if all of
+ * them succeed, and opens again as soon as one fails or is slow. Only the outcome of the
+ * trial requests decides the half-open state; requests sent before the breaker opened are
+ * ignored once it has.
+ */
+@ThreadSafe
+class CircuitBreaker
+{
+    private static final Logger log = Logger.get(CircuitBreaker.class);
+
+    enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String destination;
+    private final Ticker ticker;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    // ring buffer with the outcome of the most recent calls
+    @GuardedBy("this")
+    private final boolean[] failed;
+    @GuardedBy("this")
+    private final boolean[] slow;
+    @GuardedBy("this")
+    private int next;
+    @GuardedBy("this")
+    private int calls;
+    @GuardedBy("this")
+    private int failedCalls;
+    @GuardedBy("this")
+    private int slowCalls;
+
+    @GuardedBy("this")
+    private State state = State.CLOSED;
+    @GuardedBy("this")
+    private long stateChangeTime;
+    @GuardedBy("this")
+    private long lastActivity;
+    @GuardedBy("this")
+    private int callsInFlight;
+    // identifies the current half-open period, so late trial calls of an earlier one are ignored
+    @GuardedBy("this")
+    private long halfOpenPeriod;
+    @GuardedBy("this")
+    private int trialCallsStarted;
+    @GuardedBy("this")
+    private int trialCallsCompleted;
+    @GuardedBy("this")
+    private long openedCount;
+    @GuardedBy("this")
+    private long rejectedCount;
+
+    CircuitBreaker(String destination, HttpClientConfig config)
+    {
+        this(destination,
+                Ticker.systemTicker(),
+                config.getCircuitBreakerWindowSize(),
+                config.getCircuitBreakerMinimumCalls(),
+                config.getCircuitBreakerFailureRateThreshold(),
+                config.getCircuitBreakerSlowCallRateThreshold(),
+                config.getCircuitBreakerSlowCallDuration().roundTo(NANOSECONDS),
+                config.getCircuitBreakerOpenDuration().roundTo(NANOSECONDS),
+                config.getCircuitBreakerHalfOpenCalls());
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(
+            String destination,
+            Ticker ticker,
+            int windowSize,
+            int minimumCalls,
+            int failureRateThreshold,
+            int slowCallRateThreshold,
+            long slowCallNanos,
+            long openNanos,
+            int halfOpenCalls)
+    {
+        checkArgument(windowSize > 0, "windowSize must be at least 1");
+        checkArgument(halfOpenCalls > 0, "halfOpenCalls must be at least 1");
+
+        this.destination = requireNonNull(destination, "destination is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+        this.halfOpenCalls = halfOpenCalls;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+        this.stateChangeTime = ticker.read();
+        this.lastActivity = stateChangeTime;
+    }
+
+    /**
+     * Returns a permit to send a request, or null if the breaker rejects it. The caller must
+     * report the outcome of every permitted request with {@link Permit#record} or
+     * {@link Permit#release}.
+     */
+    @Nullable
+    public synchronized Permit tryAcquire()
+    {
+        lastActivity = ticker.read();
+        if (state == State.OPEN) {
+            if (lastActivity - stateChangeTime < openNanos) {
+                rejectedCount++;
+                return null;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        long trialPeriod = -1;
+        if (state == State.HALF_OPEN) {
+            if (trialCallsStarted >= halfOpenCalls) {
+                rejectedCount++;
+                return null;
+            }
+            trialCallsStarted++;
+            trialPeriod = halfOpenPeriod;
+        }
+        callsInFlight++;
+        return new Permit(trialPeriod);
+    }
+
+    @GuardedBy("this")
+    private void record(Permit permit, boolean failure, long durationNanos)
+    {
+        boolean slowCall = durationNanos >= slowCallNanos;
+        if (permit.isTrial()) {
+            if (!isCurrentTrial(permit)) {
+                // the half-open period it was admitted in is over
+                return;
+            }
+            if (failure || slowCall) {
+                transitionTo(State.OPEN);
+                return;
+            }
+            trialCallsCompleted++;
+            if (trialCallsCompleted >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        if (state != State.CLOSED) {
+            // sent before the breaker opened
+            return;
+        }
+        add(failure, slowCall);
+        if (calls >= minimumCalls &&
+                (failedCalls * 100L >= failureRateThreshold * (long) calls || slowCalls * 100L >= slowCallRateThreshold * (long) calls)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    @GuardedBy("this")
+    private void release(Permit permit)
+    {
+        if (isCurrentTrial(permit)) {
+            trialCallsStarted--;
+        }
+    }
+
+    @GuardedBy("this")
+    private boolean isCurrentTrial(Permit permit)
+    {
+        return permit.isTrial() && state == State.HALF_OPEN && permit.trialPeriod == halfOpenPeriod;
+    }
+
+    /**
+     * Returns true if the breaker is closed, has no requests in flight, and has not been
+     * used for the given time, so that dropping it loses nothing worth keeping.
+     */
+    public synchronized boolean isIdle(long idleNanos)
+    {
+        return state == State.CLOSED && callsInFlight == 0 && ticker.read() - lastActivity >= idleNanos;
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    public synchronized long getOpenedCount()
+    {
+        return openedCount;
+    }
+
+    public synchronized long getRejectedCount()
+    {
+        return rejectedCount;
+    }
+
+    @GuardedBy("this")
+    private void add(boolean failure, boolean slowCall)
+    {
+        if (calls == failed.length) {
+            // evict the oldest call
+            if (failed[next]) {
+                failedCalls--;
+            }
+            if (slow[next]) {
+                slowCalls--;
+            }
+        }
+        else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        if (failure) {
+            failedCalls++;
+        }
+        if (slowCall) {
+            slowCalls++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+    @GuardedBy("this")
+    private void transitionTo(State newState)
+    {
+        if (newState == State.OPEN) {
+            log.warn("Circuit breaker for %s opened: %s", destination, describeWindow());
+            openedCount++;
+        }
+        else {
+            log.info("Circuit breaker for %s changed from %s to %s", destination, state, newState);
+        }
+
+        state = newState;
+        stateChangeTime = ticker.read();
+        if (newState == State.HALF_OPEN) {
+            halfOpenPeriod++;
+        }
+        trialCallsStarted = 0;
+        trialCallsCompleted = 0;
+        if (newState == State.CLOSED) {
+            // start over so that the failures that opened the breaker do not open it again
+            next = 0;
+            calls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+    }
+
+    @GuardedBy("this")
+    private String describeWindow()
+    {
+        return String.format("%s of %s recent requests failed, %s were slow", failedCalls, calls, slowCalls);
+    }
+
+    /**
+     * Describes the state of the breaker for diagnostics.
+     */
+    public synchronized String dump()
+    {
+        return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%s",
+                destination,
+                state,
+                new Duration(ticker.read() - stateChangeTime, NANOSECONDS).convertToMostSuccinctTimeUnit(),
+                calls == 0 ? 0 : failedCalls * 100 / calls,
+                calls == 0 ? 0 : slowCalls * 100 / calls,
+                openedCount,
+                rejectedCount);
+    }
+
+    /**
+     * Permission to send a single request. Only the first report of its outcome counts.
+     */
+    public final class Permit
+    {
+        // the half-open period the request was admitted in, or -1 if it was admitted while closed
+        private final long trialPeriod;
+        @GuardedBy("CircuitBreaker.this")
+        private boolean done;
+
+        private Permit(long trialPeriod)
+        {
+            this.trialPeriod = trialPeriod;
+        }
+
+        private boolean isTrial()
+        {
+            return trialPeriod >= 0;
+        }
+
+        /**
+         * Records the outcome of the request.
+         */
+        public void record(boolean failure, long durationNanos)
+        {
+            synchronized (CircuitBreaker.this) {
+                if (complete()) {
+                    CircuitBreaker.this.record(this, failure, durationNanos);
+                }
+            }
+        }
+
+        /**
+         * Releases the permit of a request that was cancelled or never sent.
+         */
+        public void release()
+        {
+            synchronized (CircuitBreaker.this) {
+                if (complete()) {
+                    CircuitBreaker.this.release(this);
+                }
+            }
+        }
+
+        @GuardedBy("CircuitBreaker.this")
+        private boolean complete()
+        {
+            if (done) {
+                return false;
+            }
+            done = true;
+            callsInFlight--;
+            lastActivity = ticker.read();
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return toStringHelper(this)
+                .add("destination", destination)
+                .add("state", state)
+                .add("calls", calls)
+                .add("failedCalls", failedCalls)
+                .add("slowCalls", slowCalls)
+                .toString();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import io.airlift.stats.Distribution;
+import io.airlift.stats.ExponentialDecay;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Request statistics for a single destination, or for all destinations of a client. The
+ * gauges and distributions are updated as requests move from one phase to the next, so
+ * reading them does not need to visit the requests in flight. Times are recorded in
+ * milliseconds when a request leaves a phase, and decay over one minute.
+ */
+@ThreadSafe
+class DestinationStats
+{
+    enum Phase
+    {
+        QUEUED, SENDING_REQUEST, AWAITING_RESPONSE, READING_RESPONSE
+    }
+
+    private final String destination;
+    private final AtomicInteger[] requestsInPhase = new AtomicInteger[Phase.values().length];
+    private final Distribution[] phaseTime = new Distribution[Phase.values().length];
+    private final Distribution requestTime;
+    private final AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+
+    DestinationStats(String destination)
+    {
+        this(destination, false);
+    }
+
+    DestinationStats(String destination, boolean striped)
+    {
+        this.destination = requireNonNull(destination, "destination is null");
+        for (Phase phase : Phase.values()) {
+            requestsInPhase[phase.ordinal()] = new AtomicInteger();
+            phaseTime[phase.ordinal()] = new Distribution(ExponentialDecay.oneMinute(), striped);
+        }
+        this.requestTime = new Distribution(ExponentialDecay.oneMinute(), striped);
+    }
+
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    public void enter(Phase phase, long now)
+    {
+        requestsInPhase[phase.ordinal()].incrementAndGet();
+        lastActivity.set(now);
+    }
+
+    public void exit(Phase phase, long nanosInPhase, long now)
+    {
+        requestsInPhase[phase.ordinal()].decrementAndGet();
+        phaseTime[phase.ordinal()].add(NANOSECONDS.toMillis(nanosInPhase));
+        lastActivity.set(now);
+    }
+
+    public void requestFinished(long requestNanos)
+    {
+        requestTime.add(NANOSECONDS.toMillis(requestNanos));
+    }
+
+    public int getRequests(Phase phase)
+    {
+        return requestsInPhase[phase.ordinal()].get();
+    }
+
+    public int getRequestsInFlight()
+    {
+        int requests = 0;
+        for (AtomicInteger count : requestsInPhase) {
+            requests += count.get();
+        }
+        return requests;
+    }
+
+    public Distribution getPhaseTime(Phase phase)
+    {
+        return phaseTime[phase.ordinal()];
+    }
+
+    public Distribution getRequestTime()
+    {
+        return requestTime;
+    }
+
+    /**
+     * Returns true if no request is in flight and no request has changed phase
+     * for at least the specified time.
+     */
+    public boolean isIdle(long now, long idleNanos)
+    {
+        return getRequestsInFlight() == 0 && now - lastActivity.get() >= idleNanos;
+    }
+
+    public String dump()
+    {
+        return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%s",
+                destination,
+                getRequests(Phase.QUEUED),
+                getRequests(Phase.SENDING_REQUEST),
+                getRequests(Phase.AWAITING_RESPONSE),
+                getRequests(Phase.READING_RESPONSE),
+                requestTime.getP50(),
+                requestTime.getP99());
+    }
+}
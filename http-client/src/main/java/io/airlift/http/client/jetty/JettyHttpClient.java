@@ -2,7 +2,6 @@ package io.airlift.http.client.jetty;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
@@ -11,6 +10,7 @@ import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.AbstractFuture;
 import io.airlift.http.client.BodyGenerator;
+import io.airlift.http.client.CircuitBreakerOpenException;
 import io.airlift.http.client.HttpClientConfig;
 import io.airlift.http.client.HttpRequestFilter;
 import io.airlift.http.client.Request;
@@ -18,6 +18,9 @@ import io.airlift.http.client.RequestStats;
 import io.airlift.http.client.ResponseHandler;
 import io.airlift.http.client.ResponseTooLargeException;
 import io.airlift.http.client.StaticBodyGenerator;
+import io.airlift.http.client.StreamingResponseHandler;
+import io.airlift.http.client.StreamingResponseHandler.Demand;
+import io.airlift.http.client.jetty.DestinationStats.Phase;
 import io.airlift.http.client.spnego.KerberosConfig;
 import io.airlift.http.client.spnego.SpnegoAuthentication;
 import io.airlift.http.client.spnego.SpnegoAuthenticationStore;
@@ -43,6 +46,8 @@ import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.Sweeper;
@@ -50,30 +55,34 @@ import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
@@ -81,9 +90,13 @@ import java.util.stream.Collectors;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.util.Locale.ENGLISH;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class JettyHttpClient
@@ -93,12 +106,27 @@ public class JettyHttpClient
     private static final String PRESTO_STATS_KEY = "presto_stats";
     private static final long SWEEP_PERIOD_MILLIS = 5000;
     private static final String REALM_IN_CHALLENGE = "X-Airlift-Realm-In-Challenge";
+    private static final int BODY_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_BODY_BUFFER_SIZE = 1024 * 1024;
+    private static final long MAX_POOLED_BODY_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_TRACKED_DESTINATIONS = 1000;
+    private static final long DESTINATION_IDLE_NANOS = MINUTES.toNanos(1);
+
+    // request and response bodies of all clients use their own bounded pool, since the network
+    // buffer pool of an I/O pool never shrinks
+    private static final BoundedByteBufferPool BODY_BUFFER_POOL = new BoundedByteBufferPool(BODY_BUFFER_SIZE, MAX_BODY_BUFFER_SIZE, MAX_POOLED_BODY_BYTES);
 
     private final HttpClient httpClient;
+    private final boolean useDirectBuffers;
     private final long maxContentLength;
     private final long requestTimeoutMillis;
     private final long idleTimeoutMillis;
     private final RequestStats stats = new RequestStats();
+    // null if circuit breakers are disabled
+    private final HttpClientConfig circuitBreakerConfig;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final DestinationStats allDestinationStats = new DestinationStats("all", true);
+    private final ConcurrentMap<String, DestinationStats> destinationStats = new ConcurrentHashMap<>();
     private final CachedDistribution queuedRequestsPerDestination;
     private final CachedDistribution activeConnectionsPerDestination;
     private final CachedDistribution idleConnectionsPerDestination;
@@ -148,6 +176,8 @@ public class JettyHttpClient
         requestTimeoutMillis = config.getRequestTimeout().toMillis();
         idleTimeoutMillis = config.getIdleTimeout().toMillis();
         authenticationEnabled = config.getAuthenticationEnabled();
+        useDirectBuffers = config.isUseDirectBuffers();
+        circuitBreakerConfig = config.isCircuitBreakerEnabled() ? config : null;
 
         creationLocation.fillInStackTrace();
 
@@ -158,7 +188,7 @@ public class JettyHttpClient
             sslContextFactory.setKeyStorePassword(config.getKeyStorePassword());
         }
 
-        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(2);
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(config.getSelectorCount());
         if (authenticationEnabled) {
             requireNonNull(kerberosConfig.getConfig(), "kerberos config path is null");
             requireNonNull(config.getKerberosRemoteServiceName(), "kerberos remote service name is null");
@@ -224,61 +254,11 @@ public class JettyHttpClient
         this.queuedRequestsPerDestination = new DestinationDistribution(httpClient,
                 (distribution, destination) -> distribution.add(destination.getHttpExchanges().size()));
 
-        this.currentQueuedTime = new RequestDistribution(httpClient, (distribution, listener, now) -> {
-            long started = listener.getRequestStarted();
-            if (started == 0) {
-                started = now;
-            }
-            distribution.add(NANOSECONDS.toMillis(started - listener.getCreated()));
-        });
-
-        this.currentRequestTime = new RequestDistribution(httpClient, (distribution, listener, now) -> {
-            long started = listener.getRequestStarted();
-            if (started == 0) {
-                return;
-            }
-            long finished = listener.getResponseFinished();
-            if (finished == 0) {
-                finished = now;
-            }
-            distribution.add(NANOSECONDS.toMillis(finished - started));
-        });
-
-        this.currentRequestSendTime = new RequestDistribution(httpClient, (distribution, listener, now) -> {
-            long started = listener.getRequestStarted();
-            if (started == 0) {
-                return;
-            }
-            long requestSent = listener.getRequestFinished();
-            if (requestSent == 0) {
-                requestSent = now;
-            }
-            distribution.add(NANOSECONDS.toMillis(requestSent - started));
-        });
-
-        this.currentResponseWaitTime = new RequestDistribution(httpClient, (distribution, listener, now) -> {
-            long requestSent = listener.getRequestFinished();
-            if (requestSent == 0) {
-                return;
-            }
-            long responseStarted = listener.getResponseStarted();
-            if (responseStarted == 0) {
-                responseStarted = now;
-            }
-            distribution.add(NANOSECONDS.toMillis(responseStarted - requestSent));
-        });
-
-        this.currentResponseProcessTime = new RequestDistribution(httpClient, (distribution, listener, now) -> {
-            long responseStarted = listener.getResponseStarted();
-            if (responseStarted == 0) {
-                return;
-            }
-            long finished = listener.getResponseFinished();
-            if (finished == 0) {
-                finished = now;
-            }
-            distribution.add(NANOSECONDS.toMillis(finished - responseStarted));
-        });
+        this.currentQueuedTime = new CachedDistribution(() -> allDestinationStats.getPhaseTime(Phase.QUEUED));
+        this.currentRequestTime = new CachedDistribution(allDestinationStats::getRequestTime);
+        this.currentRequestSendTime = new CachedDistribution(() -> allDestinationStats.getPhaseTime(Phase.SENDING_REQUEST));
+        this.currentResponseWaitTime = new CachedDistribution(() -> allDestinationStats.getPhaseTime(Phase.AWAITING_RESPONSE));
+        this.currentResponseProcessTime = new CachedDistribution(() -> allDestinationStats.getPhaseTime(Phase.READING_RESPONSE));
     }
 
     @Override
@@ -306,7 +286,20 @@ public class JettyHttpClient
         };
 
         // fire the request
-        jettyRequest.send(listener);
+        CircuitBreaker.Permit permit;
+        try {
+            permit = acquireCircuitBreaker(jettyRequest, request.getUri());
+        }
+        catch (CircuitBreakerOpenException e) {
+            return responseHandler.handleException(request, e);
+        }
+        try {
+            jettyRequest.send(listener);
+        }
+        catch (RuntimeException e) {
+            releaseCircuitBreaker(permit);
+            throw e;
+        }
 
         // wait for response to begin
         Response response;
@@ -357,12 +350,49 @@ public class JettyHttpClient
 
         JettyResponseFuture<T, E> future = new JettyResponseFuture<>(request, jettyRequest, responseHandler, stats);
 
-        BufferingResponseListener listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength));
+        BufferingResponseListener listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength), BODY_BUFFER_POOL, useDirectBuffers);
 
+        CircuitBreaker.Permit permit = null;
         try {
+            permit = acquireCircuitBreaker(jettyRequest, request.getUri());
             jettyRequest.send(listener);
         }
+        catch (CircuitBreakerOpenException e) {
+            future.failed(e);
+        }
+        catch (RuntimeException e) {
+            releaseCircuitBreaker(permit);
+            if (!(e instanceof RejectedExecutionException)) {
+                e = new RejectedExecutionException(e);
+            }
+            // normally this is a rejected execution exception because the client has been closed
+            future.failed(e);
+        }
+        return future;
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeStreaming(Request request, StreamingResponseHandler<T, E> responseHandler)
+    {
+        checkNotNull(request, "request is null");
+        checkNotNull(responseHandler, "responseHandler is null");
+
+        request = applyRequestFilters(request);
+
+        HttpRequest jettyRequest = buildJettyRequest(request);
+
+        JettyStreamingResponseFuture<T, E> future = new JettyStreamingResponseFuture<>(request, jettyRequest, responseHandler, stats);
+
+        CircuitBreaker.Permit permit = null;
+        try {
+            permit = acquireCircuitBreaker(jettyRequest, request.getUri());
+            jettyRequest.send(new StreamingResponseListener(future));
+        }
+        catch (CircuitBreakerOpenException e) {
+            future.failed(e);
+        }
         catch (RuntimeException e) {
+            releaseCircuitBreaker(permit);
             if (!(e instanceof RejectedExecutionException)) {
                 e = new RejectedExecutionException(e);
             }
@@ -372,6 +402,112 @@ public class JettyHttpClient
         return future;
     }
 
+    /**
+     * Takes a permit from the circuit breaker of the destination of the request, and records
+     * the outcome of the request with the circuit breaker when it completes. Requests fail when
+     * they cannot be sent or the server responds with a 5xx status, and they are slow when they
+     * take longer than the configured slow call duration. If sending the request throws, the
+     * caller must release the returned permit.
+     *
+     * @return the permit, or null if the request is not guarded by a circuit breaker
+     * @throws CircuitBreakerOpenException if the circuit breaker rejects the request
+     */
+    @Nullable
+    private CircuitBreaker.Permit acquireCircuitBreaker(HttpRequest jettyRequest, URI uri)
+    {
+        if (circuitBreakerConfig == null || !isValidDestination(uri)) {
+            return null;
+        }
+
+        CircuitBreaker circuitBreaker = getCircuitBreaker(destinationKey(uri.getScheme(), uri.getHost(), uri.getPort()));
+        if (circuitBreaker == null) {
+            return null;
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            throw new CircuitBreakerOpenException(uri);
+        }
+
+        long start = System.nanoTime();
+        jettyRequest.onComplete(result -> {
+            if (result.getFailure() instanceof CancellationException) {
+                permit.release();
+                return;
+            }
+            boolean failed = result.isFailed() || result.getResponse().getStatus() >= 500;
+            permit.record(failed, System.nanoTime() - start);
+        });
+        return permit;
+    }
+
+    private static void releaseCircuitBreaker(@Nullable CircuitBreaker.Permit permit)
+    {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    @Nullable
+    private CircuitBreaker getCircuitBreaker(String destination)
+    {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(destination);
+        if (circuitBreaker != null) {
+            return circuitBreaker;
+        }
+
+        if (circuitBreakers.size() >= MAX_TRACKED_DESTINATIONS) {
+            // a closed breaker that has not been used for a while has nothing worth keeping
+            circuitBreakers.values().removeIf(existing -> existing.isIdle(DESTINATION_IDLE_NANOS));
+            if (circuitBreakers.size() >= MAX_TRACKED_DESTINATIONS) {
+                // requests to this destination are sent without a circuit breaker
+                return null;
+            }
+        }
+        return circuitBreakers.computeIfAbsent(destination, key -> new CircuitBreaker(key, circuitBreakerConfig));
+    }
+
+    private DestinationStats getDestinationStats(URI uri)
+    {
+        // invalid destinations are rejected when the request is sent
+        if (!isValidDestination(uri)) {
+            return null;
+        }
+        String key = destinationKey(uri.getScheme(), uri.getHost(), uri.getPort());
+        DestinationStats stats = destinationStats.get(key);
+        if (stats != null) {
+            return stats;
+        }
+
+        if (destinationStats.size() >= MAX_TRACKED_DESTINATIONS) {
+            // a request that is about to start may still update an evicted entry,
+            // which only means its phase changes are not visible in the dump
+            long now = System.nanoTime();
+            destinationStats.values().removeIf(existing -> existing.isIdle(now, DESTINATION_IDLE_NANOS));
+            if (destinationStats.size() >= MAX_TRACKED_DESTINATIONS) {
+                // the request is still counted in the client-wide stats
+                return null;
+            }
+        }
+        return destinationStats.computeIfAbsent(key, DestinationStats::new);
+    }
+
+    private static boolean isValidDestination(URI uri)
+    {
+        return uri.getScheme() != null && uri.getHost() != null && uri.getPort() <= 0xFFFF;
+    }
+
+    private static String destinationKey(String scheme, String host, int port)
+    {
+        scheme = scheme.toLowerCase(ENGLISH);
+        if (port <= 0) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return scheme + "://" + HostAndPort.fromParts(host.toLowerCase(ENGLISH), port);
+    }
+
     private Request applyRequestFilters(Request request)
     {
         for (HttpRequestFilter requestFilter : requestFilters) {
@@ -384,7 +520,8 @@ public class JettyHttpClient
     {
         HttpRequest jettyRequest = (HttpRequest) httpClient.newRequest(finalRequest.getUri());
 
-        JettyRequestListener listener = new JettyRequestListener(finalRequest.getUri());
+        JettyRequestListener listener = new JettyRequestListener(finalRequest.getUri(), allDestinationStats, getDestinationStats(finalRequest.getUri()));
+        jettyRequest.onRequestQueued(request -> listener.onRequestQueued());
         jettyRequest.onRequestBegin(request -> listener.onRequestBegin());
         jettyRequest.onRequestSuccess(request -> listener.onRequestEnd());
         jettyRequest.onResponseBegin(response -> listener.onResponseBegin());
@@ -408,7 +545,7 @@ public class JettyHttpClient
                 jettyRequest.content(new BytesContentProvider(staticBodyGenerator.getBody()));
             }
             else {
-                jettyRequest.content(new BodyGeneratorContentProvider(bodyGenerator, httpClient.getExecutor()));
+                jettyRequest.content(new BodyGeneratorContentProvider(bodyGenerator, httpClient.getExecutor(), BODY_BUFFER_POOL, useDirectBuffers));
             }
         }
 
@@ -437,6 +574,23 @@ public class JettyHttpClient
         return requestTimeoutMillis;
     }
 
+    /**
+     * Gets the number of requests to the host and port of the specified URI that
+     * have been queued or sent, but have not completed yet. Returns 0 for destinations
+     * that are not tracked because too many other destinations are busy.
+     */
+    public int getInFlightRequests(URI uri)
+    {
+        if (!isValidDestination(uri)) {
+            return 0;
+        }
+        DestinationStats stats = destinationStats.get(destinationKey(uri.getScheme(), uri.getHost(), uri.getPort()));
+        if (stats == null) {
+            return 0;
+        }
+        return stats.getRequestsInFlight();
+    }
+
     @Override
     @Managed
     @Flatten
@@ -524,10 +678,68 @@ public class JettyHttpClient
     {
         return String.format("%s\t%s\t%s\t%s\t%s\n", "URI", "queued", "request", "wait", "response") +
                 httpClient.getDestinations().stream()
-                        .map(JettyHttpClient::dumpDestination)
+                        .map(this::dumpDestination)
                         .collect(Collectors.joining("\n"));
     }
 
+    @Managed
+    public String dumpCircuitBreakers()
+    {
+        return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%s\n", "destination", "state", "since", "failed%", "slow%", "opened", "rejected") +
+                circuitBreakers.values().stream()
+                        .map(CircuitBreaker::dump)
+                        .sorted()
+                        .collect(Collectors.joining("\n"));
+    }
+
+    @Managed
+    public int getQueuedRequests()
+    {
+        return allDestinationStats.getRequests(Phase.QUEUED);
+    }
+
+    @Managed
+    public int getSendingRequests()
+    {
+        return allDestinationStats.getRequests(Phase.SENDING_REQUEST);
+    }
+
+    @Managed
+    public int getAwaitingResponseRequests()
+    {
+        return allDestinationStats.getRequests(Phase.AWAITING_RESPONSE);
+    }
+
+    @Managed
+    public int getReadingResponseRequests()
+    {
+        return allDestinationStats.getRequests(Phase.READING_RESPONSE);
+    }
+
+    @Managed
+    public int getTrackedDestinations()
+    {
+        return destinationStats.size();
+    }
+
+    @Managed
+    public String dumpDestinationStats()
+    {
+        return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%s\n", "destination", "queued", "sending", "waiting", "reading", "p50", "p99") +
+                destinationStats.values().stream()
+                        .map(DestinationStats::dump)
+                        .sorted()
+                        .collect(Collectors.joining("\n"));
+    }
+
+    @Managed
+    public long getOpenCircuitBreakers()
+    {
+        return circuitBreakers.values().stream()
+                .filter(circuitBreaker -> circuitBreaker.getState() != CircuitBreaker.State.CLOSED)
+                .count();
+    }
+
     // todo this should be @Managed but operations with parameters are broken in jmx utils https://github.com/martint/jmxutils/issues/27
     @SuppressWarnings("UnusedDeclaration")
     public String dumpDestination(URI uri)
@@ -540,13 +752,19 @@ public class JettyHttpClient
         return dumpDestination(destination);
     }
 
-    private static String dumpDestination(Destination destination)
+    private String dumpDestination(Destination destination)
     {
         long now = System.nanoTime();
-        return getRequestListenersForDestination(destination).stream()
+        String requests = getRequestListenersForDestination(destination).stream()
                 .map(request -> dumpRequest(now, request))
                 .sorted()
                 .collect(Collectors.joining("\n"));
+
+        CircuitBreaker circuitBreaker = circuitBreakers.get(destinationKey(destination.getScheme(), destination.getHost(), destination.getPort()));
+        if (circuitBreaker == null) {
+            return requests;
+        }
+        return "circuit breaker: " + circuitBreaker.dump() + (requests.isEmpty() ? "" : "\n" + requests);
     }
 
     private static List<JettyRequestListener> getRequestListenersForDestination(Destination destination)
@@ -639,6 +857,8 @@ public class JettyHttpClient
     {
         private final Response response;
         private final CountingInputStream inputStream;
+        // only updated by the thread delivering the content of a streaming response
+        private volatile long bytesStreamed;
 
         public JettyResponse(Response response, InputStream inputStream)
         {
@@ -646,6 +866,22 @@ public class JettyHttpClient
             this.inputStream = new CountingInputStream(inputStream);
         }
 
+        private JettyResponse(Response response)
+        {
+            this.response = response;
+            this.inputStream = null;
+        }
+
+        public static JettyResponse streaming(Response response)
+        {
+            return new JettyResponse(response);
+        }
+
+        public void recordBytesStreamed(int bytes)
+        {
+            bytesStreamed += bytes;
+        }
+
         @Override
         public int getStatusCode()
         {
@@ -681,12 +917,18 @@ public class JettyHttpClient
         @Override
         public long getBytesRead()
         {
+            if (inputStream == null) {
+                return bytesStreamed;
+            }
             return inputStream.getCount();
         }
 
         @Override
         public InputStream getInputStream()
         {
+            if (inputStream == null) {
+                throw new IllegalStateException("Body of a streaming response is delivered to the response handler");
+            }
             return inputStream;
         }
 
@@ -701,21 +943,21 @@ public class JettyHttpClient
         }
     }
 
+    private enum JettyAsyncHttpState
+    {
+        WAITING_FOR_CONNECTION,
+        SENDING_REQUEST,
+        WAITING_FOR_RESPONSE,
+        PROCESSING_RESPONSE,
+        DONE,
+        FAILED,
+        CANCELED
+    }
+
     private static class JettyResponseFuture<T, E extends Exception>
             extends AbstractFuture<T>
             implements HttpResponseFuture<T>
     {
-        public enum JettyAsyncHttpState
-        {
-            WAITING_FOR_CONNECTION,
-            SENDING_REQUEST,
-            WAITING_FOR_RESPONSE,
-            PROCESSING_RESPONSE,
-            DONE,
-            FAILED,
-            CANCELED
-        }
-
         private static final Logger log = Logger.get(JettyResponseFuture.class);
 
         private final long requestStart = System.nanoTime();
@@ -844,6 +1086,200 @@ public class JettyHttpClient
         }
     }
 
+    private static class JettyStreamingResponseFuture<T, E extends Exception>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private static final Logger log = Logger.get(JettyStreamingResponseFuture.class);
+
+        private final long requestStart = System.nanoTime();
+        private final AtomicReference<JettyAsyncHttpState> state = new AtomicReference<>(JettyAsyncHttpState.WAITING_FOR_CONNECTION);
+        private final Request request;
+        private final org.eclipse.jetty.client.api.Request jettyRequest;
+        private final StreamingResponseHandler<T, E> responseHandler;
+        private final RequestStats stats;
+
+        private volatile JettyResponse response;
+        private volatile long responseStart;
+        private volatile Throwable handlerFailure;
+
+        public JettyStreamingResponseFuture(Request request, org.eclipse.jetty.client.api.Request jettyRequest, StreamingResponseHandler<T, E> responseHandler, RequestStats stats)
+        {
+            this.request = request;
+            this.jettyRequest = jettyRequest;
+            this.responseHandler = responseHandler;
+            this.stats = stats;
+        }
+
+        @Override
+        public String getState()
+        {
+            return state.get().toString();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            try {
+                state.set(JettyAsyncHttpState.CANCELED);
+                jettyRequest.abort(new CancellationException());
+                return super.cancel(mayInterruptIfRunning);
+            }
+            catch (Throwable e) {
+                setException(e);
+                return true;
+            }
+        }
+
+        protected void headers(Response response)
+        {
+            responseStart = System.nanoTime();
+            state.set(JettyAsyncHttpState.PROCESSING_RESPONSE);
+
+            JettyResponse jettyResponse = JettyResponse.streaming(response);
+            this.response = jettyResponse;
+            try {
+                responseHandler.handleResponse(request, jettyResponse);
+            }
+            catch (Throwable e) {
+                handlerFailure = e;
+                response.abort(e);
+            }
+        }
+
+        protected void content(Response response, ByteBuffer content, Callback callback)
+        {
+            // ignore empty blocks
+            if (content.remaining() == 0) {
+                callback.succeeded();
+                return;
+            }
+
+            this.response.recordBytesStreamed(content.remaining());
+            CallbackDemand demand = new CallbackDemand(response, callback);
+            try {
+                responseHandler.handleContent(request, content, demand);
+            }
+            catch (Throwable e) {
+                handlerFailure = e;
+                demand.fail(e);
+            }
+        }
+
+        protected void completed()
+        {
+            if (state.get() == JettyAsyncHttpState.CANCELED) {
+                return;
+            }
+
+            T value;
+            try {
+                value = responseHandler.handleComplete(request);
+            }
+            catch (Throwable e) {
+                // this will be an instance of E from the response handler or an Error
+                storeException(e);
+                return;
+            }
+            finally {
+                recordRequestComplete(stats, request, requestStart, response, responseStart);
+            }
+            state.set(JettyAsyncHttpState.DONE);
+            set(value);
+        }
+
+        protected void failed(Throwable throwable)
+        {
+            if (state.get() == JettyAsyncHttpState.CANCELED) {
+                return;
+            }
+
+            // the response handler failed while processing the response
+            if (throwable != null && throwable == handlerFailure) {
+                recordRequestComplete(stats, request, requestStart, response, responseStart);
+                storeException(throwable);
+                return;
+            }
+
+            // give handler a chance to rewrite the exception or return a value instead
+            if (throwable instanceof Exception) {
+                try {
+                    T value = responseHandler.handleException(request, (Exception) throwable);
+                    // handler returned a value, store it in the future
+                    state.set(JettyAsyncHttpState.DONE);
+                    set(value);
+                    return;
+                }
+                catch (Throwable newThrowable) {
+                    throwable = newThrowable;
+                }
+            }
+
+            // at this point "throwable" will either be an instance of E
+            // from the response handler or not an instance of Exception
+            storeException(throwable);
+        }
+
+        private void storeException(Throwable throwable)
+        {
+            if (throwable instanceof CancellationException) {
+                state.set(JettyAsyncHttpState.CANCELED);
+            }
+            else {
+                state.set(JettyAsyncHttpState.FAILED);
+            }
+            if (throwable == null) {
+                throwable = new Throwable("Throwable is null");
+                log.error(throwable, "Something is broken");
+            }
+
+            setException(throwable);
+        }
+
+        @Override
+        public String toString()
+        {
+            return toStringHelper(this)
+                    .add("requestStart", requestStart)
+                    .add("state", state)
+                    .add("request", request)
+                    .toString();
+        }
+    }
+
+    private static class CallbackDemand
+            implements Demand
+    {
+        private final Response response;
+        private final Callback callback;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        public CallbackDemand(Response response, Callback callback)
+        {
+            this.response = response;
+            this.callback = callback;
+        }
+
+        @Override
+        public void request()
+        {
+            if (done.compareAndSet(false, true)) {
+                callback.succeeded();
+            }
+        }
+
+        public void fail(Throwable throwable)
+        {
+            if (done.compareAndSet(false, true)) {
+                callback.failed(throwable);
+            }
+            else {
+                // the content was already released, so abort the response directly
+                response.abort(throwable);
+            }
+        }
+    }
+
     private static void recordRequestComplete(RequestStats requestStats, Request request, long requestStart, JettyResponse response, long responseStart)
     {
         if (response == null) {
@@ -869,11 +1305,15 @@ public class JettyHttpClient
 
         private final BodyGenerator bodyGenerator;
         private final Executor executor;
+        private final ByteBufferPool byteBufferPool;
+        private final boolean direct;
 
-        public BodyGeneratorContentProvider(BodyGenerator bodyGenerator, Executor executor)
+        public BodyGeneratorContentProvider(BodyGenerator bodyGenerator, Executor executor, ByteBufferPool byteBufferPool, boolean direct)
         {
             this.bodyGenerator = bodyGenerator;
             this.executor = executor;
+            this.byteBufferPool = byteBufferPool;
+            this.direct = direct;
         }
 
         @Override
@@ -900,35 +1340,78 @@ public class JettyHttpClient
                 }
             });
 
-            return new AbstractIterator<ByteBuffer>()
+            return new ChunkIterator(chunks, exception);
+        }
+
+        // Jetty calls succeeded once the chunk last returned from next has been written,
+        // but it calls hasNext before that, so the following chunk may already be taken
+        private final class ChunkIterator
+                implements Iterator<ByteBuffer>, Callback
+        {
+            private final BlockingQueue<ByteBuffer> chunks;
+            private final AtomicReference<Exception> exception;
+            private ByteBuffer next;
+            private volatile ByteBuffer current;
+
+            private ChunkIterator(BlockingQueue<ByteBuffer> chunks, AtomicReference<Exception> exception)
             {
-                @Override
-                protected ByteBuffer computeNext()
-                {
-                    ByteBuffer chunk;
+                this.chunks = chunks;
+                this.exception = exception;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                if (next == null) {
                     try {
-                        chunk = chunks.take();
+                        next = chunks.take();
                     }
                     catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw new RuntimeException("Interrupted", e);
                     }
+                }
 
-                    if (chunk == EXCEPTION) {
-                        throw Throwables.propagate(exception.get());
-                    }
-                    if (chunk == DONE) {
-                        return endOfData();
-                    }
-                    return chunk;
+                if (next == EXCEPTION) {
+                    throw Throwables.propagate(exception.get());
                 }
-            };
+                return next != DONE;
+            }
+
+            @Override
+            public ByteBuffer next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = null;
+                return current;
+            }
+
+            @Override
+            public void succeeded()
+            {
+                ByteBuffer chunk = current;
+                if (chunk != null) {
+                    current = null;
+                    byteBufferPool.release(chunk);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable)
+            {
+                // the chunk may still be referenced by the failed write, so leave it to the garbage collector
+                current = null;
+            }
         }
 
         private final class BodyGeneratorOutputStream
                 extends OutputStream
         {
             private final BlockingQueue<ByteBuffer> chunks;
+            private ByteBuffer buffer;
 
             private BodyGeneratorOutputStream(BlockingQueue<ByteBuffer> chunks)
             {
@@ -939,37 +1422,60 @@ public class JettyHttpClient
             public void write(int b)
                     throws IOException
             {
-                try {
-                    // must copy array since it could be reused
-                    chunks.put(ByteBuffer.wrap(new byte[] {(byte) b}));
-                }
-                catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new InterruptedIOException();
+                if (buffer == null || !buffer.hasRemaining()) {
+                    nextBuffer();
                 }
+                buffer.put((byte) b);
             }
 
             @Override
             public void write(byte[] b, int off, int len)
                     throws IOException
             {
-                try {
-                    // must copy array since it could be reused
-                    byte[] copy = Arrays.copyOfRange(b, off, len);
-                    chunks.put(ByteBuffer.wrap(copy));
+                // copy since the array could be reused
+                while (len > 0) {
+                    if (buffer == null || !buffer.hasRemaining()) {
+                        nextBuffer();
+                    }
+                    int length = min(len, buffer.remaining());
+                    buffer.put(b, off, length);
+                    off += length;
+                    len -= length;
                 }
-                catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new InterruptedIOException();
+            }
+
+            @Override
+            public void flush()
+                    throws IOException
+            {
+                if (buffer != null && buffer.position() > 0) {
+                    buffer.flip();
+                    put(buffer);
+                    buffer = null;
                 }
             }
 
             @Override
             public void close()
                     throws IOException
+            {
+                flush();
+                put(DONE);
+            }
+
+            private void nextBuffer()
+                    throws IOException
+            {
+                flush();
+                buffer = byteBufferPool.acquire(BODY_BUFFER_SIZE, direct);
+                buffer.clear();
+            }
+
+            private void put(ByteBuffer chunk)
+                    throws IOException
             {
                 try {
-                    chunks.put(DONE);
+                    chunks.put(chunk);
                 }
                 catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -984,17 +1490,23 @@ public class JettyHttpClient
     {
         private final JettyResponseFuture<?, ?> future;
         private final int maxLength;
+        private final ByteBufferPool byteBufferPool;
+        private final boolean direct;
 
         @GuardedBy("this")
-        private byte[] buffer = new byte[0];
+        private final List<ByteBuffer> buffers = new ArrayList<>();
         @GuardedBy("this")
         private int size;
+        @GuardedBy("this")
+        private int capacity;
 
-        public BufferingResponseListener(JettyResponseFuture<?, ?> future, int maxLength)
+        public BufferingResponseListener(JettyResponseFuture<?, ?> future, int maxLength, ByteBufferPool byteBufferPool, boolean direct)
         {
             this.future = checkNotNull(future, "future is null");
             Preconditions.checkArgument(maxLength > 0, "maxLength must be greater than zero");
             this.maxLength = maxLength;
+            this.byteBufferPool = checkNotNull(byteBufferPool, "byteBufferPool is null");
+            this.direct = direct;
         }
 
         @Override
@@ -1004,41 +1516,194 @@ public class JettyHttpClient
             if (length > maxLength) {
                 response.abort(new ResponseTooLargeException());
             }
-            if (length > buffer.length) {
-                buffer = Arrays.copyOf(buffer, Ints.saturatedCast(length));
-            }
         }
 
         @Override
         public synchronized void onContent(Response response, ByteBuffer content)
         {
             int length = content.remaining();
-            int requiredCapacity = size + length;
-            if (requiredCapacity > buffer.length) {
-                if (requiredCapacity > maxLength) {
-                    response.abort(new ResponseTooLargeException());
-                    return;
+            if (size + length > maxLength) {
+                response.abort(new ResponseTooLargeException());
+                return;
+            }
+
+            // append to pooled buffers, so growing the body never copies it; each buffer is as
+            // large as all previous ones, up to a limit, so large bodies need few buffers
+            while (content.hasRemaining()) {
+                ByteBuffer buffer = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+                if (buffer == null || !buffer.hasRemaining()) {
+                    buffer = byteBufferPool.acquire(min(MAX_BODY_BUFFER_SIZE, max(BODY_BUFFER_SIZE, capacity)), direct);
+                    buffer.clear();
+                    buffers.add(buffer);
+                    capacity += buffer.capacity();
                 }
+                int limit = content.limit();
+                content.limit(content.position() + min(content.remaining(), buffer.remaining()));
+                buffer.put(content);
+                content.limit(limit);
+            }
+            size += length;
+        }
 
-                // newCapacity = min(log2ceiling(requiredCapacity), maxLength);
-                int newCapacity = min(Integer.highestOneBit(requiredCapacity) << 1, maxLength);
+        @Override
+        public synchronized void onComplete(Result result)
+        {
+            Throwable throwable = result.getFailure();
+            if (throwable != null) {
+                release();
+                future.failed(throwable);
+                return;
+            }
 
-                buffer = Arrays.copyOf(buffer, newCapacity);
+            for (ByteBuffer buffer : buffers) {
+                buffer.flip();
             }
+            PooledBufferInputStream content = new PooledBufferInputStream(buffers);
+            try {
+                future.completed(result.getResponse(), content);
+            }
+            finally {
+                // the response handler is done with the body
+                content.close();
+                release();
+            }
+        }
 
-            content.get(buffer, size, length);
-            size += length;
+        private void release()
+        {
+            for (ByteBuffer buffer : buffers) {
+                byteBufferPool.release(buffer);
+            }
+            buffers.clear();
+        }
+    }
+
+    /**
+     * Reads a response body from pooled buffers. The buffers are returned to the pool
+     * once the response handler returns, so reading after that fails.
+     */
+    private static class PooledBufferInputStream
+            extends InputStream
+    {
+        private final List<ByteBuffer> buffers;
+        private int index;
+        private boolean closed;
+
+        public PooledBufferInputStream(List<ByteBuffer> buffers)
+        {
+            this.buffers = buffers;
         }
 
         @Override
-        public synchronized void onComplete(Result result)
+        public int read()
+                throws IOException
+        {
+            ByteBuffer buffer = currentBuffer();
+            if (buffer == null) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+                throws IOException
+        {
+            checkPositionIndexes(off, off + len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = currentBuffer();
+            if (buffer == null) {
+                return -1;
+            }
+            int length = min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n)
+                throws IOException
+        {
+            long skipped = 0;
+            while (skipped < n) {
+                ByteBuffer buffer = currentBuffer();
+                if (buffer == null) {
+                    break;
+                }
+                int length = (int) min(n - skipped, buffer.remaining());
+                buffer.position(buffer.position() + length);
+                skipped += length;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available()
+                throws IOException
+        {
+            ByteBuffer buffer = currentBuffer();
+            if (buffer == null) {
+                return 0;
+            }
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+
+        private ByteBuffer currentBuffer()
+                throws IOException
+        {
+            if (closed) {
+                throw new IOException("Response body has been released");
+            }
+            while (index < buffers.size()) {
+                ByteBuffer buffer = buffers.get(index);
+                if (buffer.hasRemaining()) {
+                    return buffer;
+                }
+                index++;
+            }
+            return null;
+        }
+    }
+
+    private static class StreamingResponseListener
+            extends Listener.Adapter
+    {
+        private final JettyStreamingResponseFuture<?, ?> future;
+
+        public StreamingResponseListener(JettyStreamingResponseFuture<?, ?> future)
+        {
+            this.future = checkNotNull(future, "future is null");
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            future.headers(response);
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content, Callback callback)
+        {
+            future.content(response, content, callback);
+        }
+
+        @Override
+        public void onComplete(Result result)
         {
             Throwable throwable = result.getFailure();
             if (throwable != null) {
                 future.failed(throwable);
             }
             else {
-                future.completed(result.getResponse(), new ByteArrayInputStream(buffer, 0, size));
+                future.completed();
             }
         }
     }
@@ -1065,7 +1730,7 @@ public class JettyHttpClient
         public synchronized Distribution getDistribution()
         {
             // refresh stats only once a second
-            if (NANOSECONDS.toMillis(System.nanoTime() - lastUpdate) > 1000) {
+            if (distribution == null || NANOSECONDS.toMillis(System.nanoTime() - lastUpdate) > 1000) {
                 this.distribution = distributionSupplier.get();
                 this.lastUpdate = System.nanoTime();
             }
@@ -1167,21 +1832,26 @@ public class JettyHttpClient
     {
         enum State
         {
-            CREATED, SENDING_REQUEST, AWAITING_RESPONSE, READING_RESPONSE, FINISHED
+            CREATED, QUEUED, SENDING_REQUEST, AWAITING_RESPONSE, READING_RESPONSE, FINISHED
         }
 
         private final AtomicReference<State> state = new AtomicReference<>(State.CREATED);
 
         private final URI uri;
+        private final DestinationStats allDestinationStats;
+        // null if the destination is not tracked
+        private final DestinationStats destinationStats;
         private final long created = System.nanoTime();
         private final AtomicLong requestStarted = new AtomicLong();
         private final AtomicLong requestFinished = new AtomicLong();
         private final AtomicLong responseStarted = new AtomicLong();
         private final AtomicLong responseFinished = new AtomicLong();
 
-        public JettyRequestListener(URI uri)
+        public JettyRequestListener(URI uri, DestinationStats allDestinationStats, DestinationStats destinationStats)
         {
             this.uri = uri;
+            this.allDestinationStats = allDestinationStats;
+            this.destinationStats = destinationStats;
         }
 
         public URI getUri()
@@ -1219,48 +1889,107 @@ public class JettyHttpClient
             return responseFinished.get();
         }
 
-        public void onRequestBegin()
+        public void onRequestQueued()
         {
-            changeState(State.SENDING_REQUEST);
+            changeState(State.QUEUED, System.nanoTime());
+        }
 
+        public void onRequestBegin()
+        {
             long now = System.nanoTime();
             requestStarted.compareAndSet(0, now);
+
+            changeState(State.SENDING_REQUEST, now);
         }
 
         public void onRequestEnd()
         {
-            changeState(State.AWAITING_RESPONSE);
-
             long now = System.nanoTime();
             requestStarted.compareAndSet(0, now);
             requestFinished.compareAndSet(0, now);
+
+            changeState(State.AWAITING_RESPONSE, now);
         }
 
         private void onResponseBegin()
         {
-            changeState(State.READING_RESPONSE);
-
             long now = System.nanoTime();
             requestStarted.compareAndSet(0, now);
             requestFinished.compareAndSet(0, now);
             responseStarted.compareAndSet(0, now);
+
+            changeState(State.READING_RESPONSE, now);
         }
 
         private void onFinish()
         {
-            changeState(State.FINISHED);
-
             long now = System.nanoTime();
             requestStarted.compareAndSet(0, now);
             requestFinished.compareAndSet(0, now);
             responseStarted.compareAndSet(0, now);
             responseFinished.compareAndSet(0, now);
+
+            changeState(State.FINISHED, now);
+        }
+
+        private synchronized void changeState(State newState, long now)
+        {
+            State oldState = state.get();
+            if (oldState.ordinal() >= newState.ordinal()) {
+                return;
+            }
+            state.set(newState);
+
+            recordStateChange(allDestinationStats, oldState, newState, now);
+            if (destinationStats != null) {
+                recordStateChange(destinationStats, oldState, newState, now);
+            }
         }
 
-        private synchronized void changeState(State newState)
+        private void recordStateChange(DestinationStats stats, State oldState, State newState, long now)
         {
-            if (state.get().ordinal() < newState.ordinal()) {
-                state.set(newState);
+            Phase oldPhase = toPhase(oldState);
+            if (oldPhase != null) {
+                stats.exit(oldPhase, now - getPhaseStarted(oldPhase), now);
+            }
+            Phase newPhase = toPhase(newState);
+            if (newPhase != null) {
+                stats.enter(newPhase, now);
+            }
+            // requests that fail before they are sent have no request time
+            if (newState == State.FINISHED && oldState.ordinal() >= State.SENDING_REQUEST.ordinal()) {
+                stats.requestFinished(now - requestStarted.get());
+            }
+        }
+
+        private long getPhaseStarted(Phase phase)
+        {
+            switch (phase) {
+                case QUEUED:
+                    return created;
+                case SENDING_REQUEST:
+                    return requestStarted.get();
+                case AWAITING_RESPONSE:
+                    return requestFinished.get();
+                case READING_RESPONSE:
+                    return responseStarted.get();
+            }
+            throw new AssertionError("Unknown phase: " + phase);
+        }
+
+        private static Phase toPhase(State state)
+        {
+            switch (state) {
+                case QUEUED:
+                    return Phase.QUEUED;
+                case SENDING_REQUEST:
+                    return Phase.SENDING_REQUEST;
+                case AWAITING_RESPONSE:
+                    return Phase.AWAITING_RESPONSE;
+                case READING_RESPONSE:
+                    return Phase.READING_RESPONSE;
+                default:
+                    return null;
             }
         }
     }
@@ -1309,30 +2038,6 @@ public class JettyHttpClient
         }
     }
 
-    private static class RequestDistribution
-            extends CachedDistribution
-    {
-        interface Processor
-        {
-            void process(Distribution distribution, JettyRequestListener listener, long now);
-        }
-
-        public RequestDistribution(HttpClient httpClient, Processor processor)
-        {
-            super(() -> {
-                long now = System.nanoTime();
-                Distribution distribution = new Distribution();
-                httpClient.getDestinations().stream()
-                        .filter(PoolingHttpDestination.class::isInstance)
-                        .map(destination -> (PoolingHttpDestination<?>) destination)
-                        .map(JettyHttpClient::getRequestListenersForDestination)
-                        .flatMap(List::stream)
-                        .forEach(listener -> processor.process(distribution, listener, now));
-                return distribution;
-            });
-        }
-    }
-
     // By wrapping HttpClient, we are able to substitute the underlying AuthenticationStore
     // with a more efficient one.
     private static class SpnegoHttpClient
@@ -28,6 +28,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,11 +43,13 @@ import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.UnresolvedAddressException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
@@ -496,6 +499,48 @@ public abstract class AbstractHttpClientTest
         Assert.assertEquals(servlet.requestBytes, new byte[] {1, 2, 5});
     }
 
+    @Test
+    public void testPutMethodWithLargeDynamicBodyGenerator()
+            throws Exception
+    {
+        assertLargeDynamicBody(new HttpClientConfig());
+    }
+
+    @Test
+    public void testPutMethodWithLargeDynamicBodyGeneratorDirectBuffers()
+            throws Exception
+    {
+        assertLargeDynamicBody(new HttpClientConfig().setUseDirectBuffers(true));
+    }
+
+    private void assertLargeDynamicBody(HttpClientConfig config)
+            throws Exception
+    {
+        byte[] body = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i * 31);
+        }
+
+        Request request = preparePut()
+                .setUri(baseURI)
+                .setBodyGenerator(out -> {
+                    // mix single byte writes with writes from the middle of an array
+                    int position = 0;
+                    while (position < body.length) {
+                        out.write(body[position]);
+                        position++;
+                        int length = Math.min(body.length - position, 7919);
+                        out.write(body, position, length);
+                        position += length;
+                    }
+                })
+                .build();
+
+        int statusCode = executeRequest(config, request, new ResponseStatusCodeHandler());
+        Assert.assertEquals(statusCode, 200);
+        Assert.assertEquals(servlet.requestBytes, body);
+    }
+
     @Test(expectedExceptions = {SocketTimeoutException.class, TimeoutException.class, ClosedChannelException.class})
     public void testReadTimeout()
             throws Exception
@@ -525,6 +570,36 @@ public abstract class AbstractHttpClientTest
         Assert.assertEquals(body, "body text");
     }
 
+    @Test
+    public void testLargeResponseBody()
+            throws Exception
+    {
+        assertLargeResponseBody(new HttpClientConfig());
+    }
+
+    @Test
+    public void testLargeResponseBodyDirectBuffers()
+            throws Exception
+    {
+        assertLargeResponseBody(new HttpClientConfig().setUseDirectBuffers(true));
+    }
+
+    private void assertLargeResponseBody(HttpClientConfig config)
+            throws Exception
+    {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < 3 * 1024 * 1024; i++) {
+            body.append(i).append('\n');
+        }
+        servlet.responseBody = body.toString();
+
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        Assert.assertEquals(executeRequest(config, request, new ResponseToStringHandler()), body.toString());
+    }
+
     @Test
     public void testResponseBodyEmpty()
             throws Exception
@@ -849,6 +924,69 @@ public abstract class AbstractHttpClientTest
         }
     }
 
+    public static class StreamingResponseToStringHandler
+            implements StreamingResponseHandler<String, Exception>
+    {
+        private final Executor demandExecutor;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int statusCode;
+        private int blocks;
+
+        /**
+         * @param demandExecutor executor used to request more content, which simulates a consumer
+         * that processes each block on another thread
+         */
+        public StreamingResponseToStringHandler(Executor demandExecutor)
+        {
+            this.demandExecutor = demandExecutor;
+        }
+
+        @Override
+        public String handleException(Request request, Exception exception)
+                throws Exception
+        {
+            throw exception;
+        }
+
+        @Override
+        public void handleResponse(Request request, Response response)
+        {
+            statusCode = response.getStatusCode();
+        }
+
+        @Override
+        public void handleContent(Request request, ByteBuffer content, StreamingResponseHandler.Demand demand)
+        {
+            synchronized (body) {
+                while (content.hasRemaining()) {
+                    body.write(content.get());
+                }
+                blocks++;
+            }
+            demandExecutor.execute(demand::request);
+        }
+
+        @Override
+        public String handleComplete(Request request)
+        {
+            synchronized (body) {
+                return new String(body.toByteArray(), Charsets.UTF_8);
+            }
+        }
+
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        public int getBlocks()
+        {
+            synchronized (body) {
+                return blocks;
+            }
+        }
+    }
+
     private static class ResponseStatusCodeHandler
             implements ResponseHandler<Integer, Exception>
     {
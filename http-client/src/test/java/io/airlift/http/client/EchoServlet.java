@@ -89,4 +89,9 @@ public final class EchoServlet
             response.getOutputStream().write(responseBody.getBytes(Charsets.UTF_8));
         }
     }
+
+    public void setResponseBody(String responseBody)
+    {
+        this.responseBody = responseBody;
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static io.airlift.testing.Assertions.assertInstanceOf;
+
+public class TestBufferedStreamingResponseHandler
+{
+    @Test(timeOut = 10_000)
+    public void testFailsWhenHandlerStopsRequesting()
+    {
+        Request request = prepareGet()
+                .setUri(URI.create("http://example.org"))
+                .build();
+
+        StreamingResponseHandler<Exception, RuntimeException> handler = new StreamingResponseHandler<Exception, RuntimeException>()
+        {
+            @Override
+            public Exception handleException(Request request, Exception exception)
+            {
+                return exception;
+            }
+
+            @Override
+            public void handleResponse(Request request, Response response)
+            {
+            }
+
+            @Override
+            public void handleContent(Request request, ByteBuffer content, Demand demand)
+            {
+                // never requests the next block
+            }
+
+            @Override
+            public Exception handleComplete(Request request)
+            {
+                return null;
+            }
+        };
+
+        Exception result = new BufferedStreamingResponseHandler<>(handler, new Duration(10, TimeUnit.MILLISECONDS))
+                .handle(request, mockResponse(HttpStatus.OK, PLAIN_TEXT_UTF_8, "hello"));
+        assertInstanceOf(result, TimeoutException.class);
+    }
+}
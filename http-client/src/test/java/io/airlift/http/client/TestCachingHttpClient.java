@@ -0,0 +1,274 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.collect.ImmutableListMultimap;
+import io.airlift.http.client.StringResponseHandler.StringResponse;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.testing.TestingTicker;
+import io.airlift.units.DataSize;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_LANGUAGE;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.VARY;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+@Test(singleThreaded = true)
+public class TestCachingHttpClient
+{
+    private static final URI URI_A = URI.create("http://example.com/a");
+    private static final URI URI_B = URI.create("http://example.com/b");
+
+    private TestingTicker ticker;
+    private List<Request> requests;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        requests = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    public void testMaxAge()
+            throws Exception
+    {
+        CachingHttpClient client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "max-age=10"));
+
+        assertBody(client, URI_A, "body-1");
+        assertBody(client, URI_A, "body-1");
+        assertEquals(client.executeAsync(prepareGet().setUri(URI_A).build(), createStringResponseHandler()).get().getBody(), "body-1");
+        assertEquals(requests.size(), 1);
+        assertEquals(client.getHit().getTotalCount(), 2);
+        assertEquals(client.getMiss().getTotalCount(), 1);
+
+        ticker.increment(10, SECONDS);
+        assertBody(client, URI_A, "body-2");
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testAge()
+    {
+        CachingHttpClient client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "max-age=10", "Age", "8"));
+
+        assertBody(client, URI_A, "body-1");
+        ticker.increment(1, SECONDS);
+        assertBody(client, URI_A, "body-1");
+        ticker.increment(1, SECONDS);
+        assertBody(client, URI_A, "body-2");
+    }
+
+    @Test
+    public void testRevalidation()
+    {
+        CachingHttpClient client = createClient(request -> {
+            if ("\"v1\"".equals(request.getHeader(IF_NONE_MATCH))) {
+                return response(HttpStatus.NOT_MODIFIED, "", ETAG, "\"v1\"");
+            }
+            return response(HttpStatus.OK, "original", CACHE_CONTROL, "no-cache", ETAG, "\"v1\"");
+        });
+
+        assertBody(client, URI_A, "original");
+        assertNull(requests.get(0).getHeader(IF_NONE_MATCH));
+
+        StringResponse response = client.execute(prepareGet().setUri(URI_A).build(), createStringResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(), "original");
+        assertEquals(requests.get(1).getHeader(IF_NONE_MATCH), "\"v1\"");
+        assertEquals(client.getRevalidation().getTotalCount(), 1);
+        assertEquals(client.getHit().getTotalCount(), 0);
+        assertEquals(client.getMiss().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testRevalidationRefreshesMaxAge()
+    {
+        CachingHttpClient client = createClient(request -> {
+            if (request.getHeader(IF_NONE_MATCH) != null) {
+                return response(HttpStatus.NOT_MODIFIED, "", CACHE_CONTROL, "max-age=10");
+            }
+            return response(HttpStatus.OK, "original", CACHE_CONTROL, "max-age=1", ETAG, "\"v1\"");
+        });
+
+        assertBody(client, URI_A, "original");
+        ticker.increment(1, SECONDS);
+        assertBody(client, URI_A, "original");
+        assertEquals(client.getRevalidation().getTotalCount(), 1);
+
+        ticker.increment(9, SECONDS);
+        assertBody(client, URI_A, "original");
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testNotCached()
+    {
+        CachingHttpClient client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "no-store, max-age=10"));
+        assertBody(client, URI_A, "body-1");
+        assertBody(client, URI_A, "body-2");
+
+        client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size()));
+        assertBody(client, URI_A, "body-3");
+        assertBody(client, URI_A, "body-4");
+
+        client = createClient(request -> response(HttpStatus.NOT_FOUND, "body-" + requests.size(), CACHE_CONTROL, "max-age=10"));
+        assertBody(client, URI_A, "body-5");
+        assertBody(client, URI_A, "body-6");
+
+        client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "max-age=10", VARY, "*"));
+        assertBody(client, URI_A, "body-7");
+        assertBody(client, URI_A, "body-8");
+        assertEquals(client.getEntries(), 0);
+    }
+
+    @Test
+    public void testOnlyGetIsCached()
+    {
+        CachingHttpClient client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "max-age=10"));
+        Request post = preparePost().setUri(URI_A).build();
+        assertEquals(client.execute(post, createStringResponseHandler()).getBody(), "body-1");
+        assertEquals(client.execute(post, createStringResponseHandler()).getBody(), "body-2");
+        assertEquals(client.getMiss().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testRequestNoCache()
+    {
+        CachingHttpClient client = createClient(request -> response(HttpStatus.OK, "body-" + requests.size(), CACHE_CONTROL, "max-age=10"));
+        assertBody(client, URI_A, "body-1");
+
+        Request request = prepareGet().setUri(URI_A).setHeader(CACHE_CONTROL, "no-cache").build();
+        assertEquals(client.execute(request, createStringResponseHandler()).getBody(), "body-2");
+        assertBody(client, URI_A, "body-1");
+    }
+
+    @Test
+    public void testVary()
+    {
+        CachingHttpClient client = createClient(request -> response(
+                HttpStatus.OK,
+                request.getHeader(ACCEPT_LANGUAGE) + "-" + requests.size(),
+                CACHE_CONTROL, "max-age=10",
+                VARY, ACCEPT_LANGUAGE));
+
+        assertEquals(get(client, URI_A, "en"), "en-1");
+        assertEquals(get(client, URI_A, "en"), "en-1");
+        assertEquals(get(client, URI_A, "fr"), "fr-2");
+        assertEquals(get(client, URI_A, "fr"), "fr-2");
+
+        // each variant is cached separately
+        assertEquals(get(client, URI_A, "en"), "en-1");
+        assertEquals(client.getHit().getTotalCount(), 3);
+        assertEquals(client.getMiss().getTotalCount(), 2);
+        assertEquals(client.getEntries(), 2);
+    }
+
+    @Test
+    public void testResponseNotStoredIsNotBuffered()
+    {
+        Response notStored = response(HttpStatus.OK, "body", CACHE_CONTROL, "no-store");
+        CachingHttpClient client = createClient(request -> notStored);
+        assertSame(client.execute(prepareGet().setUri(URI_A).build(), new PassThroughResponseHandler()), notStored);
+
+        // larger than the whole cache
+        Response large = response(HttpStatus.OK, "body", CACHE_CONTROL, "max-age=10", CONTENT_LENGTH, "2048");
+        client = createClient(new DataSize(1, KILOBYTE), request -> large);
+        assertSame(client.execute(prepareGet().setUri(URI_A).build(), new PassThroughResponseHandler()), large);
+        assertEquals(client.getEntries(), 0);
+    }
+
+    @Test
+    public void testMaxSize()
+    {
+        String large = new String(new char[600]).replace('\0', 'x');
+        CachingHttpClient client = createClient(new DataSize(1, KILOBYTE), request -> response(HttpStatus.OK, large + requests.size(), CACHE_CONTROL, "max-age=10"));
+
+        assertBody(client, URI_A, large + 1);
+        assertBody(client, URI_A, large + 1);
+        assertBody(client, URI_B, large + 2);
+        assertEquals(client.getEntries(), 1);
+
+        assertBody(client, URI_A, large + 3);
+        assertEquals(requests.size(), 3);
+    }
+
+    private CachingHttpClient createClient(Function<Request, Response> processor)
+    {
+        return createClient(new DataSize(1, DataSize.Unit.MEGABYTE), processor);
+    }
+
+    private CachingHttpClient createClient(DataSize maxSize, Function<Request, Response> processor)
+    {
+        return new CachingHttpClient(new TestingHttpClient(request -> {
+            requests.add(request);
+            return processor.apply(request);
+        }), maxSize, ticker);
+    }
+
+    private static void assertBody(HttpClient client, URI uri, String expected)
+    {
+        assertEquals(client.execute(prepareGet().setUri(uri).build(), createStringResponseHandler()).getBody(), expected);
+    }
+
+    private static String get(HttpClient client, URI uri, String language)
+    {
+        Request request = prepareGet().setUri(uri).setHeader(ACCEPT_LANGUAGE, language).build();
+        return client.execute(request, createStringResponseHandler()).getBody();
+    }
+
+    private static class PassThroughResponseHandler
+            implements ResponseHandler<Response, RuntimeException>
+    {
+        @Override
+        public Response handleException(Request request, Exception exception)
+        {
+            throw new RuntimeException(exception);
+        }
+
+        @Override
+        public Response handle(Request request, Response response)
+        {
+            return response;
+        }
+    }
+
+    private static Response response(HttpStatus status, String body, String... headers)
+    {
+        ImmutableListMultimap.Builder<String, String> builder = ImmutableListMultimap.builder();
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.put(headers[i], headers[i + 1]);
+        }
+        return new TestingResponse(status, builder.build(), body.getBytes(UTF_8));
+    }
+}
@@ -5,9 +5,11 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableListMultimap;
 import io.airlift.http.client.testing.TestingResponse;
 import io.airlift.json.JsonCodec;
+import io.airlift.json.SmileCodec;
 import org.testng.annotations.Test;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.google.common.net.MediaType.JSON_UTF_8;
 import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
 import static io.airlift.http.client.FullJsonResponseHandler.JsonResponse;
@@ -27,6 +29,8 @@ public class TestFullJsonResponseHandler
 {
     private final JsonCodec<User> codec = JsonCodec.jsonCodec(User.class);
     private final FullJsonResponseHandler<User> handler = createFullJsonResponseHandler(codec);
+    private final SmileCodec<User> smileCodec = SmileCodec.smileCodec(User.class);
+    private final FullJsonResponseHandler<User> smileHandler = createFullJsonResponseHandler(codec, smileCodec);
 
     @Test
     public void testValidJson()
@@ -138,6 +142,62 @@ public class TestFullJsonResponseHandler
         assertEquals(response.getResponseBody(), response.getJson());
     }
 
+    @Test
+    public void testValidSmile()
+    {
+        User user = new User("Joe", 25);
+        byte[] smile = smileCodec.toBytes(user);
+        JsonResponse<User> response = smileHandler.handle(null, mockSmileResponse(smile));
+
+        assertTrue(response.hasValue());
+        assertEquals(response.getValue().getName(), user.getName());
+        assertEquals(response.getValue().getAge(), user.getAge());
+
+        assertNull(response.getJson());
+        assertNull(response.getJsonBytes());
+        assertEquals(response.getResponseBytes(), smile);
+    }
+
+    @Test
+    public void testJsonWithSmileHandler()
+    {
+        User user = new User("Joe", 25);
+        String json = codec.toJson(user);
+        JsonResponse<User> response = smileHandler.handle(null, mockResponse(OK, JSON_UTF_8, json));
+
+        assertTrue(response.hasValue());
+        assertEquals(response.getJson(), json);
+        assertEquals(response.getValue().getName(), user.getName());
+    }
+
+    @Test
+    public void testInvalidSmile()
+    {
+        byte[] smile = {1, 2, 3};
+        JsonResponse<User> response = smileHandler.handle(null, mockSmileResponse(smile));
+
+        assertFalse(response.hasValue());
+        assertEquals(response.getException().getMessage(), "Unable to create " + User.class + " from Smile response");
+        assertTrue(response.getException().getCause() instanceof IllegalArgumentException);
+        assertEquals(response.getResponseBytes(), smile);
+    }
+
+    @Test
+    public void testSmileWithoutSmileCodec()
+    {
+        byte[] smile = smileCodec.toBytes(new User("Joe", 25));
+        JsonResponse<User> response = handler.handle(null, mockSmileResponse(smile));
+
+        assertFalse(response.hasValue());
+        assertNull(response.getException());
+        assertEquals(response.getResponseBytes(), smile);
+    }
+
+    private static TestingResponse mockSmileResponse(byte[] smile)
+    {
+        return new TestingResponse(OK, ImmutableListMultimap.of(CONTENT_TYPE, SmileCodec.SMILE_CONTENT_TYPE), smile);
+    }
+
     public static class User
     {
         private final String name;
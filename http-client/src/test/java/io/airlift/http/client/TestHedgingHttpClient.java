@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePost;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(singleThreaded = true)
+public class TestHedgingHttpClient
+{
+    private static final URI FIRST = URI.create("http://first:8080");
+    private static final URI SECOND = URI.create("http://second:8080");
+    private static final List<URI> CANDIDATES = ImmutableList.of(FIRST, SECOND);
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private List<URI> requested;
+
+    @BeforeMethod
+    public void setup()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        scheduler = newSingleThreadScheduledExecutor(daemonThreadsNamed("test-hedge-%s"));
+        requested = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testRetryOnFailure()
+    {
+        HedgingHttpClient client = createClient(request -> {
+            if (request.getUri().getHost().equals("first")) {
+                throw new RuntimeException("connection refused");
+            }
+            return mockResponse(HttpStatus.OK, PLAIN_TEXT_UTF_8, "second");
+        }, new RetryBudget(0.1, 10));
+
+        StatusResponse response = client.execute(prepareGet().setUri(URI.create("http://localhost/v1/test?a=b")).build(), createStatusResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(requested, ImmutableList.of(URI.create("http://first:8080/v1/test?a=b"), URI.create("http://second:8080/v1/test?a=b")));
+        assertEquals(client.getStats().getRetry().getTotalCount(), 1);
+        assertEquals(client.getStats().getHedge().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNotRetried()
+    {
+        HedgingHttpClient client = createClient(request -> {
+            throw new RuntimeException("connection refused");
+        }, new RetryBudget(0.1, 10));
+
+        try {
+            client.execute(preparePost().setUri(URI.create("http://localhost/v1/test")).build(), createStatusResponseHandler());
+            fail("expected exception");
+        }
+        catch (RuntimeException e) {
+            assertEquals(e.getMessage(), "connection refused");
+        }
+        assertEquals(requested, ImmutableList.of(URI.create("http://first:8080/v1/test")));
+        assertEquals(client.getStats().getRetry().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testRetryBudgetExhausted()
+    {
+        HedgingHttpClient client = createClient(request -> {
+            throw new RuntimeException("connection refused");
+        }, new RetryBudget(0, 1));
+
+        Request request = prepareGet().setUri(URI.create("http://localhost/v1/test")).build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.execute(request, createStatusResponseHandler());
+                fail("expected exception");
+            }
+            catch (RuntimeException e) {
+                assertEquals(e.getMessage(), "connection refused");
+            }
+        }
+
+        // the only token is spent on the first request
+        assertEquals(requested.size(), 3);
+        assertEquals(client.getStats().getRetry().getTotalCount(), 1);
+        assertEquals(client.getStats().getRetryBudgetExhausted().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testHedgeSlowRequest()
+            throws Exception
+    {
+        CountDownLatch slow = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        HedgingHttpClient client = createClient(request -> {
+            if (request.getUri().getHost().equals("first") && request.getUri().getPath().equals("/slow")) {
+                try {
+                    slow.await();
+                }
+                catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw new RuntimeException(e);
+                }
+            }
+            return mockResponse(HttpStatus.OK, PLAIN_TEXT_UTF_8, request.getUri().getHost());
+        }, new RetryBudget(0.1, 10));
+
+        try {
+            // fast responses establish the hedge delay
+            for (int i = 0; i < 32; i++) {
+                client.execute(prepareGet().setUri(URI.create("http://localhost/fast")).build(), createStatusResponseHandler());
+            }
+            assertEquals(client.getHedgeDelay(), new Duration(10, TimeUnit.MILLISECONDS));
+            requested.clear();
+
+            StatusResponse response = client.execute(prepareGet().setUri(URI.create("http://localhost/slow")).build(), createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(requested, ImmutableList.of(URI.create("http://first:8080/slow"), URI.create("http://second:8080/slow")));
+            assertEquals(client.getStats().getHedge().getTotalCount(), 1);
+
+            // the slow attempt loses and is cancelled
+            assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            slow.countDown();
+        }
+    }
+
+    private HedgingHttpClient createClient(Function<Request, Response> processor, RetryBudget retryBudget)
+    {
+        TestingHttpClient delegate = new TestingHttpClient(request -> {
+            requested.add(request.getUri());
+            return processor.apply(request);
+        }, executor);
+        return new HedgingHttpClient(delegate, () -> CANDIDATES, scheduler, 0.95, new Duration(10, TimeUnit.MILLISECONDS), retryBudget);
+    }
+}
@@ -51,7 +51,17 @@ public class TestHttpClientConfig
                 .setKeyStorePassword(System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD))
                 .setAuthenticationEnabled(false)
                 .setKerberosRemoteServiceName(null)
-                .setKerberosPrincipal(null));
+                .setKerberosPrincipal(null)
+                .setUseDirectBuffers(false)
+                .setSelectorCount(2)
+                .setCircuitBreakerEnabled(false)
+                .setCircuitBreakerWindowSize(100)
+                .setCircuitBreakerMinimumCalls(20)
+                .setCircuitBreakerFailureRateThreshold(50)
+                .setCircuitBreakerSlowCallRateThreshold(100)
+                .setCircuitBreakerSlowCallDuration(new Duration(1, TimeUnit.MINUTES))
+                .setCircuitBreakerOpenDuration(new Duration(30, TimeUnit.SECONDS))
+                .setCircuitBreakerHalfOpenCalls(5));
     }
 
     @Test
@@ -72,6 +82,16 @@ public class TestHttpClientConfig
                 .put("http-client.authentication.enabled", "true")
                 .put("http-client.authentication.krb5.remote-service-name", "airlift")
                 .put("http-client.authentication.krb5.principal", "airlift-client")
+                .put("http-client.use-direct-buffers", "true")
+                .put("http-client.selector-count", "4")
+                .put("http-client.circuit-breaker.enabled", "true")
+                .put("http-client.circuit-breaker.window-size", "50")
+                .put("http-client.circuit-breaker.minimum-calls", "10")
+                .put("http-client.circuit-breaker.failure-rate-threshold", "25")
+                .put("http-client.circuit-breaker.slow-call-rate-threshold", "80")
+                .put("http-client.circuit-breaker.slow-call-duration", "5s")
+                .put("http-client.circuit-breaker.open-duration", "1m")
+                .put("http-client.circuit-breaker.half-open-calls", "3")
                 .build();
 
         HttpClientConfig expected = new HttpClientConfig()
@@ -88,7 +108,17 @@ public class TestHttpClientConfig
                 .setKeyStorePassword("key-store-password")
                 .setAuthenticationEnabled(true)
                 .setKerberosRemoteServiceName("airlift")
-                .setKerberosPrincipal("airlift-client");
+                .setKerberosPrincipal("airlift-client")
+                .setUseDirectBuffers(true)
+                .setSelectorCount(4)
+                .setCircuitBreakerEnabled(true)
+                .setCircuitBreakerWindowSize(50)
+                .setCircuitBreakerMinimumCalls(10)
+                .setCircuitBreakerFailureRateThreshold(25)
+                .setCircuitBreakerSlowCallRateThreshold(80)
+                .setCircuitBreakerSlowCallDuration(new Duration(5, TimeUnit.SECONDS))
+                .setCircuitBreakerOpenDuration(new Duration(1, TimeUnit.MINUTES))
+                .setCircuitBreakerHalfOpenCalls(3);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestRetryBudget
+{
+    @Test
+    public void testBudget()
+    {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        assertEquals(budget.getAvailableTokens(), 2.0);
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // half a token per request
+        budget.deposit();
+        assertFalse(budget.tryAcquire());
+        budget.deposit();
+        assertTrue(budget.tryAcquire());
+        assertEquals(budget.getAvailableTokens(), 0.0);
+    }
+
+    @Test
+    public void testDepositIsCapped()
+    {
+        RetryBudget budget = new RetryBudget(1, 2);
+        budget.tryAcquire();
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+        assertEquals(budget.getAvailableTokens(), 2.0);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.HttpClientConfig;
+import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.ProfilerType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.preparePut;
+
+/**
+ * Measures the heap allocated per request for small and multi-megabyte request
+ * and response bodies. The allocation is summed over all threads, including those
+ * of the in-process server, and printed at the end of every iteration.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class BenchmarkJettyHttpClientAllocation
+{
+    private static final int SMALL_BODY_SIZE = 1024;
+    private static final int LARGE_BODY_SIZE = 4 * 1024 * 1024;
+
+    @GenerateMicroBenchmark
+    public long benchmarkSmallResponse(Data data)
+            throws Exception
+    {
+        return data.execute(data.heapClient, data.smallGet);
+    }
+
+    @GenerateMicroBenchmark
+    public long benchmarkLargeResponse(Data data)
+            throws Exception
+    {
+        return data.execute(data.heapClient, data.largeGet);
+    }
+
+    @GenerateMicroBenchmark
+    public long benchmarkLargeResponseDirect(Data data)
+            throws Exception
+    {
+        return data.execute(data.directClient, data.largeGet);
+    }
+
+    @GenerateMicroBenchmark
+    public long benchmarkSmallRequest(Data data)
+            throws Exception
+    {
+        return data.execute(data.heapClient, data.smallPut);
+    }
+
+    @GenerateMicroBenchmark
+    public long benchmarkLargeRequest(Data data)
+            throws Exception
+    {
+        return data.execute(data.heapClient, data.largePut);
+    }
+
+    @GenerateMicroBenchmark
+    public long benchmarkLargeRequestDirect(Data data)
+            throws Exception
+    {
+        return data.execute(data.directClient, data.largePut);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data
+    {
+        private final byte[] smallBody = new byte[SMALL_BODY_SIZE];
+        private final byte[] largeBody = new byte[LARGE_BODY_SIZE];
+        private final byte[] scratch = new byte[8192];
+        private final AtomicLong requests = new AtomicLong();
+        private final ResponseHandler<Long, IOException> handler = new ConsumingResponseHandler(scratch);
+
+        private Server server;
+        private JettyIoPool jettyIoPool;
+        private JettyHttpClient heapClient;
+        private JettyHttpClient directClient;
+        private Request smallGet;
+        private Request largeGet;
+        private Request smallPut;
+        private Request largePut;
+        private long allocatedBytesAtStart;
+
+        @Setup
+        public void setup()
+                throws Exception
+        {
+            server = new Server();
+            ServerConnector connector = new ServerConnector(server);
+            connector.setHost("127.0.0.1");
+            server.addConnector(connector);
+            ServletContextHandler context = new ServletContextHandler();
+            context.addServlet(new ServletHolder(new BodyServlet(smallBody, largeBody)), "/*");
+            server.setHandler(context);
+            server.start();
+            URI uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+
+            jettyIoPool = new JettyIoPool("benchmark", new JettyIoPoolConfig());
+            heapClient = new JettyHttpClient(new HttpClientConfig(), jettyIoPool, ImmutableList.<HttpRequestFilter>of());
+            directClient = new JettyHttpClient(new HttpClientConfig().setUseDirectBuffers(true), jettyIoPool, ImmutableList.<HttpRequestFilter>of());
+
+            smallGet = prepareGet().setUri(uri.resolve("/small")).build();
+            largeGet = prepareGet().setUri(uri.resolve("/large")).build();
+            smallPut = preparePut().setUri(uri).setBodyGenerator(out -> out.write(smallBody)).build();
+            largePut = preparePut().setUri(uri).setBodyGenerator(out -> out.write(largeBody)).build();
+        }
+
+        @TearDown
+        public void tearDown()
+                throws Exception
+        {
+            heapClient.close();
+            directClient.close();
+            jettyIoPool.close();
+            server.stop();
+        }
+
+        @Setup(Level.Iteration)
+        public void startIteration()
+        {
+            requests.set(0);
+            allocatedBytesAtStart = totalAllocatedBytes();
+        }
+
+        @TearDown(Level.Iteration)
+        public void finishIteration()
+        {
+            long allocatedBytes = totalAllocatedBytes() - allocatedBytesAtStart;
+            long requests = this.requests.get();
+            if (requests > 0) {
+                System.out.printf("%n%,d bytes allocated per request%n", allocatedBytes / requests);
+            }
+        }
+
+        public long execute(JettyHttpClient client, Request request)
+                throws Exception
+        {
+            requests.incrementAndGet();
+            return client.executeAsync(request, handler).get();
+        }
+    }
+
+    private static long totalAllocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static class ConsumingResponseHandler
+            implements ResponseHandler<Long, IOException>
+    {
+        private final byte[] scratch;
+
+        private ConsumingResponseHandler(byte[] scratch)
+        {
+            this.scratch = scratch;
+        }
+
+        @Override
+        public Long handleException(Request request, Exception exception)
+                throws IOException
+        {
+            throw new IOException(exception);
+        }
+
+        @Override
+        public Long handle(Request request, Response response)
+                throws IOException
+        {
+            long bytes = 0;
+            try (InputStream in = response.getInputStream()) {
+                while (true) {
+                    int read = in.read(scratch);
+                    if (read < 0) {
+                        return bytes;
+                    }
+                    bytes += read;
+                }
+            }
+        }
+    }
+
+    private static class BodyServlet
+            extends HttpServlet
+    {
+        private final byte[] smallBody;
+        private final byte[] largeBody;
+
+        private BodyServlet(byte[] smallBody, byte[] largeBody)
+        {
+            this.smallBody = smallBody;
+            this.largeBody = largeBody;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            byte[] body = request.getRequestURI().endsWith("/large") ? largeBody : smallBody;
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+
+        @Override
+        protected void doPut(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = request.getInputStream()) {
+                while (in.read(buffer) >= 0) {
+                    // discard
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .addProfiler(ProfilerType.GC)
+                .include(".*" + BenchmarkJettyHttpClientAllocation.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
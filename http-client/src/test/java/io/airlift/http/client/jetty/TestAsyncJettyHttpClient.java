@@ -1,16 +1,35 @@
 package io.airlift.http.client.jetty;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import io.airlift.http.client.AbstractHttpClientTest;
+import io.airlift.http.client.HttpClient.HttpResponseFuture;
 import io.airlift.http.client.HttpClientConfig;
 import io.airlift.http.client.HttpRequestFilter;
+import io.airlift.http.client.HttpUriBuilder;
 import io.airlift.http.client.Request;
 import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.StreamingResponseHandler.Demand;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
 import io.airlift.http.client.TestingRequestFilter;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
 import static io.airlift.testing.Closeables.closeQuietly;
+import static io.airlift.testing.Assertions.assertGreaterThan;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
 
 public class TestAsyncJettyHttpClient
         extends AbstractHttpClientTest
@@ -33,6 +52,74 @@ public class TestAsyncJettyHttpClient
         closeQuietly(jettyIoPool);
     }
 
+    @Test
+    public void testInFlightRequests()
+            throws Exception
+    {
+        assertEquals(httpClient.getInFlightRequests(baseURI), 0);
+
+        Request request = prepareGet()
+                .setUri(HttpUriBuilder.uriBuilderFrom(baseURI).addParameter("sleep", "500").build())
+                .build();
+        HttpResponseFuture<StatusResponse> future = httpClient.executeAsync(request, createStatusResponseHandler());
+        assertEquals(httpClient.getInFlightRequests(baseURI), 1);
+
+        assertEquals(future.get(10, TimeUnit.SECONDS).getStatusCode(), 200);
+        // the completion listener may run after the future is done
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (httpClient.getInFlightRequests(baseURI) != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(httpClient.getInFlightRequests(baseURI), 0);
+    }
+
+    @Test
+    public void testStreamingResponse()
+            throws Exception
+    {
+        String body = Strings.repeat("0123456789abcdef", 256 * 1024);
+        servlet.setResponseBody(body);
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-demand-%s"));
+        try {
+            StreamingResponseToStringHandler handler = new StreamingResponseToStringHandler(executor);
+            HttpResponseFuture<String> future = httpClient.executeStreaming(prepareGet().setUri(baseURI).build(), handler);
+
+            assertEquals(future.get(10, TimeUnit.SECONDS), body);
+            assertEquals(handler.getStatusCode(), 200);
+            assertGreaterThan(handler.getBlocks(), 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStreamingResponseHandlerFailure()
+            throws Exception
+    {
+        servlet.setResponseBody("hello");
+
+        RuntimeException expected = new RuntimeException("test failure");
+        StreamingResponseToStringHandler handler = new StreamingResponseToStringHandler(Runnable::run)
+        {
+            @Override
+            public void handleContent(Request request, ByteBuffer content, Demand demand)
+            {
+                throw expected;
+            }
+        };
+        HttpResponseFuture<String> future = httpClient.executeStreaming(prepareGet().setUri(baseURI).build(), handler);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("expected exception");
+        }
+        catch (ExecutionException e) {
+            assertSame(e.getCause(), expected);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T, E extends Exception> T executeRequest(Request request, ResponseHandler<T, E> responseHandler)
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestBoundedByteBufferPool
+{
+    @Test
+    public void testReusesBuffers()
+    {
+        BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 8192, 16384);
+        ByteBuffer buffer = pool.acquire(1024, false);
+        BufferUtil.append(buffer, new byte[] {1, 2, 3}, 0, 3);
+        pool.release(buffer);
+        assertEquals(pool.getPooledBytes(), 1024);
+
+        ByteBuffer reused = pool.acquire(1024, false);
+        assertSame(reused, buffer);
+        assertEquals(reused.remaining(), 0);
+        assertEquals(pool.getPooledBytes(), 0);
+
+        // heap and direct buffers are pooled separately
+        pool.release(reused);
+        ByteBuffer direct = pool.acquire(1024, true);
+        assertTrue(direct.isDirect());
+        assertNotSame(direct, reused);
+    }
+
+    @Test
+    public void testSizeClasses()
+    {
+        BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 8192, 16384);
+        assertEquals(pool.acquire(1, false).capacity(), 1024);
+        assertEquals(pool.acquire(1025, false).capacity(), 2048);
+        assertEquals(pool.acquire(3000, false).capacity(), 4096);
+        assertEquals(pool.acquire(8192, false).capacity(), 8192);
+
+        ByteBuffer buffer = pool.acquire(4096, false);
+        pool.release(buffer);
+        assertNotSame(pool.acquire(2048, false), buffer);
+        assertSame(pool.acquire(2049, false), buffer);
+    }
+
+    @Test
+    public void testLimitsPooledBytes()
+    {
+        BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 8192, 16384);
+        for (int i = 0; i < 5; i++) {
+            pool.release(ByteBuffer.allocate(1024));
+            pool.release(ByteBuffer.allocateDirect(2048));
+        }
+        assertEquals(pool.getPooledBytes(), 15360);
+
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocate(1024));
+        assertEquals(pool.getPooledBytes(), 16384);
+    }
+
+    @Test
+    public void testOtherSizesAreNotPooled()
+    {
+        BoundedByteBufferPool pool = new BoundedByteBufferPool(1024, 8192, 16384);
+        ByteBuffer buffer = pool.acquire(16384, false);
+        assertEquals(buffer.capacity(), 16384);
+        assertFalse(buffer.isDirect());
+
+        pool.release(buffer);
+        pool.release(ByteBuffer.allocate(512));
+        pool.release(ByteBuffer.allocate(3000));
+        assertEquals(pool.getPooledBytes(), 0);
+    }
+}
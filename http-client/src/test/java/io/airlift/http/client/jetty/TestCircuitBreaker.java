@@ -0,0 +1,238 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import io.airlift.http.client.jetty.CircuitBreaker.Permit;
+import io.airlift.http.client.jetty.CircuitBreaker.State;
+import io.airlift.testing.TestingTicker;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestCircuitBreaker
+{
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    private final TestingTicker ticker = new TestingTicker();
+
+    @Test
+    public void testOpensOnFailureRate()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(circuitBreaker, false, FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, true, FAST);
+        }
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+
+        // half of the last ten calls failed
+        call(circuitBreaker, true, FAST);
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertEquals(circuitBreaker.getOpenedCount(), 1);
+
+        assertNull(circuitBreaker.tryAcquire());
+        assertEquals(circuitBreaker.getRejectedCount(), 1);
+    }
+
+    @Test
+    public void testMinimumCalls()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, true, FAST);
+        }
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        call(circuitBreaker, true, FAST);
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+    }
+
+    @Test
+    public void testOldCallsLeaveWindow()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                call(circuitBreaker, false, FAST);
+            }
+            for (int i = 0; i < 4; i++) {
+                call(circuitBreaker, true, FAST);
+            }
+        }
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 2; i++) {
+            call(circuitBreaker, false, FAST);
+        }
+        for (int i = 0; i < 7; i++) {
+            call(circuitBreaker, false, SLOW);
+        }
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        call(circuitBreaker, false, SLOW);
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+    }
+
+    @Test
+    public void testHalfOpen()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        open(circuitBreaker);
+
+        ticker.increment(29, TimeUnit.SECONDS);
+        assertNull(circuitBreaker.tryAcquire());
+
+        // only the trial calls are let through
+        ticker.increment(1, TimeUnit.SECONDS);
+        Permit first = acquire(circuitBreaker);
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        Permit second = acquire(circuitBreaker);
+        assertNull(circuitBreaker.tryAcquire());
+
+        // a cancelled trial call frees its permit, but only once
+        second.release();
+        second.release();
+        Permit third = acquire(circuitBreaker);
+        assertNull(circuitBreaker.tryAcquire());
+
+        first.record(false, FAST);
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        third.record(false, FAST);
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+
+        // the window starts over
+        for (int i = 0; i < 4; i++) {
+            call(circuitBreaker, true, FAST);
+        }
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testHalfOpenReopens()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        open(circuitBreaker);
+
+        ticker.increment(30, TimeUnit.SECONDS);
+        Permit first = acquire(circuitBreaker);
+        Permit second = acquire(circuitBreaker);
+        first.record(false, SLOW);
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertEquals(circuitBreaker.getOpenedCount(), 2);
+
+        // the other trial call completes after the breaker opened again
+        second.record(false, FAST);
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertNull(circuitBreaker.tryAcquire());
+
+        // and does not count as a trial of the next half-open period
+        ticker.increment(30, TimeUnit.SECONDS);
+        Permit trial = acquire(circuitBreaker);
+        second.record(false, FAST);
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        trial.release();
+    }
+
+    @Test
+    public void testCallsSentBeforeOpenAreNotTrials()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        Permit slow = acquire(circuitBreaker);
+        Permit failed = acquire(circuitBreaker);
+        open(circuitBreaker);
+
+        ticker.increment(30, TimeUnit.SECONDS);
+        Permit trial = acquire(circuitBreaker);
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+
+        // neither reopens the breaker nor takes the place of a trial call
+        slow.record(false, SLOW);
+        failed.record(true, FAST);
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        Permit otherTrial = acquire(circuitBreaker);
+        assertNull(circuitBreaker.tryAcquire());
+
+        trial.record(false, FAST);
+        otherTrial.record(false, FAST);
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testIdle()
+    {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        ticker.increment(1, TimeUnit.MINUTES);
+        assertTrue(circuitBreaker.isIdle(TimeUnit.MINUTES.toNanos(1)));
+
+        Permit permit = acquire(circuitBreaker);
+        ticker.increment(1, TimeUnit.MINUTES);
+        assertFalse(circuitBreaker.isIdle(TimeUnit.MINUTES.toNanos(1)));
+
+        permit.record(false, FAST);
+        assertFalse(circuitBreaker.isIdle(TimeUnit.MINUTES.toNanos(1)));
+        ticker.increment(1, TimeUnit.MINUTES);
+        assertTrue(circuitBreaker.isIdle(TimeUnit.MINUTES.toNanos(1)));
+
+        // an open breaker is never idle
+        CircuitBreaker openCircuitBreaker = createCircuitBreaker();
+        open(openCircuitBreaker);
+        ticker.increment(10, TimeUnit.MINUTES);
+        assertFalse(openCircuitBreaker.isIdle(TimeUnit.MINUTES.toNanos(1)));
+    }
+
+    private void open(CircuitBreaker circuitBreaker)
+    {
+        for (int i = 0; i < 5; i++) {
+            call(circuitBreaker, true, FAST);
+        }
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+    }
+
+    private static void call(CircuitBreaker circuitBreaker, boolean failure, long durationNanos)
+    {
+        acquire(circuitBreaker).record(failure, durationNanos);
+    }
+
+    private static Permit acquire(CircuitBreaker circuitBreaker)
+    {
+        Permit permit = circuitBreaker.tryAcquire();
+        assertNotNull(permit);
+        return permit;
+    }
+
+    private CircuitBreaker createCircuitBreaker()
+    {
+        return new CircuitBreaker("http://example.com:80",
+                ticker,
+                10,
+                5,
+                50,
+                80,
+                TimeUnit.SECONDS.toNanos(1),
+                TimeUnit.SECONDS.toNanos(30),
+                2);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.client.jetty;
+
+import io.airlift.http.client.jetty.DestinationStats.Phase;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestDestinationStats
+{
+    @Test
+    public void testPhases()
+    {
+        DestinationStats stats = new DestinationStats("http://example.com:80");
+
+        stats.enter(Phase.QUEUED, 0);
+        stats.enter(Phase.QUEUED, 0);
+        assertEquals(stats.getRequests(Phase.QUEUED), 2);
+        assertEquals(stats.getRequestsInFlight(), 2);
+
+        stats.exit(Phase.QUEUED, MILLISECONDS.toNanos(5), 0);
+        stats.enter(Phase.SENDING_REQUEST, 0);
+        assertEquals(stats.getRequests(Phase.QUEUED), 1);
+        assertEquals(stats.getRequests(Phase.SENDING_REQUEST), 1);
+        assertEquals(stats.getRequestsInFlight(), 2);
+        assertEquals(stats.getPhaseTime(Phase.QUEUED).getCount(), 1.0);
+        assertEquals(stats.getPhaseTime(Phase.QUEUED).getMax(), 5);
+
+        stats.exit(Phase.SENDING_REQUEST, MILLISECONDS.toNanos(7), 0);
+        stats.requestFinished(MILLISECONDS.toNanos(7));
+        assertEquals(stats.getRequests(Phase.SENDING_REQUEST), 0);
+        assertEquals(stats.getRequestTime().getCount(), 1.0);
+        assertEquals(stats.getRequestTime().getMax(), 7);
+    }
+
+    @Test
+    public void testIdle()
+    {
+        long idleNanos = SECONDS.toNanos(60);
+        DestinationStats stats = new DestinationStats("http://example.com:80");
+        long now = System.nanoTime();
+        assertFalse(stats.isIdle(now, idleNanos));
+        assertTrue(stats.isIdle(now + idleNanos, idleNanos));
+
+        stats.enter(Phase.AWAITING_RESPONSE, now);
+        assertFalse(stats.isIdle(now + 2 * idleNanos, idleNanos));
+
+        stats.exit(Phase.AWAITING_RESPONSE, SECONDS.toNanos(1), now + idleNanos);
+        assertFalse(stats.isIdle(now + idleNanos, idleNanos));
+        assertTrue(stats.isIdle(now + 2 * idleNanos, idleNanos));
+    }
+
+    @Test
+    public void testDump()
+    {
+        DestinationStats stats = new DestinationStats("http://example.com:80");
+        stats.enter(Phase.READING_RESPONSE, 0);
+        stats.requestFinished(MILLISECONDS.toNanos(3));
+        assertEquals(stats.dump(), "http://example.com:80\t0\t0\t0\t1\t3\t3");
+    }
+}
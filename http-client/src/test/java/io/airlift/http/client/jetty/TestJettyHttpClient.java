@@ -2,6 +2,7 @@ package io.airlift.http.client.jetty;
 
 import com.google.common.collect.ImmutableList;
 import io.airlift.http.client.AbstractHttpClientTest;
+import io.airlift.http.client.CircuitBreakerOpenException;
 import io.airlift.http.client.HttpClientConfig;
 import io.airlift.http.client.HttpRequestFilter;
 import io.airlift.http.client.Request;
@@ -9,8 +10,22 @@ import io.airlift.http.client.ResponseHandler;
 import io.airlift.http.client.TestingRequestFilter;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
 
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.airlift.testing.Assertions.assertContains;
+import static io.airlift.testing.Assertions.assertInstanceOf;
 import static io.airlift.testing.Closeables.closeQuietly;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TestJettyHttpClient
         extends AbstractHttpClientTest
@@ -33,6 +48,90 @@ public class TestJettyHttpClient
         closeQuietly(jettyIoPool);
     }
 
+    @Test
+    public void testCircuitBreaker()
+            throws Exception
+    {
+        HttpClientConfig config = new HttpClientConfig()
+                .setCircuitBreakerEnabled(true)
+                .setCircuitBreakerWindowSize(4)
+                .setCircuitBreakerMinimumCalls(4);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        URI uri = new URI("http", null, "127.0.0.1", port, "/", null, null);
+        Request request = prepareGet().setUri(uri).build();
+
+        try (
+                JettyIoPool jettyIoPool = new JettyIoPool("test-private", new JettyIoPoolConfig());
+                JettyHttpClient client = new JettyHttpClient(config, jettyIoPool, ImmutableList.<HttpRequestFilter>of())
+        ) {
+            // connection refused
+            for (int i = 0; i < 4; i++) {
+                try {
+                    client.execute(request, createStatusResponseHandler());
+                    fail("expected exception");
+                }
+                catch (RuntimeException e) {
+                    assertFalse(e instanceof CircuitBreakerOpenException);
+                }
+            }
+            assertEquals(client.getOpenCircuitBreakers(), 1);
+
+            try {
+                client.execute(request, createStatusResponseHandler());
+                fail("expected CircuitBreakerOpenException");
+            }
+            catch (CircuitBreakerOpenException e) {
+                assertEquals(e.getUri(), uri);
+            }
+
+            try {
+                client.executeAsync(request, new CaptureExceptionResponseHandler()).get();
+                fail("expected exception");
+            }
+            catch (ExecutionException e) {
+                assertInstanceOf(e.getCause().getCause(), CircuitBreakerOpenException.class);
+            }
+
+            assertContains(client.dumpCircuitBreakers(), "http://127.0.0.1:" + port + "\tOPEN");
+        }
+    }
+
+    @Test
+    public void testDestinationStats()
+            throws Exception
+    {
+        Request request = prepareGet().setUri(baseURI).build();
+
+        try (
+                JettyIoPool jettyIoPool = new JettyIoPool("test-private", new JettyIoPoolConfig());
+                JettyHttpClient client = new JettyHttpClient(new HttpClientConfig(), jettyIoPool, ImmutableList.<HttpRequestFilter>of())
+        ) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(client.execute(request, createStatusResponseHandler()).getStatusCode(), 200);
+            }
+
+            // requests complete after the response has been returned to the caller
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (client.getCurrentRequestTime().getCount() < 3) {
+                assertTrue(System.nanoTime() < deadline, "requests did not complete");
+                Thread.sleep(10);
+            }
+
+            assertEquals(client.getQueuedRequests(), 0);
+            assertEquals(client.getSendingRequests(), 0);
+            assertEquals(client.getAwaitingResponseRequests(), 0);
+            assertEquals(client.getReadingResponseRequests(), 0);
+            assertEquals(client.getCurrentQueuedTime().getCount(), 3.0);
+            assertEquals(client.getCurrentResponseProcessTime().getCount(), 3.0);
+            assertEquals(client.getTrackedDestinations(), 1);
+            assertContains(client.dumpDestinationStats(), "http://" + baseURI.getHost() + ":" + baseURI.getPort() + "\t0\t0\t0\t0\t");
+        }
+    }
+
     @Override
     public <T, E extends Exception> T executeRequest(Request request, ResponseHandler<T, E> responseHandler)
             throws Exception
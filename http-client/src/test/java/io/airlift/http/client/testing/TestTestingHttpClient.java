@@ -1,16 +1,25 @@
 package io.airlift.http.client.testing;
 
+import com.google.common.base.Strings;
 import io.airlift.http.client.AbstractHttpClientTest.CaptureExceptionResponseHandler;
 import io.airlift.http.client.AbstractHttpClientTest.CapturedException;
+import io.airlift.http.client.AbstractHttpClientTest.StreamingResponseToStringHandler;
 import io.airlift.http.client.HttpClient.HttpResponseFuture;
+import io.airlift.http.client.HttpStatus;
 import io.airlift.http.client.Request;
 import org.testng.annotations.Test;
 
 import java.net.URI;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static io.airlift.testing.Assertions.assertGreaterThan;
 import static io.airlift.testing.Assertions.assertInstanceOf;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.fail;
 
@@ -40,4 +49,28 @@ public class TestTestingHttpClient
             assertEquals(cause.getCause(), expectedException);
         }
     }
+
+    @Test
+    public void testStreamingResponse()
+            throws Exception
+    {
+        Request request = prepareGet()
+                .setUri(URI.create("http://example.org"))
+                .build();
+
+        String body = Strings.repeat("0123456789abcdef", 4096);
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-demand-%s"));
+        try {
+            StreamingResponseToStringHandler handler = new StreamingResponseToStringHandler(executor);
+            HttpResponseFuture<String> future = new TestingHttpClient(input -> mockResponse(HttpStatus.OK, PLAIN_TEXT_UTF_8, body))
+                    .executeStreaming(request, handler);
+
+            assertEquals(future.get(), body);
+            assertEquals(handler.getStatusCode(), 200);
+            assertGreaterThan(handler.getBlocks(), 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.server.ConcurrencyLimiter.Priority;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.RETRY_AFTER;
+
+/**
+ * Rejects requests with 503 when the {@link ConcurrencyLimiter} is at its limit,
+ * instead of letting them queue for a worker thread.
+ */
+class AdmissionControlFilter
+        implements Filter
+{
+    private final ConcurrencyLimiter limiter;
+    private final List<String> criticalPaths;
+    private final List<String> lowPriorityPaths;
+    private final String retryAfterSeconds;
+
+    public AdmissionControlFilter(ConcurrencyLimiter limiter, List<String> criticalPaths, List<String> lowPriorityPaths, long retryAfterSeconds)
+    {
+        checkArgument(retryAfterSeconds >= 0, "retryAfterSeconds is negative");
+        this.limiter = checkNotNull(limiter, "limiter is null");
+        this.criticalPaths = ImmutableList.copyOf(checkNotNull(criticalPaths, "criticalPaths is null"));
+        this.lowPriorityPaths = ImmutableList.copyOf(checkNotNull(lowPriorityPaths, "lowPriorityPaths is null"));
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+            throws ServletException
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        if (!limiter.tryAcquire(getPriority(request.getRequestURI()))) {
+            HttpServletResponse response = (HttpServletResponse) servletResponse;
+            response.setHeader(RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server is overloaded");
+            return;
+        }
+
+        Release release = new Release(System.nanoTime());
+        try {
+            chain.doFilter(servletRequest, servletResponse);
+        }
+        finally {
+            if (request.isAsyncStarted()) {
+                // the request is still in flight until the async context completes
+                request.getAsyncContext().addListener(release);
+            }
+            else {
+                release.run();
+            }
+        }
+    }
+
+    private Priority getPriority(String path)
+    {
+        if (path != null) {
+            for (String criticalPath : criticalPaths) {
+                if (path.startsWith(criticalPath)) {
+                    return Priority.CRITICAL;
+                }
+            }
+            for (String lowPriorityPath : lowPriorityPaths) {
+                if (path.startsWith(lowPriorityPath)) {
+                    return Priority.LOW;
+                }
+            }
+        }
+        return Priority.NORMAL;
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    private class Release
+            implements AsyncListener
+    {
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public Release(long startNanos)
+        {
+            this.startNanos = startNanos;
+        }
+
+        public void run()
+        {
+            // an async request can both time out and complete
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - startNanos);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+            // async was restarted, so the same context will complete again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -16,11 +16,18 @@
 package io.airlift.http.server;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import io.airlift.units.DataSize;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.io.WriterOutputStream;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
@@ -29,21 +36,39 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 
 /**
  * Serves files from a given folder on the classpath through jetty.
  * Intended to serve a couple of static files e.g. for javascript or HTML.
+ * <p>
+ * Resources are cached in memory along with a gzip compressed copy and a strong
+ * ETag, so repeated requests neither read the classpath nor compress the content,
+ * and clients can revalidate them with conditional requests. Resources too large to
+ * fit in the cache are streamed from the classpath on every request instead.
  */
 // Forked from https://github.com/NessComputing/components-ness-httpserver/
 public class ClassPathResourceHandler
         extends AbstractHandler
 {
+    private static final DataSize DEFAULT_MAX_CACHE_SIZE = new DataSize(16, MEGABYTE);
+    private static final int CACHE_CONCURRENCY_LEVEL = 4;
+
     private static final MimeTypes MIME_TYPES;
+    // clients may cache resources but must revalidate them, since they change on deployment
+    private static final String CACHE_CONTROL = "no-cache";
 
     static {
         MIME_TYPES = new MimeTypes();
@@ -54,6 +79,8 @@ public class ClassPathResourceHandler
     private final String baseUri;
     private final String classPathResourceBase;
     private final List<String> welcomeFiles;
+    private final Cache<String, CachedResource> cache;
+    private final long maxCachedResourceSize;
 
     public ClassPathResourceHandler(String baseUri, String classPathResourceBase, String... welcomeFiles)
     {
@@ -61,10 +88,16 @@ public class ClassPathResourceHandler
     }
 
     public ClassPathResourceHandler(String baseUri, String classPathResourceBase, List<String> welcomeFiles)
+    {
+        this(baseUri, classPathResourceBase, welcomeFiles, DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    public ClassPathResourceHandler(String baseUri, String classPathResourceBase, List<String> welcomeFiles, DataSize maxCacheSize)
     {
         Preconditions.checkNotNull(baseUri, "baseUri is null");
         Preconditions.checkNotNull(classPathResourceBase, "classPathResourceBase is null");
         Preconditions.checkNotNull(welcomeFiles, "welcomeFiles is null");
+        Preconditions.checkNotNull(maxCacheSize, "maxCacheSize is null");
 
         baseUri = baseUri.startsWith("/") ? baseUri : '/' + baseUri;
         baseUri = baseUri.endsWith("/") ? baseUri.substring(baseUri.length() - 1) : baseUri;
@@ -80,6 +113,15 @@ public class ClassPathResourceHandler
             files.add(welcomeFile);
         }
         this.welcomeFiles = files.build();
+
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(CACHE_CONCURRENCY_LEVEL)
+                .maximumWeight(maxCacheSize.toBytes())
+                .<String, CachedResource>weigher((path, resource) -> resource.getSize())
+                .build();
+        // the weight is split evenly between the cache segments, and a larger entry would be
+        // evicted as soon as it is added; leave room for the gzip copy as well
+        this.maxCachedResourceSize = maxCacheSize.toBytes() / CACHE_CONCURRENCY_LEVEL / 2;
     }
 
     @Override
@@ -90,11 +132,27 @@ public class ClassPathResourceHandler
             return;
         }
 
-        URL resource = getResourcePath(request);
-        if (resource == null) {
+        String path = getRequestPath(request);
+        if (path == null) {
             return;
         }
 
+        CachedResource resource = cache.getIfPresent(path);
+        if (resource == null) {
+            URL url = getResourcePath(path);
+            if (url == null) {
+                return;
+            }
+            try {
+                // concurrent misses for the same path wait for a single load
+                resource = cache.get(path, () -> loadResource(url, maxCachedResourceSize));
+            }
+            catch (ExecutionException e) {
+                propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
         // When a request hits this handler, it will serve something. Either data or an error.
         baseRequest.setHandled(true);
 
@@ -110,34 +168,63 @@ public class ClassPathResourceHandler
             }
         }
 
-        InputStream resourceStream = null;
-        try {
-            resourceStream = resource.openStream();
+        boolean gzip = resource.getGzipContent() != null && acceptsGzip(request.getHeader(HttpHeader.ACCEPT_ENCODING.asString()));
+        String etag = gzip ? resource.getGzipEtag() : resource.getEtag();
 
-            String contentType = MIME_TYPES.getMimeByExtension(resource.toString());
-            response.setContentType(contentType);
+        if (etag != null) {
+            response.setHeader(HttpHeader.ETAG.asString(), etag);
+        }
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(), CACHE_CONTROL);
+        if (resource.getLastModified() > 0) {
+            response.setDateHeader(HttpHeader.LAST_MODIFIED.asString(), resource.getLastModified());
+        }
+        if (resource.getGzipContent() != null) {
+            response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+        }
 
-            if (skipContent) {
-                return;
-            }
+        if (isNotModified(request, etag, resource.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
-            // Send the content out. Lifted straight out of ResourceHandler.java
-            OutputStream out;
-            try {
-                out = response.getOutputStream();
-            }
-            catch (IllegalStateException e) {
-                out = new WriterOutputStream(response.getWriter());
-            }
+        response.setContentType(resource.getContentType());
+        if (gzip) {
+            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+        }
+        ByteBuffer content = gzip ? resource.getGzipContent() : resource.getContent();
+        if (content != null) {
+            response.setContentLength(content.remaining());
+        }
+        else if (resource.getContentLength() >= 0) {
+            response.setContentLengthLong(resource.getContentLength());
+        }
 
-            ByteStreams.copy(resourceStream, out);
+        if (skipContent) {
+            return;
         }
-        finally {
-            closeQuietly(resourceStream);
+
+        // Send the content out. Lifted straight out of ResourceHandler.java
+        OutputStream out;
+        try {
+            out = response.getOutputStream();
+        }
+        catch (IllegalStateException e) {
+            out = new WriterOutputStream(response.getWriter());
+        }
+
+        if (content == null) {
+            writeResource(resource.getUrl(), out);
+        }
+        else if (out instanceof HttpOutput) {
+            // write the cached buffer directly instead of copying it through the stream
+            ((HttpOutput) out).sendContent(content.duplicate());
+        }
+        else {
+            writeContent(content, out);
         }
     }
 
-    private URL getResourcePath(HttpServletRequest request)
+    private String getRequestPath(HttpServletRequest request)
     {
         String pathInfo = request.getPathInfo();
 
@@ -161,7 +248,11 @@ public class ClassPathResourceHandler
         if (!pathInfo.startsWith("/")) {
             pathInfo = "/";
         }
+        return pathInfo;
+    }
 
+    private URL getResourcePath(String pathInfo)
+    {
         if (!"/".equals(pathInfo)) {
             String resourcePath = classPathResourceBase + pathInfo;
             URL resource = getClass().getClassLoader().getResource(resourcePath);
@@ -179,6 +270,126 @@ public class ClassPathResourceHandler
         return null;
     }
 
+    private static CachedResource loadResource(URL resource, long maxCachedResourceSize)
+            throws IOException
+    {
+        URLConnection connection = resource.openConnection();
+        long contentLength;
+        byte[] content = null;
+        InputStream resourceStream = null;
+        try {
+            resourceStream = connection.getInputStream();
+            contentLength = connection.getContentLengthLong();
+            if (contentLength >= 0 && contentLength <= maxCachedResourceSize) {
+                content = ByteStreams.toByteArray(resourceStream);
+            }
+        }
+        finally {
+            closeQuietly(resourceStream);
+        }
+
+        String contentType = MIME_TYPES.getMimeByExtension(resource.toString());
+        if (content == null) {
+            // only remember where to find it, so it is not read, compressed and hashed on every request
+            return new CachedResource(resource, contentType, contentLength, connection.getLastModified());
+        }
+        return new CachedResource(resource, content, gzip(content), contentType, connection.getLastModified());
+    }
+
+    @Nullable
+    private static byte[] gzip(byte[] content)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        if (out.size() >= content.length) {
+            // not worth compressing
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean acceptsGzip(@Nullable String acceptEncoding)
+    {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    }
+                    catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, @Nullable String etag, long lastModified)
+    {
+        String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (lastModified <= 0) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeader.IF_MODIFIED_SINCE.asString());
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static void writeContent(ByteBuffer content, OutputStream out)
+            throws IOException
+    {
+        if (content.hasArray()) {
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            return;
+        }
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        out.write(bytes);
+    }
+
+    private static void writeResource(URL resource, OutputStream out)
+            throws IOException
+    {
+        InputStream resourceStream = null;
+        try {
+            resourceStream = resource.openStream();
+            ByteStreams.copy(resourceStream, out);
+        }
+        finally {
+            closeQuietly(resourceStream);
+        }
+    }
+
     private static void closeQuietly(@Nullable InputStream in)
     {
         if (in != null) {
@@ -190,4 +401,94 @@ public class ClassPathResourceHandler
             }
         }
     }
+
+    private static class CachedResource
+    {
+        private final URL url;
+        private final ByteBuffer content;
+        private final ByteBuffer gzipContent;
+        private final String contentType;
+        private final long contentLength;
+        private final String etag;
+        private final String gzipEtag;
+        private final long lastModified;
+
+        public CachedResource(URL url, byte[] content, @Nullable byte[] gzipContent, String contentType, long lastModified)
+        {
+            this.url = url;
+            this.content = ByteBuffer.wrap(content).asReadOnlyBuffer();
+            this.gzipContent = gzipContent == null ? null : ByteBuffer.wrap(gzipContent).asReadOnlyBuffer();
+            this.contentType = contentType;
+            this.contentLength = content.length;
+            String hash = Hashing.sha256().hashBytes(content).toString();
+            this.etag = '"' + hash + '"';
+            // each representation needs its own strong ETag
+            this.gzipEtag = '"' + hash + "-gzip" + '"';
+            this.lastModified = lastModified;
+        }
+
+        public CachedResource(URL url, String contentType, long contentLength, long lastModified)
+        {
+            this.url = url;
+            this.content = null;
+            this.gzipContent = null;
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.etag = null;
+            this.gzipEtag = null;
+            this.lastModified = lastModified;
+        }
+
+        public URL getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * Returns the content, or null if the resource is too large to be cached.
+         */
+        @Nullable
+        public ByteBuffer getContent()
+        {
+            return content;
+        }
+
+        @Nullable
+        public ByteBuffer getGzipContent()
+        {
+            return gzipContent;
+        }
+
+        public String getContentType()
+        {
+            return contentType;
+        }
+
+        public long getContentLength()
+        {
+            return contentLength;
+        }
+
+        @Nullable
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        @Nullable
+        public String getGzipEtag()
+        {
+            return gzipEtag;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        public int getSize()
+        {
+            return (content == null ? 0 : content.capacity()) + (gzipContent == null ? 0 : gzipContent.capacity());
+        }
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlets.AsyncGzipFilter;
+
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Gzip compresses responses with deflaters borrowed from a shared {@link DeflaterPool}.
+ * Responses that already have a {@code Content-Encoding}, such as precompressed
+ * resources, are sent as is.
+ */
+class CompressionFilter
+        extends AsyncGzipFilter
+{
+    private final DeflaterPool deflaterPool;
+
+    public CompressionFilter(DeflaterPool deflaterPool)
+    {
+        this.deflaterPool = checkNotNull(deflaterPool, "deflaterPool is null");
+    }
+
+    @Override
+    public Deflater getDeflater(Request request, long contentLength)
+    {
+        // the content length is known when the whole response fits in the output buffer
+        if (contentLength >= 0 && contentLength < _minGzipSize) {
+            return null;
+        }
+        if (!acceptsGzip(request)) {
+            return null;
+        }
+        return deflaterPool.acquire();
+    }
+
+    @Override
+    public void recycle(Deflater deflater)
+    {
+        deflaterPool.release(deflater);
+    }
+
+    private static boolean acceptsGzip(Request request)
+    {
+        String acceptEncoding = request.getHttpFields().get(HttpHeader.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        if (acceptEncoding.equals(GZIP) || acceptEncoding.startsWith(GZIP + ",")) {
+            return true;
+        }
+        // the quality list omits encodings with q=0
+        for (String encoding : HttpFields.qualityList(request.getHttpFields().getValues(HttpHeader.ACCEPT_ENCODING.asString(), ","))) {
+            if (GZIP.equalsIgnoreCase(HttpFields.valueParameters(encoding, null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
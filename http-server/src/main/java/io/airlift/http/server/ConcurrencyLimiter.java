@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of requests in flight to an estimate of what the server can
+ * sustain without queueing. The estimate follows a gradient: the limit is scaled by
+ * the ratio of the long term average latency to the latency of each completed
+ * request, so it shrinks as soon as requests start to slow down, and grows by a
+ * small allowance while latency is stable and the limit is being used.
+ */
+@ThreadSafe
+public class ConcurrencyLimiter
+{
+    // weight of a sample in the long term latency average (about 500 samples)
+    private static final double LONG_LATENCY_WEIGHT = 2.0 / 501;
+    // latency may grow by this factor over the long term average before the limit is reduced
+    private static final double LATENCY_TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    // low priority requests only get this fraction of the limit
+    private static final double LOW_PRIORITY_RATIO = 0.75;
+
+    public enum Priority
+    {
+        /**
+         * Always admitted, e.g. health checks.
+         */
+        CRITICAL,
+        NORMAL,
+        /**
+         * Rejected before normal requests when the server approaches its limit.
+         */
+        LOW,
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CounterStat rejected = new CounterStat();
+
+    private volatile double limit;
+    @GuardedBy("this")
+    private double longLatencyNanos;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be at least 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be at least minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Attempts to admit a request. If this returns true, {@link #release} must be called
+     * when the request completes.
+     */
+    public boolean tryAcquire(Priority priority)
+    {
+        if (priority == Priority.CRITICAL) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+
+        int maxInFlight = (int) (priority == Priority.LOW ? limit * LOW_PRIORITY_RATIO : limit);
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                rejected.update(1);
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and updates the limit with its latency.
+     */
+    public void release(long latencyNanos)
+    {
+        int current = inFlight.getAndDecrement();
+        if (latencyNanos > 0) {
+            update(latencyNanos, current);
+        }
+    }
+
+    private synchronized void update(long latencyNanos, int inFlight)
+    {
+        if (longLatencyNanos == 0) {
+            longLatencyNanos = latencyNanos;
+        }
+        else {
+            longLatencyNanos += (latencyNanos - longLatencyNanos) * LONG_LATENCY_WEIGHT;
+        }
+
+        // after an overload the long term average is well above the current latency,
+        // so decay it faster to let the limit recover
+        if (longLatencyNanos > 2 * latencyNanos) {
+            longLatencyNanos *= 0.95;
+        }
+
+        double currentLimit = limit;
+        if (inFlight < currentLimit / 2) {
+            // the limit is not being used, so latency says nothing about it
+            return;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, LATENCY_TOLERANCE * longLatencyNanos / latencyNanos));
+        double newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    @Managed
+    public int getLimit()
+    {
+        return (int) limit;
+    }
+
+    @Managed
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    @Managed
+    public synchronized double getLatencyEstimateMillis()
+    {
+        return longLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+}
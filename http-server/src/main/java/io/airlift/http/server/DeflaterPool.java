@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded pool of {@link Deflater}s for response compression. Deflaters hold native
+ * buffers of a few hundred kilobytes that are only released by {@link Deflater#end()},
+ * so they are reused across responses instead of being created for each one. When the
+ * pool is empty a new deflater is created, and when it is full a returned deflater is
+ * released.
+ */
+@ThreadSafe
+public class DeflaterPool
+{
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final int level;
+    private final BlockingQueue<TimedDeflater> pool;
+
+    private final CounterStat created = new CounterStat();
+    private final TimeStat cpuTime = new TimeStat(TimeUnit.MICROSECONDS);
+    private final CounterStat inputBytes = new CounterStat();
+    private final CounterStat outputBytes = new CounterStat();
+
+    public DeflaterPool(int maxSize, int level)
+    {
+        checkArgument(maxSize >= 1, "maxSize must be at least 1");
+        checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION), "invalid compression level: %s", level);
+
+        this.level = level;
+        this.pool = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Returns a deflater producing raw deflate output, as written in gzip bodies.
+     */
+    public Deflater acquire()
+    {
+        TimedDeflater deflater = pool.poll();
+        if (deflater == null) {
+            created.update(1);
+            deflater = new TimedDeflater(level);
+        }
+        return deflater;
+    }
+
+    public void release(Deflater deflater)
+    {
+        if (deflater instanceof TimedDeflater) {
+            TimedDeflater timedDeflater = (TimedDeflater) deflater;
+            cpuTime.add(timedDeflater.getCpuNanos(), TimeUnit.NANOSECONDS);
+            inputBytes.update(timedDeflater.getBytesRead());
+            outputBytes.update(timedDeflater.getBytesWritten());
+
+            timedDeflater.reset();
+            if (pool.offer(timedDeflater)) {
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    public void close()
+    {
+        for (TimedDeflater deflater = pool.poll(); deflater != null; deflater = pool.poll()) {
+            deflater.end();
+        }
+    }
+
+    @Managed
+    public int getPooled()
+    {
+        return pool.size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * CPU time spent compressing each response.
+     */
+    @Managed
+    @Nested
+    public TimeStat getCpuTime()
+    {
+        return cpuTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getInputBytes()
+    {
+        return inputBytes;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getOutputBytes()
+    {
+        return outputBytes;
+    }
+
+    private static long currentThreadCpuTime()
+    {
+        if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+            return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    private static class TimedDeflater
+            extends Deflater
+    {
+        private long cpuNanos;
+
+        public TimedDeflater(int level)
+        {
+            super(level, true);
+        }
+
+        public long getCpuNanos()
+        {
+            return cpuNanos;
+        }
+
+        // all other deflate methods delegate to this one
+        @Override
+        public int deflate(byte[] buffer, int offset, int length, int flush)
+        {
+            long start = currentThreadCpuTime();
+            try {
+                return super.deflate(buffer, offset, length, flush);
+            }
+            finally {
+                cpuNanos += currentThreadCpuTime() - start;
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            super.reset();
+            cpuNanos = 0;
+        }
+    }
+}
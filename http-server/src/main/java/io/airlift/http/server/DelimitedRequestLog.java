@@ -16,20 +16,34 @@
 package io.airlift.http.server;
 
 import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.SizeAndTimeBasedFNATP;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 import io.airlift.event.client.EventClient;
 import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.DistributionStat;
 import io.airlift.tracetoken.TraceTokenManager;
+import io.airlift.units.Duration;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Response;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static io.airlift.http.server.HttpRequestEvent.createHttpRequestEvent;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 class DelimitedRequestLog
         implements RequestLog
@@ -38,6 +52,11 @@ class DelimitedRequestLog
     private static final String TEMP_FILE_EXTENSION = ".tmp";
     private static final String LOG_FILE_EXTENSION = ".log";
 
+    private static final int DEFAULT_QUEUE_SIZE = 10_000;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1_000;
+    private static final Duration DEFAULT_FLUSH_INTERVAL = new Duration(1, TimeUnit.SECONDS);
+    private static final long STOP_CHECK_INTERVAL_MILLIS = 100;
+
     // Tab-separated
     // Time, ip, method, url, user, agent, response code, request length, response length, response time
     private final TraceTokenManager traceTokenManager;
@@ -45,6 +64,18 @@ class DelimitedRequestLog
     private final CurrentTimeMillisProvider currentTimeMillisProvider;
     private final RollingFileAppender<HttpRequestEvent> fileAppender;
 
+    // events are handed off from the request threads to a single drainer thread, which
+    // writes them to the file in blocks and posts them to the event client in batches
+    private final BlockingQueue<HttpRequestEvent> queue;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final boolean blockWhenFull;
+    private final Thread drainer;
+    private volatile boolean stopped;
+
+    private final CounterStat droppedEvents = new CounterStat();
+    private final DistributionStat batchSize = new DistributionStat();
+
     public DelimitedRequestLog(String filename, int maxHistory, long maxFileSizeInBytes, TraceTokenManager traceTokenManager, EventClient eventClient)
             throws IOException
     {
@@ -59,6 +90,39 @@ class DelimitedRequestLog
             CurrentTimeMillisProvider currentTimeMillisProvider)
             throws IOException
     {
+        this(filename, maxHistory, maxFileSizeInBytes, traceTokenManager, eventClient, currentTimeMillisProvider, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, false);
+    }
+
+    public DelimitedRequestLog(String filename,
+            int maxHistory,
+            long maxFileSizeInBytes,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            int queueSize,
+            int maxBatchSize,
+            Duration flushInterval,
+            boolean blockWhenFull)
+            throws IOException
+    {
+        this(filename, maxHistory, maxFileSizeInBytes, traceTokenManager, eventClient, new SystemCurrentTimeMillisProvider(), queueSize, maxBatchSize, flushInterval, blockWhenFull);
+    }
+
+    public DelimitedRequestLog(String filename,
+            int maxHistory,
+            long maxFileSizeInBytes,
+            TraceTokenManager traceTokenManager,
+            EventClient eventClient,
+            CurrentTimeMillisProvider currentTimeMillisProvider,
+            int queueSize,
+            int maxBatchSize,
+            Duration flushInterval,
+            boolean blockWhenFull)
+            throws IOException
+    {
+        checkArgument(queueSize > 0, "queueSize must be > 0");
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0");
+        checkNotNull(flushInterval, "flushInterval is null");
+
         this.traceTokenManager = traceTokenManager;
         this.eventClient = eventClient;
         this.currentTimeMillisProvider = currentTimeMillisProvider;
@@ -87,9 +151,29 @@ class DelimitedRequestLog
         fileAppender.setContext(context);
         fileAppender.setFile(filename);
         fileAppender.setAppend(true);
-        fileAppender.setLayout(httpLogLayout);
+        fileAppender.setEncoder(createEncoder(context, httpLogLayout));
         fileAppender.setRollingPolicy(rollingPolicy);
         fileAppender.start();
+
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalNanos = flushInterval.roundTo(NANOSECONDS);
+        this.blockWhenFull = blockWhenFull;
+
+        drainer = new Thread(this::drain, "http-request-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private static LayoutWrappingEncoder<HttpRequestEvent> createEncoder(ContextBase context, HttpLogLayout layout)
+    {
+        // the drainer flushes once per block of records instead of once per record
+        LayoutWrappingEncoder<HttpRequestEvent> encoder = new LayoutWrappingEncoder<>();
+        encoder.setContext(context);
+        encoder.setLayout(layout);
+        encoder.setImmediateFlush(false);
+        encoder.start();
+        return encoder;
     }
 
     @Override
@@ -98,9 +182,129 @@ class DelimitedRequestLog
         long currentTime = currentTimeMillisProvider.getCurrentTimeMillis();
         HttpRequestEvent event = createHttpRequestEvent(request, response, traceTokenManager, currentTime);
 
-        fileAppender.doAppend(event);
+        if (stopped) {
+            droppedEvents.update(1);
+            return;
+        }
+
+        if (blockWhenFull) {
+            try {
+                // wait in steps so that a writer blocked on a full queue notices stop
+                while (!queue.offer(event, STOP_CHECK_INTERVAL_MILLIS, MILLISECONDS)) {
+                    if (stopped) {
+                        droppedEvents.update(1);
+                        return;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedEvents.update(1);
+                return;
+            }
+        }
+        else if (!queue.offer(event)) {
+            droppedEvents.update(1);
+            return;
+        }
+
+        // stop may have drained the queue for the last time after the check above, so take
+        // the event back unless the drainer already got it
+        if (stopped && queue.remove(event)) {
+            droppedEvents.update(1);
+        }
+    }
+
+    private void drain()
+    {
+        List<HttpRequestEvent> block = new ArrayList<>();
+        List<HttpRequestEvent> batch = new ArrayList<>();
+        long batchStartNanos = 0;
+
+        while (!stopped) {
+            long waitNanos = flushIntervalNanos;
+            if (!batch.isEmpty()) {
+                waitNanos = Math.max(0, batchStartNanos + flushIntervalNanos - System.nanoTime());
+            }
+
+            try {
+                HttpRequestEvent event = queue.poll(waitNanos, NANOSECONDS);
+                if (event != null) {
+                    block.add(event);
+                    queue.drainTo(block);
+                }
+            }
+            catch (InterruptedException e) {
+                // interrupted by stop, so drain whatever is left below
+                break;
+            }
+
+            if (!block.isEmpty()) {
+                if (batch.isEmpty()) {
+                    batchStartNanos = System.nanoTime();
+                }
+                writeBlock(block);
+                batch.addAll(block);
+                block.clear();
+            }
+
+            if (batch.size() >= maxBatchSize || (!batch.isEmpty() && System.nanoTime() - batchStartNanos >= flushIntervalNanos)) {
+                postBatches(batch);
+                batch.clear();
+            }
+        }
+
+        queue.drainTo(block);
+        writeBlock(block);
+        batch.addAll(block);
+        postBatches(batch);
+    }
+
+    private void writeBlock(List<HttpRequestEvent> block)
+    {
+        for (HttpRequestEvent event : block) {
+            fileAppender.doAppend(event);
+        }
 
-        eventClient.post(event);
+        OutputStream outputStream = fileAppender.getOutputStream();
+        if (outputStream != null) {
+            try {
+                outputStream.flush();
+            }
+            catch (IOException e) {
+                log.warn(e, "Error flushing request log");
+            }
+        }
+    }
+
+    private void postBatches(List<HttpRequestEvent> events)
+    {
+        for (int start = 0; start < events.size(); start += maxBatchSize) {
+            List<HttpRequestEvent> batch = events.subList(start, Math.min(events.size(), start + maxBatchSize));
+            batchSize.add(batch.size());
+            try {
+                // the event client may hold on to the batch, so give it a copy
+                eventClient.post(new ArrayList<>(batch));
+            }
+            catch (RuntimeException e) {
+                log.warn(e, "Error posting request events");
+            }
+        }
+    }
+
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    public CounterStat getDroppedEvents()
+    {
+        return droppedEvents;
+    }
+
+    public DistributionStat getBatchSize()
+    {
+        return batchSize;
     }
 
     @Override
@@ -113,6 +317,9 @@ class DelimitedRequestLog
     public void stop()
             throws Exception
     {
+        stopped = true;
+        drainer.interrupt();
+        drainer.join();
         fileAppender.stop();
     }
 
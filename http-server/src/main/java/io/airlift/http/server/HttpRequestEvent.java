@@ -48,40 +48,24 @@ public class HttpRequestEvent
         }
 
         long dispatchTime = request.getTimeStamp();
-        long timeToDispatch = max(dispatchTime - request.getTimeStamp(), 0);
-
         Long timeToFirstByte = null;
-        Object firstByteTime = request.getAttribute(TimingFilter.FIRST_BYTE_TIME);
-        if (firstByteTime instanceof Long) {
-            Long time = (Long) firstByteTime;
-            timeToFirstByte = max(time - request.getTimeStamp(), 0);
-        }
+        long lastByteTime = currentTimeInMillis;
 
-        long timeToLastByte = max(currentTimeInMillis - request.getTimeStamp(), 0);
-
-        ImmutableList.Builder<String> builder = ImmutableList.builder();
-        if (request.getRemoteAddr() != null) {
-            builder.add(request.getRemoteAddr());
-        }
-        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
-            String forwardedFor = e.nextElement();
-            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(forwardedFor));
-        }
-        String clientAddress = null;
-        ImmutableList<String> clientAddresses = builder.build();
-        for (String address : Lists.reverse(clientAddresses)) {
-            try {
-                if (!Inet4Networks.isPrivateNetworkAddress(address)) {
-                    clientAddress = address;
-                    break;
-                }
+        TimingHttpConnection timing = TimingHttpConnection.getTiming(request);
+        if (timing != null) {
+            dispatchTime = timing.getDispatchTime();
+            if (timing.getFirstByteTime() != 0) {
+                timeToFirstByte = max(timing.getFirstByteTime() - request.getTimeStamp(), 0);
             }
-            catch (IllegalArgumentException ignored) {
+            if (timing.getLastByteTime() != 0) {
+                lastByteTime = timing.getLastByteTime();
             }
         }
-        if (clientAddress == null) {
-            clientAddress = request.getRemoteAddr();
-        }
+
+        long timeToDispatch = max(dispatchTime - request.getTimeStamp(), 0);
+        long timeToLastByte = max(lastByteTime - request.getTimeStamp(), 0);
+
+        String clientAddress = getClientAddress(request);
 
         String requestUri = null;
         if (request.getUri() != null) {
@@ -122,6 +106,33 @@ public class HttpRequestEvent
         );
     }
 
+    /**
+     * Returns the last public address in the {@code X-Forwarded-For} chain, or the remote
+     * address of the connection if every address is private.
+     */
+    static String getClientAddress(Request request)
+    {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        if (request.getRemoteAddr() != null) {
+            builder.add(request.getRemoteAddr());
+        }
+        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
+            String forwardedFor = e.nextElement();
+            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(forwardedFor));
+        }
+        ImmutableList<String> clientAddresses = builder.build();
+        for (String address : Lists.reverse(clientAddresses)) {
+            try {
+                if (!Inet4Networks.isPrivateNetworkAddress(address)) {
+                    return address;
+                }
+            }
+            catch (IllegalArgumentException ignored) {
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
     private final DateTime timeStamp;
     private final String traceToken;
     private final String clientAddress;
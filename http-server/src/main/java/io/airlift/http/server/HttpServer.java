@@ -15,14 +15,22 @@
  */
 package io.airlift.http.server;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
+import io.airlift.discovery.client.Announcer;
 import io.airlift.event.client.EventClient;
 import io.airlift.http.server.HttpServerBinder.HttpResourceBinding;
+import io.airlift.log.Logger;
 import io.airlift.node.NodeInfo;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.DistributionStat;
 import io.airlift.tracetoken.TraceTokenManager;
+import io.airlift.units.Duration;
 import org.eclipse.jetty.jmx.MBeanContainer;
 import org.eclipse.jetty.security.ConstraintMapping;
 import org.eclipse.jetty.security.ConstraintSecurityHandler;
@@ -40,17 +48,16 @@ import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ErrorHandler;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.server.handler.RequestLogHandler;
 import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
-import org.eclipse.jetty.servlets.GzipFilter;
 import org.eclipse.jetty.util.security.Constraint;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -69,10 +76,15 @@ import java.security.cert.X509Certificate;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
@@ -82,10 +94,17 @@ import static java.util.Comparator.naturalOrder;
 
 public class HttpServer
 {
+    private static final Logger log = Logger.get(HttpServer.class);
+
     private final Server server;
     private final ServerConnector httpConnector;
     private final ServerConnector httpsConnector;
     private final ServerConnector adminConnector;
+    private final DelimitedRequestLog requestLog;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final DeflaterPool deflaterPool;
+    private final Duration drainTimeout;
+    private final Announcer announcer;
 
     private final Optional<ZonedDateTime> certificateExpiration;
 
@@ -104,7 +123,8 @@ public class HttpServer
             LoginService loginService,
             TraceTokenManager tokenManager,
             RequestStats stats,
-            EventClient eventClient)
+            EventClient eventClient,
+            Announcer announcer)
             throws IOException
     {
         Preconditions.checkNotNull(httpServerInfo, "httpServerInfo is null");
@@ -118,6 +138,12 @@ public class HttpServer
         threadPool.setName("http-worker");
         server = new Server(threadPool);
 
+        // on stop, Jetty closes the connectors and waits up to this long for in-flight requests to complete;
+        // the default matches the timeout Jetty uses for the statistics handler when none is set
+        drainTimeout = config.getShutdownDrainTimeout();
+        server.setStopTimeout(drainTimeout.toMillis());
+        this.announcer = announcer;
+
         if (config.isShowStackTrace()) {
             server.addBean(new ErrorHandler());
         }
@@ -128,6 +154,17 @@ public class HttpServer
             server.addBean(mbeanContainer);
         }
 
+        // requests on the HTTP and HTTPS connectors are logged by the connection when the response completes
+        ImmutableList.Builder<RequestLog> requestLogs = ImmutableList.builder();
+        if (config.isLogEnabled()) {
+            requestLog = createRequestLog(config, tokenManager, eventClient);
+            requestLogs.add(requestLog);
+        }
+        else {
+            requestLog = null;
+        }
+        requestLogs.add(new StatsRecordingHandler(stats));
+
         // set up HTTP connector
         if (config.isHttpEnabled()) {
             HttpConfiguration httpConfiguration = new HttpConfiguration();
@@ -145,7 +182,7 @@ public class HttpServer
 
             Integer acceptors = config.getHttpAcceptorThreads();
             Integer selectors = config.getHttpSelectorThreads();
-            httpConnector = new ServerConnector(server, null, null, null, acceptors == null ? -1 : acceptors, selectors == null ? -1 : selectors, new HttpConnectionFactory(httpConfiguration));
+            httpConnector = new ServerConnector(server, null, null, null, acceptors == null ? -1 : acceptors, selectors == null ? -1 : selectors, new TimingHttpConnectionFactory(httpConfiguration, requestLogs.build()));
             httpConnector.setName("http");
             httpConnector.setPort(httpServerInfo.getHttpUri().getPort());
             httpConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
@@ -169,11 +206,13 @@ public class HttpServer
 
             SslContextFactory sslContextFactory = new SslContextFactory(config.getKeystorePath());
             sslContextFactory.setKeyStorePassword(config.getKeystorePassword());
-            SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, "http/1.1");
+            // TLS hands off to the protocol of the connection factory that follows it
+            HttpConnectionFactory httpsConnectionFactory = new TimingHttpConnectionFactory(httpsConfiguration, requestLogs.build());
+            SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, httpsConnectionFactory.getProtocol());
 
             Integer acceptors = config.getHttpsAcceptorThreads();
             Integer selectors = config.getHttpsSelectorThreads();
-            httpsConnector = new ServerConnector(server, null, null, null, acceptors == null ? -1 : acceptors, selectors == null ? -1 : selectors, sslConnectionFactory, new HttpConnectionFactory(httpsConfiguration));
+            httpsConnector = new ServerConnector(server, null, null, null, acceptors == null ? -1 : acceptors, selectors == null ? -1 : selectors, sslConnectionFactory, httpsConnectionFactory);
             httpsConnector.setName("https");
             httpsConnector.setPort(httpServerInfo.getHttpsUri().getPort());
             httpsConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
@@ -204,8 +243,9 @@ public class HttpServer
 
                 SslContextFactory sslContextFactory = new SslContextFactory(config.getKeystorePath());
                 sslContextFactory.setKeyStorePassword(config.getKeystorePassword());
-                SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, "http/1.1");
-                adminConnector = new ServerConnector(server, adminThreadPool, null, null, 0, -1, sslConnectionFactory, new HttpConnectionFactory(adminConfiguration));
+                HttpConnectionFactory adminConnectionFactory = new HttpConnectionFactory(adminConfiguration);
+                SslConnectionFactory sslConnectionFactory = new SslConnectionFactory(sslContextFactory, adminConnectionFactory.getProtocol());
+                adminConnector = new ServerConnector(server, adminThreadPool, null, null, 0, -1, sslConnectionFactory, adminConnectionFactory);
             } else {
                 adminConnector = new ServerConnector(server, adminThreadPool, null, null, 0, -1, new HttpConnectionFactory(adminConfiguration));
             }
@@ -227,6 +267,7 @@ public class HttpServer
          * server
          *    |--- statistics handler
          *           |--- context handler
+         *           |       |--- admission control filter
          *           |       |--- trace token filter
          *           |       |--- gzip response filter
          *           |       |--- gzip request filter
@@ -234,24 +275,39 @@ public class HttpServer
          *           |       |--- user provided filters
          *           |       |--- the servlet (normally GuiceContainer)
          *           |       |--- resource handlers
-         *           |--- log handler
          *    |-- admin context handler
          *           \ --- the admin servlet
          */
         HandlerCollection handlers = new HandlerCollection();
 
         for (HttpResourceBinding resource : resources) {
-            handlers.addHandler(new ClassPathResourceHandler(resource.getBaseUri(), resource.getClassPathResourceBase(), resource.getWelcomeFiles()));
+            handlers.addHandler(new ClassPathResourceHandler(resource.getBaseUri(), resource.getClassPathResourceBase(), resource.getWelcomeFiles(), config.getResourceCacheMaxSize()));
         }
 
-        handlers.addHandler(createServletContext(theServlet, parameters, filters, tokenManager, loginService, "http", "https"));
-        if (config.isLogEnabled()) {
-            handlers.addHandler(createLogHandler(config, tokenManager, eventClient));
+        AdmissionControlFilter admissionControlFilter = null;
+        if (config.isAdmissionControlEnabled()) {
+            concurrencyLimiter = new ConcurrencyLimiter(
+                    config.getAdmissionControlInitialLimit(),
+                    config.getAdmissionControlMinLimit(),
+                    config.getAdmissionControlMaxLimit());
+            admissionControlFilter = new AdmissionControlFilter(
+                    concurrencyLimiter,
+                    splitPaths(config.getAdmissionControlCriticalPaths()),
+                    splitPaths(config.getAdmissionControlLowPriorityPaths()),
+                    (long) config.getAdmissionControlRetryAfter().getValue(TimeUnit.SECONDS));
+        }
+        else {
+            concurrencyLimiter = null;
         }
 
-        RequestLogHandler statsRecorder = new RequestLogHandler();
-        statsRecorder.setRequestLog(new StatsRecordingHandler(stats));
-        handlers.addHandler(statsRecorder);
+        if (config.isCompressionEnabled()) {
+            deflaterPool = new DeflaterPool(config.getCompressionDeflaterPoolSize(), config.getCompressionLevel());
+        }
+        else {
+            deflaterPool = null;
+        }
+
+        handlers.addHandler(createServletContext(theServlet, parameters, filters, admissionControlFilter, createCompressionFilter(config, deflaterPool), tokenManager, loginService, "http", "https"));
 
         // add handlers to Jetty
         StatisticsHandler statsHandler = new StatisticsHandler();
@@ -259,7 +315,7 @@ public class HttpServer
 
         HandlerList rootHandlers = new HandlerList();
         if (theAdminServlet != null && config.isAdminEnabled()) {
-            rootHandlers.addHandler(createServletContext(theAdminServlet, adminParameters, adminFilters, tokenManager, loginService, "admin"));
+            rootHandlers.addHandler(createServletContext(theAdminServlet, adminParameters, adminFilters, null, createCompressionFilter(config, deflaterPool), tokenManager, loginService, "admin"));
         }
         rootHandlers.addHandler(statsHandler);
         server.setHandler(rootHandlers);
@@ -273,19 +329,26 @@ public class HttpServer
     private static ServletContextHandler createServletContext(Servlet theServlet,
             Map<String, String> parameters,
             Set<Filter> filters,
+            Filter admissionControlFilter,
+            FilterHolder compressionFilter,
             TraceTokenManager tokenManager,
             LoginService loginService,
             String... connectorNames)
     {
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
 
-        context.addFilter(new FilterHolder(new TimingFilter()), "/*", null);
+        // rejected requests should cost as little as possible, so admission control goes first
+        if (admissionControlFilter != null) {
+            context.addFilter(new FilterHolder(admissionControlFilter), "/*", null);
+        }
         if (tokenManager != null) {
             context.addFilter(new FilterHolder(new TraceTokenFilter(tokenManager)), "/*", null);
         }
 
         // -- gzip response filter
-        context.addFilter(GzipFilter.class, "/*", null);
+        if (compressionFilter != null) {
+            context.addFilter(compressionFilter, "/*", null);
+        }
         // -- security handler
         if (loginService != null) {
             SecurityHandler securityHandler = createSecurityHandler(loginService);
@@ -310,6 +373,30 @@ public class HttpServer
         return context;
     }
 
+    private static FilterHolder createCompressionFilter(HttpServerConfig config, DeflaterPool deflaterPool)
+    {
+        if (deflaterPool == null) {
+            return null;
+        }
+        FilterHolder holder = new FilterHolder(new CompressionFilter(deflaterPool));
+        holder.setInitParameter("minGzipSize", String.valueOf(config.getCompressionMinSize().toBytes()));
+        if (config.getCompressionMimeTypes() != null) {
+            holder.setInitParameter("mimeTypes", Joiner.on(',').join(splitPaths(config.getCompressionMimeTypes())));
+        }
+        if (config.getCompressionExcludedPaths() != null) {
+            holder.setInitParameter("excludePaths", Joiner.on(',').join(splitPaths(config.getCompressionExcludedPaths())));
+        }
+        return holder;
+    }
+
+    private static List<String> splitPaths(String paths)
+    {
+        if (paths == null) {
+            return ImmutableList.of();
+        }
+        return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(paths);
+    }
+
     private static SecurityHandler createSecurityHandler(LoginService loginService)
     {
         Constraint constraint = new Constraint();
@@ -328,13 +415,11 @@ public class HttpServer
         return securityHandler;
     }
 
-    private static RequestLogHandler createLogHandler(HttpServerConfig config, TraceTokenManager tokenManager, EventClient eventClient)
+    private static DelimitedRequestLog createRequestLog(HttpServerConfig config, TraceTokenManager tokenManager, EventClient eventClient)
             throws IOException
     {
         // TODO: use custom (more easily-parseable) format
         // TODO: make retention & rotation configurable
-        RequestLogHandler logHandler = new RequestLogHandler();
-
         File logFile = new File(config.getLogPath());
         if (logFile.exists() && !logFile.isFile()) {
             throw new IOException(format("Log path %s exists but is not a file", logFile.getAbsolutePath()));
@@ -345,10 +430,50 @@ public class HttpServer
             throw new IOException(format("Cannot create %s and path does not already exist", logPath.getAbsolutePath()));
         }
 
-        RequestLog requestLog = new DelimitedRequestLog(config.getLogPath(), config.getLogHistory(), config.getLogMaxFileSize().toBytes(), tokenManager, eventClient);
-        logHandler.setRequestLog(requestLog);
+        return new DelimitedRequestLog(
+                config.getLogPath(),
+                config.getLogHistory(),
+                config.getLogMaxFileSize().toBytes(),
+                tokenManager,
+                eventClient,
+                config.getLogQueueSize(),
+                config.getLogMaxBatchSize(),
+                config.getLogFlushInterval(),
+                config.isLogBlockWhenFull());
+    }
+
+    @Managed
+    public Integer getRequestLogQueueSize()
+    {
+        return requestLog == null ? null : requestLog.getQueueSize();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRequestLogDroppedEvents()
+    {
+        return requestLog == null ? null : requestLog.getDroppedEvents();
+    }
 
-        return logHandler;
+    @Managed
+    @Nested
+    public DistributionStat getRequestLogBatchSize()
+    {
+        return requestLog == null ? null : requestLog.getBatchSize();
+    }
+
+    @Managed
+    @Nested
+    public ConcurrencyLimiter getConcurrencyLimiter()
+    {
+        return concurrencyLimiter;
+    }
+
+    @Managed
+    @Nested
+    public DeflaterPool getCompression()
+    {
+        return deflaterPool;
     }
 
     @Managed
@@ -370,6 +495,17 @@ public class HttpServer
         // required threads based on the number of available processors in a non-trivial way,
         // so a config that works on one machine might fail on a larger machine without an
         // obvious reason why. Thus, we need this runtime check after startup as a safeguard.
+        Map<String, ServerConnector> connectors = new LinkedHashMap<>();
+        if (httpConnector != null) {
+            connectors.put("HTTP", httpConnector);
+        }
+        if (httpsConnector != null) {
+            connectors.put("HTTPS", httpsConnector);
+        }
+        if (adminConnector != null) {
+            connectors.put("admin", adminConnector);
+        }
+        checkReservedThreads(connectors);
         checkSufficientThreads(httpConnector, "HTTP");
         checkSufficientThreads(httpsConnector, "HTTPS");
         checkSufficientThreads(adminConnector, "admin");
@@ -380,7 +516,47 @@ public class HttpServer
     public void stop()
             throws Exception
     {
-        server.stop();
+        if (announcer != null) {
+            // stop advertising this server before it stops accepting connections
+            announcer.destroy();
+        }
+
+        try {
+            server.stop();
+        }
+        catch (TimeoutException e) {
+            log.warn("In-flight requests did not complete within %s", drainTimeout);
+        }
+        if (requestLog != null) {
+            // flush events of requests that completed while the server was stopping
+            requestLog.stop();
+        }
+        if (deflaterPool != null) {
+            deflaterPool.close();
+        }
+    }
+
+    /**
+     * Checks that each thread pool keeps a thread for requests after the acceptors and selectors
+     * of all connectors that share it have taken theirs. Unlike {@link ThreadPool#isLowOnThreads},
+     * this does not depend on whether the selector threads have started yet.
+     */
+    private static void checkReservedThreads(Map<String, ServerConnector> connectors)
+    {
+        Map<Executor, Integer> reservedThreads = new IdentityHashMap<>();
+        Map<Executor, String> names = new IdentityHashMap<>();
+        for (Map.Entry<String, ServerConnector> entry : connectors.entrySet()) {
+            ServerConnector connector = entry.getValue();
+            int threads = connector.getAcceptors() + connector.getSelectorManager().getSelectorCount();
+            reservedThreads.merge(connector.getExecutor(), threads, Integer::sum);
+            names.merge(connector.getExecutor(), entry.getKey(), (first, second) -> first + " and " + second);
+        }
+        for (Map.Entry<Executor, Integer> entry : reservedThreads.entrySet()) {
+            if (entry.getKey() instanceof QueuedThreadPool) {
+                int maxThreads = ((QueuedThreadPool) entry.getKey()).getMaxThreads();
+                checkState(maxThreads > entry.getValue(), "insufficient threads configured for %s connector", names.get(entry.getKey()));
+            }
+        }
     }
 
     private static void checkSufficientThreads(Connector connector, String name)
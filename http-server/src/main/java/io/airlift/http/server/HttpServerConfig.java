@@ -20,10 +20,13 @@ import io.airlift.configuration.ConfigDescription;
 import io.airlift.configuration.DefunctConfig;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
+import io.airlift.units.MinDuration;
 
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 @DefunctConfig({
         "jetty.http.enabled",
@@ -57,6 +60,10 @@ public class HttpServerConfig
     private boolean logEnabled = true;
     private int logHistory = 15;
     private DataSize logMaxFileSize = new DataSize(Long.MAX_VALUE, DataSize.Unit.BYTE);
+    private int logQueueSize = 10_000;
+    private int logMaxBatchSize = 1_000;
+    private Duration logFlushInterval = new Duration(1, TimeUnit.SECONDS);
+    private boolean logBlockWhenFull = false;
 
     private Integer httpAcceptorThreads;
     private Integer httpSelectorThreads;
@@ -78,6 +85,27 @@ public class HttpServerConfig
 
     private boolean showStackTrace = true;
 
+    private DataSize resourceCacheMaxSize = new DataSize(16, DataSize.Unit.MEGABYTE);
+
+    private boolean admissionControlEnabled;
+    private int admissionControlInitialLimit = 100;
+    private int admissionControlMinLimit = 10;
+    private int admissionControlMaxLimit = 1000;
+    private Duration admissionControlRetryAfter = new Duration(1, TimeUnit.SECONDS);
+    private String admissionControlCriticalPaths;
+    private String admissionControlLowPriorityPaths;
+
+    private boolean compressionEnabled = true;
+    private DataSize compressionMinSize = new DataSize(256, DataSize.Unit.BYTE);
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionDeflaterPoolSize = 64;
+    private String compressionMimeTypes;
+    private String compressionExcludedPaths;
+
+    private Duration shutdownDrainTimeout = new Duration(30, TimeUnit.SECONDS);
+
+    private int statsTopKeys;
+
     public boolean isHttpEnabled()
     {
         return httpEnabled;
@@ -298,6 +326,61 @@ public class HttpServerConfig
         return this;
     }
 
+    @Min(1)
+    public int getLogQueueSize()
+    {
+        return logQueueSize;
+    }
+
+    @Config("http-server.log.queue-size")
+    @ConfigDescription("Maximum number of request log events waiting to be written")
+    public HttpServerConfig setLogQueueSize(int logQueueSize)
+    {
+        this.logQueueSize = logQueueSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getLogMaxBatchSize()
+    {
+        return logMaxBatchSize;
+    }
+
+    @Config("http-server.log.max-batch-size")
+    @ConfigDescription("Maximum number of request events posted to the event client at once")
+    public HttpServerConfig setLogMaxBatchSize(int logMaxBatchSize)
+    {
+        this.logMaxBatchSize = logMaxBatchSize;
+        return this;
+    }
+
+    @MinDuration("1ms")
+    public Duration getLogFlushInterval()
+    {
+        return logFlushInterval;
+    }
+
+    @Config("http-server.log.flush-interval")
+    @ConfigDescription("Maximum time a request event is held before it is posted to the event client")
+    public HttpServerConfig setLogFlushInterval(Duration logFlushInterval)
+    {
+        this.logFlushInterval = logFlushInterval;
+        return this;
+    }
+
+    public boolean isLogBlockWhenFull()
+    {
+        return logBlockWhenFull;
+    }
+
+    @Config("http-server.log.block-when-full")
+    @ConfigDescription("Block request threads when the request log queue is full instead of dropping events")
+    public HttpServerConfig setLogBlockWhenFull(boolean logBlockWhenFull)
+    {
+        this.logBlockWhenFull = logBlockWhenFull;
+        return this;
+    }
+
     public String getUserAuthFile()
     {
         return userAuthFile;
@@ -395,4 +478,217 @@ public class HttpServerConfig
         this.showStackTrace = showStackTrace;
         return this;
     }
+
+    public DataSize getResourceCacheMaxSize()
+    {
+        return resourceCacheMaxSize;
+    }
+
+    @Config("http-server.resource-cache.max-size")
+    @ConfigDescription("Maximum size of the in-memory cache of each class path resource binding")
+    public HttpServerConfig setResourceCacheMaxSize(DataSize resourceCacheMaxSize)
+    {
+        this.resourceCacheMaxSize = resourceCacheMaxSize;
+        return this;
+    }
+
+    public boolean isAdmissionControlEnabled()
+    {
+        return admissionControlEnabled;
+    }
+
+    @Config("http-server.admission-control.enabled")
+    @ConfigDescription("Reject requests with 503 when the number of requests in flight exceeds the limit estimated from latency")
+    public HttpServerConfig setAdmissionControlEnabled(boolean admissionControlEnabled)
+    {
+        this.admissionControlEnabled = admissionControlEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdmissionControlInitialLimit()
+    {
+        return admissionControlInitialLimit;
+    }
+
+    @Config("http-server.admission-control.initial-limit")
+    public HttpServerConfig setAdmissionControlInitialLimit(int admissionControlInitialLimit)
+    {
+        this.admissionControlInitialLimit = admissionControlInitialLimit;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdmissionControlMinLimit()
+    {
+        return admissionControlMinLimit;
+    }
+
+    @Config("http-server.admission-control.min-limit")
+    public HttpServerConfig setAdmissionControlMinLimit(int admissionControlMinLimit)
+    {
+        this.admissionControlMinLimit = admissionControlMinLimit;
+        return this;
+    }
+
+    @Min(1)
+    public int getAdmissionControlMaxLimit()
+    {
+        return admissionControlMaxLimit;
+    }
+
+    @Config("http-server.admission-control.max-limit")
+    public HttpServerConfig setAdmissionControlMaxLimit(int admissionControlMaxLimit)
+    {
+        this.admissionControlMaxLimit = admissionControlMaxLimit;
+        return this;
+    }
+
+    @MinDuration("0s")
+    public Duration getAdmissionControlRetryAfter()
+    {
+        return admissionControlRetryAfter;
+    }
+
+    @Config("http-server.admission-control.retry-after")
+    @ConfigDescription("Value of the Retry-After header of rejected requests")
+    public HttpServerConfig setAdmissionControlRetryAfter(Duration admissionControlRetryAfter)
+    {
+        this.admissionControlRetryAfter = admissionControlRetryAfter;
+        return this;
+    }
+
+    public String getAdmissionControlCriticalPaths()
+    {
+        return admissionControlCriticalPaths;
+    }
+
+    @Config("http-server.admission-control.critical-paths")
+    @ConfigDescription("Comma separated path prefixes of requests that are never rejected")
+    public HttpServerConfig setAdmissionControlCriticalPaths(String admissionControlCriticalPaths)
+    {
+        this.admissionControlCriticalPaths = admissionControlCriticalPaths;
+        return this;
+    }
+
+    public String getAdmissionControlLowPriorityPaths()
+    {
+        return admissionControlLowPriorityPaths;
+    }
+
+    @Config("http-server.admission-control.low-priority-paths")
+    @ConfigDescription("Comma separated path prefixes of requests that are rejected first")
+    public HttpServerConfig setAdmissionControlLowPriorityPaths(String admissionControlLowPriorityPaths)
+    {
+        this.admissionControlLowPriorityPaths = admissionControlLowPriorityPaths;
+        return this;
+    }
+
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    @Config("http-server.compression.enabled")
+    public HttpServerConfig setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    public DataSize getCompressionMinSize()
+    {
+        return compressionMinSize;
+    }
+
+    @Config("http-server.compression.min-size")
+    @ConfigDescription("Responses smaller than this are not compressed")
+    public HttpServerConfig setCompressionMinSize(DataSize compressionMinSize)
+    {
+        this.compressionMinSize = compressionMinSize;
+        return this;
+    }
+
+    @Min(-1)
+    @Max(9)
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    @Config("http-server.compression.level")
+    @ConfigDescription("Deflate compression level from 0 (none) to 9 (best), or -1 for the zlib default")
+    public HttpServerConfig setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    @Min(1)
+    public int getCompressionDeflaterPoolSize()
+    {
+        return compressionDeflaterPoolSize;
+    }
+
+    @Config("http-server.compression.deflater-pool-size")
+    @ConfigDescription("Maximum number of idle deflaters kept for reuse")
+    public HttpServerConfig setCompressionDeflaterPoolSize(int compressionDeflaterPoolSize)
+    {
+        this.compressionDeflaterPoolSize = compressionDeflaterPoolSize;
+        return this;
+    }
+
+    public String getCompressionMimeTypes()
+    {
+        return compressionMimeTypes;
+    }
+
+    @Config("http-server.compression.mime-types")
+    @ConfigDescription("Comma separated MIME types to compress; by default all types except images, audio, video and archives are compressed")
+    public HttpServerConfig setCompressionMimeTypes(String compressionMimeTypes)
+    {
+        this.compressionMimeTypes = compressionMimeTypes;
+        return this;
+    }
+
+    public String getCompressionExcludedPaths()
+    {
+        return compressionExcludedPaths;
+    }
+
+    @Config("http-server.compression.excluded-paths")
+    @ConfigDescription("Comma separated path prefixes of requests that are never compressed")
+    public HttpServerConfig setCompressionExcludedPaths(String compressionExcludedPaths)
+    {
+        this.compressionExcludedPaths = compressionExcludedPaths;
+        return this;
+    }
+
+    @MinDuration("0s")
+    public Duration getShutdownDrainTimeout()
+    {
+        return shutdownDrainTimeout;
+    }
+
+    @Config("http-server.shutdown.drain-timeout")
+    @ConfigDescription("Time to wait for in-flight requests to complete when the server is stopped, or 0s to stop immediately")
+    public HttpServerConfig setShutdownDrainTimeout(Duration shutdownDrainTimeout)
+    {
+        this.shutdownDrainTimeout = shutdownDrainTimeout;
+        return this;
+    }
+
+    @Min(0)
+    public int getStatsTopKeys()
+    {
+        return statsTopKeys;
+    }
+
+    @Config("http-server.stats.top-keys")
+    @ConfigDescription("Number of most frequent request paths and client addresses to report, or 0 to not track them")
+    public HttpServerConfig setStatsTopKeys(int statsTopKeys)
+    {
+        this.statsTopKeys = statsTopKeys;
+        return this;
+    }
 }
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import io.airlift.discovery.client.Announcer;
 import io.airlift.event.client.EventClient;
 import io.airlift.http.server.HttpServerBinder.HttpResourceBinding;
 import io.airlift.node.NodeInfo;
@@ -57,6 +58,7 @@ public class HttpServerProvider
     private final Set<Filter> adminFilters;
     private TraceTokenManager traceTokenManager;
     private final EventClient eventClient;
+    private Announcer announcer;
 
     @Inject
     public HttpServerProvider(HttpServerInfo httpServerInfo,
@@ -126,6 +128,12 @@ public class HttpServerProvider
         this.traceTokenManager = tokenManager;
     }
 
+    @Inject(optional = true)
+    public void setAnnouncer(Announcer announcer)
+    {
+        this.announcer = announcer;
+    }
+
     public HttpServer get()
     {
         try {
@@ -143,7 +151,8 @@ public class HttpServerProvider
                     loginService,
                     traceTokenManager,
                     stats,
-                    eventClient);
+                    eventClient,
+                    announcer);
             httpServer.start();
             return httpServer;
         }
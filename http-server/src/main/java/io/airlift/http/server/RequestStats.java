@@ -15,38 +15,265 @@
  */
 package io.airlift.http.server;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import io.airlift.log.Logger;
 import io.airlift.stats.CounterStat;
 import io.airlift.stats.DistributionStat;
+import io.airlift.stats.HeavyHittersStat;
 import io.airlift.stats.TimeStat;
 import io.airlift.units.Duration;
 import org.weakref.jmx.Flatten;
+import org.weakref.jmx.MBeanExporter;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
-import javax.inject.Inject;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Ticker.systemTicker;
+import static org.weakref.jmx.ObjectNames.generatedNameOf;
 
 public class RequestStats
 {
+    /**
+     * Request attribute holding the template of the resource that handled the request,
+     * e.g. {@code /v1/user/{id}}. Requests without this attribute are recorded as
+     * {@link #UNMATCHED_ROUTE}.
+     */
+    public static final String ROUTE_ATTRIBUTE = RequestStats.class.getName() + ".ROUTE";
+
+    public static final String UNMATCHED_ROUTE = "<unmatched>";
+    public static final String OTHER_ROUTE = "<other>";
+    public static final int DEFAULT_MAX_ROUTES = 250;
+
+    // paths are recorded without the query, but may still be arbitrarily long
+    private static final int MAX_TOP_KEY_LENGTH = 256;
+
+    private static final Logger log = Logger.get(RequestStats.class);
+
+    // clients may send arbitrary methods, so anything else is recorded as OTHER to keep the key space bounded
+    private static final Set<String> METHODS = ImmutableSet.of("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE");
+    private static final String OTHER_METHOD = "OTHER";
+    private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
     private final CounterStat request;
     private final TimeStat requestTime;
     private final DistributionStat readBytes;
     private final DistributionStat writtenBytes;
+    private final HeavyHittersStat topPaths;
+    private final HeavyHittersStat topClientAddresses;
+
+    private final int maxRoutes;
+    private final ConcurrentMap<RouteKey, RouteStats> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger routeCount = new AtomicInteger();
+    private volatile MBeanExporter exporter;
 
-    @Inject
     public RequestStats()
     {
+        this(DEFAULT_MAX_ROUTES);
+    }
+
+    @Inject
+    public RequestStats(HttpServerConfig config)
+    {
+        this(DEFAULT_MAX_ROUTES, checkNotNull(config, "config is null").getStatsTopKeys());
+    }
+
+    public RequestStats(int maxRoutes)
+    {
+        this(maxRoutes, 0);
+    }
+
+    /**
+     * @param topKeys number of most frequent request paths and client addresses to report,
+     * or 0 to not track them
+     */
+    public RequestStats(int maxRoutes, int topKeys)
+    {
+        checkArgument(maxRoutes >= 0, "maxRoutes is negative");
+        checkArgument(topKeys >= 0, "topKeys is negative");
+        this.maxRoutes = maxRoutes;
+
         request = new CounterStat();
         requestTime = new TimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
+        topPaths = topKeys == 0 ? null : new HeavyHittersStat(topKeys);
+        topClientAddresses = topKeys == 0 ? null : new HeavyHittersStat(topKeys);
+    }
+
+    /**
+     * Exports the statistics of each route as a separate MBean once the route is first seen.
+     */
+    @Inject(optional = true)
+    public synchronized void setExporter(MBeanExporter exporter)
+    {
+        this.exporter = checkNotNull(exporter, "exporter is null");
+        for (RouteStats stats : routes.values()) {
+            export(exporter, stats);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void unexportRoutes()
+    {
+        MBeanExporter exporter = this.exporter;
+        if (exporter == null) {
+            return;
+        }
+        for (RouteStats stats : routes.values()) {
+            try {
+                exporter.unexport(stats.getObjectName());
+            }
+            catch (RuntimeException e) {
+                log.debug(e, "Failed to unexport %s", stats.getObjectName());
+            }
+        }
+        this.exporter = null;
     }
 
     public void record(String method, int responseCode, long requestSizeInBytes, long responseSizeInBytes, Duration schedulingDelay, Duration requestProcessingTime)
+    {
+        record(null, method, responseCode, requestSizeInBytes, responseSizeInBytes, schedulingDelay, requestProcessingTime);
+    }
+
+    public void record(String route, String method, int responseCode, long requestSizeInBytes, long responseSizeInBytes, Duration schedulingDelay, Duration requestProcessingTime)
     {
         request.update(1);
         requestTime.add(requestProcessingTime);
         readBytes.add(requestSizeInBytes);
         writtenBytes.add(responseSizeInBytes);
+
+        RouteStats stats = getRouteStats(route, method, responseCode);
+        if (stats != null) {
+            stats.record(requestSizeInBytes, responseSizeInBytes, schedulingDelay, requestProcessingTime);
+        }
+    }
+
+    public boolean isTrackingTopKeys()
+    {
+        return topPaths != null;
+    }
+
+    /**
+     * Records the path and client address of a request in the most frequent keys, if they
+     * are tracked. Either may be null.
+     */
+    public void recordTopKeys(String path, String clientAddress)
+    {
+        if (topPaths == null) {
+            return;
+        }
+        if (path != null) {
+            topPaths.add(truncate(path));
+        }
+        if (clientAddress != null) {
+            topClientAddresses.add(truncate(clientAddress));
+        }
+    }
+
+    private static String truncate(String key)
+    {
+        if (key.length() <= MAX_TOP_KEY_LENGTH) {
+            return key;
+        }
+        return key.substring(0, MAX_TOP_KEY_LENGTH);
+    }
+
+    /**
+     * Returns the statistics of every route seen so far.
+     */
+    public List<RouteStats> getRoutes()
+    {
+        return ImmutableList.copyOf(routes.values());
+    }
+
+    @VisibleForTesting
+    RouteStats getRouteStats(String route, String method, int responseCode)
+    {
+        if (maxRoutes == 0) {
+            return null;
+        }
+
+        RouteKey key = new RouteKey(route == null ? UNMATCHED_ROUTE : route, normalizeMethod(method), statusClass(responseCode));
+        RouteStats stats = routes.get(key);
+        if (stats != null) {
+            return stats;
+        }
+
+        // once the limit is reached, new routes share a single entry per method and status class
+        boolean counted = routeCount.incrementAndGet() <= maxRoutes;
+        if (!counted) {
+            routeCount.decrementAndGet();
+            key = new RouteKey(OTHER_ROUTE, key.getMethod(), key.getStatus());
+            stats = routes.get(key);
+            if (stats != null) {
+                return stats;
+            }
+        }
+
+        RouteStats newStats = new RouteStats(key);
+        stats = routes.putIfAbsent(key, newStats);
+        if (stats != null) {
+            if (counted) {
+                routeCount.decrementAndGet();
+            }
+            return stats;
+        }
+
+        MBeanExporter exporter = this.exporter;
+        if (exporter != null) {
+            synchronized (this) {
+                // the exporter may have been replaced or removed while this thread was not holding the lock
+                if (this.exporter == exporter) {
+                    export(exporter, newStats);
+                }
+            }
+        }
+        return newStats;
+    }
+
+    private static void export(MBeanExporter exporter, RouteStats stats)
+    {
+        try {
+            exporter.export(stats.getObjectName(), stats);
+        }
+        catch (RuntimeException e) {
+            // statistics must never fail a request
+            log.warn(e, "Failed to export %s", stats.getObjectName());
+        }
+    }
+
+    private static String normalizeMethod(String method)
+    {
+        if (method != null && METHODS.contains(method)) {
+            return method;
+        }
+        return OTHER_METHOD;
+    }
+
+    private static String statusClass(int responseCode)
+    {
+        int index = responseCode / 100;
+        if (index < 1 || index >= STATUS_CLASSES.length) {
+            index = 0;
+        }
+        return STATUS_CLASSES[index];
     }
 
     @Managed
@@ -76,4 +303,161 @@ public class RequestStats
     {
         return writtenBytes;
     }
+
+    @Managed
+    public int getRouteCount()
+    {
+        return routes.size();
+    }
+
+    /**
+     * Returns the approximate number of requests for the most frequent paths of the last
+     * one to two minutes, most frequent first.
+     */
+    @Managed
+    public Map<String, Long> getTopPaths()
+    {
+        if (topPaths == null) {
+            return ImmutableMap.of();
+        }
+        return topPaths.getTop();
+    }
+
+    /**
+     * Returns the approximate number of requests from the most frequent client addresses of
+     * the last one to two minutes, most frequent first.
+     */
+    @Managed
+    public Map<String, Long> getTopClientAddresses()
+    {
+        if (topClientAddresses == null) {
+            return ImmutableMap.of();
+        }
+        return topClientAddresses.getTop();
+    }
+
+    public static class RouteStats
+    {
+        private final RouteKey key;
+        private final String objectName;
+        private final TimeStat requestTime = new TimeStat(systemTicker(), TimeUnit.SECONDS, true);
+        private final TimeStat schedulingDelay = new TimeStat(systemTicker(), TimeUnit.SECONDS, true);
+        private final DistributionStat readBytes = new DistributionStat(true);
+        private final DistributionStat writtenBytes = new DistributionStat(true);
+
+        private RouteStats(RouteKey key)
+        {
+            this.key = key;
+            this.objectName = generatedNameOf(RequestStats.class) +
+                    ",route=" + ObjectName.quote(key.getRoute()) +
+                    ",method=" + key.getMethod() +
+                    ",status=" + key.getStatus();
+        }
+
+        private void record(long requestSizeInBytes, long responseSizeInBytes, Duration schedulingDelay, Duration requestProcessingTime)
+        {
+            requestTime.add(requestProcessingTime);
+            this.schedulingDelay.add(schedulingDelay);
+            readBytes.add(requestSizeInBytes);
+            writtenBytes.add(responseSizeInBytes);
+        }
+
+        public String getRoute()
+        {
+            return key.getRoute();
+        }
+
+        public String getMethod()
+        {
+            return key.getMethod();
+        }
+
+        public String getStatus()
+        {
+            return key.getStatus();
+        }
+
+        public String getObjectName()
+        {
+            return objectName;
+        }
+
+        @Managed
+        @Nested
+        public TimeStat getRequestTime()
+        {
+            return requestTime;
+        }
+
+        @Managed
+        @Nested
+        public TimeStat getSchedulingDelay()
+        {
+            return schedulingDelay;
+        }
+
+        @Managed
+        @Nested
+        public DistributionStat getReadBytes()
+        {
+            return readBytes;
+        }
+
+        @Managed
+        @Nested
+        public DistributionStat getWrittenBytes()
+        {
+            return writtenBytes;
+        }
+    }
+
+    private static final class RouteKey
+    {
+        private final String route;
+        private final String method;
+        private final String status;
+
+        private RouteKey(String route, String method, String status)
+        {
+            this.route = route;
+            this.method = method;
+            this.status = status;
+        }
+
+        public String getRoute()
+        {
+            return route;
+        }
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+        public String getStatus()
+        {
+            return status;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RouteKey other = (RouteKey) o;
+            return route.equals(other.route) &&
+                    method.equals(other.method) &&
+                    status.equals(other.status);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(route, method, status);
+        }
+    }
 }
@@ -37,13 +37,34 @@ public class StatsRecordingHandler
     @Override
     public void log(Request request, Response response)
     {
-        Duration requestTime = new Duration(max(0, System.currentTimeMillis() - request.getTimeStamp()), TimeUnit.MILLISECONDS);
-
         long dispatchTime = request.getTimeStamp();
-
+        long lastByteTime = 0;
+        TimingHttpConnection timing = TimingHttpConnection.getTiming(request);
+        if (timing != null) {
+            dispatchTime = timing.getDispatchTime();
+            lastByteTime = timing.getLastByteTime();
+        }
+        if (lastByteTime == 0) {
+            lastByteTime = System.currentTimeMillis();
+        }
+
+        Duration requestTime = new Duration(max(0, lastByteTime - request.getTimeStamp()), TimeUnit.MILLISECONDS);
         Duration schedulingDelay = new Duration(max(0, dispatchTime - request.getTimeStamp()), TimeUnit.MILLISECONDS);
 
-        stats.record(request.getMethod(), response.getStatus(), request.getContentRead(), response.getContentCount(), schedulingDelay, requestTime);
+        Object route = request.getAttribute(RequestStats.ROUTE_ATTRIBUTE);
+
+        stats.record(
+                route instanceof String ? (String) route : null,
+                request.getMethod(),
+                response.getStatus(),
+                request.getContentRead(),
+                response.getContentCount(),
+                schedulingDelay,
+                requestTime);
+
+        if (stats.isTrackingTopKeys()) {
+            stats.recordTopKeys(request.getRequestURI(), HttpRequestEvent.getClientAddress(request));
+        }
     }
 
     @Override
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.log.Logger;
+import org.eclipse.jetty.http.HttpGenerator.ResponseInfo;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.server.HttpTransport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.util.Callback;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * HTTP connection that records when each request is dispatched, when the response is
+ * committed (first byte) and when the response is complete (last byte), and passes
+ * completed requests to the request logs. The timestamps live in the connection, which
+ * handles one request at a time, so nothing is allocated per request.
+ *
+ * <p>While the server is stopping, responses are sent with {@code Connection: close} so that
+ * keep-alive clients move to another server instead of having their connection reset when
+ * the drain completes.</p>
+ */
+class TimingHttpConnection
+        extends HttpConnection
+{
+    private static final Logger log = Logger.get(TimingHttpConnection.class);
+
+    private final List<RequestLog> requestLogs;
+
+    // Jetty hands the request from thread to thread through the channel state, which orders these accesses
+    private boolean dispatched;
+    private long dispatchTime;
+    private long firstByteTime;
+    private long lastByteTime;
+
+    TimingHttpConnection(HttpConfiguration config, Connector connector, EndPoint endPoint, List<RequestLog> requestLogs)
+    {
+        super(config, connector, endPoint);
+        this.requestLogs = requestLogs;
+    }
+
+    /**
+     * Returns the connection timing the request, or null if the request was not
+     * received by a {@link TimingHttpConnection} or has not been dispatched.
+     */
+    static TimingHttpConnection getTiming(Request request)
+    {
+        HttpChannel<?> channel = request.getHttpChannel();
+        if (channel == null) {
+            return null;
+        }
+        HttpTransport transport = channel.getHttpTransport();
+        if (transport instanceof TimingHttpConnection && ((TimingHttpConnection) transport).isDispatched()) {
+            return (TimingHttpConnection) transport;
+        }
+        return null;
+    }
+
+    void dispatched()
+    {
+        dispatched = true;
+        dispatchTime = System.currentTimeMillis();
+        firstByteTime = 0;
+        lastByteTime = 0;
+    }
+
+    boolean isDispatched()
+    {
+        return dispatched;
+    }
+
+    long getDispatchTime()
+    {
+        return dispatchTime;
+    }
+
+    /**
+     * @return the time the response was committed, or 0 if it has not been committed
+     */
+    long getFirstByteTime()
+    {
+        return firstByteTime;
+    }
+
+    /**
+     * @return the time the response was completed, or 0 if it has not been completed
+     */
+    long getLastByteTime()
+    {
+        return lastByteTime;
+    }
+
+    @Override
+    public void send(ResponseInfo info, ByteBuffer content, boolean lastContent, Callback callback)
+    {
+        // the response info is only sent with the first bytes of the response
+        if (info != null && dispatched) {
+            firstByteTime = System.currentTimeMillis();
+        }
+        if (info != null && getConnector().getServer().isStopping()) {
+            info.getHttpFields().put(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE.asString());
+        }
+        super.send(info, content, lastContent, callback);
+    }
+
+    @Override
+    public void completed()
+    {
+        // requests rejected by the parser are never dispatched and were never logged
+        if (dispatched) {
+            lastByteTime = System.currentTimeMillis();
+            HttpChannel<?> channel = getHttpChannel();
+            for (RequestLog requestLog : requestLogs) {
+                try {
+                    requestLog.log(channel.getRequest(), channel.getResponse());
+                }
+                catch (RuntimeException e) {
+                    log.warn(e, "Failed to log request");
+                }
+            }
+            dispatched = false;
+        }
+        super.completed();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.HttpTransport;
+import org.eclipse.jetty.server.RequestLog;
+
+import java.util.List;
+
+/**
+ * Creates {@link TimingHttpConnection}s, and records the dispatch of each request
+ * through a customizer of the HTTP configuration.
+ */
+class TimingHttpConnectionFactory
+        extends HttpConnectionFactory
+{
+    private final List<RequestLog> requestLogs;
+
+    TimingHttpConnectionFactory(HttpConfiguration config, List<RequestLog> requestLogs)
+    {
+        super(config);
+        this.requestLogs = ImmutableList.copyOf(requestLogs);
+
+        // customizers are called right before the request is handed to the server
+        config.addCustomizer((connector, configuration, request) -> {
+            HttpTransport transport = request.getHttpChannel().getHttpTransport();
+            if (transport instanceof TimingHttpConnection) {
+                ((TimingHttpConnection) transport).dispatched();
+            }
+        });
+    }
+
+    @Override
+    public Connection newConnection(Connector connector, EndPoint endPoint)
+    {
+        return configure(new TimingHttpConnection(getHttpConfiguration(), connector, endPoint, requestLogs), connector, endPoint);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.ByteStreams;
+import io.airlift.event.client.JsonEventSerializer;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.ProfilerType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of serializing an {@link HttpRequestEvent} to JSON, which is done
+ * for every request when events are posted to an event collector.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class BenchmarkHttpRequestEventSerializer
+{
+    @GenerateMicroBenchmark
+    public void serialize(Data data)
+            throws IOException
+    {
+        data.serializer.serialize(data.event, data.generator);
+    }
+
+    @State(Scope.Thread)
+    public static class Data
+    {
+        private final JsonEventSerializer serializer = new JsonEventSerializer(HttpRequestEvent.class);
+        private HttpRequestEvent event;
+        private JsonGenerator generator;
+
+        @Setup
+        public void setup()
+                throws IOException
+        {
+            event = new HttpRequestEvent(
+                    new DateTime(),
+                    "trace-token",
+                    "10.1.2.3",
+                    "http",
+                    "GET",
+                    "/v1/service/example?query=value",
+                    "user",
+                    "Mozilla/5.0 (X11; Linux x86_64)",
+                    "http://example.com/",
+                    0,
+                    null,
+                    1234,
+                    200,
+                    "application/json",
+                    1,
+                    5L,
+                    10);
+            generator = new JsonFactory().createGenerator(ByteStreams.nullOutputStream(), JsonEncoding.UTF8);
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .addProfiler(ProfilerType.GC)
+                .include(".*" + BenchmarkHttpRequestEventSerializer.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
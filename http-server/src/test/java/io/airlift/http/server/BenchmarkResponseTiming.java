@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.ProfilerType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of small responses served with request timing and statistics
+ * recording enabled, as they are for every request of the HTTP server.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class BenchmarkResponseTiming
+{
+    // pipeline requests on one connection so that the cost of connection setup does not dominate
+    private static final int PIPELINED_REQUESTS = 32;
+    private static final String REQUESTS = Strings.repeat("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n", PIPELINED_REQUESTS - 1) +
+            "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+
+    @GenerateMicroBenchmark
+    @OperationsPerInvocation(PIPELINED_REQUESTS)
+    public String smallResponse(Data data)
+            throws Exception
+    {
+        return data.connector.getResponses(REQUESTS);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data
+    {
+        private Server server;
+        private LocalConnector connector;
+
+        @Setup
+        public void setup()
+                throws Exception
+        {
+            server = new Server();
+            List<RequestLog> requestLogs = ImmutableList.of(new StatsRecordingHandler(new RequestStats()));
+            connector = new LocalConnector(server, new TimingHttpConnectionFactory(new HttpConfiguration(), requestLogs));
+            server.addConnector(connector);
+
+            ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+            context.addServlet(new ServletHolder(new SmallResponseServlet()), "/*");
+            server.setHandler(context);
+            server.start();
+        }
+
+        @TearDown
+        public void tearDown()
+                throws Exception
+        {
+            server.stop();
+        }
+    }
+
+    private static class SmallResponseServlet
+            extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            response.setContentType("text/plain");
+            response.getWriter().write("hello world");
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkResponseTiming.class.getSimpleName() + ".*")
+                .addProfiler(ProfilerType.GC)
+                .build();
+
+        new Runner(options).run();
+    }
+}
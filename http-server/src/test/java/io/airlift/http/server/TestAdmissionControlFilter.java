@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.server.ConcurrencyLimiter.Priority;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static com.google.common.net.HttpHeaders.RETRY_AFTER;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdmissionControlFilter
+{
+    @Test
+    public void testRejectsWhenOverloaded()
+            throws Exception
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        AdmissionControlFilter filter = new AdmissionControlFilter(limiter, ImmutableList.of("/health"), ImmutableList.of(), 3);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        HttpServletRequest request = request("/v1/resource");
+        filter.doFilter(request, response, chain);
+
+        verify(response).setHeader(RETRY_AFTER, "3");
+        verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server is overloaded");
+        verify(chain, never()).doFilter(request, response);
+        assertEquals(limiter.getInFlight(), 1);
+    }
+
+    @Test
+    public void testCriticalPathAdmittedWhenOverloaded()
+            throws Exception
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        AdmissionControlFilter filter = new AdmissionControlFilter(limiter, ImmutableList.of("/health"), ImmutableList.of(), 3);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        HttpServletRequest request = request("/health/check");
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        verify(response, never()).sendError(any(Integer.class), any(String.class));
+        assertEquals(limiter.getInFlight(), 1);
+    }
+
+    @Test
+    public void testAsyncRequestReleasedOnCompletion()
+            throws Exception
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        AdmissionControlFilter filter = new AdmissionControlFilter(limiter, ImmutableList.of(), ImmutableList.of(), 1);
+
+        HttpServletRequest request = request("/v1/resource");
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.isAsyncStarted()).thenReturn(true);
+        when(request.getAsyncContext()).thenReturn(asyncContext);
+
+        filter.doFilter(request, mock(HttpServletResponse.class), mock(FilterChain.class));
+        assertEquals(limiter.getInFlight(), 1);
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+
+        // a timed out request also completes, but must only be released once
+        listener.getValue().onTimeout(null);
+        listener.getValue().onComplete(null);
+        assertEquals(limiter.getInFlight(), 0);
+    }
+
+    private static HttpServletRequest request(String path)
+    {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRequestURI()).thenReturn(path);
+        return request;
+    }
+}
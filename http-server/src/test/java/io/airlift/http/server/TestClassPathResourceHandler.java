@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.airlift.http.client.jetty.JettyHttpClient;
+import io.airlift.units.DataSize;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.net.HttpHeaders.VARY;
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.Request.Builder.prepareHead;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class TestClassPathResourceHandler
+{
+    private Server server;
+    private URI baseUri;
+    private HttpClient client;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        HandlerList handlers = new HandlerList();
+        handlers.addHandler(new ClassPathResourceHandler("/", "webapp/cache", ImmutableList.of("small.txt")));
+        // too small to hold repeated.txt
+        handlers.addHandler(new ClassPathResourceHandler("/small-cache", "webapp/cache", ImmutableList.<String>of(), new DataSize(1, KILOBYTE)));
+        server.setHandler(handlers);
+        server.start();
+        baseUri = URI.create("http://127.0.0.1:" + connector.getLocalPort());
+        client = new JettyHttpClient();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testGet()
+            throws Exception
+    {
+        CapturedResponse response = get("/repeated.txt");
+        assertEquals(response.status, 200);
+        assertEquals(response.body, resource("repeated.txt"));
+        assertNull(response.contentEncoding);
+        assertNotNull(response.etag);
+        assertNotNull(response.lastModified);
+        assertEquals(response.cacheControl, "no-cache");
+        assertEquals(response.vary, ACCEPT_ENCODING);
+
+        // served from the cache
+        assertEquals(get("/repeated.txt").body, resource("repeated.txt"));
+        assertEquals(get("/repeated.txt").etag, response.etag);
+    }
+
+    @Test
+    public void testWelcomeFile()
+            throws Exception
+    {
+        CapturedResponse response = get("/");
+        assertEquals(response.status, 200);
+        assertEquals(response.body, resource("small.txt"));
+    }
+
+    @Test
+    public void testHead()
+            throws Exception
+    {
+        CapturedResponse response = client.execute(prepareHead().setUri(baseUri.resolve("/repeated.txt")).build(), new CapturingResponseHandler());
+        assertEquals(response.status, 200);
+        assertEquals(response.body.length, 0);
+        assertNotNull(response.etag);
+    }
+
+    @Test
+    public void testGzip()
+            throws Exception
+    {
+        CapturedResponse response = get("/repeated.txt", ACCEPT_ENCODING, "deflate, gzip");
+        assertEquals(response.status, 200);
+        assertEquals(response.contentEncoding, "gzip");
+        assertEquals(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(response.body))), resource("repeated.txt"));
+        assertNotEquals(response.etag, get("/repeated.txt").etag);
+
+        assertNull(get("/repeated.txt", ACCEPT_ENCODING, "gzip;q=0").contentEncoding);
+        assertNull(get("/repeated.txt", ACCEPT_ENCODING, "identity").contentEncoding);
+
+        // compressing does not make small resources smaller
+        CapturedResponse small = get("/small.txt", ACCEPT_ENCODING, "gzip");
+        assertNull(small.contentEncoding);
+        assertNull(small.vary);
+        assertEquals(small.body, resource("small.txt"));
+    }
+
+    @Test
+    public void testIfNoneMatch()
+            throws Exception
+    {
+        String etag = get("/repeated.txt").etag;
+
+        CapturedResponse response = get("/repeated.txt", IF_NONE_MATCH, etag);
+        assertEquals(response.status, 304);
+        assertEquals(response.body.length, 0);
+        assertEquals(response.etag, etag);
+
+        assertEquals(get("/repeated.txt", IF_NONE_MATCH, "\"other\", " + etag).status, 304);
+        assertEquals(get("/repeated.txt", IF_NONE_MATCH, "\"other\"").status, 200);
+
+        // the etag of the uncompressed representation does not match the compressed one
+        assertEquals(client.execute(prepareGet()
+                .setUri(baseUri.resolve("/repeated.txt"))
+                .addHeader(IF_NONE_MATCH, etag)
+                .addHeader(ACCEPT_ENCODING, "gzip")
+                .build(), new CapturingResponseHandler()).status, 200);
+    }
+
+    @Test
+    public void testIfModifiedSince()
+            throws Exception
+    {
+        String lastModified = get("/repeated.txt").lastModified;
+
+        assertEquals(get("/repeated.txt", IF_MODIFIED_SINCE, lastModified).status, 304);
+        assertEquals(get("/repeated.txt", IF_MODIFIED_SINCE, "Thu, 01 Jan 1970 00:00:00 GMT").status, 200);
+        assertEquals(get("/repeated.txt", IF_MODIFIED_SINCE, "not a date").status, 200);
+    }
+
+    @Test
+    public void testResourceTooLargeToCache()
+            throws Exception
+    {
+        for (int i = 0; i < 2; i++) {
+            CapturedResponse response = get("/small-cache/repeated.txt", ACCEPT_ENCODING, "gzip");
+            assertEquals(response.status, 200);
+            assertEquals(response.body, resource("repeated.txt"));
+            assertNull(response.contentEncoding);
+            assertNull(response.etag);
+            assertNotNull(response.lastModified);
+        }
+
+        assertEquals(get("/small-cache/small.txt").body, resource("small.txt"));
+        assertNotNull(get("/small-cache/small.txt").etag);
+    }
+
+    @Test
+    public void testMissingResource()
+            throws Exception
+    {
+        assertEquals(get("/missing.txt").status, 404);
+    }
+
+    private CapturedResponse get(String path)
+    {
+        return client.execute(prepareGet().setUri(baseUri.resolve(path)).build(), new CapturingResponseHandler());
+    }
+
+    private CapturedResponse get(String path, String header, String value)
+    {
+        return client.execute(prepareGet().setUri(baseUri.resolve(path)).addHeader(header, value).build(), new CapturingResponseHandler());
+    }
+
+    private static byte[] resource(String name)
+            throws IOException
+    {
+        return Resources.toByteArray(Resources.getResource("webapp/cache/" + name));
+    }
+
+    private static class CapturedResponse
+    {
+        private final int status;
+        private final byte[] body;
+        private final String etag;
+        private final String lastModified;
+        private final String cacheControl;
+        private final String contentEncoding;
+        private final String vary;
+
+        public CapturedResponse(Response response, byte[] body)
+        {
+            this.status = response.getStatusCode();
+            this.body = body;
+            this.etag = response.getHeader(ETAG);
+            this.lastModified = response.getHeader(LAST_MODIFIED);
+            this.cacheControl = response.getHeader(CACHE_CONTROL);
+            this.contentEncoding = response.getHeader(CONTENT_ENCODING);
+            this.vary = response.getHeader(VARY);
+        }
+    }
+
+    private static class CapturingResponseHandler
+            implements ResponseHandler<CapturedResponse, RuntimeException>
+    {
+        @Override
+        public CapturedResponse handleException(Request request, Exception exception)
+        {
+            throw new RuntimeException(exception);
+        }
+
+        @Override
+        public CapturedResponse handle(Request request, Response response)
+        {
+            try {
+                return new CapturedResponse(response, ByteStreams.toByteArray(response.getInputStream()));
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import io.airlift.http.server.ConcurrencyLimiter.Priority;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestConcurrencyLimiter
+{
+    @Test
+    public void testRejectsAboveLimit()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        }
+        assertFalse(limiter.tryAcquire(Priority.NORMAL));
+        assertEquals(limiter.getInFlight(), 4);
+        assertEquals(limiter.getRejected().getTotalCount(), 1);
+
+        limiter.release(0);
+        assertTrue(limiter.tryAcquire(Priority.NORMAL));
+    }
+
+    @Test
+    public void testCriticalNeverRejected()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        }
+        assertEquals(limiter.getInFlight(), 11);
+        assertEquals(limiter.getRejected().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testLowPriorityRejectedFirst()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(Priority.LOW));
+        }
+        assertFalse(limiter.tryAcquire(Priority.LOW));
+        assertTrue(limiter.tryAcquire(Priority.NORMAL));
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsStable()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            runAtLimit(limiter, MILLISECONDS.toNanos(10));
+        }
+        assertEquals(limiter.getLimit(), 100);
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyIncreases()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(50, 5, 100);
+        for (int i = 0; i < 10; i++) {
+            runAtLimit(limiter, MILLISECONDS.toNanos(10));
+        }
+        int stableLimit = limiter.getLimit();
+
+        for (int i = 0; i < 3; i++) {
+            runAtLimit(limiter, MILLISECONDS.toNanos(100));
+        }
+        assertTrue(limiter.getLimit() < stableLimit / 2, "limit did not shrink: " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 5);
+    }
+
+    @Test
+    public void testLimitUnchangedWhenUnused()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(Priority.NORMAL));
+            limiter.release(MILLISECONDS.toNanos(10));
+        }
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    private static void runAtLimit(ConcurrencyLimiter limiter, long latencyNanos)
+    {
+        int admitted = 0;
+        while (limiter.tryAcquire(Priority.NORMAL)) {
+            admitted++;
+        }
+        for (int i = 0; i < admitted; i++) {
+            limiter.release(latencyNanos);
+        }
+    }
+}
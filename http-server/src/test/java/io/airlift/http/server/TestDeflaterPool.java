@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import org.testng.annotations.Test;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestDeflaterPool
+{
+    @Test
+    public void testReuse()
+    {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        Deflater first = pool.acquire();
+        Deflater second = pool.acquire();
+        assertNotSame(first, second);
+        assertEquals(pool.getCreated().getTotalCount(), 2);
+
+        pool.release(first);
+        // the pool is full, so this one is released
+        pool.release(second);
+        assertEquals(pool.getPooled(), 1);
+
+        assertSame(pool.acquire(), first);
+        assertEquals(pool.getCreated().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testRecordsCompression()
+            throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(4, Deflater.BEST_SPEED);
+        byte[] input = new byte[100_000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) (i % 7);
+        }
+
+        Deflater deflater = pool.acquire();
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] output = new byte[input.length];
+        int length = 0;
+        while (!deflater.finished()) {
+            length += deflater.deflate(output, length, output.length - length, Deflater.NO_FLUSH);
+        }
+        pool.release(deflater);
+
+        assertEquals(pool.getInputBytes().getTotalCount(), input.length);
+        assertEquals(pool.getOutputBytes().getTotalCount(), length);
+        assertEquals(pool.getCpuTime().getAllTime().getCount(), 1.0);
+        assertTrue(length < input.length);
+
+        // pooled deflaters produce raw deflate output
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(output, 0, length);
+        byte[] inflated = new byte[input.length];
+        assertEquals(inflater.inflate(inflated), input.length);
+        assertEquals(inflated, input);
+        inflater.end();
+
+        // the deflater is reset for the next response
+        Deflater reused = pool.acquire();
+        assertSame(reused, deflater);
+        assertEquals(reused.getBytesRead(), 0);
+        pool.close();
+    }
+}
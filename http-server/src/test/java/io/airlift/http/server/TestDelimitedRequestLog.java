@@ -18,9 +18,14 @@ package io.airlift.http.server;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.event.client.EventClient;
 import io.airlift.event.client.InMemoryEventClient;
 import io.airlift.tracetoken.TraceTokenManager;
+import io.airlift.units.Duration;
 import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.joda.time.format.DateTimeFormatter;
@@ -36,7 +41,16 @@ import java.io.IOException;
 import java.security.Principal;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.collect.Iterables.size;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -73,6 +87,8 @@ public class TestDelimitedRequestLog
         final Request request = mock(Request.class);
         final Response response = mock(Response.class);
         final Principal principal = mock(Principal.class);
+        final HttpChannel<?> channel = mock(HttpChannel.class);
+        final TimingHttpConnection connection = mock(TimingHttpConnection.class);
 
         final long timeToFirstByte = 456;
         final long timeToLastByte = 3453;
@@ -105,7 +121,12 @@ public class TestDelimitedRequestLog
         when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(ImmutableList.of("1.1.1.1, 2.2.2.2", "3.3.3.3, " + ip)));
         when(request.getProtocol()).thenReturn("unknown");
         when(request.getHeader("X-FORWARDED-PROTO")).thenReturn(protocol);
-        when(request.getAttribute(TimingFilter.FIRST_BYTE_TIME)).thenReturn(timestamp + timeToFirstByte);
+        doReturn(channel).when(request).getHttpChannel();
+        when(channel.getHttpTransport()).thenReturn(connection);
+        when(connection.isDispatched()).thenReturn(true);
+        when(connection.getDispatchTime()).thenReturn(timestamp);
+        when(connection.getFirstByteTime()).thenReturn(timestamp + timeToFirstByte);
+        when(connection.getLastByteTime()).thenReturn(timestamp + timeToLastByte);
         when(request.getUri()).thenReturn(uri);
         when(request.getUserPrincipal()).thenReturn(principal);
         when(request.getMethod()).thenReturn(method);
@@ -242,4 +263,140 @@ public class TestDelimitedRequestLog
 
         Assert.assertEquals(event.getClientAddress(), clientIp);
     }
+
+    @Test
+    public void testBatchesEvents()
+            throws Exception
+    {
+        BatchRecordingEventClient eventClient = new BatchRecordingEventClient(new CountDownLatch(0));
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, Long.MAX_VALUE, null, eventClient, 100, 10, new Duration(1, TimeUnit.HOURS), false);
+        for (int i = 0; i < 25; i++) {
+            logger.log(mock(Request.class), mock(Response.class));
+        }
+        logger.stop();
+
+        int total = 0;
+        for (int batchSize : eventClient.getBatchSizes()) {
+            assertTrue(batchSize <= 10, "batch size " + batchSize);
+            total += batchSize;
+        }
+        assertEquals(total, 25);
+        assertEquals(Files.readLines(file, Charsets.UTF_8).size(), 25);
+        assertEquals(logger.getDroppedEvents().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testFlushesAfterInterval()
+            throws Exception
+    {
+        BatchRecordingEventClient eventClient = new BatchRecordingEventClient(new CountDownLatch(0));
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, Long.MAX_VALUE, null, eventClient, 100, 1000, new Duration(10, TimeUnit.MILLISECONDS), false);
+        try {
+            logger.log(mock(Request.class), mock(Response.class));
+            assertTrue(eventClient.awaitBatch(10, TimeUnit.SECONDS), "batch was not posted");
+            assertEquals(eventClient.getBatchSizes(), ImmutableList.of(1));
+        }
+        finally {
+            logger.stop();
+        }
+    }
+
+    @Test
+    public void testDropsEventsWhenFull()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        BatchRecordingEventClient eventClient = new BatchRecordingEventClient(release);
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, Long.MAX_VALUE, null, eventClient, 1, 1, new Duration(1, TimeUnit.HOURS), false);
+
+        // the first event blocks the drainer in the event client, the second one fills the queue
+        logger.log(mock(Request.class), mock(Response.class));
+        assertTrue(eventClient.awaitBatch(10, TimeUnit.SECONDS), "batch was not posted");
+        logger.log(mock(Request.class), mock(Response.class));
+        assertEquals(logger.getQueueSize(), 1);
+
+        logger.log(mock(Request.class), mock(Response.class));
+        logger.log(mock(Request.class), mock(Response.class));
+        assertEquals(logger.getDroppedEvents().getTotalCount(), 2);
+
+        release.countDown();
+        logger.stop();
+        assertEquals(eventClient.getBatchSizes(), ImmutableList.of(1, 1));
+    }
+
+    @Test
+    public void testStopReleasesBlockedWriter()
+            throws Exception
+    {
+        BatchRecordingEventClient eventClient = new BatchRecordingEventClient(new CountDownLatch(1));
+        DelimitedRequestLog logger = new DelimitedRequestLog(file.getAbsolutePath(), 1, Long.MAX_VALUE, null, eventClient, 1, 1, new Duration(1, TimeUnit.HOURS), true);
+
+        // the first event blocks the drainer in the event client, the second one fills the queue
+        logger.log(mock(Request.class), mock(Response.class));
+        assertTrue(eventClient.awaitBatch(10, TimeUnit.SECONDS), "batch was not posted");
+        logger.log(mock(Request.class), mock(Response.class));
+
+        Thread writer = new Thread(() -> logger.log(mock(Request.class), mock(Response.class)));
+        writer.start();
+        while (writer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        // stop interrupts the event client, and the blocked event is never written
+        logger.stop();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(writer.isAlive(), "writer is still blocked");
+        assertEquals(logger.getDroppedEvents().getTotalCount(), 1);
+        assertEquals(Files.readLines(file, Charsets.UTF_8).size(), 2);
+    }
+
+    private static class BatchRecordingEventClient
+            implements EventClient
+    {
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final CountDownLatch posted = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        private BatchRecordingEventClient(CountDownLatch release)
+        {
+            this.release = release;
+        }
+
+        public List<Integer> getBatchSizes()
+        {
+            return ImmutableList.copyOf(batchSizes);
+        }
+
+        public boolean awaitBatch(long timeout, TimeUnit unit)
+                throws InterruptedException
+        {
+            return posted.await(timeout, unit);
+        }
+
+        @Override
+        public <T> ListenableFuture<Void> post(T... event)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> ListenableFuture<Void> post(Iterable<T> events)
+        {
+            batchSizes.add(size(events));
+            posted.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public <T> ListenableFuture<Void> post(EventGenerator<T> eventGenerator)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
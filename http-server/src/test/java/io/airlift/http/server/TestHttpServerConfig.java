@@ -41,6 +41,10 @@ public class TestHttpServerConfig
                 .setLogEnabled(true)
                 .setLogMaxFileSize(new DataSize(Long.MAX_VALUE, DataSize.Unit.BYTE))
                 .setLogHistory(15)
+                .setLogQueueSize(10_000)
+                .setLogMaxBatchSize(1_000)
+                .setLogFlushInterval(new Duration(1, TimeUnit.SECONDS))
+                .setLogBlockWhenFull(false)
                 .setHttpAcceptorThreads(null)
                 .setHttpSelectorThreads(null)
                 .setHttpsAcceptorThreads(null)
@@ -56,6 +60,22 @@ public class TestHttpServerConfig
                 .setAdminMaxThreads(200)
                 .setMaxRequestHeaderSize(null)
                 .setShowStackTrace(true)
+                .setResourceCacheMaxSize(new DataSize(16, DataSize.Unit.MEGABYTE))
+                .setAdmissionControlEnabled(false)
+                .setAdmissionControlInitialLimit(100)
+                .setAdmissionControlMinLimit(10)
+                .setAdmissionControlMaxLimit(1000)
+                .setAdmissionControlRetryAfter(new Duration(1, TimeUnit.SECONDS))
+                .setAdmissionControlCriticalPaths(null)
+                .setAdmissionControlLowPriorityPaths(null)
+                .setCompressionEnabled(true)
+                .setCompressionMinSize(new DataSize(256, DataSize.Unit.BYTE))
+                .setCompressionLevel(-1)
+                .setCompressionDeflaterPoolSize(64)
+                .setCompressionMimeTypes(null)
+                .setCompressionExcludedPaths(null)
+                .setShutdownDrainTimeout(new Duration(30, TimeUnit.SECONDS))
+                .setStatsTopKeys(0)
         );
     }
 
@@ -74,6 +94,10 @@ public class TestHttpServerConfig
                 .put("http-server.log.enabled", "false")
                 .put("http-server.log.max-size", "1GB")
                 .put("http-server.log.max-history", "1")
+                .put("http-server.log.queue-size", "100")
+                .put("http-server.log.max-batch-size", "10")
+                .put("http-server.log.flush-interval", "5s")
+                .put("http-server.log.block-when-full", "true")
                 .put("http-server.http.acceptor-threads", "10")
                 .put("http-server.http.selector-threads", "11")
                 .put("http-server.https.acceptor-threads", "12")
@@ -89,6 +113,22 @@ public class TestHttpServerConfig
                 .put("http-server.admin.threads.max", "4")
                 .put("http-server.max-request-header-size", "32kB")
                 .put("http-server.show-stack-trace", "false")
+                .put("http-server.resource-cache.max-size", "1MB")
+                .put("http-server.admission-control.enabled", "true")
+                .put("http-server.admission-control.initial-limit", "50")
+                .put("http-server.admission-control.min-limit", "5")
+                .put("http-server.admission-control.max-limit", "500")
+                .put("http-server.admission-control.retry-after", "5s")
+                .put("http-server.admission-control.critical-paths", "/v1/status,/health")
+                .put("http-server.admission-control.low-priority-paths", "/v1/batch")
+                .put("http-server.compression.enabled", "false")
+                .put("http-server.compression.min-size", "1kB")
+                .put("http-server.compression.level", "6")
+                .put("http-server.compression.deflater-pool-size", "16")
+                .put("http-server.compression.mime-types", "application/json,text/plain")
+                .put("http-server.compression.excluded-paths", "/v1/stream")
+                .put("http-server.shutdown.drain-timeout", "45s")
+                .put("http-server.stats.top-keys", "20")
                 .build();
 
         HttpServerConfig expected = new HttpServerConfig()
@@ -103,6 +143,10 @@ public class TestHttpServerConfig
                 .setLogEnabled(false)
                 .setLogMaxFileSize(new DataSize(1, DataSize.Unit.GIGABYTE))
                 .setLogHistory(1)
+                .setLogQueueSize(100)
+                .setLogMaxBatchSize(10)
+                .setLogFlushInterval(new Duration(5, TimeUnit.SECONDS))
+                .setLogBlockWhenFull(true)
                 .setHttpAcceptorThreads(10)
                 .setHttpSelectorThreads(11)
                 .setHttpsAcceptorThreads(12)
@@ -117,7 +161,23 @@ public class TestHttpServerConfig
                 .setAdminPort(3)
                 .setAdminMinThreads(3)
                 .setAdminMaxThreads(4)
-                .setShowStackTrace(false);
+                .setShowStackTrace(false)
+                .setResourceCacheMaxSize(new DataSize(1, DataSize.Unit.MEGABYTE))
+                .setAdmissionControlEnabled(true)
+                .setAdmissionControlInitialLimit(50)
+                .setAdmissionControlMinLimit(5)
+                .setAdmissionControlMaxLimit(500)
+                .setAdmissionControlRetryAfter(new Duration(5, TimeUnit.SECONDS))
+                .setAdmissionControlCriticalPaths("/v1/status,/health")
+                .setAdmissionControlLowPriorityPaths("/v1/batch")
+                .setCompressionEnabled(false)
+                .setCompressionMinSize(new DataSize(1, DataSize.Unit.KILOBYTE))
+                .setCompressionLevel(6)
+                .setCompressionDeflaterPoolSize(16)
+                .setCompressionMimeTypes("application/json,text/plain")
+                .setCompressionExcludedPaths("/v1/stream")
+                .setShutdownDrainTimeout(new Duration(45, TimeUnit.SECONDS))
+                .setStatsTopKeys(20);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
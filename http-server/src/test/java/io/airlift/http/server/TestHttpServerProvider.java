@@ -17,7 +17,10 @@ package io.airlift.http.server;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import io.airlift.event.client.EventClient;
+import io.airlift.event.client.InMemoryEventClient;
 import io.airlift.event.client.NullEventClient;
 import io.airlift.http.client.HttpClient;
 import io.airlift.http.client.HttpClientConfig;
@@ -29,6 +32,7 @@ import io.airlift.log.Logging;
 import io.airlift.node.NodeInfo;
 import io.airlift.testing.FileUtils;
 import io.airlift.tracetoken.TraceTokenManager;
+import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -37,13 +41,26 @@ import org.testng.annotations.Test;
 
 import javax.servlet.Filter;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.google.common.io.Resources.getResource;
 import static io.airlift.http.client.Request.Builder.prepareGet;
@@ -51,6 +68,7 @@ import static io.airlift.http.client.StatusResponseHandler.createStatusResponseH
 import static io.airlift.http.client.StringResponseHandler.createStringResponseHandler;
 import static io.airlift.testing.Assertions.assertContains;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -111,6 +129,35 @@ public class TestHttpServerProvider
         }
     }
 
+    @Test
+    public void testRequestTiming()
+            throws Exception
+    {
+        RequestStats stats = new RequestStats();
+        InMemoryEventClient eventClient = new InMemoryEventClient();
+        createServer(new DummyServlet(), stats, eventClient);
+        server.start();
+
+        try (JettyHttpClient httpClient = new JettyHttpClient()) {
+            StatusResponse response = httpClient.execute(prepareGet().setUri(httpServerInfo.getHttpUri()).build(), createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), HttpServletResponse.SC_OK);
+        }
+
+        // stopping the server flushes the request log
+        server.stop();
+
+        assertEquals(stats.getRequest().getTotalCount(), 1);
+        assertEquals(stats.getRouteStats(null, "GET", 200).getRequestTime().getAllTime().getCount(), 1.0);
+
+        List<Object> events = eventClient.getEvents();
+        assertEquals(events.size(), 1);
+        HttpRequestEvent event = (HttpRequestEvent) events.get(0);
+        assertEquals(event.getResponseCode(), HttpServletResponse.SC_OK);
+        assertNotNull(event.getTimeToFirstByte());
+        assertTrue(event.getTimeToDispatch() <= event.getTimeToFirstByte());
+        assertTrue(event.getTimeToFirstByte() <= event.getTimeToLastByte());
+    }
+
     @Test
     public void testFilter()
             throws Exception
@@ -201,6 +248,167 @@ public class TestHttpServerProvider
         }
     }
 
+    @Test
+    public void testCompression()
+            throws Exception
+    {
+        config.setCompressionMinSize(new DataSize(1, DataSize.Unit.KILOBYTE));
+        createServer(new CompressionServlet());
+        server.start();
+
+        byte[] body = CompressionServlet.body(10_000);
+
+        CompressionResponse response = get("/?size=10000", "gzip");
+        assertEquals(response.contentEncoding, "gzip");
+        assertEquals(response.body, body);
+        // the deflater is returned to the pool, and its work recorded, after the response is sent
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getCompression().getInputBytes().getTotalCount() < body.length && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(server.getCompression().getCpuTime().getAllTime().getCount(), 1.0);
+        assertEquals(server.getCompression().getInputBytes().getTotalCount(), body.length);
+
+        // below the minimum size
+        response = get("/?size=100", "gzip");
+        assertNull(response.contentEncoding);
+        assertEquals(response.body, CompressionServlet.body(100));
+
+        // client does not accept gzip
+        response = get("/?size=10000", "identity");
+        assertNull(response.contentEncoding);
+        assertEquals(response.body, body);
+
+        // precompressed body is sent as is
+        response = get("/?size=10000&precompressed=true", "gzip");
+        assertEquals(response.contentEncoding, "gzip");
+        assertEquals(response.body, body);
+
+        assertEquals(server.getCompression().getCpuTime().getAllTime().getCount(), 1.0);
+    }
+
+    @Test
+    public void testCompressionDisabled()
+            throws Exception
+    {
+        config.setCompressionEnabled(false);
+        createServer(new CompressionServlet());
+        server.start();
+
+        CompressionResponse response = get("/?size=10000", "gzip");
+        assertNull(response.contentEncoding);
+        assertEquals(response.body, CompressionServlet.body(10_000));
+        assertNull(server.getCompression());
+    }
+
+    @Test
+    public void testShutdownDrainsInFlightRequests()
+            throws Exception
+    {
+        config.setShutdownDrainTimeout(new Duration(30, TimeUnit.SECONDS));
+        BlockingServlet servlet = new BlockingServlet();
+        createServer(servlet);
+        server.start();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<HttpURLConnection> request = executor.submit(() -> openConnection("/", "identity"));
+            assertTrue(servlet.started.await(10, TimeUnit.SECONDS));
+
+            Future<?> stop = executor.submit(() -> {
+                server.stop();
+                return null;
+            });
+
+            // new connections are refused while the in-flight request is drained
+            assertConnectionRefused(httpServerInfo.getHttpUri().getPort());
+            assertFalse(stop.isDone());
+
+            servlet.release.countDown();
+            HttpURLConnection connection = request.get(10, TimeUnit.SECONDS);
+            try {
+                assertEquals(connection.getHeaderField("Connection"), "close");
+            }
+            finally {
+                connection.disconnect();
+            }
+            stop.get(10, TimeUnit.SECONDS);
+        }
+        finally {
+            servlet.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdownDrainTimeout()
+            throws Exception
+    {
+        config.setShutdownDrainTimeout(new Duration(100, TimeUnit.MILLISECONDS));
+        BlockingServlet servlet = new BlockingServlet();
+        createServer(servlet);
+        server.start();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            executor.submit(() -> openConnection("/", "identity"));
+            assertTrue(servlet.started.await(10, TimeUnit.SECONDS));
+
+            // the request never completes, so the server gives up waiting and stops
+            long start = System.nanoTime();
+            server.stop();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        }
+        finally {
+            servlet.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertConnectionRefused(int port)
+            throws Exception
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                Thread.sleep(10);
+            }
+            catch (ConnectException e) {
+                return;
+            }
+        }
+        fail("server is still accepting connections");
+    }
+
+    private CompressionResponse get(String path, String acceptEncoding)
+            throws IOException
+    {
+        HttpURLConnection connection = openConnection(path, acceptEncoding);
+        try (InputStream in = connection.getInputStream()) {
+            String contentEncoding = connection.getHeaderField("Content-Encoding");
+            InputStream body = "gzip".equals(contentEncoding) ? new GZIPInputStream(in) : in;
+            return new CompressionResponse(contentEncoding, ByteStreams.toByteArray(body));
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection openConnection(String path, String acceptEncoding)
+            throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) httpServerInfo.getHttpUri().resolve(path).toURL().openConnection();
+        try {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+            assertEquals(connection.getResponseCode(), HttpServletResponse.SC_OK);
+            return connection;
+        }
+        catch (Throwable e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
     @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Insufficient threads: .*")
     public void testInsufficientThreadsHttp()
             throws Exception
@@ -252,7 +460,9 @@ public class TestHttpServerProvider
     public void testInsufficientThreadsAdmin()
             throws Exception
     {
-        config.setAdminMaxThreads(1);
+        // the pool grows to its minimum size, so both are needed to leave no thread beside the selector's
+        config.setAdminMinThreads(1)
+                .setAdminMaxThreads(1);
         createAndStartServer();
     }
 
@@ -270,6 +480,11 @@ public class TestHttpServerProvider
     }
 
     private void createServer(HttpServlet servlet)
+    {
+        createServer(servlet, new RequestStats(), new NullEventClient());
+    }
+
+    private void createServer(HttpServlet servlet, RequestStats stats, EventClient eventClient)
     {
         HashLoginServiceProvider loginServiceProvider = new HashLoginServiceProvider(config);
         HttpServerProvider serverProvider = new HttpServerProvider(httpServerInfo,
@@ -279,11 +494,75 @@ public class TestHttpServerProvider
                 ImmutableSet.<Filter>of(new DummyFilter()),
                 ImmutableSet.<HttpResourceBinding>of(),
                 ImmutableSet.<Filter>of(),
-                new RequestStats(),
-                new NullEventClient());
+                stats,
+                eventClient);
         serverProvider.setTheAdminServlet(new DummyServlet());
         serverProvider.setLoginService(loginServiceProvider.get());
         serverProvider.setTokenManager(new TraceTokenManager());
         server = serverProvider.get();
     }
+
+    private static class CompressionResponse
+    {
+        private final String contentEncoding;
+        private final byte[] body;
+
+        private CompressionResponse(String contentEncoding, byte[] body)
+        {
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+    }
+
+    private static class BlockingServlet
+            extends HttpServlet
+    {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            response.getOutputStream().write("done".getBytes(Charsets.UTF_8));
+        }
+    }
+
+    private static class CompressionServlet
+            extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws IOException
+        {
+            byte[] body = body(Integer.parseInt(request.getParameter("size")));
+            response.setContentType("text/plain");
+            if (Boolean.parseBoolean(request.getParameter("precompressed"))) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write(body);
+                }
+                body = compressed.toByteArray();
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.getOutputStream().write(body);
+        }
+
+        public static byte[] body(int size)
+        {
+            byte[] body = new byte[size];
+            for (int i = 0; i < size; i++) {
+                body[i] = (byte) ('a' + (i % 26));
+            }
+            return body;
+        }
+    }
 }
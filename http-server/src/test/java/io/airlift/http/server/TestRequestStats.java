@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.http.server;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.http.server.RequestStats.RouteStats;
+import io.airlift.units.Duration;
+import org.testng.annotations.Test;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.testing.TestingMBeanServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static io.airlift.http.server.RequestStats.DEFAULT_MAX_ROUTES;
+import static io.airlift.http.server.RequestStats.OTHER_ROUTE;
+import static io.airlift.http.server.RequestStats.UNMATCHED_ROUTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestRequestStats
+{
+    @Test
+    public void testRecordsPerRoute()
+    {
+        RequestStats stats = new RequestStats();
+        record(stats, "/v1/user/{id}", "GET", 200);
+        record(stats, "/v1/user/{id}", "GET", 204);
+        record(stats, "/v1/user/{id}", "GET", 404);
+        record(stats, "/v1/user/{id}", "PUT", 200);
+        record(stats, null, "GET", 404);
+
+        assertEquals(stats.getRequest().getTotalCount(), 5);
+        assertEquals(stats.getRouteCount(), 4);
+
+        RouteStats route = stats.getRouteStats("/v1/user/{id}", "GET", 201);
+        assertEquals(route.getRoute(), "/v1/user/{id}");
+        assertEquals(route.getMethod(), "GET");
+        assertEquals(route.getStatus(), "2xx");
+        assertEquals(route.getRequestTime().getAllTime().getCount(), 2.0);
+        assertEquals(route.getSchedulingDelay().getAllTime().getCount(), 2.0);
+        assertEquals(route.getReadBytes().getAllTime().getTotal(), 20.0);
+        assertEquals(route.getWrittenBytes().getAllTime().getTotal(), 40.0);
+
+        assertEquals(stats.getRouteStats(null, "GET", 404).getRoute(), UNMATCHED_ROUTE);
+    }
+
+    @Test
+    public void testNormalizesMethodAndStatus()
+    {
+        RequestStats stats = new RequestStats();
+        assertEquals(stats.getRouteStats("/", "BREW", 200).getMethod(), "OTHER");
+        assertEquals(stats.getRouteStats("/", null, 200).getMethod(), "OTHER");
+        assertEquals(stats.getRouteStats("/", "GET", 99).getStatus(), "other");
+        assertEquals(stats.getRouteStats("/", "GET", 600).getStatus(), "other");
+        assertEquals(stats.getRouteStats("/", "GET", 503).getStatus(), "5xx");
+    }
+
+    @Test
+    public void testRouteLimit()
+    {
+        RequestStats stats = new RequestStats(2);
+        RouteStats first = stats.getRouteStats("/a", "GET", 200);
+        stats.getRouteStats("/b", "GET", 200);
+
+        RouteStats overflow = stats.getRouteStats("/c", "GET", 200);
+        assertEquals(overflow.getRoute(), OTHER_ROUTE);
+        assertSame(stats.getRouteStats("/d", "GET", 200), overflow);
+        assertSame(stats.getRouteStats("/a", "GET", 200), first);
+        assertEquals(stats.getRouteCount(), 3);
+    }
+
+    @Test
+    public void testRoutesDisabled()
+    {
+        RequestStats stats = new RequestStats(0);
+        record(stats, "/a", "GET", 200);
+        assertNull(stats.getRouteStats("/a", "GET", 200));
+        assertEquals(stats.getRouteCount(), 0);
+        assertEquals(stats.getRequest().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testExportsRoutes()
+            throws Exception
+    {
+        MBeanServer server = new TestingMBeanServer();
+        MBeanExporter exporter = new MBeanExporter(server);
+
+        RequestStats stats = new RequestStats();
+        record(stats, "/v1/user/{id}", "GET", 200);
+        stats.setExporter(exporter);
+        record(stats, "/v1/user", "POST", 500);
+
+        ObjectName existing = new ObjectName(stats.getRouteStats("/v1/user/{id}", "GET", 200).getObjectName());
+        ObjectName added = new ObjectName(stats.getRouteStats("/v1/user", "POST", 500).getObjectName());
+        assertTrue(server.isRegistered(existing));
+        assertTrue(server.isRegistered(added));
+        assertEquals(ObjectName.unquote(existing.getKeyProperty("route")), "/v1/user/{id}");
+        assertEquals(existing.getKeyProperty("method"), "GET");
+        assertEquals(existing.getKeyProperty("status"), "2xx");
+
+        stats.unexportRoutes();
+        assertFalse(server.isRegistered(existing));
+        assertFalse(server.isRegistered(added));
+    }
+
+    @Test
+    public void testTopKeys()
+            throws Exception
+    {
+        RequestStats stats = new RequestStats(DEFAULT_MAX_ROUTES, 10);
+        assertTrue(stats.isTrackingTopKeys());
+        stats.recordTopKeys("/v1/user/1", "10.1.2.3");
+        stats.recordTopKeys("/v1/user/1", "10.1.2.4");
+        stats.recordTopKeys("/v1/user/2", "10.1.2.4");
+        stats.recordTopKeys(Strings.repeat("x", 1000), null);
+
+        assertEquals(stats.getTopPaths(), ImmutableMap.of("/v1/user/1", 2L, "/v1/user/2", 1L, Strings.repeat("x", 256), 1L));
+        assertEquals(stats.getTopClientAddresses(), ImmutableMap.of("10.1.2.4", 2L, "10.1.2.3", 1L));
+
+        MBeanServer server = new TestingMBeanServer();
+        ObjectName name = new ObjectName("test:name=RequestStats");
+        new MBeanExporter(server).export(name.toString(), stats);
+        assertEquals(server.getAttribute(name, "TopClientAddresses"), ImmutableMap.of("10.1.2.4", 2L, "10.1.2.3", 1L));
+    }
+
+    @Test
+    public void testTopKeysDisabled()
+    {
+        RequestStats stats = new RequestStats();
+        assertFalse(stats.isTrackingTopKeys());
+        stats.recordTopKeys("/", "10.1.2.3");
+        assertEquals(stats.getTopPaths(), ImmutableMap.of());
+        assertEquals(stats.getTopClientAddresses(), ImmutableMap.of());
+    }
+
+    private static void record(RequestStats stats, String route, String method, int responseCode)
+    {
+        stats.record(route, method, responseCode, 10, 20, new Duration(1, MILLISECONDS), new Duration(5, MILLISECONDS));
+    }
+}
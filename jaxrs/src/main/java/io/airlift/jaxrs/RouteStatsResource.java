@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jaxrs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.server.RequestStats;
+import io.airlift.http.server.RequestStats.RouteStats;
+import io.airlift.stats.DistributionStat.DistributionStatSnapshot;
+import io.airlift.stats.TimeStat.TimeDistributionStatSnapshot;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serves a JSON snapshot of the per route statistics of the HTTP server. This resource
+ * is not bound by default; bind it with {@code jaxrsBinder(binder).bind(RouteStatsResource.class)}.
+ */
+@Path("/v1/http-server/routes")
+public class RouteStatsResource
+{
+    private final RequestStats requestStats;
+
+    @Inject
+    public RouteStatsResource(RequestStats requestStats)
+    {
+        this.requestStats = checkNotNull(requestStats, "requestStats is null");
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<RouteStatsSnapshot> getRoutes()
+    {
+        ImmutableList.Builder<RouteStatsSnapshot> routes = ImmutableList.builder();
+        for (RouteStats stats : requestStats.getRoutes()) {
+            routes.add(new RouteStatsSnapshot(stats));
+        }
+        return routes.build();
+    }
+
+    public static class RouteStatsSnapshot
+    {
+        private final String route;
+        private final String method;
+        private final String status;
+        private final TimeDistributionStatSnapshot requestTime;
+        private final TimeDistributionStatSnapshot schedulingDelay;
+        private final DistributionStatSnapshot readBytes;
+        private final DistributionStatSnapshot writtenBytes;
+
+        private RouteStatsSnapshot(RouteStats stats)
+        {
+            route = stats.getRoute();
+            method = stats.getMethod();
+            status = stats.getStatus();
+            requestTime = stats.getRequestTime().snapshot();
+            schedulingDelay = stats.getSchedulingDelay().snapshot();
+            readBytes = stats.getReadBytes().snapshot();
+            writtenBytes = stats.getWrittenBytes().snapshot();
+        }
+
+        @JsonProperty
+        public String getRoute()
+        {
+            return route;
+        }
+
+        @JsonProperty
+        public String getMethod()
+        {
+            return method;
+        }
+
+        @JsonProperty
+        public String getStatus()
+        {
+            return status;
+        }
+
+        @JsonProperty
+        public TimeDistributionStatSnapshot getRequestTime()
+        {
+            return requestTime;
+        }
+
+        @JsonProperty
+        public TimeDistributionStatSnapshot getSchedulingDelay()
+        {
+            return schedulingDelay;
+        }
+
+        @JsonProperty
+        public DistributionStatSnapshot getReadBytes()
+        {
+            return readBytes;
+        }
+
+        @JsonProperty
+        public DistributionStatSnapshot getWrittenBytes()
+        {
+            return writtenBytes;
+        }
+    }
+}
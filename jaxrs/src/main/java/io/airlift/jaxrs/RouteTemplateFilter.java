@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jaxrs;
+
+import io.airlift.http.server.RequestStats;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+
+import java.util.List;
+
+/**
+ * Records the template of the matched resource method, e.g. {@code /v1/user/{id}}, so that
+ * {@link RequestStats} can keep statistics per route instead of per request path.
+ */
+@Provider
+public class RouteTemplateFilter
+        implements ContainerRequestFilter
+{
+    @Override
+    public void filter(ContainerRequestContext request)
+    {
+        UriInfo uriInfo = request.getUriInfo();
+        if (uriInfo instanceof ExtendedUriInfo) {
+            // the servlet container stores request properties as servlet request attributes
+            request.setProperty(RequestStats.ROUTE_ATTRIBUTE, routeTemplate(((ExtendedUriInfo) uriInfo).getMatchedTemplates()));
+        }
+    }
+
+    static String routeTemplate(List<UriTemplate> matchedTemplates)
+    {
+        // templates are ordered from the resource method to the root resource
+        StringBuilder route = new StringBuilder();
+        for (int i = matchedTemplates.size() - 1; i >= 0; i--) {
+            String template = matchedTemplates.get(i).getTemplate();
+            int end = template.length();
+            while (end > 0 && template.charAt(end - 1) == '/') {
+                end--;
+            }
+            if (end == 0) {
+                continue;
+            }
+            if (template.charAt(0) != '/') {
+                route.append('/');
+            }
+            route.append(template, 0, end);
+        }
+        if (route.length() == 0) {
+            return "/";
+        }
+        return route.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jaxrs;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.http.server.RequestStats;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+import java.util.List;
+
+import static io.airlift.jaxrs.RouteTemplateFilter.routeTemplate;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestRouteTemplateFilter
+{
+    @Test
+    public void testRouteTemplate()
+    {
+        assertEquals(routeTemplate(templates("/{id}", "/v1/user")), "/v1/user/{id}");
+        assertEquals(routeTemplate(templates("{id}", "v1/user")), "/v1/user/{id}");
+        assertEquals(routeTemplate(templates("", "/v1/user/")), "/v1/user");
+        assertEquals(routeTemplate(templates("/")), "/");
+        assertEquals(routeTemplate(ImmutableList.of()), "/");
+    }
+
+    @Test
+    public void testSetsRouteProperty()
+    {
+        ExtendedUriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getMatchedTemplates()).thenReturn(templates("/{id}", "/v1/user"));
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+
+        new RouteTemplateFilter().filter(request);
+
+        verify(request).setProperty(RequestStats.ROUTE_ATTRIBUTE, "/v1/user/{id}");
+    }
+
+    private static List<UriTemplate> templates(String... templates)
+    {
+        ImmutableList.Builder<UriTemplate> builder = ImmutableList.builder();
+        for (String template : templates) {
+            builder.add(template.isEmpty() ? UriTemplate.EMPTY : new UriTemplate(template));
+        }
+        return builder.build();
+    }
+}
@@ -32,6 +32,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Scopes;
 import io.airlift.discovery.client.DiscoveryBinder;
 import sun.management.LazyCompositeData;
 
@@ -60,6 +61,8 @@ public class JmxHttpModule implements Module
         binder.disableCircularProxies();
 
         jaxrsBinder(binder).bind(MBeanResource.class);
+        binder.bind(OpenMetricsRegistry.class).in(Scopes.SINGLETON);
+        jaxrsBinder(binder).bind(OpenMetricsResource.class);
         jsonBinder(binder).addSerializerBinding(InetAddress.class).toInstance(ToStringSerializer.instance);
         jsonBinder(binder).addSerializerBinding(ObjectName.class).toInstance(ToStringSerializer.instance);
         jsonBinder(binder).addSerializerBinding(OpenType.class).toInstance(ToStringSerializer.instance);
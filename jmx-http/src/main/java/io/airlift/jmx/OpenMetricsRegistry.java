@@ -0,0 +1,529 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jmx;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.Distribution;
+import io.airlift.stats.TimeDistribution;
+import org.weakref.jmx.Flatten;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Locale.ENGLISH;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Exposes the attributes of the objects exported by {@link MBeanExporter} in the OpenMetrics
+ * text format. Each exported object is walked once, following {@link Nested} and
+ * {@link Flatten} attributes, into a list of accessors for its numeric and boolean
+ * attributes, so a scrape only reads values and does not go through the MBean server.
+ * The objects are only walked again after the MBean server reports that an MBean was
+ * registered or unregistered, so the cost of a scrape does not grow with the number of
+ * exported objects.
+ *
+ * <p>Metric names are built from the domain and the {@code type} (or {@code name}) property
+ * of the object name, followed by the attribute path in snake case. The other properties
+ * of the object name become labels. {@link CounterStat} is exposed as a counter of its total
+ * count, and {@link Distribution} and {@link TimeDistribution} are exposed as histograms, or
+ * as gauge histograms when they decay. Time distributions are in seconds.</p>
+ */
+@Beta
+@ThreadSafe
+public class OpenMetricsRegistry
+{
+    private static final int MAX_DEPTH = 8;
+    private static final List<Long> BUCKETS = buckets(1, 1_000_000_000_000L);
+    private static final List<Long> TIME_BUCKETS_IN_NANOS = buckets(SECONDS.toNanos(1) / 1000, SECONDS.toNanos(100));
+    // the exporter adds an object to its map only after the MBean server has notified listeners
+    // of the registration, so the objects are walked again until the last change is this old
+    private static final long SETTLE_NANOS = SECONDS.toNanos(1);
+
+    private final Ticker ticker;
+    private final AtomicLong exportVersion = new AtomicLong();
+    private volatile long lastExportChange;
+
+    @GuardedBy("this")
+    private Supplier<Map<String, Object>> exportedObjects = ImmutableMap::of;
+    @GuardedBy("this")
+    private long compiledVersion = -1;
+    @GuardedBy("this")
+    private long compiledAt;
+    @GuardedBy("this")
+    private List<MetricFamily> families = ImmutableList.of();
+
+    @Inject
+    public OpenMetricsRegistry()
+    {
+        this(ImmutableMap::of, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    OpenMetricsRegistry(Supplier<Map<String, Object>> exportedObjects, Ticker ticker)
+    {
+        this.exportedObjects = checkNotNull(exportedObjects, "exportedObjects is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        this.lastExportChange = ticker.read();
+    }
+
+    /**
+     * Exposes the objects exported by the exporter. Without an exporter, no metrics are exposed.
+     */
+    @Inject(optional = true)
+    public synchronized void setExporter(MBeanExporter exporter, MBeanServer mbeanServer)
+    {
+        checkNotNull(exporter, "exporter is null");
+        checkNotNull(mbeanServer, "mbeanServer is null");
+        try {
+            mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, (notification, handback) -> {
+                if (notification instanceof MBeanServerNotification) {
+                    exportsChanged();
+                }
+            }, null, null);
+        }
+        catch (InstanceNotFoundException e) {
+            throw new IllegalStateException("MBean server has no delegate", e);
+        }
+        this.exportedObjects = exporter::getExportedObjects;
+        exportsChanged();
+    }
+
+    @VisibleForTesting
+    void exportsChanged()
+    {
+        lastExportChange = ticker.read();
+        exportVersion.incrementAndGet();
+    }
+
+    /**
+     * Writes the current value of every metric, followed by the {@code # EOF} marker.
+     */
+    public void write(Writer writer)
+            throws IOException
+    {
+        for (MetricFamily family : getMetricFamilies()) {
+            family.write(writer);
+        }
+        writer.write("# EOF\n");
+    }
+
+    private synchronized List<MetricFamily> getMetricFamilies()
+    {
+        // read the version first, so a change made while compiling is picked up by the next scrape
+        long version = exportVersion.get();
+        if (version != compiledVersion || compiledAt - lastExportChange < SETTLE_NANOS) {
+            compiledAt = ticker.read();
+            families = compile(exportedObjects.get());
+            compiledVersion = version;
+        }
+        return families;
+    }
+
+    private static List<MetricFamily> compile(Map<String, Object> objects)
+    {
+        Map<String, MetricFamily> families = new TreeMap<>();
+        for (Entry<String, Object> entry : objects.entrySet()) {
+            ObjectName objectName;
+            try {
+                objectName = ObjectName.getInstance(entry.getKey());
+            }
+            catch (MalformedObjectNameException e) {
+                continue;
+            }
+
+            String nameProperty = objectName.getKeyProperty("type") != null ? "type" : "name";
+            StringBuilder name = new StringBuilder(objectName.getDomain());
+            if (objectName.getKeyProperty(nameProperty) != null) {
+                name.append('_').append(unquote(objectName.getKeyProperty(nameProperty)));
+            }
+
+            StringBuilder labels = new StringBuilder();
+            for (String key : new TreeMap<>(objectName.getKeyPropertyList()).keySet()) {
+                if (!key.equals(nameProperty)) {
+                    appendLabel(labels, sanitize(key), unquote(objectName.getKeyProperty(key)));
+                }
+            }
+
+            addMetrics(families, sanitize(toSnakeCase(name.toString())), labels.toString(), entry.getValue(), 0);
+        }
+        return ImmutableList.copyOf(families.values());
+    }
+
+    private static void addMetrics(Map<String, MetricFamily> families, String name, String labels, Object object, int depth)
+    {
+        if (object instanceof CounterStat) {
+            CounterStat counter = (CounterStat) object;
+            addMetric(families, name, Type.COUNTER, null, writer -> {
+                writeSample(writer, name + "_total", labels, counter.getTotalCount());
+            });
+            return;
+        }
+        if (object instanceof Distribution) {
+            Distribution distribution = (Distribution) object;
+            Type type = distribution.isDecaying() ? Type.GAUGE_HISTOGRAM : Type.HISTOGRAM;
+            addMetric(families, name, type, null, writer -> {
+                double count;
+                double total;
+                List<Double> counts;
+                synchronized (distribution) {
+                    count = distribution.getCount();
+                    total = distribution.getTotal();
+                    counts = distribution.getCumulativeCounts(BUCKETS);
+                }
+                writeHistogram(writer, name, labels, type, BUCKETS, 1, counts, count, total);
+            });
+            return;
+        }
+        if (object instanceof TimeDistribution) {
+            TimeDistribution distribution = (TimeDistribution) object;
+            Type type = distribution.isDecaying() ? Type.GAUGE_HISTOGRAM : Type.HISTOGRAM;
+            addMetric(families, name, type, null, writer -> {
+                double count;
+                List<Double> counts;
+                synchronized (distribution) {
+                    count = distribution.getCount();
+                    counts = distribution.getCumulativeCounts(TIME_BUCKETS_IN_NANOS);
+                }
+                writeHistogram(writer, name, labels, type, TIME_BUCKETS_IN_NANOS, SECONDS.toNanos(1), counts, count, Double.NaN);
+            });
+            return;
+        }
+        if (depth >= MAX_DEPTH) {
+            return;
+        }
+
+        for (Method method : object.getClass().getMethods()) {
+            Method managedMethod = findManagedMethod(object.getClass(), method);
+            if (managedMethod == null || method.getParameterTypes().length != 0 || method.getReturnType() == void.class) {
+                continue;
+            }
+            String attributeName = getAttributeName(method);
+            if (attributeName == null) {
+                continue;
+            }
+
+            MethodHandle getter;
+            try {
+                method.setAccessible(true);
+                getter = MethodHandles.lookup().unreflect(method).bindTo(object);
+            }
+            catch (ReflectiveOperationException | SecurityException e) {
+                continue;
+            }
+
+            if (managedMethod.isAnnotationPresent(Nested.class) || managedMethod.isAnnotationPresent(Flatten.class)) {
+                // like jmxutils, nested objects are fetched once and held on to
+                Object nested;
+                try {
+                    nested = getter.invoke();
+                }
+                catch (Throwable e) {
+                    continue;
+                }
+                if (nested != null) {
+                    String nestedName = managedMethod.isAnnotationPresent(Flatten.class) ? name : name + "_" + sanitize(toSnakeCase(attributeName));
+                    addMetrics(families, nestedName, labels, nested, depth + 1);
+                }
+            }
+            else if (isNumeric(method.getReturnType())) {
+                String metricName = name + "_" + sanitize(toSnakeCase(attributeName));
+                String description = managedMethod.getAnnotation(Managed.class).description();
+                addMetric(families, metricName, Type.GAUGE, description, writer -> {
+                    Object value;
+                    try {
+                        value = getter.invoke();
+                    }
+                    catch (Throwable e) {
+                        // attributes that fail to read are left out of the scrape
+                        return;
+                    }
+                    if (value instanceof Boolean) {
+                        value = ((Boolean) value) ? 1 : 0;
+                    }
+                    if (value != null) {
+                        writeSample(writer, metricName, labels, (Number) value);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void addMetric(Map<String, MetricFamily> families, String name, Type type, String description, Metric metric)
+    {
+        MetricFamily family = families.get(name);
+        if (family == null) {
+            family = new MetricFamily(name, type, description);
+            families.put(name, family);
+        }
+        // metrics with the same name as a metric of a different type cannot be exposed
+        if (family.getType() == type) {
+            family.add(metric);
+        }
+    }
+
+    private static Method findManagedMethod(Class<?> type, Method method)
+    {
+        if (method.isAnnotationPresent(Managed.class)) {
+            return method;
+        }
+        List<Class<?>> supertypes = new ArrayList<>();
+        if (type.getSuperclass() != null) {
+            supertypes.add(type.getSuperclass());
+        }
+        supertypes.addAll(ImmutableList.copyOf(type.getInterfaces()));
+        for (Class<?> supertype : supertypes) {
+            try {
+                Method superMethod = supertype.getMethod(method.getName(), method.getParameterTypes());
+                Method managedMethod = findManagedMethod(supertype, superMethod);
+                if (managedMethod != null) {
+                    return managedMethod;
+                }
+            }
+            catch (NoSuchMethodException ignored) {
+            }
+        }
+        return null;
+    }
+
+    private static String getAttributeName(Method method)
+    {
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return name.substring(3);
+        }
+        if (name.startsWith("is") && name.length() > 2 && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            return name.substring(2);
+        }
+        return null;
+    }
+
+    private static boolean isNumeric(Class<?> type)
+    {
+        return (type.isPrimitive() && type != char.class) || Number.class.isAssignableFrom(type) || type == Boolean.class;
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels, Type type, List<Long> bounds, long unit, List<Double> counts, double count, double total)
+            throws IOException
+    {
+        for (int i = 0; i < bounds.size(); i++) {
+            StringBuilder bucketLabels = new StringBuilder(labels);
+            appendLabel(bucketLabels, "le", formatValue(bounds.get(i) * 1.0 / unit));
+            writeSample(writer, name + "_bucket", bucketLabels.toString(), counts.get(i));
+        }
+        StringBuilder bucketLabels = new StringBuilder(labels);
+        appendLabel(bucketLabels, "le", "+Inf");
+        writeSample(writer, name + "_bucket", bucketLabels.toString(), count);
+
+        String suffix = type == Type.GAUGE_HISTOGRAM ? "_g" : "_";
+        writeSample(writer, name + suffix + "count", labels, count);
+        if (!Double.isNaN(total)) {
+            writeSample(writer, name + suffix + "sum", labels, total);
+        }
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, Number value)
+            throws IOException
+    {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write('{');
+            writer.write(labels);
+            writer.write('}');
+        }
+        writer.write(' ');
+        if (value instanceof Double || value instanceof Float) {
+            writer.write(formatValue(value.doubleValue()));
+        }
+        else {
+            writer.write(value.toString());
+        }
+        writer.write('\n');
+    }
+
+    private static String formatValue(double value)
+    {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    private static void appendLabel(StringBuilder labels, String name, String value)
+    {
+        if (labels.length() > 0) {
+            labels.append(',');
+        }
+        labels.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    labels.append("\\\\");
+                    break;
+                case '"':
+                    labels.append("\\\"");
+                    break;
+                case '\n':
+                    labels.append("\\n");
+                    break;
+                default:
+                    labels.append(c);
+            }
+        }
+        labels.append('"');
+    }
+
+    private static String unquote(String value)
+    {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return ObjectName.unquote(value);
+        }
+        return value;
+    }
+
+    @VisibleForTesting
+    static String toSnakeCase(String name)
+    {
+        StringBuilder result = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && (Character.isLowerCase(name.charAt(i - 1)) || Character.isDigit(name.charAt(i - 1)))) {
+                result.append('_');
+            }
+            result.append(Character.toLowerCase(c));
+        }
+        return result.toString();
+    }
+
+    @VisibleForTesting
+    static String sanitize(String name)
+    {
+        StringBuilder result = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (c >= '0' && c <= '9' && i > 0);
+            result.append(valid ? c : '_');
+        }
+        return result.toString();
+    }
+
+    private static List<Long> buckets(long min, long max)
+    {
+        // 1, 2.5 and 5 times each power of ten, rounded down to whole values
+        ImmutableList.Builder<Long> buckets = ImmutableList.builder();
+        for (long power = min; power <= max; power *= 10) {
+            buckets.add(power);
+            if (power < max) {
+                buckets.add(power * 5 / 2);
+                buckets.add(power * 5);
+            }
+        }
+        return buckets.build();
+    }
+
+    private enum Type
+    {
+        GAUGE("gauge"), COUNTER("counter"), HISTOGRAM("histogram"), GAUGE_HISTOGRAM("gaugehistogram");
+
+        private final String name;
+
+        Type(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private interface Metric
+    {
+        void write(Writer writer)
+                throws IOException;
+    }
+
+    private static class MetricFamily
+    {
+        private final String name;
+        private final Type type;
+        private final String description;
+        private final List<Metric> metrics = new ArrayList<>();
+
+        public MetricFamily(String name, Type type, String description)
+        {
+            this.name = name;
+            this.type = type;
+            this.description = description;
+        }
+
+        public Type getType()
+        {
+            return type;
+        }
+
+        public void add(Metric metric)
+        {
+            metrics.add(metric);
+        }
+
+        public void write(Writer writer)
+                throws IOException
+        {
+            writer.write("# TYPE ");
+            writer.write(name);
+            writer.write(' ');
+            writer.write(type.name);
+            writer.write('\n');
+            if (description != null && !description.isEmpty()) {
+                writer.write("# HELP ");
+                writer.write(name);
+                writer.write(' ');
+                writer.write(description.replace("\\", "\\\\").replace("\n", "\\n").replace("\"", "\\\""));
+                writer.write('\n');
+            }
+            for (Metric metric : metrics) {
+                metric.write(writer);
+            }
+        }
+    }
+}
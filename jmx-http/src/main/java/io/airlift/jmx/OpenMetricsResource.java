@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jmx;
+
+import com.google.common.annotations.Beta;
+import com.google.inject.Inject;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@Beta
+@Path("/v1/metrics")
+public class OpenMetricsResource
+{
+    public static final String OPENMETRICS_TEXT = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private final OpenMetricsRegistry registry;
+
+    @Inject
+    public OpenMetricsResource(OpenMetricsRegistry registry)
+    {
+        this.registry = checkNotNull(registry, "registry is null");
+    }
+
+    @GET
+    @Produces(OPENMETRICS_TEXT)
+    public StreamingOutput getMetrics()
+    {
+        return output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+            registry.write(writer);
+            writer.flush();
+        };
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.MediaType;
 import com.google.inject.Injector;
+import com.google.inject.Scopes;
 import io.airlift.bootstrap.Bootstrap;
 import io.airlift.bootstrap.LifeCycleManager;
 import io.airlift.http.client.HttpClient;
@@ -11,6 +12,7 @@ import io.airlift.http.client.Request;
 import io.airlift.http.client.jetty.JettyHttpClient;
 import io.airlift.http.server.testing.TestingHttpServer;
 import io.airlift.http.server.testing.TestingHttpServerModule;
+import io.airlift.jmx.TestOpenMetricsRegistry.TestingMetrics;
 import io.airlift.jaxrs.JaxrsModule;
 import io.airlift.json.JsonModule;
 import io.airlift.json.ObjectMapperProvider;
@@ -20,6 +22,7 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
+import org.weakref.jmx.guice.MBeanModule;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -42,6 +45,7 @@ import static io.airlift.testing.Assertions.assertContains;
 import static io.airlift.testing.Assertions.assertEqualsIgnoreOrder;
 import static java.lang.management.ManagementFactory.MEMORY_MXBEAN_NAME;
 import static java.lang.management.ManagementFactory.RUNTIME_MXBEAN_NAME;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
@@ -62,7 +66,12 @@ public class TestMBeanResource
                 new JsonModule(),
                 new JaxrsModule(true),
                 new JmxHttpModule(),
-                binder -> binder.bind(MBeanServer.class).toInstance(mbeanServer));
+                new MBeanModule(),
+                binder -> {
+                    binder.bind(MBeanServer.class).toInstance(mbeanServer);
+                    binder.bind(TestingMetrics.class).in(Scopes.SINGLETON);
+                    newExporter(binder).export(TestingMetrics.class).withGeneratedName();
+                });
 
         Injector injector = app
                 .quiet()
@@ -119,6 +128,20 @@ public class TestMBeanResource
         assertMBeansResponse(jsonRequest(uriFor("/v1/jmx/mbean")));
     }
 
+    @Test
+    public void testGetMetrics()
+            throws Exception
+    {
+        StringResponse response = client.execute(
+                prepareGet().setUri(uriFor("/v1/metrics")).build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(MediaType.parse(response.getHeader(CONTENT_TYPE)).withoutParameters(), MediaType.parse(OpenMetricsResource.OPENMETRICS_TEXT).withoutParameters());
+        assertContains(response.getBody(), "# TYPE io_airlift_jmx_testing_metrics_requests counter\n");
+        assertTrue(response.getBody().endsWith("# EOF\n"));
+    }
+
     @Test
     public void testGetMBeansJsonp()
             throws Exception
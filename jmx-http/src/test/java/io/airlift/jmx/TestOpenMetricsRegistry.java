@@ -0,0 +1,289 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.jmx;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.Distribution;
+import io.airlift.stats.TimeStat;
+import io.airlift.testing.TestingTicker;
+import org.testng.annotations.Test;
+import org.weakref.jmx.Flatten;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static io.airlift.testing.Assertions.assertContains;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestOpenMetricsRegistry
+{
+    private static final String PREFIX = "io_airlift_jmx_testing_metrics";
+
+    @Test
+    public void testGauges()
+            throws Exception
+    {
+        TestingMetrics metrics = new TestingMetrics();
+        metrics.active = 3;
+        String output = scrape(registry(() -> ImmutableMap.of("io.airlift.jmx:type=TestingMetrics,name=\"a b\"", metrics)));
+
+        assertContains(output, "# TYPE " + PREFIX + "_active gauge\n" +
+                "# HELP " + PREFIX + "_active Active things\n" +
+                PREFIX + "_active{name=\"a b\"} 3\n");
+        assertContains(output, PREFIX + "_running{name=\"a b\"} 1\n");
+        assertContains(output, PREFIX + "_inner_size{name=\"a b\"} 42\n");
+        // flattened attributes do not add to the name
+        assertContains(output, PREFIX + "_capacity{name=\"a b\"} 1.5\n");
+        assertFalse(output.contains("operation"), output);
+        assertTrue(output.endsWith("# EOF\n"), output);
+    }
+
+    @Test
+    public void testCounter()
+            throws Exception
+    {
+        TestingMetrics metrics = new TestingMetrics();
+        metrics.requests.update(5);
+        OpenMetricsRegistry registry = registry(() -> ImmutableMap.of("io.airlift.jmx:type=TestingMetrics", metrics));
+
+        assertContains(scrape(registry), "# TYPE " + PREFIX + "_requests counter\n" + PREFIX + "_requests_total 5\n");
+        metrics.requests.update(2);
+        assertContains(scrape(registry), PREFIX + "_requests_total 7\n");
+    }
+
+    @Test
+    public void testHistograms()
+            throws Exception
+    {
+        TestingMetrics metrics = new TestingMetrics();
+        for (int value = 1; value <= 10; value++) {
+            metrics.sizes.add(value);
+        }
+        metrics.latency.add(2, TimeUnit.MILLISECONDS);
+        metrics.latency.add(3, TimeUnit.SECONDS);
+        String output = scrape(registry(() -> ImmutableMap.of("io.airlift.jmx:type=TestingMetrics", metrics)));
+
+        assertContains(output, "# TYPE " + PREFIX + "_sizes histogram\n" +
+                PREFIX + "_sizes_bucket{le=\"1.0\"} 1.0\n" +
+                PREFIX + "_sizes_bucket{le=\"2.0\"} 2.0\n" +
+                PREFIX + "_sizes_bucket{le=\"5.0\"} 5.0\n" +
+                PREFIX + "_sizes_bucket{le=\"10.0\"} 10.0\n");
+        assertContains(output, PREFIX + "_sizes_bucket{le=\"+Inf\"} 10.0\n" +
+                PREFIX + "_sizes_count 10.0\n" +
+                PREFIX + "_sizes_sum 55.0\n");
+
+        assertContains(output, "# TYPE " + PREFIX + "_latency_all_time histogram\n");
+        assertContains(output, PREFIX + "_latency_all_time_bucket{le=\"0.001\"} 0.0\n" +
+                PREFIX + "_latency_all_time_bucket{le=\"0.0025\"} 1.0\n");
+        assertContains(output, PREFIX + "_latency_all_time_bucket{le=\"2.5\"} 1.0\n" +
+                PREFIX + "_latency_all_time_bucket{le=\"5.0\"} 2.0\n");
+        assertContains(output, PREFIX + "_latency_all_time_count 2.0\n");
+
+        // decaying distributions may go down, so they are gauge histograms
+        assertContains(output, "# TYPE " + PREFIX + "_latency_one_minute gaugehistogram\n");
+        assertContains(output, PREFIX + "_latency_one_minute_gcount ");
+    }
+
+    @Test
+    public void testRecompileOnExportChange()
+            throws Exception
+    {
+        TestingTicker ticker = new TestingTicker();
+        AtomicInteger lookups = new AtomicInteger();
+        AtomicReference<Map<String, Object>> exported = new AtomicReference<>(ImmutableMap.of());
+        OpenMetricsRegistry registry = new OpenMetricsRegistry(() -> {
+            lookups.incrementAndGet();
+            return exported.get();
+        }, ticker);
+        ticker.increment(1, TimeUnit.SECONDS);
+        assertEquals(scrape(registry), "# EOF\n");
+        assertEquals(lookups.get(), 1);
+
+        // the exported objects are not looked at again until the MBean server reports a change
+        exported.set(ImmutableMap.of("io.airlift.jmx:type=TestingMetrics", new TestingMetrics()));
+        assertEquals(scrape(registry), "# EOF\n");
+        assertEquals(lookups.get(), 1);
+
+        registry.exportsChanged();
+        assertContains(scrape(registry), PREFIX + "_active 0\n");
+        assertEquals(lookups.get(), 2);
+
+        // and again while the change is recent, since the exporter updates its map after the notification
+        scrape(registry);
+        assertEquals(lookups.get(), 3);
+        ticker.increment(1, TimeUnit.SECONDS);
+        scrape(registry);
+        scrape(registry);
+        assertEquals(lookups.get(), 4);
+    }
+
+    @Test
+    public void testExporterNotifications()
+            throws Exception
+    {
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        MBeanExporter exporter = new MBeanExporter(mbeanServer);
+        OpenMetricsRegistry registry = new OpenMetricsRegistry();
+        registry.setExporter(exporter, mbeanServer);
+        assertEquals(scrape(registry), "# EOF\n");
+
+        exporter.export("io.airlift.jmx:type=TestingMetrics", new TestingMetrics());
+        assertContains(scrape(registry), PREFIX + "_active 0\n");
+
+        exporter.unexport("io.airlift.jmx:type=TestingMetrics");
+        assertEquals(scrape(registry), "# EOF\n");
+    }
+
+    @Test
+    public void testConflictingTypes()
+            throws Exception
+    {
+        // the counter and the gauge of the second object have the same name
+        Object conflicting = new Object()
+        {
+            @Managed
+            public long getRequests()
+            {
+                return 1;
+            }
+        };
+        OpenMetricsRegistry registry = registry(() -> ImmutableMap.of(
+                "io.airlift.jmx:type=TestingMetrics,name=a", new TestingMetrics(),
+                "io.airlift.jmx:type=TestingMetrics,name=b", conflicting));
+
+        String output = scrape(registry);
+        assertContains(output, PREFIX + "_requests_total{name=\"a\"} 0\n");
+        assertFalse(output.contains("name=\"b\""), output);
+    }
+
+    @Test
+    public void testNames()
+    {
+        assertEquals(OpenMetricsRegistry.toSnakeCase("TotalCount"), "total_count");
+        assertEquals(OpenMetricsRegistry.toSnakeCase("P99"), "p99");
+        assertEquals(OpenMetricsRegistry.toSnakeCase("io.airlift.http.server_HttpServer"), "io.airlift.http.server_http_server");
+        assertEquals(OpenMetricsRegistry.sanitize("io.airlift:a-b"), "io_airlift_a_b");
+        assertEquals(OpenMetricsRegistry.sanitize("9lives"), "_lives");
+    }
+
+    private static OpenMetricsRegistry registry(Supplier<Map<String, Object>> exportedObjects)
+    {
+        return new OpenMetricsRegistry(exportedObjects, Ticker.systemTicker());
+    }
+
+    private static String scrape(OpenMetricsRegistry registry)
+            throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        return writer.toString();
+    }
+
+    public static class TestingMetrics
+    {
+        private final CounterStat requests = new CounterStat();
+        private final Distribution sizes = new Distribution();
+        private final TimeStat latency = new TimeStat();
+        private final Inner inner = new Inner();
+        private volatile int active;
+
+        @Managed(description = "Active things")
+        public int getActive()
+        {
+            return active;
+        }
+
+        @Managed
+        public boolean isRunning()
+        {
+            return true;
+        }
+
+        @Managed
+        public String getDescription()
+        {
+            return "not a number";
+        }
+
+        @Managed
+        public void operation()
+        {
+        }
+
+        @Managed
+        @Nested
+        public CounterStat getRequests()
+        {
+            return requests;
+        }
+
+        @Managed
+        @Nested
+        public Distribution getSizes()
+        {
+            return sizes;
+        }
+
+        @Managed
+        @Nested
+        public TimeStat getLatency()
+        {
+            return latency;
+        }
+
+        @Managed
+        @Nested
+        public Inner getInner()
+        {
+            return inner;
+        }
+
+        @Managed
+        @Flatten
+        public Inner getFlattened()
+        {
+            return new Inner();
+        }
+    }
+
+    public static class Inner
+    {
+        @Managed
+        public long getSize()
+        {
+            return 42;
+        }
+
+        @Managed
+        public double getCapacity()
+        {
+            return 1.5;
+        }
+    }
+}
@@ -90,8 +90,44 @@ public class JsonCodecBinder
         binder.bind(getJsonCodecKey(mapType)).toProvider(new JsonCodecProvider(mapType)).in(Scopes.SINGLETON);
     }
 
+    public void bindSmileCodec(Class<?> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        binder.bind(getSmileCodecKey(type)).toProvider(new SmileCodecProvider(type)).in(Scopes.SINGLETON);
+    }
+
+    public void bindSmileCodec(TypeLiteral<?> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        binder.bind(getSmileCodecKey(type.getType())).toProvider(new SmileCodecProvider(type.getType())).in(Scopes.SINGLETON);
+    }
+
+    public void bindListSmileCodec(Class<?> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        ParameterizedTypeImpl listType = new ParameterizedTypeImpl(null, List.class, type);
+        binder.bind(getSmileCodecKey(listType)).toProvider(new SmileCodecProvider(listType)).in(Scopes.SINGLETON);
+    }
+
+    public void bindMapSmileCodec(Class<?> keyType, Class<?> valueType)
+    {
+        Preconditions.checkNotNull(keyType, "keyType is null");
+        Preconditions.checkNotNull(valueType, "valueType is null");
+
+        ParameterizedTypeImpl mapType = new ParameterizedTypeImpl(null, Map.class, keyType, valueType);
+        binder.bind(getSmileCodecKey(mapType)).toProvider(new SmileCodecProvider(mapType)).in(Scopes.SINGLETON);
+    }
+
     private Key<JsonCodec<?>> getJsonCodecKey(Type type)
     {
         return (Key<JsonCodec<?>>) Key.get(new ParameterizedTypeImpl(null, JsonCodec.class, type));
     }
+
+    private Key<SmileCodec<?>> getSmileCodecKey(Type type)
+    {
+        return (Key<SmileCodec<?>>) Key.get(new ParameterizedTypeImpl(null, SmileCodec.class, type));
+    }
 }
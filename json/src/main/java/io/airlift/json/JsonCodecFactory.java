@@ -32,6 +32,7 @@ import static com.fasterxml.jackson.databind.SerializationFeature.INDENT_OUTPUT;
 public class JsonCodecFactory
 {
     private final Provider<ObjectMapper> objectMapperProvider;
+    private final Provider<ObjectMapper> smileObjectMapperProvider;
     private final boolean prettyPrint;
 
     public JsonCodecFactory()
@@ -39,21 +40,32 @@ public class JsonCodecFactory
         this(new ObjectMapperProvider());
     }
 
-    @Inject
     public JsonCodecFactory(Provider<ObjectMapper> objectMapperProvider)
     {
         this(objectMapperProvider, false);
     }
 
     public JsonCodecFactory(Provider<ObjectMapper> objectMapperProvider, boolean prettyPrint)
+    {
+        this(objectMapperProvider, new SmileObjectMapperProvider(), prettyPrint);
+    }
+
+    @Inject
+    public JsonCodecFactory(Provider<ObjectMapper> objectMapperProvider, SmileObjectMapperProvider smileObjectMapperProvider)
+    {
+        this(objectMapperProvider, smileObjectMapperProvider, false);
+    }
+
+    private JsonCodecFactory(Provider<ObjectMapper> objectMapperProvider, Provider<ObjectMapper> smileObjectMapperProvider, boolean prettyPrint)
     {
         this.objectMapperProvider = objectMapperProvider;
+        this.smileObjectMapperProvider = smileObjectMapperProvider;
         this.prettyPrint = prettyPrint;
     }
 
     public JsonCodecFactory prettyPrint()
     {
-        return new JsonCodecFactory(objectMapperProvider, true);
+        return new JsonCodecFactory(objectMapperProvider, smileObjectMapperProvider, true);
     }
 
     public <T> JsonCodec<T> jsonCodec(Class<T> type)
@@ -125,7 +137,71 @@ public class JsonCodecFactory
         return new JsonCodec<>(createObjectMapper(), mapType);
     }
 
+    public <T> SmileCodec<T> smileCodec(Class<T> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        return new SmileCodec<>(createSmileObjectMapper(), type);
+    }
+
+    public <T> SmileCodec<T> smileCodec(Type type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        return new SmileCodec<>(createSmileObjectMapper(), type);
+    }
+
+    public <T> SmileCodec<T> smileCodec(TypeToken<T> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        return new SmileCodec<>(createSmileObjectMapper(), type.getType());
+    }
+
+    public <T> SmileCodec<List<T>> listSmileCodec(Class<T> type)
+    {
+        Preconditions.checkNotNull(type, "type is null");
+
+        Type listType = new TypeToken<List<T>>() {}
+                .where(new TypeParameter<T>() {}, type)
+                .getType();
+
+        return new SmileCodec<>(createSmileObjectMapper(), listType);
+    }
+
+    public <K, V> SmileCodec<Map<K, V>> mapSmileCodec(Class<K> keyType, Class<V> valueType)
+    {
+        Preconditions.checkNotNull(keyType, "keyType is null");
+        Preconditions.checkNotNull(valueType, "valueType is null");
+
+        Type mapType = new TypeToken<Map<K, V>>() {}
+                .where(new TypeParameter<K>() {}, keyType)
+                .where(new TypeParameter<V>() {}, valueType)
+                .getType();
+
+        return new SmileCodec<>(createSmileObjectMapper(), mapType);
+    }
+
     private ObjectMapper createObjectMapper()
+    {
+        ObjectMapper objectMapper = getObjectMapper(objectMapperProvider);
+
+        if (prettyPrint) {
+            objectMapper.enable(INDENT_OUTPUT);
+        }
+        else {
+            objectMapper.disable(INDENT_OUTPUT);
+        }
+        return objectMapper;
+    }
+
+    private ObjectMapper createSmileObjectMapper()
+    {
+        // indentation does not apply to a binary format
+        return getObjectMapper(smileObjectMapperProvider);
+    }
+
+    private static ObjectMapper getObjectMapper(Provider<ObjectMapper> objectMapperProvider)
     {
         ObjectMapper objectMapper = null;
 
@@ -142,13 +218,6 @@ public class JsonCodecFactory
         if (objectMapper == null) {
             throw lastException;
         }
-
-        if (prettyPrint) {
-            objectMapper.enable(INDENT_OUTPUT);
-        }
-        else {
-            objectMapper.disable(INDENT_OUTPUT);
-        }
         return objectMapper;
     }
 }
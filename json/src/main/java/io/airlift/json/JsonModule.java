@@ -30,6 +30,7 @@ public class JsonModule implements Module
         // NOTE: this MUST NOT be a singleton because ObjectMappers are mutable.  This means
         // one component could reconfigure the mapper and break all other components
         binder.bind(ObjectMapper.class).toProvider(ObjectMapperProvider.class);
+        binder.bind(SmileObjectMapperProvider.class);
 
         binder.bind(JsonCodecFactory.class).in(Scopes.SINGLETON);
     }
@@ -16,12 +16,14 @@
 package io.airlift.json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.KeyDeserializer;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -40,10 +42,15 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
 
 public class ObjectMapperProvider
         implements Provider<ObjectMapper>
 {
+    private final Supplier<? extends JsonFactory> jsonFactorySupplier;
+
     private Map<Class<?>, JsonSerializer<?>> keySerializers;
     private Map<Class<?>, KeyDeserializer> keyDeserializers;
     private Map<Class<?>, JsonSerializer<?>> jsonSerializers;
@@ -53,6 +60,17 @@ public class ObjectMapperProvider
 
     public ObjectMapperProvider()
     {
+        this(MappingJsonFactory::new);
+    }
+
+    /**
+     * Creates a provider for mappers backed by a data format other than text JSON.
+     * A new factory is requested for each mapper since a factory is bound to its mapper.
+     */
+    protected ObjectMapperProvider(Supplier<? extends JsonFactory> jsonFactorySupplier)
+    {
+        this.jsonFactorySupplier = requireNonNull(jsonFactorySupplier, "jsonFactorySupplier is null");
+
         modules.add(new Jdk7Module());
         modules.add(new Jdk8Module());
         modules.add(new JSR310Module());
@@ -93,7 +111,7 @@ public class ObjectMapperProvider
     @Override
     public ObjectMapper get()
     {
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = new ObjectMapper(jsonFactorySupplier.get());
 
         // ignore unknown fields (for backwards compatibility)
         objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.reflect.TypeParameter;
+import com.google.common.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Binary counterpart of {@link JsonCodec} using the Smile format. Instances are
+ * serialized with the same mapper configuration as JSON, so any type that can be
+ * converted with a {@link JsonCodec} can be converted with a {@code SmileCodec}.
+ */
+public class SmileCodec<T>
+{
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    private static final Supplier<ObjectMapper> OBJECT_MAPPER_SUPPLIER = Suppliers.memoize(new Supplier<ObjectMapper>()
+    {
+        public ObjectMapper get()
+        {
+            return new SmileObjectMapperProvider().get();
+        }
+    });
+
+    public static <T> SmileCodec<T> smileCodec(Class<T> type)
+    {
+        checkNotNull(type, "type is null");
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), type);
+    }
+
+    public static <T> SmileCodec<T> smileCodec(TypeToken<T> type)
+    {
+        checkNotNull(type, "type is null");
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), type.getType());
+    }
+
+    public static <T> SmileCodec<T> smileCodec(JsonCodec<T> jsonCodec)
+    {
+        checkNotNull(jsonCodec, "jsonCodec is null");
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), jsonCodec.getType());
+    }
+
+    public static <T> SmileCodec<List<T>> listSmileCodec(Class<T> type)
+    {
+        checkNotNull(type, "type is null");
+
+        Type listType = new TypeToken<List<T>>() {}
+                .where(new TypeParameter<T>() {}, type)
+                .getType();
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), listType);
+    }
+
+    public static <T> SmileCodec<List<T>> listSmileCodec(SmileCodec<T> type)
+    {
+        checkNotNull(type, "type is null");
+
+        Type listType = new TypeToken<List<T>>() {}
+                .where(new TypeParameter<T>() {}, type.getTypeToken())
+                .getType();
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), listType);
+    }
+
+    public static <K, V> SmileCodec<Map<K, V>> mapSmileCodec(Class<K> keyType, Class<V> valueType)
+    {
+        checkNotNull(keyType, "keyType is null");
+        checkNotNull(valueType, "valueType is null");
+
+        Type mapType = new TypeToken<Map<K, V>>() {}
+                .where(new TypeParameter<K>() {}, keyType)
+                .where(new TypeParameter<V>() {}, valueType)
+                .getType();
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), mapType);
+    }
+
+    public static <K, V> SmileCodec<Map<K, V>> mapSmileCodec(Class<K> keyType, SmileCodec<V> valueType)
+    {
+        checkNotNull(keyType, "keyType is null");
+        checkNotNull(valueType, "valueType is null");
+
+        Type mapType = new TypeToken<Map<K, V>>() {}
+                .where(new TypeParameter<K>() {}, keyType)
+                .where(new TypeParameter<V>() {}, valueType.getTypeToken())
+                .getType();
+
+        return new SmileCodec<>(OBJECT_MAPPER_SUPPLIER.get(), mapType);
+    }
+
+    private final ObjectMapper mapper;
+    private final Type type;
+    private final JavaType javaType;
+
+    SmileCodec(ObjectMapper mapper, Type type)
+    {
+        this.mapper = mapper;
+        this.type = type;
+        this.javaType = mapper.getTypeFactory().constructType(type);
+    }
+
+    /**
+     * Gets the type this codec supports.
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * Converts the specified smile bytes into an instance of type T.
+     *
+     * @param bytes the smile bytes to parse
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the smile bytes can not be converted to the type T
+     */
+    public T fromBytes(byte[] bytes)
+            throws IllegalArgumentException
+    {
+        try {
+            return mapper.readValue(bytes, javaType);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s smile bytes", javaType), e);
+        }
+    }
+
+    /**
+     * Converts the specified instance to smile.
+     *
+     * @param instance the instance to convert to smile
+     * @return smile bytes
+     * @throws IllegalArgumentException if the specified instance can not be converted to smile
+     */
+    public byte[] toBytes(T instance)
+            throws IllegalArgumentException
+    {
+        try {
+            return mapper.writeValueAsBytes(instance);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(String.format("%s could not be converted to smile", instance.getClass().getName()), e);
+        }
+    }
+
+    /**
+     * Reads a single smile value from the specified stream into an instance of type T.
+     * The stream is not closed.
+     *
+     * @param input the stream to read from
+     * @return parsed response; never null
+     * @throws IllegalArgumentException if the smile data can not be converted to the type T
+     * @throws IOException if reading from the stream fails
+     */
+    public T readFrom(InputStream input)
+            throws IOException
+    {
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return mapper.readValue(parser, javaType);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s smile stream", javaType), e);
+        }
+    }
+
+    /**
+     * Writes the specified instance as smile to the stream. The stream is flushed
+     * but not closed.
+     *
+     * @param instance the instance to convert to smile
+     * @param output the stream to write to
+     * @throws IllegalArgumentException if the specified instance can not be converted to smile
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(T instance, OutputStream output)
+            throws IOException
+    {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            mapper.writeValue(generator, instance);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("%s could not be converted to smile", instance.getClass().getName()), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    TypeToken<T> getTypeToken()
+    {
+        return (TypeToken<T>) TypeToken.of(type);
+    }
+}
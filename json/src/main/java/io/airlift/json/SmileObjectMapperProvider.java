@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.json;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Provides mappers that read and write the Smile binary format, configured
+ * exactly like the text JSON mappers of {@link ObjectMapperProvider}.
+ */
+public class SmileObjectMapperProvider
+        extends ObjectMapperProvider
+{
+    public SmileObjectMapperProvider()
+    {
+        // not a method reference, which the dependency analyzer does not see
+        super(() -> new SmileFactory());
+    }
+}
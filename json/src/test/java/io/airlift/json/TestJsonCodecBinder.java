@@ -18,13 +18,18 @@ package io.airlift.json;
 import com.google.inject.Binder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
+import com.google.inject.TypeLiteral;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
 
+import java.util.List;
+
 import static io.airlift.json.JsonCodecBinder.jsonCodecBinder;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 
 public class TestJsonCodecBinder
@@ -47,6 +52,26 @@ public class TestJsonCodecBinder
         assertNotNull(injector.getInstance(Dummy.class).getCodec());
     }
 
+    @Test
+    public void testBindSmileCodec()
+    {
+        Injector injector = Guice.createInjector(new JsonModule(), new Module()
+        {
+            @Override
+            public void configure(Binder binder)
+            {
+                jsonCodecBinder(binder).bindSmileCodec(Person.class);
+                jsonCodecBinder(binder).bindListSmileCodec(Person.class);
+            }
+        });
+
+        SmileCodec<Person> codec = injector.getInstance(Key.get(new TypeLiteral<SmileCodec<Person>>() {}));
+        Person person = new Person().setName("dain").setRocks(true);
+        assertEquals(codec.fromBytes(codec.toBytes(person)), person);
+
+        assertNotNull(injector.getInstance(Key.get(new TypeLiteral<SmileCodec<List<Person>>>() {})));
+    }
+
     private static class Dummy
     {
         private final JsonCodec<Integer> codec;
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.json;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static io.airlift.json.JsonCodec.jsonCodec;
+import static io.airlift.json.SmileCodec.listSmileCodec;
+import static io.airlift.json.SmileCodec.mapSmileCodec;
+import static io.airlift.json.SmileCodec.smileCodec;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestSmileCodec
+{
+    @Test
+    public void testSmileCodec()
+            throws Exception
+    {
+        SmileCodec<Person> smileCodec = smileCodec(Person.class);
+
+        Person expected = new Person().setName("dain").setRocks(true);
+        assertEquals(smileCodec.fromBytes(smileCodec.toBytes(expected)), expected);
+    }
+
+    @Test
+    public void testSmileCodecFromJsonCodec()
+            throws Exception
+    {
+        SmileCodec<Person> smileCodec = smileCodec(jsonCodec(Person.class));
+
+        Person expected = new Person().setName("dain").setRocks(true);
+        assertEquals(smileCodec.fromBytes(smileCodec.toBytes(expected)), expected);
+    }
+
+    @Test
+    public void testListSmileCodec()
+            throws Exception
+    {
+        validateListCodec(listSmileCodec(Person.class));
+        validateListCodec(listSmileCodec(smileCodec(Person.class)));
+        validateListCodec(smileCodec(new TypeToken<List<Person>>() {}));
+    }
+
+    @Test
+    public void testMapSmileCodec()
+            throws Exception
+    {
+        validateMapCodec(mapSmileCodec(String.class, Person.class));
+        validateMapCodec(mapSmileCodec(String.class, smileCodec(Person.class)));
+    }
+
+    @Test
+    public void testBinaryFormat()
+            throws Exception
+    {
+        Person person = new Person().setName("dain").setRocks(true);
+        byte[] bytes = smileCodec(Person.class).toBytes(person);
+
+        // smile header is ":)\n"
+        assertEquals(bytes[0], ':');
+        assertEquals(bytes[1], ')');
+        assertEquals(bytes[2], '\n');
+        assertTrue(bytes.length < jsonCodec(Person.class).toJsonBytes(person).length);
+    }
+
+    @Test
+    public void testStreams()
+            throws Exception
+    {
+        SmileCodec<Person> smileCodec = smileCodec(Person.class);
+        Person expected = new Person().setName("dain").setRocks(true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CloseTrackingOutputStream output = new CloseTrackingOutputStream(bytes);
+        smileCodec.writeTo(expected, output);
+        assertFalse(output.isClosed());
+        assertEquals(bytes.toByteArray(), smileCodec.toBytes(expected));
+
+        CloseTrackingInputStream input = new CloseTrackingInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(smileCodec.readFrom(input), expected);
+        assertFalse(input.isClosed());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBytes()
+    {
+        smileCodec(Person.class).fromBytes(new byte[] {1, 2, 3});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidStream()
+            throws Exception
+    {
+        smileCodec(Person.class).readFrom(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+    }
+
+    private static void validateListCodec(SmileCodec<List<Person>> smileCodec)
+    {
+        ImmutableList<Person> expected = ImmutableList.of(
+                new Person().setName("dain").setRocks(true),
+                new Person().setName("martin").setRocks(true),
+                new Person().setName("mark").setRocks(true));
+
+        assertEquals(smileCodec.fromBytes(smileCodec.toBytes(expected)), expected);
+    }
+
+    private static void validateMapCodec(SmileCodec<Map<String, Person>> smileCodec)
+    {
+        ImmutableMap<String, Person> expected = ImmutableMap.<String, Person>builder()
+                .put("dain", new Person().setName("dain").setRocks(true))
+                .put("martin", new Person().setName("martin").setRocks(true))
+                .put("mark", new Person().setName("mark").setRocks(true))
+                .build();
+
+        assertEquals(smileCodec.fromBytes(smileCodec.toBytes(expected)), expected);
+    }
+
+    private static class CloseTrackingInputStream
+            extends FilterInputStream
+    {
+        private boolean closed;
+
+        public CloseTrackingInputStream(ByteArrayInputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            closed = true;
+            super.close();
+        }
+
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+
+    private static class CloseTrackingOutputStream
+            extends FilterOutputStream
+    {
+        private boolean closed;
+
+        public CloseTrackingOutputStream(ByteArrayOutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            closed = true;
+            super.close();
+        }
+
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+}
@@ -18,46 +18,101 @@ package io.airlift.stats;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import io.airlift.stats.DecayCounter.DecayCounterSnapshot;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 @Beta
 public class CounterStat
 {
-    private final AtomicLong count = new AtomicLong(0);
-    private final DecayCounter oneMinute = new DecayCounter(ExponentialDecay.oneMinute());
-    private final DecayCounter fiveMinute = new DecayCounter(ExponentialDecay.fiveMinutes());
-    private final DecayCounter fifteenMinute = new DecayCounter(ExponentialDecay.fifteenMinutes());
+    private static final int SLIDING_WINDOW_SECONDS = (int) TimeUnit.MINUTES.toSeconds(15);
+
+    private final LongAdder count = new LongAdder();
+    private final SlidingWindowCounter slidingWindow;
+    private final DecayCounter oneMinute;
+    private final DecayCounter fiveMinute;
+    private final DecayCounter fifteenMinute;
+
+    public CounterStat()
+    {
+        this(false);
+    }
+
+    /**
+     * @param slidingWindow count the values of the last one, five and fifteen minutes exactly
+     * in per-second buckets instead of in exponentially decaying counters; adds do not lock
+     */
+    public CounterStat(boolean slidingWindow)
+    {
+        this(Ticker.systemTicker(), slidingWindow);
+    }
+
+    @VisibleForTesting
+    CounterStat(Ticker ticker, boolean slidingWindow)
+    {
+        if (slidingWindow) {
+            this.slidingWindow = new SlidingWindowCounter(SLIDING_WINDOW_SECONDS, ticker);
+            oneMinute = new DecayCounter(this.slidingWindow, (int) TimeUnit.MINUTES.toSeconds(1));
+            fiveMinute = new DecayCounter(this.slidingWindow, (int) TimeUnit.MINUTES.toSeconds(5));
+            fifteenMinute = new DecayCounter(this.slidingWindow, SLIDING_WINDOW_SECONDS);
+        }
+        else {
+            this.slidingWindow = null;
+            oneMinute = new DecayCounter(ExponentialDecay.oneMinute(), ticker);
+            fiveMinute = new DecayCounter(ExponentialDecay.fiveMinutes(), ticker);
+            fifteenMinute = new DecayCounter(ExponentialDecay.fifteenMinutes(), ticker);
+        }
+    }
 
     public void update(long count)
     {
-        oneMinute.add(count);
-        fiveMinute.add(count);
-        fifteenMinute.add(count);
-        this.count.addAndGet(count);
+        if (slidingWindow != null) {
+            slidingWindow.add(count);
+        }
+        else {
+            oneMinute.add(count);
+            fiveMinute.add(count);
+            fifteenMinute.add(count);
+        }
+        this.count.add(count);
     }
 
     public void merge(CounterStat counterStat)
     {
         checkNotNull(counterStat, "counterStat is null");
-        oneMinute.merge(counterStat.getOneMinute());
-        fiveMinute.merge(counterStat.getFiveMinute());
-        fifteenMinute.merge(counterStat.getFifteenMinute());
-        count.addAndGet(counterStat.getTotalCount());
+        if (slidingWindow != null) {
+            checkArgument(counterStat.slidingWindow != null, "Expected counterStat to use a sliding window");
+            slidingWindow.merge(counterStat.slidingWindow);
+        }
+        else {
+            checkArgument(counterStat.slidingWindow == null, "Expected counterStat to use decay counters");
+            oneMinute.merge(counterStat.getOneMinute());
+            fiveMinute.merge(counterStat.getFiveMinute());
+            fifteenMinute.merge(counterStat.getFifteenMinute());
+        }
+        count.add(counterStat.getTotalCount());
     }
 
     @Managed
     public void reset()
     {
-        oneMinute.reset();
-        fiveMinute.reset();
-        fifteenMinute.reset();
-        count.set(0);
+        if (slidingWindow != null) {
+            slidingWindow.reset();
+        }
+        else {
+            oneMinute.reset();
+            fiveMinute.reset();
+            fifteenMinute.reset();
+        }
+        count.reset();
     }
 
     /**
@@ -66,16 +121,25 @@ public class CounterStat
     @Deprecated
     public void resetTo(CounterStat counterStat)
     {
-        oneMinute.resetTo(counterStat.getOneMinute());
-        fiveMinute.resetTo(counterStat.getFiveMinute());
-        fifteenMinute.resetTo(counterStat.getFifteenMinute());
-        count.set(counterStat.getTotalCount());
+        if (slidingWindow != null) {
+            checkArgument(counterStat.slidingWindow != null, "Expected counterStat to use a sliding window");
+            slidingWindow.reset();
+            slidingWindow.merge(counterStat.slidingWindow);
+        }
+        else {
+            checkArgument(counterStat.slidingWindow == null, "Expected counterStat to use decay counters");
+            oneMinute.resetTo(counterStat.getOneMinute());
+            fiveMinute.resetTo(counterStat.getFiveMinute());
+            fifteenMinute.resetTo(counterStat.getFifteenMinute());
+        }
+        count.reset();
+        count.add(counterStat.getTotalCount());
     }
 
     @Managed
     public long getTotalCount()
     {
-        return count.get();
+        return count.sum();
     }
 
     @Managed
@@ -10,6 +10,7 @@ import java.util.concurrent.TimeUnit;
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /*
  * A counter that decays exponentially. Values are weighted according to the formula
@@ -26,6 +27,8 @@ public class DecayCounter
 
     private final double alpha;
     private final Ticker ticker;
+    private final SlidingWindowCounter slidingWindow;
+    private final int windowSeconds;
 
     private long landmarkInSeconds;
     private double count;
@@ -39,22 +42,48 @@ public class DecayCounter
     {
         this.alpha = alpha;
         this.ticker = ticker;
+        slidingWindow = null;
+        windowSeconds = 0;
         landmarkInSeconds = getTickInSeconds();
     }
 
-    public synchronized void add(long value)
+    /**
+     * Creates a read-only view of the last {@code windowSeconds} seconds of a sliding window
+     * counter, so that {@link CounterStat} exposes the same attributes whichever way it counts.
+     * Resetting the view resets the whole sliding window counter.
+     */
+    DecayCounter(SlidingWindowCounter slidingWindow, int windowSeconds)
     {
+        this.slidingWindow = checkNotNull(slidingWindow, "slidingWindow is null");
+        checkArgument(windowSeconds > 0 && windowSeconds <= slidingWindow.getWindowSeconds(), "windowSeconds must be between 1 and %s", slidingWindow.getWindowSeconds());
+        this.windowSeconds = windowSeconds;
+        alpha = 1.0 / windowSeconds;
+        ticker = Ticker.systemTicker();
+    }
+
+    public void add(long value)
+    {
+        add(value, getTickInSeconds());
+    }
+
+    /**
+     * Adds a value that was observed at the specified time, as reported by this counter's ticker.
+     */
+    synchronized void add(long value, long timestampInSeconds)
+    {
+        checkState(slidingWindow == null, "Values must be added to the sliding window counter");
         long nowInSeconds = getTickInSeconds();
 
         if (nowInSeconds - landmarkInSeconds >= RESCALE_THRESHOLD_SECONDS) {
             rescaleToNewLandmark(nowInSeconds);
         }
-        count += value * weight(nowInSeconds, landmarkInSeconds);
+        count += value * weight(timestampInSeconds, landmarkInSeconds);
     }
 
     public synchronized void merge(DecayCounter decayCounter)
     {
         checkNotNull(decayCounter, "decayCounter is null");
+        checkState(slidingWindow == null && decayCounter.slidingWindow == null, "Sliding window counters must be merged directly");
         checkArgument(decayCounter.alpha == alpha, "Expected decayCounter to have alpha %s, but was %s", alpha, decayCounter.alpha);
 
         synchronized (decayCounter) {
@@ -82,6 +111,10 @@ public class DecayCounter
     @Managed
     public synchronized void reset()
     {
+        if (slidingWindow != null) {
+            slidingWindow.reset();
+            return;
+        }
         landmarkInSeconds = getTickInSeconds();
         count = 0;
     }
@@ -92,6 +125,7 @@ public class DecayCounter
     @Deprecated
     public synchronized void resetTo(DecayCounter counter)
     {
+        checkState(slidingWindow == null && counter.slidingWindow == null, "Sliding window counters must be reset directly");
         synchronized (counter) {
             landmarkInSeconds = counter.landmarkInSeconds;
             count = counter.count;
@@ -101,6 +135,9 @@ public class DecayCounter
     @Managed
     public synchronized double getCount()
     {
+        if (slidingWindow != null) {
+            return slidingWindow.getCount(windowSeconds);
+        }
         long nowInSeconds = getTickInSeconds();
         return count / weight(nowInSeconds, landmarkInSeconds);
     }
@@ -108,6 +145,9 @@ public class DecayCounter
     @Managed
     public synchronized double getRate()
     {
+        if (slidingWindow != null) {
+            return slidingWindow.getRate(windowSeconds);
+        }
         // The total time covered by this counter is equivalent to the integral of the weight function from 0 to Infinity,
         // which equals 1/alpha. The count per unit time is, therefore, count / (1/alpha)
         return getCount() * alpha;
@@ -2,6 +2,7 @@ package io.airlift.stats;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import org.weakref.jmx.Managed;
 
@@ -25,118 +26,169 @@ public class Distribution
 
     private final DecayCounter total;
 
+    private final StripedRecorder recorder;
+
     public Distribution()
     {
-        digest = new QuantileDigest(MAX_ERROR);
-        total = new DecayCounter(0);
+        this(0);
     }
 
     public Distribution(double alpha)
+    {
+        this(alpha, false);
+    }
+
+    /**
+     * @param striped if true, values added concurrently are buffered in per-thread stripes and
+     * only folded into the digest when the distribution is read or a stripe fills up, so that
+     * writers do not contend with each other
+     */
+    public Distribution(double alpha, boolean striped)
     {
         digest = new QuantileDigest(MAX_ERROR, alpha);
         total = new DecayCounter(alpha);
+        recorder = striped ? new StripedRecorder(Ticker.systemTicker()) : null;
     }
 
     public Distribution(Distribution distribution)
     {
-        digest = new QuantileDigest(distribution.digest);
-        total = new DecayCounter(distribution.digest.getAlpha());
-        total.merge(distribution.total);
+        synchronized (distribution) {
+            distribution.flush();
+            digest = new QuantileDigest(distribution.digest);
+            total = new DecayCounter(distribution.digest.getAlpha());
+            total.merge(distribution.total);
+        }
+        recorder = null;
+    }
+
+    public void add(long value)
+    {
+        add(value, 1);
+    }
+
+    public void add(long value, long count)
+    {
+        if (recorder != null && recorder.tryAdd(value, count)) {
+            return;
+        }
+
+        synchronized (this) {
+            flush();
+            digest.add(value, count);
+            total.add(value * count);
+        }
     }
 
-    public synchronized void add(long value)
+    @GuardedBy("this")
+    private void flush()
     {
-        digest.add(value);
-        total.add(value);
+        if (recorder != null) {
+            recorder.drainTo(this::addBuffered);
+        }
     }
 
-    public synchronized void add(long value, long count)
+    @GuardedBy("this")
+    private void addBuffered(long value, long count, long timestampInSeconds)
     {
-        digest.add(value, count);
-        total.add(value * count);
+        digest.add(value, count, timestampInSeconds);
+        total.add(value * count, timestampInSeconds);
     }
 
     @Managed
     public synchronized double getMaxError()
     {
+        flush();
         return digest.getConfidenceFactor();
     }
 
     @Managed
     public synchronized double getCount()
     {
+        flush();
         return digest.getCount();
     }
 
     @Managed
     public synchronized double getTotal()
     {
+        flush();
         return total.getCount();
     }
 
     @Managed
     public synchronized long getP01()
     {
+        flush();
         return digest.getQuantile(0.01);
     }
 
     @Managed
     public synchronized long getP05()
     {
+        flush();
         return digest.getQuantile(0.05);
     }
 
     @Managed
     public synchronized long getP10()
     {
+        flush();
         return digest.getQuantile(0.10);
     }
 
     @Managed
     public synchronized long getP25()
     {
+        flush();
         return digest.getQuantile(0.25);
     }
 
     @Managed
     public synchronized long getP50()
     {
+        flush();
         return digest.getQuantile(0.5);
     }
 
     @Managed
     public synchronized long getP75()
     {
+        flush();
         return digest.getQuantile(0.75);
     }
 
     @Managed
     public synchronized long getP90()
     {
+        flush();
         return digest.getQuantile(0.90);
     }
 
     @Managed
     public synchronized long getP95()
     {
+        flush();
         return digest.getQuantile(0.95);
     }
 
     @Managed
     public synchronized long getP99()
     {
+        flush();
         return digest.getQuantile(0.99);
     }
 
     @Managed
     public synchronized long getMin()
     {
+        flush();
         return digest.getMin();
     }
 
     @Managed
     public synchronized long getMax()
     {
+        flush();
         return digest.getMax();
     }
 
@@ -150,6 +202,7 @@ public class Distribution
 
         List<Long> values;
         synchronized (this) {
+            flush();
             values = digest.getQuantiles(percentiles);
         }
 
@@ -163,11 +216,49 @@ public class Distribution
 
     public synchronized List<Long> getPercentiles(List<Double> percentiles)
     {
+        flush();
         return digest.getQuantiles(percentiles);
     }
 
+    /**
+     * Returns the approximate number of values that are less than or equal to each of
+     * the specified bounds, which must be sorted in ascending order.
+     */
+    public synchronized List<Double> getCumulativeCounts(List<Long> upperBounds)
+    {
+        flush();
+        return cumulativeCounts(digest, upperBounds);
+    }
+
+    /**
+     * Returns true if the weight of old values decays over time, which means the counts
+     * of the distribution may go down.
+     */
+    public boolean isDecaying()
+    {
+        return digest.getAlpha() != 0;
+    }
+
+    static List<Double> cumulativeCounts(QuantileDigest digest, List<Long> upperBounds)
+    {
+        // the digest buckets hold the values less than each bound
+        List<Long> exclusiveBounds = new ArrayList<>(upperBounds.size());
+        for (long bound : upperBounds) {
+            exclusiveBounds.add(bound == Long.MAX_VALUE ? bound : bound + 1);
+        }
+
+        ImmutableList.Builder<Double> counts = ImmutableList.builder();
+        double count = 0;
+        for (QuantileDigest.Bucket bucket : digest.getHistogram(exclusiveBounds)) {
+            count += bucket.getCount();
+            counts.add(count);
+        }
+        return counts.build();
+    }
+
     public synchronized DistributionSnapshot snapshot()
     {
+        flush();
         List<Long> quantiles = digest.getQuantiles(ImmutableList.of(0.01, 0.05, 0.10, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99));
         return new DistributionSnapshot(
                 getMaxError(),
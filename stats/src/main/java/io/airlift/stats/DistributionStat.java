@@ -17,10 +17,19 @@ public class DistributionStat
 
     public DistributionStat()
     {
-        oneMinute = new Distribution(ExponentialDecay.oneMinute());
-        fiveMinutes = new Distribution(ExponentialDecay.fiveMinutes());
-        fifteenMinutes = new Distribution(ExponentialDecay.fifteenMinutes());
-        allTime = new Distribution();
+        this(false);
+    }
+
+    /**
+     * @param striped record into per-thread stripes instead of locking each distribution on
+     * every add
+     */
+    public DistributionStat(boolean striped)
+    {
+        oneMinute = new Distribution(ExponentialDecay.oneMinute(), striped);
+        fiveMinutes = new Distribution(ExponentialDecay.fiveMinutes(), striped);
+        fifteenMinutes = new Distribution(ExponentialDecay.fifteenMinutes(), striped);
+        allTime = new Distribution(0, striped);
     }
 
     public void add(long value)
@@ -0,0 +1,401 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SizeOf;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Finds the most frequent keys of a stream using the Space-Saving algorithm of Metwally,
+ * Agrawal and El Abbadi, "Efficient Computation of Frequent and Top-k Elements in Data Streams".
+ *
+ * <p>At most {@code capacity} keys are tracked. When a new key arrives and the sketch is full,
+ * it replaces the key with the lowest count and inherits that count as its error. The count
+ * reported for a key is never lower than its true count, and never higher by more than its
+ * error. Every key whose true count exceeds {@code totalCount / capacity} is tracked.</p>
+ */
+@Beta
+@NotThreadSafe
+public final class HeavyHitters
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(HeavyHitters.class).instanceSize();
+    private static final int COUNTER_INSTANCE_SIZE = ClassLayout.parseClass(Counter.class).instanceSize();
+    private static final int SLICE_INSTANCE_SIZE = ClassLayout.parseClass(Slice.class).instanceSize();
+    // approximate size of a HashMap node and its table slot
+    private static final int MAP_ENTRY_SIZE = 48;
+
+    private static final byte FORMAT_V1 = 1;
+
+    private final int capacity;
+    private final Map<Slice, Counter> counters;
+    // min-heap of the counters ordered by count, so the key to evict is always at the root
+    private final Counter[] heap;
+    private int size;
+    private long totalCount;
+
+    private HeavyHitters(int capacity)
+    {
+        this.capacity = capacity;
+        counters = new HashMap<>();
+        heap = new Counter[capacity];
+    }
+
+    public static HeavyHitters newInstance(int capacity)
+    {
+        checkArgument(capacity > 0, "capacity must be > 0");
+        return new HeavyHitters(capacity);
+    }
+
+    public static HeavyHitters newInstance(Slice serialized)
+    {
+        checkNotNull(serialized, "serialized is null");
+        BasicSliceInput input = serialized.getInput();
+        checkArgument(input.readByte() == FORMAT_V1, "Invalid format tag");
+
+        int capacity = input.readInt();
+        checkArgument(capacity > 0, "Invalid capacity");
+        HeavyHitters sketch = new HeavyHitters(capacity);
+        sketch.totalCount = input.readLong();
+
+        int entries = input.readInt();
+        checkArgument(entries >= 0 && entries <= capacity, "Invalid number of entries");
+        for (int i = 0; i < entries; i++) {
+            Slice key = Slices.copyOf(input.readSlice(input.readInt()));
+            long count = input.readLong();
+            long error = input.readLong();
+            checkArgument(count > 0 && error >= 0 && error < count, "Invalid count");
+            checkArgument(sketch.counters.get(key) == null, "Duplicate key");
+            sketch.append(new Counter(key, count, error));
+        }
+        sketch.heapify();
+        return sketch;
+    }
+
+    public void add(Slice key)
+    {
+        add(key, 1);
+    }
+
+    public void add(Slice key, long count)
+    {
+        checkNotNull(key, "key is null");
+        checkArgument(count > 0, "count must be > 0");
+
+        totalCount += count;
+
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (size < capacity) {
+            append(new Counter(Slices.copyOf(key), count, 0));
+            siftUp(size - 1);
+            return;
+        }
+
+        // replace the least frequent key, which may have been seen up to min times before
+        Counter min = heap[0];
+        counters.remove(min.key);
+        min.key = Slices.copyOf(key);
+        min.error = min.count;
+        min.count += count;
+        counters.put(min.key, min);
+        siftDown(0);
+    }
+
+    /**
+     * Merges the other sketch into this one. A key tracked by only one of the sketches is
+     * assumed to have occurred as many times as the least frequent key of the other sketch,
+     * so that counts remain upper bounds.
+     */
+    public void mergeWith(HeavyHitters other)
+    {
+        checkNotNull(other, "other is null");
+
+        long thisMin = getMinCount();
+        long otherMin = other.getMinCount();
+
+        List<Counter> merged = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter otherCounter = other.counters.get(counter.key);
+            if (otherCounter == null) {
+                merged.add(new Counter(counter.key, counter.count + otherMin, counter.error + otherMin));
+            }
+            else {
+                merged.add(new Counter(counter.key, counter.count + otherCounter.count, counter.error + otherCounter.error));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter otherCounter = other.heap[i];
+            if (!counters.containsKey(otherCounter.key)) {
+                merged.add(new Counter(Slices.copyOf(otherCounter.key), otherCounter.count + thisMin, otherCounter.error + thisMin));
+            }
+        }
+        merged.sort(Counter.BY_COUNT_DESCENDING);
+
+        counters.clear();
+        size = 0;
+        for (Counter counter : merged.subList(0, Math.min(capacity, merged.size()))) {
+            append(counter);
+        }
+        heapify();
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Gets up to {@code k} of the tracked keys with the highest counts, most frequent first.
+     */
+    public List<Entry> getTopK(int k)
+    {
+        checkArgument(k >= 0, "k must be >= 0");
+
+        List<Counter> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        sorted.sort(Counter.BY_COUNT_DESCENDING);
+
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        for (Counter counter : sorted.subList(0, Math.min(k, sorted.size()))) {
+            entries.add(new Entry(counter.key, counter.count, counter.error));
+        }
+        return entries.build();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Gets the sum of the counts of all keys added to this sketch, tracked or not.
+     */
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public int estimatedInMemorySize()
+    {
+        long size = INSTANCE_SIZE + SizeOf.sizeOfObjectArray(capacity);
+        for (int i = 0; i < this.size; i++) {
+            size += COUNTER_INSTANCE_SIZE + SLICE_INSTANCE_SIZE + MAP_ENTRY_SIZE + SizeOf.sizeOfByteArray(heap[i].key.length());
+        }
+        return (int) size;
+    }
+
+    public int estimatedSerializedSize()
+    {
+        int size = SizeOf.SIZE_OF_BYTE + // format
+                SizeOf.SIZE_OF_INT + // capacity
+                SizeOf.SIZE_OF_LONG + // total count
+                SizeOf.SIZE_OF_INT; // number of entries
+        for (int i = 0; i < this.size; i++) {
+            size += SizeOf.SIZE_OF_INT + heap[i].key.length() + 2 * SizeOf.SIZE_OF_LONG;
+        }
+        return size;
+    }
+
+    public Slice serialize()
+    {
+        int size = estimatedSerializedSize();
+        DynamicSliceOutput output = new DynamicSliceOutput(size)
+                .appendByte(FORMAT_V1)
+                .appendInt(capacity)
+                .appendLong(totalCount)
+                .appendInt(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            Counter counter = heap[i];
+            output.appendInt(counter.key.length())
+                    .appendBytes(counter.key)
+                    .appendLong(counter.count)
+                    .appendLong(counter.error);
+        }
+        return output.slice();
+    }
+
+    @VisibleForTesting
+    void verify()
+    {
+        checkState(counters.size() == size, "Expected %s counters, but found %s", size, counters.size());
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            checkState(counter.heapIndex == i, "Counter at %s has index %s", i, counter.heapIndex);
+            checkState(counters.get(counter.key) == counter, "Counter at %s is not in the map", i);
+            checkState(i == 0 || heap[(i - 1) / 2].count <= counter.count, "Heap order violated at %s", i);
+        }
+    }
+
+    private long getMinCount()
+    {
+        if (size < capacity) {
+            // every key that was ever added is still tracked
+            return 0;
+        }
+        return heap[0].count;
+    }
+
+    private void append(Counter counter)
+    {
+        counter.heapIndex = size;
+        heap[size] = counter;
+        size++;
+        counters.put(counter.key, counter);
+    }
+
+    private void heapify()
+    {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int index)
+    {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= heap[index].count) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index)
+    {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap[left].count < heap[smallest].count) {
+                smallest = left;
+            }
+            if (right < size && heap[right].count < heap[smallest].count) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int first, int second)
+    {
+        Counter counter = heap[first];
+        heap[first] = heap[second];
+        heap[second] = counter;
+        heap[first].heapIndex = first;
+        heap[second].heapIndex = second;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("capacity", capacity)
+                .add("size", size)
+                .add("totalCount", totalCount)
+                .toString();
+    }
+
+    public static class Entry
+    {
+        private final Slice key;
+        private final long count;
+        private final long error;
+
+        private Entry(Slice key, long count, long error)
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public Slice getKey()
+        {
+            return key;
+        }
+
+        /**
+         * Gets an upper bound of the number of times the key was added.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Gets the largest amount by which the count may exceed the true count.
+         */
+        public long getError()
+        {
+            return error;
+        }
+
+        @Override
+        public String toString()
+        {
+            return toStringHelper(this)
+                    .add("key", key.toStringUtf8())
+                    .add("count", count)
+                    .add("error", error)
+                    .toString();
+        }
+    }
+
+    private static class Counter
+    {
+        private static final Comparator<Counter> BY_COUNT_DESCENDING = (first, second) -> Long.compare(second.count, first.count);
+
+        private Slice key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(Slice key, long count, long error)
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
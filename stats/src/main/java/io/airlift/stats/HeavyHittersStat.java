@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tracks the most frequent keys of the last one to two minutes in {@link HeavyHitters}
+ * sketches. Writers add to the sketch of a stripe selected by the writing thread, so they do
+ * not contend on a single lock; reads merge the sketches of all stripes. Each stripe keeps
+ * the sketch of the current minute and of the previous one.
+ */
+@Beta
+@ThreadSafe
+public class HeavyHittersStat
+{
+    private static final int MAX_STRIPES = 8;
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int capacity;
+    private final Ticker ticker;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param capacity the number of keys tracked by each sketch; the keys reported are accurate
+     * when their count is well above {@code 1 / capacity} of the total
+     */
+    public HeavyHittersStat(int capacity)
+    {
+        this(capacity, Ticker.systemTicker(), Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @VisibleForTesting
+    HeavyHittersStat(int capacity, Ticker ticker, int stripeCount)
+    {
+        checkArgument(capacity > 0, "capacity must be > 0");
+        checkNotNull(ticker, "ticker is null");
+
+        this.capacity = capacity;
+        this.ticker = ticker;
+
+        int size = ThreadStripes.stripeCount(stripeCount);
+        long now = ticker.read();
+        stripes = new Stripe[size];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(now);
+        }
+        mask = size - 1;
+    }
+
+    public void add(String key)
+    {
+        add(Slices.utf8Slice(checkNotNull(key, "key is null")));
+    }
+
+    public void add(Slice key)
+    {
+        checkNotNull(key, "key is null");
+        Stripe stripe = stripes[ThreadStripes.currentStripe(mask)];
+        synchronized (stripe) {
+            stripe.rotate(ticker.read());
+            stripe.current.add(key);
+        }
+    }
+
+    /**
+     * Returns a sketch of the keys added during the last one to two minutes.
+     */
+    public HeavyHitters getHeavyHitters()
+    {
+        long now = ticker.read();
+        HeavyHitters merged = HeavyHitters.newInstance(capacity);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.rotate(now);
+                if (stripe.previous != null) {
+                    merged.mergeWith(stripe.previous);
+                }
+                merged.mergeWith(stripe.current);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the count of the most frequent keys, most frequent first. The counts are upper
+     * bounds; see {@link HeavyHitters.Entry#getCount()}.
+     */
+    @Managed
+    public Map<String, Long> getTop()
+    {
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (HeavyHitters.Entry entry : getHeavyHitters().getTopK(capacity)) {
+            top.put(entry.getKey().toStringUtf8(), entry.getCount());
+        }
+        return top;
+    }
+
+    @Managed
+    public void reset()
+    {
+        long now = ticker.read();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.current = HeavyHitters.newInstance(capacity);
+                stripe.previous = null;
+                stripe.windowStart = now;
+            }
+        }
+    }
+
+    private class Stripe
+    {
+        @GuardedBy("this")
+        private HeavyHitters current = HeavyHitters.newInstance(capacity);
+        @GuardedBy("this")
+        private HeavyHitters previous;
+        @GuardedBy("this")
+        private long windowStart;
+
+        private Stripe(long now)
+        {
+            windowStart = now;
+        }
+
+        @GuardedBy("this")
+        private void rotate(long now)
+        {
+            long elapsed = now - windowStart;
+            if (elapsed < WINDOW_NANOS) {
+                return;
+            }
+            previous = elapsed < 2 * WINDOW_NANOS ? current : null;
+            current = HeavyHitters.newInstance(capacity);
+            windowStart = now - (elapsed % WINDOW_NANOS);
+        }
+    }
+}
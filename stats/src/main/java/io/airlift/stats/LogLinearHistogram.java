@@ -0,0 +1,438 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.BasicSliceInput;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.SizeOf;
+import io.airlift.slice.Slice;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntToDoubleFunction;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Histogram with a fixed number of buckets whose width grows with their value, so that every
+ * value is recorded with the requested number of significant decimal digits. Each power of two
+ * is split into the same number of linear sub-buckets, as in HdrHistogram.
+ *
+ * <p>Recording a value is an atomic increment of one bucket, and never allocates or locks.
+ * Values below zero are recorded as zero, and values above the highest trackable value are
+ * recorded in the last bucket. Histograms with the same layout merge without loss.</p>
+ */
+@Beta
+@ThreadSafe
+public final class LogLinearHistogram
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(LogLinearHistogram.class).instanceSize();
+    private static final byte FORMAT_V1 = 1;
+
+    private final long lowestDiscernibleValue;
+    private final long highestTrackableValue;
+    private final int significantDigits;
+
+    private final int unitMagnitude;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final int maxIndex;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param lowestDiscernibleValue smallest value that is distinguished from zero; larger values
+     * reduce the size of the histogram
+     * @param highestTrackableValue largest value recorded without clamping
+     * @param significantDigits number of significant decimal digits to preserve, from 1 to 5
+     */
+    public LogLinearHistogram(long lowestDiscernibleValue, long highestTrackableValue, int significantDigits)
+    {
+        checkArgument(lowestDiscernibleValue >= 1, "lowestDiscernibleValue must be at least 1");
+        checkArgument(highestTrackableValue >= 2 * lowestDiscernibleValue, "highestTrackableValue must be at least twice lowestDiscernibleValue");
+        checkArgument(significantDigits >= 1 && significantDigits <= 5, "significantDigits must be between 1 and 5");
+
+        this.lowestDiscernibleValue = lowestDiscernibleValue;
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+        int subBucketCount = 1 << subBucketCountMagnitude;
+
+        unitMagnitude = 63 - Long.numberOfLeadingZeros(lowestDiscernibleValue);
+        subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        subBucketHalfCount = subBucketCount / 2;
+        subBucketMask = ((long) subBucketCount - 1) << unitMagnitude;
+        leadingZeroCountBase = 64 - unitMagnitude - subBucketHalfCountMagnitude - 1;
+
+        counts = new AtomicLongArray(countsIndex(highestTrackableValue) + 1);
+        maxIndex = counts.length() - 1;
+    }
+
+    private LogLinearHistogram(LogLinearHistogram layout)
+    {
+        this(layout.lowestDiscernibleValue, layout.highestTrackableValue, layout.significantDigits);
+    }
+
+    /**
+     * Creates an empty histogram with the same layout as this one.
+     */
+    public LogLinearHistogram newEmptyHistogram()
+    {
+        return new LogLinearHistogram(this);
+    }
+
+    public void add(long value)
+    {
+        add(value, 1);
+    }
+
+    public void add(long value, long count)
+    {
+        checkArgument(count > 0, "count must be positive");
+        value = Math.max(value, 0);
+
+        counts.getAndAdd(index(value), count);
+        totalCount.getAndAdd(count);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    /**
+     * Adds the values of the other histogram, which must have the same layout, to this one.
+     */
+    public void merge(LogLinearHistogram other)
+    {
+        checkNotNull(other, "other is null");
+        checkArgument(hasSameLayout(other), "histograms must have the same layout");
+
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.getAndAdd(i, count);
+                totalCount.getAndAdd(count);
+            }
+        }
+        long otherMin = other.min.get();
+        if (otherMin != Long.MAX_VALUE) {
+            updateMin(otherMin);
+        }
+        long otherMax = other.max.get();
+        if (otherMax != Long.MIN_VALUE) {
+            updateMax(otherMax);
+        }
+    }
+
+    public boolean hasSameLayout(LogLinearHistogram other)
+    {
+        return lowestDiscernibleValue == other.lowestDiscernibleValue &&
+                highestTrackableValue == other.highestTrackableValue &&
+                significantDigits == other.significantDigits;
+    }
+
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the smallest recorded value, or {@link Long#MAX_VALUE} if the histogram is empty
+     */
+    public long getMin()
+    {
+        return min.get();
+    }
+
+    /**
+     * @return the largest recorded value, or {@link Long#MIN_VALUE} if the histogram is empty
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Gets the largest relative difference between a recorded value and the value reported
+     * for it.
+     */
+    public double getMaxError()
+    {
+        return Math.pow(10, -significantDigits);
+    }
+
+    public int getSignificantDigits()
+    {
+        return significantDigits;
+    }
+
+    public long getQuantile(double quantile)
+    {
+        return getQuantiles(ImmutableList.of(quantile)).get(0);
+    }
+
+    /**
+     * Gets the values at the specified quantiles, which must be sorted in ascending order.
+     * Each value is the highest value of its bucket, limited to the recorded range. Returns
+     * {@link Long#MIN_VALUE} for every quantile if the histogram is empty.
+     */
+    public List<Long> getQuantiles(List<Double> quantiles)
+    {
+        return getQuantiles(counts::get, totalCount.get(), quantiles, min.get(), max.get());
+    }
+
+    /**
+     * Returns the number of values that are less than or equal to each of the specified bounds,
+     * which must be sorted in ascending order. Values are compared using the lowest value of
+     * their bucket.
+     */
+    public List<Double> getCumulativeCounts(List<Long> upperBounds)
+    {
+        return getCumulativeCounts(counts::get, upperBounds, max.get());
+    }
+
+    public int estimatedInMemorySizeInBytes()
+    {
+        return (int) (INSTANCE_SIZE + SizeOf.sizeOfLongArray(counts.length()));
+    }
+
+    /**
+     * Serializes the layout, the recorded range and the non-empty buckets of the histogram.
+     */
+    public Slice serialize()
+    {
+        DynamicSliceOutput output = new DynamicSliceOutput(64)
+                .appendByte(FORMAT_V1)
+                .appendByte(significantDigits)
+                .appendLong(lowestDiscernibleValue)
+                .appendLong(highestTrackableValue)
+                .appendLong(min.get())
+                .appendLong(max.get());
+
+        int buckets = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0) {
+                buckets++;
+            }
+        }
+        writeVariableLength(output, buckets);
+
+        // buckets are stored as the distance from the previous non-empty bucket and the count
+        int previous = 0;
+        for (int i = 0; i < counts.length() && buckets > 0; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                writeVariableLength(output, i - previous);
+                writeVariableLength(output, count);
+                previous = i;
+                buckets--;
+            }
+        }
+        return output.slice();
+    }
+
+    public static LogLinearHistogram deserialize(Slice serialized)
+    {
+        BasicSliceInput input = serialized.getInput();
+        checkArgument(input.readByte() == FORMAT_V1, "Invalid format");
+
+        int significantDigits = input.readByte();
+        long lowestDiscernibleValue = input.readLong();
+        long highestTrackableValue = input.readLong();
+        LogLinearHistogram histogram = new LogLinearHistogram(lowestDiscernibleValue, highestTrackableValue, significantDigits);
+        histogram.min.set(input.readLong());
+        histogram.max.set(input.readLong());
+
+        long buckets = readVariableLength(input);
+        int index = 0;
+        for (long i = 0; i < buckets; i++) {
+            index += (int) readVariableLength(input);
+            checkArgument(index < histogram.counts.length(), "Invalid bucket index");
+            long count = readVariableLength(input);
+            histogram.counts.set(index, count);
+            histogram.totalCount.getAndAdd(count);
+        }
+        return histogram;
+    }
+
+    long getCountAt(int index)
+    {
+        return counts.get(index);
+    }
+
+    /**
+     * Empties the histogram so that it can be reused. Values added concurrently may be lost
+     * or counted only in part.
+     */
+    void reset()
+    {
+        long max = this.max.get();
+        if (max != Long.MIN_VALUE) {
+            // buckets past the largest value are already empty
+            for (int i = 0; i <= index(max); i++) {
+                counts.set(i, 0);
+            }
+        }
+        totalCount.set(0);
+        min.set(Long.MAX_VALUE);
+        this.max.set(Long.MIN_VALUE);
+    }
+
+    List<Long> getQuantiles(IntToDoubleFunction bucketCounts, double total, List<Double> quantiles, long min, long max)
+    {
+        ImmutableList.Builder<Long> values = ImmutableList.builder();
+        if (total == 0 || min == Long.MAX_VALUE) {
+            for (int i = 0; i < quantiles.size(); i++) {
+                values.add(Long.MIN_VALUE);
+            }
+            return values.build();
+        }
+
+        int index = 0;
+        double cumulative = bucketCounts.applyAsDouble(0);
+        double previousQuantile = 0;
+        for (double quantile : quantiles) {
+            checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+            checkArgument(quantile >= previousQuantile, "quantiles must be sorted in increasing order");
+            previousQuantile = quantile;
+
+            // the rank of the value at the quantile, starting from one
+            double rank = Math.max(Math.ceil(quantile * total), 1);
+            while (cumulative < rank && index < maxIndex) {
+                index++;
+                cumulative += bucketCounts.applyAsDouble(index);
+            }
+            long value = index == maxIndex ? max : highestEquivalentValue(index);
+            values.add(Math.min(Math.max(value, min), max));
+        }
+        return values.build();
+    }
+
+    List<Double> getCumulativeCounts(IntToDoubleFunction bucketCounts, List<Long> upperBounds, long max)
+    {
+        ImmutableList.Builder<Double> result = ImmutableList.builder();
+        // buckets past the largest value are empty
+        int bucketCount = max == Long.MIN_VALUE ? 0 : index(max) + 1;
+        int index = 0;
+        double cumulative = 0;
+        long previousBound = Long.MIN_VALUE;
+        for (long bound : upperBounds) {
+            checkArgument(bound >= previousBound, "bounds must be sorted in increasing order");
+            previousBound = bound;
+
+            while (index < bucketCount && lowestEquivalentValue(index) <= bound) {
+                cumulative += bucketCounts.applyAsDouble(index);
+                index++;
+            }
+            result.add(cumulative);
+        }
+        return result.build();
+    }
+
+    private int index(long value)
+    {
+        if (value >= highestTrackableValue) {
+            return maxIndex;
+        }
+        return countsIndex(value);
+    }
+
+    private int countsIndex(long value)
+    {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> (bucketIndex + unitMagnitude));
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    private long lowestEquivalentValue(int index)
+    {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << (bucketIndex + unitMagnitude);
+    }
+
+    private long highestEquivalentValue(int index)
+    {
+        // the buckets are contiguous, so each one ends where the next one starts
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    private void updateMin(long value)
+    {
+        long current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+    }
+
+    private void updateMax(long value)
+    {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static void writeVariableLength(DynamicSliceOutput output, long value)
+    {
+        while ((value & ~0x7FL) != 0) {
+            output.appendByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.appendByte((int) value);
+    }
+
+    private static long readVariableLength(BasicSliceInput input)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid variable length value");
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("significantDigits", significantDigits)
+                .add("lowestDiscernibleValue", lowestDiscernibleValue)
+                .add("highestTrackableValue", highestTrackableValue)
+                .add("count", getCount())
+                .add("min", getMin())
+                .add("max", getMax())
+                .toString();
+    }
+}
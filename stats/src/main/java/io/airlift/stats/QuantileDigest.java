@@ -1,18 +1,10 @@
 package io.airlift.stats;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
-import com.google.common.base.Objects;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
-import com.google.common.collect.PeekingIterator;
-import com.google.common.util.concurrent.AtomicDouble;
 import org.openjdk.jol.info.ClassLayout;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -20,19 +12,13 @@ import javax.annotation.concurrent.NotThreadSafe;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.slice.SizeOf.sizeOf;
 import static java.lang.String.format;
 
 /**
@@ -51,6 +37,10 @@ import static java.lang.String.format;
  *
  * <p>This class also supports exponential decay. The implementation is based on the ideas laid out
  * in http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.159.3978</p>
+ *
+ * <p>The tree is stored as parallel arrays indexed by node id, with removed nodes kept in a free
+ * list for reuse, so that adding values and compressing do not allocate once the digest has
+ * reached its steady-state size.</p>
  */
 @NotThreadSafe
 public class QuantileDigest
@@ -62,12 +52,35 @@ public class QuantileDigest
     static final long RESCALE_THRESHOLD_SECONDS = 50;
     static final double ZERO_WEIGHT_THRESHOLD = 1e-5;
 
+    private static final int NIL = -1;
+    private static final int INITIAL_CAPACITY = 1;
+
+    private static final int LINKS_PER_NODE = 3;
+    private static final int LEVEL_OFFSET = 0;
+    private static final int LEFT_OFFSET = 1;
+    private static final int RIGHT_OFFSET = 2;
+
+    // don't bother shrinking arrays smaller than this
+    private static final int COMPACTION_THRESHOLD = 1024;
+
     private final double maxError;
     private final Ticker ticker;
     private final double alpha;
     private final boolean compressAutomatically;
 
-    private Node root;
+    private int root = NIL;
+
+    // node storage: the id of a node is its index in these arrays
+    private double[] counts = new double[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    // level, left child and right child of each node, interleaved so that descending the tree
+    // touches one cache line per node for the structure. For nodes in the free list, the left
+    // child slot holds the id of the next free node
+    private int[] links = new int[INITIAL_CAPACITY * LINKS_PER_NODE];
+
+    // number of slots in the arrays that have ever been used
+    private int nextNode;
+    private int firstFree = NIL;
 
     private double weightedCount;
     private long max = Long.MIN_VALUE;
@@ -145,6 +158,15 @@ public class QuantileDigest
      * Adds a value to this digest. The value must be {@code >= 0}
      */
     public void add(long value, long count)
+    {
+        add(value, count, TimeUnit.NANOSECONDS.toSeconds(ticker.read()));
+    }
+
+    /**
+     * Adds a value that was observed at the specified time. This is used to fold values that
+     * were buffered outside of the digest without changing their decayed weight.
+     */
+    void add(long value, long count, long timestampInSeconds)
     {
         checkArgument(count > 0, "count must be > 0");
 
@@ -163,7 +185,7 @@ public class QuantileDigest
             compress();
         }
 
-        double weight = weight(TimeUnit.NANOSECONDS.toSeconds(ticker.read())) * count;
+        double weight = weight(timestampInSeconds) * count;
 
         max = Math.max(max, value);
         min = Math.min(min, value);
@@ -176,7 +198,7 @@ public class QuantileDigest
         rescaleToCommonLandmark(this, other);
 
         // 2. merge other into this (don't modify other)
-        root = merge(root, other.root);
+        root = merge(root, other, other.root);
 
         max = Math.max(max, other.max);
         min = Math.min(min, other.min);
@@ -196,36 +218,46 @@ public class QuantileDigest
             checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between [0,1]");
         }
 
-        final ImmutableList.Builder<Long> builder = ImmutableList.builder();
-        final PeekingIterator<Double> iterator = Iterators.peekingIterator(quantiles.iterator());
-
-        postOrderTraversal(root, new Callback()
-        {
-            private double sum = 0;
-
-            public boolean process(Node node)
-            {
-                sum += node.weightedCount;
+        ImmutableList.Builder<Long> builder = ImmutableList.builder();
+
+        int index = 0;
+        double sum = 0;
+
+        // iterative post-order traversal; the depth of the tree is bounded by the number of levels
+        int[] stack = new int[MAX_BITS + 1];
+        int top = 0;
+        int node = root;
+        int lastVisited = NIL;
+        while (index < quantiles.size() && (top > 0 || node != NIL)) {
+            if (node != NIL) {
+                stack[top++] = node;
+                node = left(node);
+                continue;
+            }
 
-                while (iterator.hasNext() && sum > iterator.peek() * weightedCount) {
-                    iterator.next();
+            int current = stack[top - 1];
+            if (right(current) != NIL && right(current) != lastVisited) {
+                node = right(current);
+                continue;
+            }
 
-                    // we know the max value ever seen, so cap the percentile to provide better error
-                    // bounds in this case
-                    long value = Math.min(node.getUpperBound(), max);
+            top--;
+            lastVisited = current;
 
-                    builder.add(value);
-                }
+            sum += counts[current];
+            while (index < quantiles.size() && sum > quantiles.get(index) * weightedCount) {
+                index++;
 
-                return iterator.hasNext();
+                // we know the max value ever seen, so cap the percentile to provide better error
+                // bounds in this case
+                builder.add(Math.min(upperBound(current), max));
             }
-        });
+        }
 
         // we finished the traversal without consuming all quantiles. This means the remaining quantiles
         // correspond to the max known value
-        while (iterator.hasNext()) {
+        for (; index < quantiles.size(); index++) {
             builder.add(max);
-            iterator.next();
         }
 
         return builder.build();
@@ -259,46 +291,56 @@ public class QuantileDigest
     {
         checkArgument(Ordering.natural().isOrdered(bucketUpperBounds), "buckets must be sorted in increasing order");
 
-        final ImmutableList.Builder<Bucket> builder = ImmutableList.builder();
-        final PeekingIterator<Long> iterator = Iterators.peekingIterator(bucketUpperBounds.iterator());
+        ImmutableList.Builder<Bucket> builder = ImmutableList.builder();
 
-        final AtomicDouble sum = new AtomicDouble();
-        final AtomicDouble lastSum = new AtomicDouble();
+        int index = 0;
+        double sum = 0;
+        double lastSum = 0;
 
         // for computing weighed average of values in bucket
-        final AtomicDouble bucketWeightedSum = new AtomicDouble();
-
-        final double normalizationFactor = weight(TimeUnit.NANOSECONDS.toSeconds(ticker.read()));
+        double bucketWeightedSum = 0;
+
+        double normalizationFactor = weight(TimeUnit.NANOSECONDS.toSeconds(ticker.read()));
+
+        int[] stack = new int[MAX_BITS + 1];
+        int top = 0;
+        int node = root;
+        int lastVisited = NIL;
+        while (index < bucketUpperBounds.size() && (top > 0 || node != NIL)) {
+            if (node != NIL) {
+                stack[top++] = node;
+                node = left(node);
+                continue;
+            }
 
-        postOrderTraversal(root, new Callback()
-        {
-            public boolean process(Node node)
-            {
+            int current = stack[top - 1];
+            if (right(current) != NIL && right(current) != lastVisited) {
+                node = right(current);
+                continue;
+            }
 
-                while (iterator.hasNext() && iterator.peek() <= node.getUpperBound()) {
-                    double bucketCount = sum.get() - lastSum.get();
+            top--;
+            lastVisited = current;
 
-                    Bucket bucket = new Bucket(bucketCount / normalizationFactor, bucketWeightedSum.get() / bucketCount);
+            while (index < bucketUpperBounds.size() && bucketUpperBounds.get(index) <= upperBound(current)) {
+                double bucketCount = sum - lastSum;
 
-                    builder.add(bucket);
-                    lastSum.set(sum.get());
-                    bucketWeightedSum.set(0);
-                    iterator.next();
-                }
-
-                bucketWeightedSum.addAndGet(node.getMiddle() * node.weightedCount);
-                sum.addAndGet(node.weightedCount);
-                return iterator.hasNext();
+                builder.add(new Bucket(bucketCount / normalizationFactor, bucketWeightedSum / bucketCount));
+                lastSum = sum;
+                bucketWeightedSum = 0;
+                index++;
             }
-        });
-
-        while (iterator.hasNext()) {
-            double bucketCount = sum.get() - lastSum.get();
-            Bucket bucket = new Bucket(bucketCount / normalizationFactor, bucketWeightedSum.get() / bucketCount);
 
-            builder.add(bucket);
+            bucketWeightedSum += middle(current) * counts[current];
+            sum += counts[current];
+        }
 
-            iterator.next();
+        for (; index < bucketUpperBounds.size(); index++) {
+            double bucketCount = sum - lastSum;
+            builder.add(new Bucket(bucketCount / normalizationFactor, bucketWeightedSum / bucketCount));
+            // the remaining values all fall in the first bucket past the last node
+            lastSum = sum;
+            bucketWeightedSum = 0;
         }
 
         return builder.build();
@@ -306,43 +348,58 @@ public class QuantileDigest
 
     public long getMin()
     {
-        final AtomicLong chosen = new AtomicLong(min);
-        postOrderTraversal(root, new Callback()
-        {
-            public boolean process(Node node)
-            {
-                if (node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
-                    chosen.set(node.getLowerBound());
-                    return false;
-                }
-                return true;
-            }
-        }, TraversalOrder.FORWARD);
-
-        return Math.max(min, chosen.get());
+        int node = firstNonZeroNode(root, TraversalOrder.FORWARD);
+        if (node == NIL) {
+            return min;
+        }
+        return Math.max(min, lowerBound(node));
     }
 
     public long getMax()
     {
-        final AtomicLong chosen = new AtomicLong(max);
-        postOrderTraversal(root, new Callback()
-        {
-            public boolean process(Node node)
-            {
-                if (node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
-                    chosen.set(node.getUpperBound());
-                    return false;
-                }
-                return true;
-            }
-        }, TraversalOrder.REVERSE);
+        int node = firstNonZeroNode(root, TraversalOrder.REVERSE);
+        if (node == NIL) {
+            return max;
+        }
+        return Math.min(max, upperBound(node));
+    }
+
+    /**
+     * Returns the first node in post-order with a non-zero weight, or NIL if there is none
+     */
+    private int firstNonZeroNode(int node, TraversalOrder order)
+    {
+        if (node == NIL) {
+            return NIL;
+        }
+
+        int first;
+        int second;
+        if (order == TraversalOrder.FORWARD) {
+            first = left(node);
+            second = right(node);
+        }
+        else {
+            first = right(node);
+            second = left(node);
+        }
 
-        return Math.min(max, chosen.get());
+        int result = firstNonZeroNode(first, order);
+        if (result == NIL) {
+            result = firstNonZeroNode(second, order);
+        }
+        if (result == NIL && counts[node] >= ZERO_WEIGHT_THRESHOLD) {
+            result = node;
+        }
+        return result;
     }
 
     public int estimatedInMemorySizeInBytes()
     {
-        return SizeOf.QUANTILE_DIGEST + totalNodeCount * SizeOf.NODE;
+        return (int) (SizeOf.QUANTILE_DIGEST +
+                sizeOf(counts) +
+                sizeOf(values) +
+                sizeOf(links));
     }
 
     public int estimatedSerializedSizeInBytes()
@@ -361,7 +418,7 @@ public class QuantileDigest
                 totalNodeCount * estimatedNodeSize;
     }
 
-    public void serialize(final DataOutput output)
+    public void serialize(DataOutput output)
     {
         try {
             output.writeDouble(maxError);
@@ -371,41 +428,35 @@ public class QuantileDigest
             output.writeLong(max);
             output.writeInt(totalNodeCount);
 
-            postOrderTraversal(root, new Callback()
-            {
-                @Override
-                public boolean process(Node node)
-                {
-                    try {
-                        serializeNode(output, node);
-                    }
-                    catch (IOException e) {
-                        Throwables.propagate(e);
-                    }
-                    return true;
-                }
-            });
+            serializeRecursive(output, root);
         }
         catch (IOException e) {
             Throwables.propagate(e);
         }
     }
 
-    private void serializeNode(DataOutput output, Node node)
+    private void serializeRecursive(DataOutput output, int node)
             throws IOException
     {
+        if (node == NIL) {
+            return;
+        }
+
+        serializeRecursive(output, left(node));
+        serializeRecursive(output, right(node));
+
         int flags = 0;
-        if (node.left != null) {
+        if (left(node) != NIL) {
             flags |= Flags.HAS_LEFT;
         }
-        if (node.right != null) {
+        if (right(node) != NIL) {
             flags |= Flags.HAS_RIGHT;
         }
 
         output.writeByte(flags);
-        output.writeByte(node.level);
-        output.writeLong(node.bits);
-        output.writeDouble(node.weightedCount);
+        output.writeByte(level(node));
+        output.writeLong(values[node]);
+        output.writeDouble(counts[node]);
     }
 
     public static QuantileDigest deserialize(DataInput input)
@@ -419,33 +470,34 @@ public class QuantileDigest
             result.landmarkInSeconds = input.readLong();
             result.min = input.readLong();
             result.max = input.readLong();
-            result.totalNodeCount = input.readInt();
 
-            Deque<Node> stack = new ArrayDeque<>();
-            for (int i = 0; i < result.totalNodeCount; i++) {
+            int nodeCount = input.readInt();
+            result.ensureCapacity(nodeCount);
+
+            int[] stack = new int[nodeCount];
+            int top = 0;
+            for (int i = 0; i < nodeCount; i++) {
                 int flags = input.readByte();
+                int level = input.readUnsignedByte();
+                long value = input.readLong();
+                double weight = input.readDouble();
 
-                Node node = deserializeNode(input);
+                int node = result.createNode(value, level, weight);
 
                 if ((flags & Flags.HAS_RIGHT) != 0) {
-                    node.right = stack.pop();
+                    result.setRight(node, stack[--top]);
                 }
 
                 if ((flags & Flags.HAS_LEFT) != 0) {
-                    node.left = stack.pop();
+                    result.setLeft(node, stack[--top]);
                 }
 
-                stack.push(node);
-                result.weightedCount += node.weightedCount;
-                if (node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
-                    result.nonZeroNodeCount++;
-                }
+                stack[top++] = node;
             }
 
-
-            if (!stack.isEmpty()) {
-                Preconditions.checkArgument(stack.size() == 1, "Tree is corrupted. Expected a single root node");
-                result.root = stack.pop();
+            if (top > 0) {
+                checkArgument(top == 1, "Tree is corrupted. Expected a single root node");
+                result.root = stack[0];
             }
 
             return result;
@@ -455,16 +507,6 @@ public class QuantileDigest
         }
     }
 
-    private static Node deserializeNode(DataInput input)
-            throws IOException
-    {
-        int level = input.readUnsignedByte();
-        long value = input.readLong();
-        double weight = input.readDouble();
-
-        return new Node(value, level, weight);
-    }
-
     @VisibleForTesting
     int getTotalNodeCount()
     {
@@ -488,55 +530,107 @@ public class QuantileDigest
     {
         ++compressions;
 
-        final int compressionFactor = calculateCompressionFactor();
+        int compressionFactor = calculateCompressionFactor();
 
-        postOrderTraversal(root, new Callback()
-        {
-            public boolean process(Node node)
-            {
-                if (node.isLeaf()) {
-                    return true;
-                }
+        compressRecursive(root, compressionFactor);
 
-                // if children's weights are ~0 remove them and shift the weight to their parent
+        if (root != NIL && counts[root] < ZERO_WEIGHT_THRESHOLD) {
+            root = tryRemove(root);
+        }
 
-                double leftWeight = 0;
-                if (node.left != null) {
-                    leftWeight = node.left.weightedCount;
-                }
+        if (values.length > COMPACTION_THRESHOLD && totalNodeCount < values.length / 4) {
+            compact();
+        }
+    }
 
-                double rightWeight = 0;
-                if (node.right != null) {
-                    rightWeight = node.right.weightedCount;
-                }
+    /**
+     * Renumbers the nodes in pre-order into arrays sized for the current tree, releasing the
+     * memory held by the free list after the digest has shrunk (e.g., due to decay).
+     */
+    private void compact()
+    {
+        int capacity = Math.max(totalNodeCount, INITIAL_CAPACITY);
 
-                boolean shouldCompress = node.weightedCount + leftWeight + rightWeight < (int) (weightedCount / compressionFactor);
+        double[] newCounts = new double[capacity];
+        long[] newValues = new long[capacity];
+        int[] newLinks = new int[capacity * LINKS_PER_NODE];
 
-                double oldNodeWeight = node.weightedCount;
-                if (shouldCompress || leftWeight < ZERO_WEIGHT_THRESHOLD) {
-                    node.left = tryRemove(node.left);
+        int[] next = new int[1];
+        root = compactRecursive(root, newCounts, newValues, newLinks, next);
 
-                    weightedCount += leftWeight;
-                    node.weightedCount += leftWeight;
-                }
+        counts = newCounts;
+        values = newValues;
+        links = newLinks;
+        nextNode = next[0];
+        firstFree = NIL;
+    }
 
-                if (shouldCompress || rightWeight < ZERO_WEIGHT_THRESHOLD) {
-                    node.right = tryRemove(node.right);
+    private int compactRecursive(int node, double[] newCounts, long[] newValues, int[] newLinks, int[] next)
+    {
+        if (node == NIL) {
+            return NIL;
+        }
 
-                    weightedCount += rightWeight;
-                    node.weightedCount += rightWeight;
-                }
+        int id = next[0]++;
+        newCounts[id] = counts[node];
+        newValues[id] = values[node];
+        newLinks[id * LINKS_PER_NODE + LEVEL_OFFSET] = level(node);
+        newLinks[id * LINKS_PER_NODE + LEFT_OFFSET] = compactRecursive(left(node), newCounts, newValues, newLinks, next);
+        newLinks[id * LINKS_PER_NODE + RIGHT_OFFSET] = compactRecursive(right(node), newCounts, newValues, newLinks, next);
+        return id;
+    }
 
-                if (oldNodeWeight < ZERO_WEIGHT_THRESHOLD && node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
-                    ++nonZeroNodeCount;
-                }
+    private void compressRecursive(int node, int compressionFactor)
+    {
+        if (node == NIL) {
+            return;
+        }
 
-                return true;
-            }
-        });
+        int left = left(node);
+        int right = right(node);
 
-        if (root != null && root.weightedCount < ZERO_WEIGHT_THRESHOLD) {
-            root = tryRemove(root);
+        compressRecursive(left, compressionFactor);
+        compressRecursive(right, compressionFactor);
+
+        if (left == NIL && right == NIL) {
+            return;
+        }
+
+        // if children's weights are ~0 remove them and shift the weight to their parent
+
+        double leftWeight = 0;
+        if (left != NIL) {
+            leftWeight = counts[left];
+        }
+
+        double rightWeight = 0;
+        if (right != NIL) {
+            rightWeight = counts[right];
+        }
+
+        double oldNodeWeight = counts[node];
+
+        boolean shouldCompress = oldNodeWeight + leftWeight + rightWeight < (int) (weightedCount / compressionFactor);
+
+        double nodeWeight = oldNodeWeight;
+        if (shouldCompress || leftWeight < ZERO_WEIGHT_THRESHOLD) {
+            setLeft(node, tryRemove(left));
+
+            weightedCount += leftWeight;
+            nodeWeight += leftWeight;
+        }
+
+        if (shouldCompress || rightWeight < ZERO_WEIGHT_THRESHOLD) {
+            setRight(node, tryRemove(right));
+
+            weightedCount += rightWeight;
+            nodeWeight += rightWeight;
+        }
+
+        counts[node] = nodeWeight;
+
+        if (oldNodeWeight < ZERO_WEIGHT_THRESHOLD && nodeWeight >= ZERO_WEIGHT_THRESHOLD) {
+            ++nonZeroNodeCount;
         }
     }
 
@@ -549,63 +643,75 @@ public class QuantileDigest
     {
         // rescale the weights based on a new landmark to avoid numerical overflow issues
 
-        final double factor = Math.exp(-alpha * (newLandmarkInSeconds - landmarkInSeconds));
+        double factor = Math.exp(-alpha * (newLandmarkInSeconds - landmarkInSeconds));
 
         weightedCount *= factor;
 
-        postOrderTraversal(root, new Callback()
-        {
-            public boolean process(Node node)
-            {
-                double oldWeight = node.weightedCount;
+        rescaleRecursive(root, factor);
 
-                node.weightedCount *= factor;
+        landmarkInSeconds = newLandmarkInSeconds;
+    }
 
-                if (oldWeight >= ZERO_WEIGHT_THRESHOLD && node.weightedCount < ZERO_WEIGHT_THRESHOLD) {
-                    --nonZeroNodeCount;
-                }
+    private void rescaleRecursive(int node, double factor)
+    {
+        if (node == NIL) {
+            return;
+        }
 
-                return true;
-            }
-        });
+        rescaleRecursive(left(node), factor);
+        rescaleRecursive(right(node), factor);
 
-        landmarkInSeconds = newLandmarkInSeconds;
+        double oldWeight = counts[node];
+
+        counts[node] *= factor;
+
+        if (oldWeight >= ZERO_WEIGHT_THRESHOLD && counts[node] < ZERO_WEIGHT_THRESHOLD) {
+            --nonZeroNodeCount;
+        }
     }
 
     private int calculateCompressionFactor()
     {
-        if (root == null) {
+        if (root == NIL) {
             return 1;
         }
 
-        return Math.max((int) ((root.level + 1) / maxError), 1);
+        return Math.max((int) ((level(root) + 1) / maxError), 1);
     }
 
     private void insert(long bits, double weight)
     {
+        // the arrays are only reallocated when a node is created, which ends the descent
+        long[] values = this.values;
+        int[] links = this.links;
+
         long lastBranch = 0;
-        Node parent = null;
-        Node current = root;
+        int parent = NIL;
+        int current = root;
 
         while (true) {
-            if (current == null) {
+            if (current == NIL) {
                 setChild(parent, lastBranch, createLeaf(bits, weight));
                 return;
             }
-            else if (!inSameSubtree(bits, current.bits, current.level)) {
+
+            long currentBits = values[current];
+            int currentLevel = links[current * LINKS_PER_NODE + LEVEL_OFFSET];
+
+            if (!inSameSubtree(bits, currentBits, currentLevel)) {
                 // if bits and node.bits are not in the same branch given node's level,
                 // insert a parent above them at the point at which branches diverge
                 setChild(parent, lastBranch, makeSiblings(current, createLeaf(bits, weight)));
                 return;
             }
-            else if (current.level == 0 && current.bits == bits) {
+            else if (currentLevel == 0 && currentBits == bits) {
                 // found the node
 
-                double oldWeight = current.weightedCount;
+                double oldWeight = counts[current];
 
-                current.weightedCount += weight;
+                counts[current] += weight;
 
-                if (current.weightedCount >= ZERO_WEIGHT_THRESHOLD && oldWeight < ZERO_WEIGHT_THRESHOLD) {
+                if (counts[current] >= ZERO_WEIGHT_THRESHOLD && oldWeight < ZERO_WEIGHT_THRESHOLD) {
                     ++nonZeroNodeCount;
                 }
 
@@ -615,115 +721,159 @@ public class QuantileDigest
             }
 
             // we're on the correct branch of the tree and we haven't reached a leaf, so keep going down
-            long branch = bits & current.getBranchMask();
+            long branch = bits & branchMask(currentLevel);
 
             parent = current;
             lastBranch = branch;
 
-            if (branch == 0) {
-                current = current.left;
-            }
-            else {
-                current = current.right;
-            }
+            // the right child is stored next to the left one, so select it by offset rather than
+            // with a branch, which is unpredictable for random values
+            current = links[current * LINKS_PER_NODE + LEFT_OFFSET + (int) ((bits >>> (currentLevel - 1)) & 1)];
         }
     }
 
-    private void setChild(Node parent, long branch, Node child)
+    private void setChild(int parent, long branch, int child)
     {
-        if (parent == null) {
+        if (parent == NIL) {
             root = child;
         }
         else if (branch == 0) {
-            parent.left = child;
+            setLeft(parent, child);
         }
         else {
-            parent.right = child;
+            setRight(parent, child);
         }
     }
 
-    private Node makeSiblings(Node node, Node sibling)
+    private int makeSiblings(int node, int sibling)
     {
-        int parentLevel = MAX_BITS - Long.numberOfLeadingZeros(node.bits ^ sibling.bits);
+        int parentLevel = MAX_BITS - Long.numberOfLeadingZeros(values[node] ^ values[sibling]);
 
-        Node parent = createNode(node.bits, parentLevel, 0);
+        int parent = createNode(values[node], parentLevel, 0);
 
         // the branch is given by the bit at the level one below parent
-        long branch = sibling.bits & parent.getBranchMask();
+        long branch = values[sibling] & branchMask(parentLevel);
         if (branch == 0) {
-            parent.left = sibling;
-            parent.right = node;
+            setLeft(parent, sibling);
+            setRight(parent, node);
         }
         else {
-            parent.left = node;
-            parent.right = sibling;
+            setLeft(parent, node);
+            setRight(parent, sibling);
         }
 
         return parent;
     }
 
-    private Node createLeaf(long bits, double weight)
+    private int createLeaf(long bits, double weight)
     {
         return createNode(bits, 0, weight);
     }
 
-    private Node createNode(long bits, int level, double weight)
+    private int createNode(long bits, int level, double weight)
     {
         weightedCount += weight;
         ++totalNodeCount;
         if (weight >= ZERO_WEIGHT_THRESHOLD) {
             nonZeroNodeCount++;
         }
-        return new Node(bits, level, weight);
+
+        int node;
+        if (firstFree != NIL) {
+            node = firstFree;
+            firstFree = left(node);
+        }
+        else {
+            ensureCapacity(nextNode + 1);
+            node = nextNode++;
+        }
+
+        values[node] = bits;
+        links[node * LINKS_PER_NODE + LEVEL_OFFSET] = level;
+        counts[node] = weight;
+        setLeft(node, NIL);
+        setRight(node, NIL);
+
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        setLeft(node, firstFree);
+        setRight(node, NIL);
+        firstFree = node;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= values.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, values.length + (values.length >> 1) + 1);
+        counts = Arrays.copyOf(counts, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        links = Arrays.copyOf(links, newCapacity * LINKS_PER_NODE);
     }
 
-    private Node merge(Node node, Node other)
+    // Note: the node arrays may be reallocated by any call that creates nodes, so children are
+    // computed into a local before being stored
+    private int merge(int node, QuantileDigest other, int otherNode)
     {
-        if (node == null) {
-            return copyRecursive(other);
+        if (node == NIL) {
+            return copyRecursive(other, otherNode);
         }
-        else if (other == null) {
+        else if (otherNode == NIL) {
             return node;
         }
-        else if (!inSameSubtree(node.bits, other.bits, Math.max(node.level, other.level))) {
-            return makeSiblings(node, copyRecursive(other));
+        else if (!inSameSubtree(values[node], other.values[otherNode], Math.max(level(node), other.level(otherNode)))) {
+            return makeSiblings(node, copyRecursive(other, otherNode));
         }
-        else if (node.level > other.level) {
-            long branch = other.bits & node.getBranchMask();
+        else if (level(node) > other.level(otherNode)) {
+            long branch = other.values[otherNode] & branchMask(level(node));
 
             if (branch == 0) {
-                node.left = merge(node.left, other);
+                int left = merge(left(node), other, otherNode);
+                setLeft(node, left);
             }
             else {
-                node.right = merge(node.right, other);
+                int right = merge(right(node), other, otherNode);
+                setRight(node, right);
             }
             return node;
         }
-        else if (node.level < other.level) {
-            Node result = createNode(other.bits, other.level, other.weightedCount);
+        else if (level(node) < other.level(otherNode)) {
+            int result = createNode(other.values[otherNode], other.level(otherNode), other.counts[otherNode]);
 
-            long branch = node.bits & other.getBranchMask();
+            int left;
+            int right;
+            long branch = values[node] & branchMask(other.level(otherNode));
             if (branch == 0) {
-                result.left = merge(node, other.left);
-                result.right = copyRecursive(other.right);
+                left = merge(node, other, other.left(otherNode));
+                right = copyRecursive(other, other.right(otherNode));
             }
             else {
-                result.left = copyRecursive(other.left);
-                result.right = merge(node, other.right);
+                left = copyRecursive(other, other.left(otherNode));
+                right = merge(node, other, other.right(otherNode));
             }
+            setLeft(result, left);
+            setRight(result, right);
 
             return result;
         }
 
         // else, they must be at the same level and on the same path, so just bump the counts
-        double oldWeight = node.weightedCount;
+        double oldWeight = counts[node];
 
-        weightedCount += other.weightedCount;
-        node.weightedCount = node.weightedCount + other.weightedCount;
-        node.left = merge(node.left, other.left);
-        node.right = merge(node.right, other.right);
+        weightedCount += other.counts[otherNode];
+        counts[node] = counts[node] + other.counts[otherNode];
 
-        if (oldWeight < ZERO_WEIGHT_THRESHOLD && node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
+        int left = merge(left(node), other, other.left(otherNode));
+        setLeft(node, left);
+        int right = merge(right(node), other, other.right(otherNode));
+        setRight(node, right);
+
+        if (oldWeight < ZERO_WEIGHT_THRESHOLD && counts[node] >= ZERO_WEIGHT_THRESHOLD) {
             nonZeroNodeCount++;
         }
 
@@ -735,16 +885,19 @@ public class QuantileDigest
         return level == MAX_BITS || (bitsA >>> level) == (bitsB >>> level);
     }
 
-    private Node copyRecursive(Node node)
+    private int copyRecursive(QuantileDigest other, int otherNode)
     {
-        Node result = null;
-
-        if (node != null) {
-            result = createNode(node.bits, node.level, node.weightedCount);
-            result.left = copyRecursive(node.left);
-            result.right = copyRecursive(node.right);
+        if (otherNode == NIL) {
+            return NIL;
         }
 
+        int result = createNode(other.values[otherNode], other.level(otherNode), other.counts[otherNode]);
+
+        int left = copyRecursive(other, other.left(otherNode));
+        setLeft(result, left);
+        int right = copyRecursive(other, other.right(otherNode));
+        setRight(result, right);
+
         return result;
     }
 
@@ -752,69 +905,36 @@ public class QuantileDigest
      * Remove the node if possible or set its count to 0 if it has children and
      * it needs to be kept around
      */
-    private Node tryRemove(Node node)
+    private int tryRemove(int node)
     {
-        if (node == null) {
-            return null;
+        if (node == NIL) {
+            return NIL;
         }
 
-        if (node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
+        if (counts[node] >= ZERO_WEIGHT_THRESHOLD) {
             --nonZeroNodeCount;
         }
 
-        weightedCount -= node.weightedCount;
+        weightedCount -= counts[node];
 
-        Node result = null;
-        if (node.isLeaf()) {
+        int result = NIL;
+        if (isLeaf(node)) {
             --totalNodeCount;
+            freeNode(node);
         }
-        else if (node.hasSingleChild()) {
-            result = node.getSingleChild();
+        else if (hasSingleChild(node)) {
+            result = getSingleChild(node);
             --totalNodeCount;
+            freeNode(node);
         }
         else {
-            node.weightedCount = 0;
+            counts[node] = 0;
             result = node;
         }
 
         return result;
     }
 
-    private boolean postOrderTraversal(Node node, Callback callback)
-    {
-        return postOrderTraversal(node, callback, TraversalOrder.FORWARD);
-    }
-
-    // returns true if traversal should continue
-    private boolean postOrderTraversal(Node node, Callback callback, TraversalOrder order)
-    {
-        if (node == null) {
-            return false;
-        }
-
-        Node first;
-        Node second;
-
-        if (order == TraversalOrder.FORWARD) {
-            first = node.left;
-            second = node.right;
-        }
-        else {
-            first = node.right;
-            second = node.left;
-        }
-
-        if (first != null && !postOrderTraversal(first, callback, order)) {
-            return false;
-        }
-
-        if (second != null && !postOrderTraversal(second, callback, order)) {
-            return false;
-        }
-
-        return callback.process(node);
-    }
-
     /**
      * Computes the maximum error of the current digest
      */
@@ -832,7 +952,20 @@ public class QuantileDigest
                 min == other.min &&
                 max == other.max &&
                 weightedCount == other.weightedCount &&
-                Objects.equal(root, other.root));
+                equivalent(root, other, other.root));
+    }
+
+    private boolean equivalent(int node, QuantileDigest other, int otherNode)
+    {
+        if (node == NIL || otherNode == NIL) {
+            return node == otherNode;
+        }
+
+        return Double.compare(counts[node], other.counts[otherNode]) == 0 &&
+                level(node) == other.level(otherNode) &&
+                values[node] == other.values[otherNode] &&
+                equivalent(left(node), other, other.left(otherNode)) &&
+                equivalent(right(node), other, other.right(otherNode));
     }
 
     private void rescaleToCommonLandmark(QuantileDigest one, QuantileDigest two)
@@ -859,82 +992,97 @@ public class QuantileDigest
      * Computes the max "weight" of any path starting at node and ending at a leaf in the
      * hypothetical complete tree. The weight is the sum of counts in the ancestors of a given node
      */
-    private double computeMaxPathWeight(Node node)
+    private double computeMaxPathWeight(int node)
     {
-        if (node == null || node.level == 0) {
+        if (node == NIL || level(node) == 0) {
             return 0;
         }
 
-        double leftMaxWeight = computeMaxPathWeight(node.left);
-        double rightMaxWeight = computeMaxPathWeight(node.right);
+        double leftMaxWeight = computeMaxPathWeight(left(node));
+        double rightMaxWeight = computeMaxPathWeight(right(node));
 
-        return Math.max(leftMaxWeight, rightMaxWeight) + node.weightedCount;
+        return Math.max(leftMaxWeight, rightMaxWeight) + counts[node];
     }
 
     @VisibleForTesting
     void validate()
     {
-        final AtomicDouble sumOfWeights = new AtomicDouble();
-        final AtomicInteger actualNodeCount = new AtomicInteger();
-        final AtomicInteger actualNonZeroNodeCount = new AtomicInteger();
+        double sumOfWeights = 0;
+        int actualNodeCount = 0;
+        int actualNonZeroNodeCount = 0;
 
-        if (root != null) {
+        if (root != NIL) {
             validateStructure(root);
 
-            postOrderTraversal(root, new Callback()
-            {
-                @Override
-                public boolean process(Node node)
-                {
-                    sumOfWeights.addAndGet(node.weightedCount);
-                    actualNodeCount.incrementAndGet();
+            // every allocated slot is either reachable from the root or in the free list
+            boolean[] reachable = new boolean[nextNode];
+            markReachable(root, reachable);
+            for (int node = 0; node < nextNode; node++) {
+                if (reachable[node]) {
+                    sumOfWeights += counts[node];
+                    actualNodeCount++;
 
-                    if (node.weightedCount >= ZERO_WEIGHT_THRESHOLD) {
-                        actualNonZeroNodeCount.incrementAndGet();
+                    if (counts[node] >= ZERO_WEIGHT_THRESHOLD) {
+                        actualNonZeroNodeCount++;
                     }
-
-                    return true;
                 }
-            });
+            }
+
+            int freeCount = 0;
+            for (int node = firstFree; node != NIL; node = left(node)) {
+                checkState(!reachable[node], "Node %s is in the free list but is reachable from the root", node);
+                freeCount++;
+            }
+            checkState(actualNodeCount + freeCount == nextNode, "Nodes leaked: %s in use, %s free, %s allocated", actualNodeCount, freeCount, nextNode);
         }
 
-        checkState(Math.abs(sumOfWeights.get() - weightedCount) < ZERO_WEIGHT_THRESHOLD,
-                "Computed weight (%s) doesn't match summary (%s)", sumOfWeights.get(),
+        checkState(Math.abs(sumOfWeights - weightedCount) < ZERO_WEIGHT_THRESHOLD,
+                "Computed weight (%s) doesn't match summary (%s)", sumOfWeights,
                 weightedCount);
 
-        checkState(actualNodeCount.get() == totalNodeCount,
+        checkState(actualNodeCount == totalNodeCount,
                 "Actual node count (%s) doesn't match summary (%s)",
-                actualNodeCount.get(), totalNodeCount);
+                actualNodeCount, totalNodeCount);
 
-        checkState(actualNonZeroNodeCount.get() == nonZeroNodeCount,
+        checkState(actualNonZeroNodeCount == nonZeroNodeCount,
                 "Actual non-zero node count (%s) doesn't match summary (%s)",
-                actualNonZeroNodeCount.get(), nonZeroNodeCount);
+                actualNonZeroNodeCount, nonZeroNodeCount);
     }
 
-    private void validateStructure(Node node)
+    private void markReachable(int node, boolean[] reachable)
     {
-        checkState(node.level >= 0);
+        if (node == NIL) {
+            return;
+        }
+        reachable[node] = true;
+        markReachable(left(node), reachable);
+        markReachable(right(node), reachable);
+    }
+
+    private void validateStructure(int node)
+    {
+        checkState(level(node) >= 0);
 
-        if (node.left != null) {
-            validateBranchStructure(node, node.left, node.right, true);
-            validateStructure(node.left);
+        if (left(node) != NIL) {
+            validateBranchStructure(node, left(node), right(node), true);
+            validateStructure(left(node));
         }
 
-        if (node.right != null) {
-            validateBranchStructure(node, node.right, node.left, false);
-            validateStructure(node.right);
+        if (right(node) != NIL) {
+            validateBranchStructure(node, right(node), left(node), false);
+            validateStructure(right(node));
         }
     }
 
-    private void validateBranchStructure(Node parent, Node child, Node otherChild, boolean isLeft)
+    private void validateBranchStructure(int parent, int child, int otherChild, boolean isLeft)
     {
-        checkState(child.level < parent.level, "Child level (%s) should be smaller than parent level (%s)", child.level, parent.level);
+        checkState(level(child) < level(parent), "Child level (%s) should be smaller than parent level (%s)", level(child), level(parent));
 
-        long branch = child.bits & (1L << (parent.level - 1));
+        long branch = values[child] & (1L << (level(parent) - 1));
         checkState(branch == 0 && isLeft || branch != 0 && !isLeft, "Value of child node is inconsistent with its branch");
 
-        Preconditions.checkState(parent.weightedCount >= ZERO_WEIGHT_THRESHOLD ||
-                child.weightedCount >= ZERO_WEIGHT_THRESHOLD || otherChild != null,
+        checkState(counts[parent] >= ZERO_WEIGHT_THRESHOLD ||
+                counts[child] >= ZERO_WEIGHT_THRESHOLD || otherChild != NIL,
                 "Found a linear chain of zero-weight nodes");
     }
 
@@ -945,50 +1093,43 @@ public class QuantileDigest
         builder.append("digraph QuantileDigest {\n")
                 .append("\tgraph [ordering=\"out\"];");
 
-        final List<Node> nodes = new ArrayList<>();
-        postOrderTraversal(root, new Callback()
-        {
-            @Override
-            public boolean process(Node node)
-            {
-                nodes.add(node);
-                return true;
-            }
-        });
-
-        Multimap<Integer, Node> nodesByLevel = Multimaps.index(nodes, new Function<Node, Integer>()
-        {
-            @Override
-            public Integer apply(Node input)
-            {
-                return input.level;
-            }
-        });
+        boolean[] reachable = new boolean[nextNode];
+        markReachable(root, reachable);
 
-        for (Map.Entry<Integer, Collection<Node>> entry : nodesByLevel.asMap().entrySet()) {
-            builder.append("\tsubgraph level_" + entry.getKey() + " {\n")
-                    .append("\t\trank = same;\n");
-
-            for (Node node : entry.getValue()) {
+        for (int level = 0; level <= MAX_BITS; level++) {
+            boolean first = true;
+            for (int node = 0; node < nextNode; node++) {
+                if (!reachable[node] || level(node) != level) {
+                    continue;
+                }
+                if (first) {
+                    builder.append("\tsubgraph level_" + level + " {\n")
+                            .append("\t\trank = same;\n");
+                    first = false;
+                }
                 builder.append(String.format("\t\t%s [label=\"[%s..%s]@%s\\n%s\", shape=rect, style=filled,color=%s];\n",
                         idFor(node),
-                        node.getLowerBound(),
-                        node.getUpperBound(),
-                        node.level,
-                        node.weightedCount,
-                        node.weightedCount > 0 ? "salmon2" : "white")
+                        lowerBound(node),
+                        upperBound(node),
+                        level(node),
+                        counts[node],
+                        counts[node] > 0 ? "salmon2" : "white")
                 );
             }
-
-            builder.append("\t}\n");
+            if (!first) {
+                builder.append("\t}\n");
+            }
         }
 
-        for (Node node : nodes) {
-            if (node.left != null) {
-                builder.append(format("\t%s -> %s;\n", idFor(node), idFor(node.left)));
+        for (int node = 0; node < nextNode; node++) {
+            if (!reachable[node]) {
+                continue;
+            }
+            if (left(node) != NIL) {
+                builder.append(format("\t%s -> %s;\n", idFor(node), idFor(left(node))));
             }
-            if (node.right != null) {
-                builder.append(format("\t%s -> %s;\n", idFor(node), idFor(node.right)));
+            if (right(node) != NIL) {
+                builder.append(format("\t%s -> %s;\n", idFor(node), idFor(right(node))));
             }
         }
 
@@ -997,9 +1138,85 @@ public class QuantileDigest
         return builder.toString();
     }
 
-    private static String idFor(Node node)
+    private String idFor(int node)
+    {
+        return String.format("node_%x_%x", values[node], level(node));
+    }
+
+    private int level(int node)
+    {
+        return links[node * LINKS_PER_NODE + LEVEL_OFFSET];
+    }
+
+    private int left(int node)
+    {
+        return links[node * LINKS_PER_NODE + LEFT_OFFSET];
+    }
+
+    private int right(int node)
+    {
+        return links[node * LINKS_PER_NODE + RIGHT_OFFSET];
+    }
+
+    private void setLeft(int node, int child)
+    {
+        links[node * LINKS_PER_NODE + LEFT_OFFSET] = child;
+    }
+
+    private void setRight(int node, int child)
+    {
+        links[node * LINKS_PER_NODE + RIGHT_OFFSET] = child;
+    }
+
+    private boolean isLeaf(int node)
+    {
+        return left(node) == NIL && right(node) == NIL;
+    }
+
+    private boolean hasSingleChild(int node)
+    {
+        return left(node) == NIL && right(node) != NIL || left(node) != NIL && right(node) == NIL;
+    }
+
+    private int getSingleChild(int node)
     {
-        return String.format("node_%x_%x", node.bits, node.level);
+        checkState(hasSingleChild(node), "Node does not have a single child");
+        return left(node) != NIL ? left(node) : right(node);
+    }
+
+    private long upperBound(int node)
+    {
+        // set all lsb below level to 1 (we're looking for the highest value of the range covered by this node)
+        long mask = 0;
+
+        if (level(node) > 0) { // need to special case when level == 0 because (value >> 64 really means value >> (64 % 64))
+            mask = 0xFFFF_FFFF_FFFF_FFFFL >>> (MAX_BITS - level(node));
+        }
+        return bitsToLong(values[node] | mask);
+    }
+
+    private long lowerBound(int node)
+    {
+        // set all lsb below level to 0 (we're looking for the lowest value of the range covered by this node)
+        long mask = 0;
+
+        if (level(node) > 0) { // need to special case when level == 0 because (value >> 64 really means value >> (64 % 64))
+            mask = 0xFFFF_FFFF_FFFF_FFFFL >>> (MAX_BITS - level(node));
+        }
+
+        return bitsToLong(values[node] & (~mask));
+    }
+
+    private long middle(int node)
+    {
+        long lower = lowerBound(node);
+        long upper = upperBound(node);
+        return lower + (upper - lower) / 2;
+    }
+
+    private static long branchMask(int level)
+    {
+        return (1L << (level - 1));
     }
 
     /**
@@ -1079,108 +1296,6 @@ public class QuantileDigest
         }
     }
 
-    private static class Node
-    {
-        private double weightedCount;
-        private int level;
-        private long bits;
-        private Node left;
-        private Node right;
-
-        private Node(long bits, int level, double weightedCount)
-        {
-            this.bits = bits;
-            this.level = level;
-            this.weightedCount = weightedCount;
-        }
-
-        public boolean isLeaf()
-        {
-            return left == null && right == null;
-        }
-
-        public boolean hasSingleChild()
-        {
-            return left == null && right != null || left != null && right == null;
-        }
-
-        public Node getSingleChild()
-        {
-            checkState(hasSingleChild(), "Node does not have a single child");
-            return firstNonNull(left, right);
-        }
-
-        public long getUpperBound()
-        {
-            // set all lsb below level to 1 (we're looking for the highest value of the range covered by this node)
-            long mask = 0;
-
-            if (level > 0) { // need to special case when level == 0 because (value >> 64 really means value >> (64 % 64))
-                mask = 0xFFFF_FFFF_FFFF_FFFFL >>> (MAX_BITS - level);
-            }
-            return bitsToLong(bits | mask);
-        }
-
-        public long getBranchMask()
-        {
-            return (1L << (level - 1));
-        }
-
-        public long getLowerBound()
-        {
-            // set all lsb below level to 0 (we're looking for the lowest value of the range covered by this node)
-            long mask = 0;
-
-            if (level > 0) { // need to special case when level == 0 because (value >> 64 really means value >> (64 % 64))
-                mask = 0xFFFF_FFFF_FFFF_FFFFL >>> (MAX_BITS - level);
-            }
-
-            return bitsToLong(bits & (~mask));
-        }
-
-        public long getMiddle()
-        {
-            return getLowerBound() + (getUpperBound() - getLowerBound()) / 2;
-        }
-
-        public String toString()
-        {
-            return format("%s (level = %d, count = %s, left = %s, right = %s)", bits, level, weightedCount, left != null, right != null);
-        }
-
-        @Override
-        public int hashCode()
-        {
-            return Objects.hashCode(weightedCount, level, bits, left, right);
-        }
-
-        @Override
-        public boolean equals(Object obj)
-        {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null || getClass() != obj.getClass()) {
-                return false;
-            }
-            final Node other = (Node) obj;
-            return Objects.equal(this.weightedCount, other.weightedCount) &&
-                    Objects.equal(this.level, other.level) &&
-                    Objects.equal(this.bits, other.bits) &&
-                    Objects.equal(this.left, other.left) &&
-                    Objects.equal(this.right, other.right);
-        }
-    }
-
-    private static interface Callback
-    {
-        /**
-         * @param node the node to process
-         * @return true if processing should continue
-         */
-        boolean process(Node node);
-    }
-
     private static class SizeOf
     {
         public static final int BYTE = 1;
@@ -1190,7 +1305,6 @@ public class QuantileDigest
         public static final int DOUBLE = 8;
 
         public static final int QUANTILE_DIGEST = ClassLayout.parseClass(QuantileDigest.class).instanceSize();
-        public static final int NODE = ClassLayout.parseClass(Node.class).instanceSize();
     }
 
     private static class Flags
@@ -1199,4 +1313,3 @@ public class QuantileDigest
         public static final int HAS_RIGHT = 1 << 1;
     }
 }
-
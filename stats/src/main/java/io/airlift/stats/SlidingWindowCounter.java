@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Ticker;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts the values added during the last few seconds in a ring of per-second buckets. Unlike
+ * {@link DecayCounter}, adds do not lock or compute exponentials, and every value is counted
+ * in full until it falls out of the window.
+ */
+@Beta
+@ThreadSafe
+public final class SlidingWindowCounter
+{
+    private final Ticker ticker;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public SlidingWindowCounter(int windowSeconds)
+    {
+        this(windowSeconds, Ticker.systemTicker());
+    }
+
+    public SlidingWindowCounter(int windowSeconds, Ticker ticker)
+    {
+        checkArgument(windowSeconds > 0, "windowSeconds must be > 0");
+        checkNotNull(ticker, "ticker is null");
+
+        this.ticker = ticker;
+        buckets = new AtomicReferenceArray<>(windowSeconds);
+    }
+
+    public void add(long value)
+    {
+        bucket(getTickInSeconds()).add(value);
+    }
+
+    public void merge(SlidingWindowCounter counter)
+    {
+        checkNotNull(counter, "counter is null");
+        checkArgument(counter.getWindowSeconds() == getWindowSeconds(), "Expected counter to have a window of %s seconds, but was %s", getWindowSeconds(), counter.getWindowSeconds());
+
+        long nowInSeconds = getTickInSeconds();
+        for (int i = 0; i < counter.buckets.length(); i++) {
+            Bucket bucket = counter.buckets.get(i);
+            if (bucket != null && isInWindow(bucket, nowInSeconds, getWindowSeconds())) {
+                bucket(bucket.second).add(bucket.sum());
+            }
+        }
+    }
+
+    @Managed
+    public void reset()
+    {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    public int getWindowSeconds()
+    {
+        return buckets.length();
+    }
+
+    /**
+     * Gets the sum of the values added during the whole window.
+     */
+    @Managed
+    public double getCount()
+    {
+        return getCount(getWindowSeconds());
+    }
+
+    /**
+     * Gets the sum of the values added per second, averaged over the whole window.
+     */
+    @Managed
+    public double getRate()
+    {
+        return getRate(getWindowSeconds());
+    }
+
+    /**
+     * Gets the sum of the values added during the last {@code seconds} seconds, including the
+     * current one.
+     */
+    public double getCount(int seconds)
+    {
+        checkArgument(seconds > 0 && seconds <= getWindowSeconds(), "seconds must be between 1 and %s", getWindowSeconds());
+
+        long nowInSeconds = getTickInSeconds();
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && isInWindow(bucket, nowInSeconds, seconds)) {
+                count += bucket.sum();
+            }
+        }
+        return count;
+    }
+
+    public double getRate(int seconds)
+    {
+        return getCount(seconds) / seconds;
+    }
+
+    private Bucket bucket(long second)
+    {
+        int index = (int) Math.floorMod(second, (long) buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            // a bucket from a later second means the caller was delayed for a whole window, so
+            // count the value in the later second rather than discard it
+            if (bucket != null && bucket.second >= second) {
+                return bucket;
+            }
+
+            // only one writer replaces an expired bucket, and the others add to its replacement
+            Bucket replacement = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    private static boolean isInWindow(Bucket bucket, long nowInSeconds, int seconds)
+    {
+        return bucket.second > nowInSeconds - seconds && bucket.second <= nowInSeconds;
+    }
+
+    private long getTickInSeconds()
+    {
+        return TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("windowSeconds", getWindowSeconds())
+                .add("count", getCount())
+                .add("rate", getRate())
+                .toString();
+    }
+
+    private static class Bucket
+            extends LongAdder
+    {
+        private final long second;
+
+        private Bucket(long second)
+        {
+            this.second = second;
+        }
+    }
+}
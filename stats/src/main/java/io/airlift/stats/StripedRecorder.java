@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Buffers values recorded by concurrent writers in stripes selected by the writing thread, so
+ * that writers do not contend on the lock guarding the owner's digest. Each stripe only holds
+ * values observed within the same second, which allows them to be folded into a decaying
+ * digest later without changing their weight.
+ *
+ * <p>Lock ordering: the owner's lock must be acquired before a stripe lock. Writers never hold
+ * a stripe lock while acquiring the owner's lock; when {@link #tryAdd} rejects a value, the
+ * caller is expected to acquire its own lock, {@link #drainTo drain} the recorder and add the
+ * value directly.</p>
+ */
+@ThreadSafe
+final class StripedRecorder
+{
+    private static final int MAX_STRIPES = 64;
+    private static final int STRIPE_CAPACITY = 128;
+
+    private final Ticker ticker;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    StripedRecorder(Ticker ticker)
+    {
+        this(ticker, Math.min(MAX_STRIPES, 4 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    @VisibleForTesting
+    StripedRecorder(Ticker ticker, int stripeCount)
+    {
+        checkNotNull(ticker, "ticker is null");
+        this.ticker = ticker;
+
+        int size = ThreadStripes.stripeCount(stripeCount);
+        stripes = new Stripe[size];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Buffers the value in the stripe of the current thread.
+     *
+     * @return false if the stripe is full or holds values from a different second, in which
+     * case the value was not recorded
+     */
+    boolean tryAdd(long value, long count)
+    {
+        long nowInSeconds = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+        Stripe stripe = stripes[ThreadStripes.currentStripe(mask)];
+        synchronized (stripe) {
+            return stripe.tryAdd(value, count, nowInSeconds);
+        }
+    }
+
+    /**
+     * Folds all buffered values into the sink. The caller must hold the lock that guards
+     * the sink.
+     */
+    void drainTo(Sink sink)
+    {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.drainTo(sink);
+            }
+        }
+    }
+
+    interface Sink
+    {
+        void add(long value, long count, long timestampInSeconds);
+    }
+
+    private static class Stripe
+    {
+        @GuardedBy("this")
+        private long[] values;
+        @GuardedBy("this")
+        private long[] counts;
+        @GuardedBy("this")
+        private int size;
+        @GuardedBy("this")
+        private long timestampInSeconds;
+
+        public boolean tryAdd(long value, long count, long nowInSeconds)
+        {
+            if (size == 0) {
+                if (values == null) {
+                    // allocate lazily since most stripes are never used by short-lived processes
+                    values = new long[STRIPE_CAPACITY];
+                    counts = new long[STRIPE_CAPACITY];
+                }
+                timestampInSeconds = nowInSeconds;
+            }
+            else if (size == values.length || timestampInSeconds != nowInSeconds) {
+                return false;
+            }
+
+            values[size] = value;
+            counts[size] = count;
+            size++;
+            return true;
+        }
+
+        public void drainTo(Sink sink)
+        {
+            for (int i = 0; i < size; i++) {
+                sink.add(values[i], counts[i], timestampInSeconds);
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Helpers for spreading writers over a power-of-two sized table of stripes by thread.
+ */
+final class ThreadStripes
+{
+    private ThreadStripes() {}
+
+    /**
+     * Returns the smallest power of two that is at least the requested number of stripes.
+     */
+    static int stripeCount(int requested)
+    {
+        checkArgument(requested > 0, "stripeCount must be > 0");
+        int size = 1;
+        while (size < requested) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the stripe of the current thread in a table of {@code mask + 1} stripes.
+     */
+    static int currentStripe(int mask)
+    {
+        long id = Thread.currentThread().getId();
+        // mix the bits so that threads created in sequence do not collide on small tables
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -3,6 +3,7 @@ package io.airlift.stats;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
 import org.weakref.jmx.Managed;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -19,10 +20,15 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 public class TimeDistribution
 {
     private static final double MAX_ERROR = 0.01;
+    private static final long HISTOGRAM_LOWEST_DISCERNIBLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HISTOGRAM_HIGHEST_TRACKABLE_NANOS = TimeUnit.DAYS.toNanos(1);
+    private static final int HISTOGRAM_MAX_SIGNIFICANT_DIGITS = 2;
 
     @GuardedBy("this")
     private final QuantileDigest digest;
     private final TimeUnit unit;
+    private final StripedRecorder recorder;
+    private final WindowedHistogram histogram;
 
     public TimeDistribution()
     {
@@ -31,10 +37,7 @@ public class TimeDistribution
 
     public TimeDistribution(TimeUnit unit)
     {
-        Preconditions.checkNotNull(unit, "unit is null");
-
-        digest = new QuantileDigest(MAX_ERROR);
-        this.unit = unit;
+        this(0, unit);
     }
 
     public TimeDistribution(double alpha)
@@ -43,70 +46,149 @@ public class TimeDistribution
     }
 
     public TimeDistribution(double alpha, TimeUnit unit)
+    {
+        this(alpha, unit, false);
+    }
+
+    /**
+     * @param striped buffer concurrent adds in per-thread stripes until the distribution is read
+     * @see Distribution#Distribution(double, boolean)
+     */
+    public TimeDistribution(double alpha, TimeUnit unit, boolean striped)
     {
         Preconditions.checkNotNull(unit, "unit is null");
 
         digest = new QuantileDigest(MAX_ERROR, alpha);
         this.unit = unit;
+        recorder = striped ? new StripedRecorder(Ticker.systemTicker()) : null;
+        histogram = null;
     }
 
-    public synchronized void add(long value)
+    /**
+     * Records durations from one microsecond to one day in a {@link LogLinearHistogram} instead
+     * of a {@link QuantileDigest}. Adds are lock-free and the memory used is fixed, at the cost of
+     * reporting values with the given number of significant digits. Instead of decaying each
+     * value exponentially, values are kept for one to two windows of {@code 1 / alpha} seconds.
+     *
+     * <p>Each histogram takes about 4KB with one significant digit and 32KB with two, and a
+     * decaying distribution holds two of them.</p>
+     *
+     * @param significantDigits 1 or 2; two digits match the accuracy of the quantile digest
+     */
+    public TimeDistribution(Ticker ticker, double alpha, TimeUnit unit, int significantDigits)
     {
-        digest.add(value);
+        Preconditions.checkNotNull(ticker, "ticker is null");
+        Preconditions.checkNotNull(unit, "unit is null");
+        Preconditions.checkArgument(significantDigits >= 1 && significantDigits <= HISTOGRAM_MAX_SIGNIFICANT_DIGITS,
+                "significantDigits must be between 1 and %s", HISTOGRAM_MAX_SIGNIFICANT_DIGITS);
+
+        digest = null;
+        this.unit = unit;
+        recorder = null;
+        histogram = new WindowedHistogram(HISTOGRAM_LOWEST_DISCERNIBLE_NANOS, HISTOGRAM_HIGHEST_TRACKABLE_NANOS, significantDigits, alpha, ticker);
+    }
+
+    public void add(long value)
+    {
+        if (histogram != null) {
+            histogram.add(value);
+            return;
+        }
+
+        if (recorder != null && recorder.tryAdd(value, 1)) {
+            return;
+        }
+
+        synchronized (this) {
+            flush();
+            digest.add(value);
+        }
+    }
+
+    @GuardedBy("this")
+    private void flush()
+    {
+        if (recorder != null) {
+            recorder.drainTo(digest::add);
+        }
     }
 
     @Managed
-    public synchronized double getMaxError()
+    public double getMaxError()
     {
-        return digest.getConfidenceFactor();
+        if (histogram != null) {
+            return histogram.getMaxError();
+        }
+        synchronized (this) {
+            flush();
+            return digest.getConfidenceFactor();
+        }
     }
 
     @Managed
-    public synchronized double getCount()
+    public double getCount()
     {
-        return digest.getCount();
+        if (histogram != null) {
+            return histogram.getCount();
+        }
+        synchronized (this) {
+            flush();
+            return digest.getCount();
+        }
     }
 
     @Managed
-    public synchronized double getP50()
+    public double getP50()
     {
-        return convertToUnit(digest.getQuantile(0.5));
+        return convertToUnit(getQuantile(0.5));
     }
 
     @Managed
-    public synchronized double getP75()
+    public double getP75()
     {
-        return convertToUnit(digest.getQuantile(0.75));
+        return convertToUnit(getQuantile(0.75));
     }
 
     @Managed
-    public synchronized double getP90()
+    public double getP90()
     {
-        return convertToUnit(digest.getQuantile(0.90));
+        return convertToUnit(getQuantile(0.90));
     }
 
     @Managed
-    public synchronized double getP95()
+    public double getP95()
     {
-        return convertToUnit(digest.getQuantile(0.95));
+        return convertToUnit(getQuantile(0.95));
     }
 
     @Managed
-    public synchronized double getP99()
+    public double getP99()
     {
-        return convertToUnit(digest.getQuantile(0.99));
+        return convertToUnit(getQuantile(0.99));
     }
 
     @Managed
-    public synchronized double getMin()
+    public double getMin()
     {
-        return convertToUnit(digest.getMin());
+        if (histogram != null) {
+            return convertToUnit(histogram.getMin());
+        }
+        synchronized (this) {
+            flush();
+            return convertToUnit(digest.getMin());
+        }
     }
 
     @Managed
-    public synchronized double getMax()
+    public double getMax()
     {
-        return convertToUnit(digest.getMax());
+        if (histogram != null) {
+            return convertToUnit(histogram.getMax());
+        }
+        synchronized (this) {
+            flush();
+            return convertToUnit(digest.getMax());
+        }
     }
 
     @Managed
@@ -124,8 +206,14 @@ public class TimeDistribution
         }
 
         List<Long> values;
-        synchronized (this) {
-            values = digest.getQuantiles(percentiles);
+        if (histogram != null) {
+            values = histogram.getQuantiles(percentiles);
+        }
+        else {
+            synchronized (this) {
+                flush();
+                values = digest.getQuantiles(percentiles);
+            }
         }
 
         Map<Double, Double> result = new LinkedHashMap<>(values.size());
@@ -136,6 +224,43 @@ public class TimeDistribution
         return result;
     }
 
+    /**
+     * Returns the approximate number of values that are less than or equal to each of
+     * the specified bounds in nanoseconds, which must be sorted in ascending order.
+     */
+    public List<Double> getCumulativeCounts(List<Long> upperBoundsInNanos)
+    {
+        if (histogram != null) {
+            return histogram.getCumulativeCounts(upperBoundsInNanos);
+        }
+        synchronized (this) {
+            flush();
+            return Distribution.cumulativeCounts(digest, upperBoundsInNanos);
+        }
+    }
+
+    /**
+     * @see Distribution#isDecaying()
+     */
+    public boolean isDecaying()
+    {
+        if (histogram != null) {
+            return histogram.isDecaying();
+        }
+        return digest.getAlpha() != 0;
+    }
+
+    private long getQuantile(double quantile)
+    {
+        if (histogram != null) {
+            return histogram.getQuantile(quantile);
+        }
+        synchronized (this) {
+            flush();
+            return digest.getQuantile(quantile);
+        }
+    }
+
     private double convertToUnit(long nanos)
     {
         if (nanos == Long.MAX_VALUE || nanos == Long.MIN_VALUE) {
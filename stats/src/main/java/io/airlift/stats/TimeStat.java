@@ -52,12 +52,38 @@ public class TimeStat
     }
 
     public TimeStat(Ticker ticker, TimeUnit unit)
+    {
+        this(ticker, unit, false);
+    }
+
+    /**
+     * @param striped record into per-thread stripes instead of locking each distribution on
+     * every add; intended for stats updated concurrently by many request threads
+     */
+    public TimeStat(Ticker ticker, TimeUnit unit, boolean striped)
+    {
+        this.ticker = ticker;
+        oneMinute = new TimeDistribution(ExponentialDecay.oneMinute(), unit, striped);
+        fiveMinutes = new TimeDistribution(ExponentialDecay.fiveMinutes(), unit, striped);
+        fifteenMinutes = new TimeDistribution(ExponentialDecay.fifteenMinutes(), unit, striped);
+        allTime = new TimeDistribution(0, unit, striped);
+    }
+
+    /**
+     * Records into fixed-size log-linear histograms instead of into quantile digests. The stat
+     * holds up to seven histograms, which take about 30KB in total with one significant digit
+     * and about 220KB with two.
+     *
+     * @param significantDigits number of significant digits of the reported values, 1 or 2
+     * @see TimeDistribution#TimeDistribution(Ticker, double, TimeUnit, int)
+     */
+    public TimeStat(Ticker ticker, TimeUnit unit, int significantDigits)
     {
         this.ticker = ticker;
-        oneMinute = new TimeDistribution(ExponentialDecay.oneMinute(), unit);
-        fiveMinutes = new TimeDistribution(ExponentialDecay.fiveMinutes(), unit);
-        fifteenMinutes = new TimeDistribution(ExponentialDecay.fifteenMinutes(), unit);
-        allTime = new TimeDistribution(unit);
+        oneMinute = new TimeDistribution(ticker, ExponentialDecay.oneMinute(), unit, significantDigits);
+        fiveMinutes = new TimeDistribution(ticker, ExponentialDecay.fiveMinutes(), unit, significantDigits);
+        fifteenMinutes = new TimeDistribution(ticker, ExponentialDecay.fifteenMinutes(), unit, significantDigits);
+        allTime = new TimeDistribution(ticker, 0, unit, significantDigits);
     }
 
     public void add(double value, TimeUnit timeUnit)
@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Approximates an exponentially decaying histogram with two {@link LogLinearHistogram}s that
+ * each cover a window of {@code 1 / alpha} seconds. When a window ends, the current histogram
+ * becomes the previous one and the oldest is discarded. Reads include the previous histogram
+ * with a weight that falls linearly from one to zero over the current window, so values age
+ * out gradually instead of all at once.
+ */
+@ThreadSafe
+final class WindowedHistogram
+{
+    private final long lowestDiscernibleValue;
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final Ticker ticker;
+    private final long windowNanos;
+
+    private volatile Window window;
+
+    /**
+     * @param lowestDiscernibleValue see {@link LogLinearHistogram}
+     * @param highestTrackableValue see {@link LogLinearHistogram}
+     * @param significantDigits see {@link LogLinearHistogram}
+     * @param alpha the decay factor; zero keeps every value forever
+     */
+    WindowedHistogram(long lowestDiscernibleValue, long highestTrackableValue, int significantDigits, double alpha, Ticker ticker)
+    {
+        checkNotNull(ticker, "ticker is null");
+        checkArgument(alpha >= 0, "alpha must be >= 0");
+
+        this.lowestDiscernibleValue = lowestDiscernibleValue;
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+        this.ticker = ticker;
+        windowNanos = alpha == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / alpha);
+        window = new Window(newHistogram(), null, ticker.read());
+    }
+
+    public void add(long value)
+    {
+        currentWindow().current.add(value);
+    }
+
+    public double getCount()
+    {
+        return currentWindow().count();
+    }
+
+    public long getMin()
+    {
+        Window window = currentWindow();
+        long min = window.current.getMin();
+        if (window.hasPrevious()) {
+            min = Math.min(min, window.previous.getMin());
+        }
+        return min;
+    }
+
+    public long getMax()
+    {
+        Window window = currentWindow();
+        long max = window.current.getMax();
+        if (window.hasPrevious()) {
+            max = Math.max(max, window.previous.getMax());
+        }
+        return max;
+    }
+
+    public long getQuantile(double quantile)
+    {
+        return getQuantiles(ImmutableList.of(quantile)).get(0);
+    }
+
+    public List<Long> getQuantiles(List<Double> quantiles)
+    {
+        Window window = currentWindow();
+        long min = window.current.getMin();
+        long max = window.current.getMax();
+        if (window.hasPrevious()) {
+            min = Math.min(min, window.previous.getMin());
+            max = Math.max(max, window.previous.getMax());
+        }
+        return window.current.getQuantiles(window.weightedCounts(), window.count(), quantiles, min, max);
+    }
+
+    public List<Double> getCumulativeCounts(List<Long> upperBounds)
+    {
+        return currentWindow().getCumulativeCounts(upperBounds);
+    }
+
+    public double getMaxError()
+    {
+        return window.current.getMaxError();
+    }
+
+    public boolean isDecaying()
+    {
+        return windowNanos != 0;
+    }
+
+    private Window currentWindow()
+    {
+        Window window = this.window;
+        if (windowNanos == 0 || ticker.read() - window.start < windowNanos) {
+            return window;
+        }
+
+        synchronized (this) {
+            window = this.window;
+            long now = ticker.read();
+            long elapsed = now - window.start;
+            if (elapsed >= windowNanos) {
+                // keep windows aligned to the original start so that the weights stay consistent
+                long start = now - (elapsed % windowNanos);
+                LogLinearHistogram previous = elapsed < 2 * windowNanos ? window.current : null;
+                // the oldest histogram stopped receiving values a window ago, so it is reused
+                // rather than allocating all of the buckets again
+                LogLinearHistogram current = window.previous;
+                if (current == null) {
+                    current = newHistogram();
+                }
+                else {
+                    current.reset();
+                }
+                window = new Window(current, previous, start);
+                this.window = window;
+            }
+            return window;
+        }
+    }
+
+    private LogLinearHistogram newHistogram()
+    {
+        return new LogLinearHistogram(lowestDiscernibleValue, highestTrackableValue, significantDigits);
+    }
+
+    private class Window
+    {
+        private final LogLinearHistogram current;
+        private final LogLinearHistogram previous;
+        private final long start;
+
+        private Window(LogLinearHistogram current, LogLinearHistogram previous, long start)
+        {
+            this.current = current;
+            this.previous = previous;
+            this.start = start;
+        }
+
+        private boolean hasPrevious()
+        {
+            return previous != null && previousWeight() > 0;
+        }
+
+        private double previousWeight()
+        {
+            if (previous == null) {
+                return 0;
+            }
+            double elapsed = ticker.read() - start;
+            return Math.max(0, 1 - elapsed / windowNanos);
+        }
+
+        private IntToDoubleFunction weightedCounts()
+        {
+            double weight = previousWeight();
+            if (weight == 0) {
+                return current::getCountAt;
+            }
+            return index -> current.getCountAt(index) + weight * previous.getCountAt(index);
+        }
+
+        private double count()
+        {
+            double weight = previousWeight();
+            if (weight == 0) {
+                return current.getCount();
+            }
+            return current.getCount() + weight * previous.getCount();
+        }
+
+        private List<Double> getCumulativeCounts(List<Long> upperBounds)
+        {
+            long max = current.getMax();
+            if (hasPrevious()) {
+                max = Math.max(max, previous.getMax());
+            }
+            return current.getCumulativeCounts(weightedCounts(), upperBounds, max);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures update throughput of decaying and sliding window counters as the number of writer
+ * threads grows from 1 to 64.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class BenchmarkCounterStatContention
+{
+    @GenerateMicroBenchmark
+    public void benchmarkDecayCounterStat(Data data)
+    {
+        data.decayCounterStat.update(1);
+    }
+
+    @GenerateMicroBenchmark
+    public void benchmarkSlidingWindowCounterStat(Data data)
+    {
+        data.slidingWindowCounterStat.update(1);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data
+    {
+        public final CounterStat decayCounterStat = new CounterStat(false);
+        public final CounterStat slidingWindowCounterStat = new CounterStat(true);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .verbosity(VerboseMode.NORMAL)
+                    .threads(threads)
+                    .include(".*" + BenchmarkCounterStatContention.class.getSimpleName() + ".*")
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
@@ -3,11 +3,15 @@ package io.airlift.stats;
 import io.airlift.testing.TestingTicker;
 import io.airlift.units.Duration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 public class BenchmarkQuantileDigest
 {
+    private static final int MERGED_DIGESTS = 100;
+
     public static void main(String[] args)
             throws Exception
     {
@@ -26,15 +30,83 @@ public class BenchmarkQuantileDigest
 
         digest.validate();
 
-        System.out.println(String.format("Processed %s entries in %s ms. Insertion rate = %s entries/s (%.4fµs per operation)",
-                results.getOperations(),
-                results.getTime().getValue(TimeUnit.MILLISECONDS),
-                results.getOperationsPerSecond(),
-                results.getTimePerOperation().getValue(TimeUnit.MICROSECONDS)));
+        printInsertionResults("array", results);
 
         System.out.println(String.format("Compressions: %s, %s entries/compression",
                 digest.getCompressions(),
                 digest.getCount() / digest.getCompressions()));
+
+        final NodeQuantileDigest nodeDigest = new NodeQuantileDigest(0.01, 0, new TestingTicker(), true);
+        results = Benchmark.run(new Runnable() {
+            public void run()
+            {
+                nodeDigest.add(Math.abs(random.nextInt(100000)));
+            }
+        }, warmupTime, benchmarkTime);
+
+        printInsertionResults("node", results);
+
+        System.out.println(String.format("Estimated size: array = %s bytes, node = %s bytes",
+                digest.estimatedInMemorySizeInBytes(),
+                nodeDigest.estimatedInMemorySizeInBytes()));
+
+        final List<QuantileDigest> digests = new ArrayList<>();
+        final List<NodeQuantileDigest> nodeDigests = new ArrayList<>();
+        for (int i = 0; i < MERGED_DIGESTS; i++) {
+            QuantileDigest arrayLayout = new QuantileDigest(0.01, 0, new TestingTicker(), true);
+            NodeQuantileDigest nodeLayout = new NodeQuantileDigest(0.01, 0, new TestingTicker(), true);
+            for (int j = 0; j < 10_000; j++) {
+                long value = Math.abs(random.nextInt(100000));
+                arrayLayout.add(value);
+                nodeLayout.add(value);
+            }
+            digests.add(arrayLayout);
+            nodeDigests.add(nodeLayout);
+        }
+
+        results = Benchmark.run(new Runnable() {
+            public void run()
+            {
+                QuantileDigest merged = new QuantileDigest(0.01, 0, new TestingTicker(), true);
+                for (QuantileDigest digest : digests) {
+                    merged.merge(digest);
+                }
+            }
+        }, warmupTime, benchmarkTime);
+
+        printMergeResults("array", results);
+
+        results = Benchmark.run(new Runnable() {
+            public void run()
+            {
+                NodeQuantileDigest merged = new NodeQuantileDigest(0.01, 0, new TestingTicker(), true);
+                for (NodeQuantileDigest digest : nodeDigests) {
+                    merged.merge(digest);
+                }
+            }
+        }, warmupTime, benchmarkTime);
+
+        printMergeResults("node", results);
+    }
+
+    private static void printInsertionResults(String layout, Benchmark.Results results)
+    {
+        System.out.println(String.format("[%s] Processed %s entries in %s ms. Insertion rate = %s entries/s (%.4fµs per operation)",
+                layout,
+                results.getOperations(),
+                results.getTime().getValue(TimeUnit.MILLISECONDS),
+                results.getOperationsPerSecond(),
+                results.getTimePerOperation().getValue(TimeUnit.MICROSECONDS)));
     }
 
+    private static void printMergeResults(String layout, Benchmark.Results results)
+    {
+        System.out.println(String.format("[%s] Merged %s digests %s times. Merge rate = %s merges/s (%.4fµs per %s-digest merge)",
+                layout,
+                MERGED_DIGESTS,
+                results.getOperations(),
+                results.getOperationsPerSecond() * MERGED_DIGESTS,
+                results.getTimePerOperation().getValue(TimeUnit.MICROSECONDS),
+                MERGED_DIGESTS));
+    }
 }
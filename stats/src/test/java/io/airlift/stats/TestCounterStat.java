@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import io.airlift.testing.TestingTicker;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestCounterStat
+{
+    @Test
+    public void testSlidingWindow()
+    {
+        TestingTicker ticker = new TestingTicker();
+        CounterStat counter = new CounterStat(ticker, true);
+
+        counter.update(60);
+        assertEquals(counter.getTotalCount(), 60);
+        assertEquals(counter.getOneMinute().getCount(), 60.0);
+        assertEquals(counter.getOneMinute().getRate(), 1.0);
+        assertEquals(counter.getFiveMinute().getRate(), 0.2);
+
+        ticker.increment(1, TimeUnit.MINUTES);
+        counter.update(30);
+        assertEquals(counter.getOneMinute().getCount(), 30.0);
+        assertEquals(counter.getFiveMinute().getCount(), 90.0);
+        assertEquals(counter.getFifteenMinute().getCount(), 90.0);
+
+        ticker.increment(15, TimeUnit.MINUTES);
+        assertEquals(counter.getFifteenMinute().getCount(), 0.0);
+        assertEquals(counter.getTotalCount(), 90);
+        assertEquals(counter.snapshot().getOneMinute().getRate(), 0.0);
+    }
+
+    @Test
+    public void testSlidingWindowMerge()
+    {
+        TestingTicker ticker = new TestingTicker();
+        CounterStat counter = new CounterStat(ticker, true);
+        CounterStat other = new CounterStat(ticker, true);
+        counter.update(1);
+        other.update(2);
+
+        counter.merge(other);
+        assertEquals(counter.getTotalCount(), 3);
+        assertEquals(counter.getOneMinute().getCount(), 3.0);
+
+        counter.resetTo(other);
+        assertEquals(counter.getTotalCount(), 2);
+        assertEquals(counter.getFiveMinute().getCount(), 2.0);
+
+        counter.getOneMinute().reset();
+        assertEquals(counter.getFifteenMinute().getCount(), 0.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentModes()
+    {
+        new CounterStat(true).merge(new CounterStat());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeSlidingWindowIntoDecaying()
+    {
+        new CounterStat().merge(new CounterStat(true));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddToSlidingWindowView()
+    {
+        new CounterStat(true).getOneMinute().add(1);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestDistribution
+{
+    private static final List<Double> QUANTILES = ImmutableList.of(0.01, 0.25, 0.5, 0.75, 0.99);
+
+    @Test
+    public void testStripedMatchesSynchronized()
+    {
+        Distribution expected = new Distribution(0, false);
+        Distribution actual = new Distribution(0, true);
+        for (int i = 0; i < 10_000; i++) {
+            expected.add(i % 997, 2);
+            actual.add(i % 997, 2);
+        }
+
+        assertEquals(actual.getCount(), expected.getCount());
+        assertEquals(actual.getTotal(), expected.getTotal());
+        assertEquals(actual.getMin(), expected.getMin());
+        assertEquals(actual.getMax(), expected.getMax());
+        assertEquals(actual.getPercentiles(QUANTILES), expected.getPercentiles(QUANTILES));
+    }
+
+    @Test
+    public void testStripedConcurrentAdds()
+            throws Exception
+    {
+        int threads = 16;
+        int valuesPerThread = 10_000;
+
+        Distribution distribution = new Distribution(0, true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        distribution.add(value);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(distribution.getCount(), (double) threads * valuesPerThread);
+        assertEquals(distribution.getMin(), 0);
+        assertEquals(distribution.getMax(), valuesPerThread - 1);
+    }
+
+    @Test
+    public void testCopyIncludesBufferedValues()
+    {
+        Distribution distribution = new Distribution(0, true);
+        distribution.add(42);
+
+        Distribution copy = new Distribution(distribution);
+        assertEquals(copy.getCount(), 1.0);
+        assertEquals(copy.getMax(), 42);
+    }
+
+    @Test
+    public void testCumulativeCounts()
+    {
+        Distribution distribution = new Distribution();
+        for (int value = 0; value < 10; value++) {
+            distribution.add(value);
+        }
+
+        assertEquals(distribution.getCumulativeCounts(ImmutableList.of(-1L, 0L, 4L, 9L, Long.MAX_VALUE)), ImmutableList.of(0.0, 1.0, 5.0, 10.0, 10.0));
+        assertFalse(distribution.isDecaying());
+        assertTrue(new Distribution(ExponentialDecay.oneMinute()).isDecaying());
+    }
+}
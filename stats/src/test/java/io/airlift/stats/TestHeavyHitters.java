@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slice;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestHeavyHitters
+{
+    @Test
+    public void testExactBelowCapacity()
+    {
+        HeavyHitters sketch = HeavyHitters.newInstance(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                sketch.add(utf8Slice("key" + i));
+            }
+        }
+        sketch.verify();
+
+        assertEquals(sketch.getTotalCount(), 15);
+        assertEquals(keys(sketch.getTopK(3)), ImmutableList.of("key4", "key3", "key2"));
+        for (HeavyHitters.Entry entry : sketch.getTopK(10)) {
+            assertEquals(entry.getError(), 0);
+        }
+        assertEquals(sketch.getTopK(10).size(), 5);
+    }
+
+    @Test
+    public void testFindsHeavyHitters()
+    {
+        int capacity = 20;
+        HeavyHitters sketch = HeavyHitters.newInstance(capacity);
+        Map<String, Long> actual = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // half of the values are spread over a few hot keys, the rest are mostly unique
+            String key = random.nextBoolean() ? "hot" + random.nextInt(5) : "cold" + random.nextInt(50_000);
+            sketch.add(utf8Slice(key));
+            actual.merge(key, 1L, Long::sum);
+        }
+        sketch.verify();
+
+        List<HeavyHitters.Entry> top = sketch.getTopK(5);
+        for (HeavyHitters.Entry entry : top) {
+            String key = entry.getKey().toStringUtf8();
+            assertTrue(key.startsWith("hot"), key);
+            long count = actual.get(key);
+            assertTrue(entry.getCount() >= count);
+            assertTrue(entry.getCount() - entry.getError() <= count);
+            assertTrue(entry.getError() <= sketch.getTotalCount() / capacity);
+        }
+    }
+
+    @Test
+    public void testSmallKeyIsEvicted()
+    {
+        HeavyHitters sketch = HeavyHitters.newInstance(2);
+        sketch.add(utf8Slice("a"), 10);
+        sketch.add(utf8Slice("b"), 1);
+        sketch.add(utf8Slice("c"), 1);
+        sketch.verify();
+
+        List<HeavyHitters.Entry> top = sketch.getTopK(2);
+        assertEquals(keys(top), ImmutableList.of("a", "c"));
+        assertEquals(top.get(1).getCount(), 2);
+        assertEquals(top.get(1).getError(), 1);
+    }
+
+    @Test
+    public void testKeyIsCopied()
+    {
+        HeavyHitters sketch = HeavyHitters.newInstance(2);
+        Slice key = utf8Slice("a");
+        sketch.add(key);
+        key.setByte(0, 'b');
+
+        assertEquals(keys(sketch.getTopK(1)), ImmutableList.of("a"));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        HeavyHitters first = HeavyHitters.newInstance(3);
+        first.add(utf8Slice("a"), 10);
+        first.add(utf8Slice("b"), 5);
+        first.add(utf8Slice("c"), 1);
+
+        HeavyHitters second = HeavyHitters.newInstance(3);
+        second.add(utf8Slice("a"), 2);
+        second.add(utf8Slice("d"), 20);
+
+        first.mergeWith(second);
+        first.verify();
+
+        // the second sketch is not full, so keys missing from it did not occur there
+        List<HeavyHitters.Entry> top = first.getTopK(3);
+        assertEquals(keys(top), ImmutableList.of("d", "a", "b"));
+        assertEquals(top.get(0).getCount(), 21);
+        assertEquals(top.get(0).getError(), 1);
+        assertEquals(top.get(1).getCount(), 12);
+        assertEquals(top.get(2).getCount(), 5);
+        assertEquals(first.getTotalCount(), 38);
+    }
+
+    @Test
+    public void testSerialization()
+    {
+        HeavyHitters sketch = HeavyHitters.newInstance(50);
+        Random random = new Random(0);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(utf8Slice("key" + (int) Math.abs(random.nextGaussian() * 100)));
+        }
+
+        Slice serialized = sketch.serialize();
+        assertEquals(serialized.length(), sketch.estimatedSerializedSize());
+
+        HeavyHitters deserialized = HeavyHitters.newInstance(serialized);
+        deserialized.verify();
+        assertEquals(deserialized.getCapacity(), 50);
+        assertEquals(deserialized.getTotalCount(), sketch.getTotalCount());
+        assertEquals(deserialized.estimatedInMemorySize(), sketch.estimatedInMemorySize());
+        assertEquals(counts(deserialized.getTopK(50)), counts(sketch.getTopK(50)));
+
+        // the deserialized sketch keeps evicting the least frequent key
+        deserialized.add(utf8Slice("new"));
+        deserialized.verify();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Invalid format tag")
+    public void testInvalidFormat()
+    {
+        HeavyHitters.newInstance(utf8Slice("garbage"));
+    }
+
+    private static List<String> keys(List<HeavyHitters.Entry> entries)
+    {
+        ImmutableList.Builder<String> keys = ImmutableList.builder();
+        for (HeavyHitters.Entry entry : entries) {
+            keys.add(entry.getKey().toStringUtf8());
+        }
+        return keys.build();
+    }
+
+    private static Map<String, Long> counts(List<HeavyHitters.Entry> entries)
+    {
+        Map<String, Long> counts = new HashMap<>();
+        for (HeavyHitters.Entry entry : entries) {
+            counts.put(entry.getKey().toStringUtf8(), entry.getCount());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.testing.TestingTicker;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestHeavyHittersStat
+{
+    @Test
+    public void testWindow()
+    {
+        TestingTicker ticker = new TestingTicker();
+        HeavyHittersStat stat = new HeavyHittersStat(10, ticker, 4);
+
+        stat.add("a");
+        stat.add("a");
+        stat.add("b");
+        assertEquals(stat.getTop(), ImmutableMap.of("a", 2L, "b", 1L));
+
+        // values of the previous minute are still reported
+        ticker.increment(1, TimeUnit.MINUTES);
+        stat.add("b");
+        stat.add("b");
+        assertEquals(stat.getTop(), ImmutableMap.of("b", 3L, "a", 2L));
+
+        ticker.increment(1, TimeUnit.MINUTES);
+        assertEquals(stat.getTop(), ImmutableMap.of("b", 2L));
+
+        ticker.increment(2, TimeUnit.MINUTES);
+        assertEquals(stat.getTop(), ImmutableMap.of());
+
+        stat.add("c");
+        stat.reset();
+        assertEquals(stat.getHeavyHitters().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testConcurrentAdds()
+            throws Exception
+    {
+        int threads = 16;
+        int valuesPerThread = 10_000;
+
+        HeavyHittersStat stat = new HeavyHittersStat(10, new TestingTicker(), 8);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        stat.add(value % 10 == 0 ? "hot" : "key" + (value % 5));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        HeavyHitters heavyHitters = stat.getHeavyHitters();
+        assertEquals(heavyHitters.getTotalCount(), (long) threads * valuesPerThread);
+        assertEquals(stat.getTop().get("hot"), Long.valueOf(threads * valuesPerThread / 10));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slice;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestLogLinearHistogram
+{
+    @Test
+    public void testEmpty()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1_000_000, 2);
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMin(), Long.MAX_VALUE);
+        assertEquals(histogram.getMax(), Long.MIN_VALUE);
+        assertEquals(histogram.getQuantile(0.5), Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1_000_000, 2);
+        for (int value = 0; value < 100; value++) {
+            histogram.add(value);
+        }
+
+        assertEquals(histogram.getCount(), 100);
+        assertEquals(histogram.getMin(), 0);
+        assertEquals(histogram.getMax(), 99);
+        assertEquals(histogram.getQuantiles(ImmutableList.of(0.0, 0.1, 0.5, 1.0)), ImmutableList.of(0L, 9L, 49L, 99L));
+    }
+
+    @Test
+    public void testQuantilesWithinRelativeError()
+    {
+        for (int digits = 1; digits <= 3; digits++) {
+            LogLinearHistogram histogram = new LogLinearHistogram(1, 1_000_000_000, digits);
+            for (long value = 1; value <= 100_000; value++) {
+                histogram.add(value * 1000);
+            }
+
+            for (double quantile = 0.01; quantile < 1; quantile += 0.01) {
+                double expected = Math.ceil(quantile * 100_000) * 1000;
+                double actual = histogram.getQuantile(quantile);
+                assertTrue(Math.abs(actual - expected) <= expected * histogram.getMaxError(),
+                        String.format("digits %s, quantile %s: expected %s, actual %s", digits, quantile, expected, actual));
+            }
+        }
+    }
+
+    @Test
+    public void testClampsOutOfRangeValues()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1000, 2);
+        histogram.add(-5);
+        histogram.add(5000);
+
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getMin(), 0);
+        assertEquals(histogram.getMax(), 5000);
+        assertEquals(histogram.getQuantile(0.0), 0);
+        assertEquals(histogram.getQuantile(1.0), 5000);
+    }
+
+    @Test
+    public void testCumulativeCounts()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1_000_000, 2);
+        for (int value = 0; value < 10; value++) {
+            histogram.add(value);
+        }
+        histogram.add(500_000, 5);
+
+        assertEquals(histogram.getCumulativeCounts(ImmutableList.of(-1L, 0L, 4L, 9L, 1000L, Long.MAX_VALUE)),
+                ImmutableList.of(0.0, 1.0, 5.0, 10.0, 10.0, 15.0));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        LogLinearHistogram first = new LogLinearHistogram(1, 1_000_000, 2);
+        LogLinearHistogram second = first.newEmptyHistogram();
+        LogLinearHistogram expected = first.newEmptyHistogram();
+        for (int value = 0; value < 1000; value++) {
+            (value % 2 == 0 ? first : second).add(value * 37);
+            expected.add(value * 37);
+        }
+
+        first.merge(second);
+        assertEquals(first.getCount(), expected.getCount());
+        assertEquals(first.getMin(), expected.getMin());
+        assertEquals(first.getMax(), expected.getMax());
+        assertEquals(first.serialize(), expected.serialize());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "histograms must have the same layout")
+    public void testMergeDifferentLayout()
+    {
+        new LogLinearHistogram(1, 1_000_000, 2).merge(new LogLinearHistogram(1, 1_000_000, 3));
+    }
+
+    @Test
+    public void testSerialization()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1_000, 3_600_000_000_000L, 3);
+        for (long value = 1; value < 100_000; value += 7) {
+            histogram.add(value * value, value % 3 + 1);
+        }
+
+        Slice serialized = histogram.serialize();
+        LogLinearHistogram deserialized = LogLinearHistogram.deserialize(serialized);
+        assertTrue(deserialized.hasSameLayout(histogram));
+        assertEquals(deserialized.getCount(), histogram.getCount());
+        assertEquals(deserialized.getMin(), histogram.getMin());
+        assertEquals(deserialized.getMax(), histogram.getMax());
+
+        List<Double> quantiles = ImmutableList.of(0.0, 0.5, 0.9, 0.99, 1.0);
+        assertEquals(deserialized.getQuantiles(quantiles), histogram.getQuantiles(quantiles));
+        assertEquals(deserialized.serialize(), serialized);
+
+        LogLinearHistogram empty = LogLinearHistogram.deserialize(new LogLinearHistogram(1, 1000, 1).serialize());
+        assertEquals(empty.getCount(), 0);
+        assertFalse(empty.hasSameLayout(histogram));
+    }
+
+    @Test
+    public void testFixedSize()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1_000_000, 2);
+        int size = histogram.estimatedInMemorySizeInBytes();
+        for (int value = 0; value < 1_000_000; value += 3) {
+            histogram.add(value);
+        }
+        assertEquals(histogram.estimatedInMemorySizeInBytes(), size);
+    }
+}
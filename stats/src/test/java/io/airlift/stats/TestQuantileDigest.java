@@ -252,6 +252,8 @@ public class TestQuantileDigest
         assertEquals(digest.getHistogram(asList(10L)), asList(new QuantileDigest.Bucket(10, 4.5)));
         assertEquals(digest.getHistogram(asList(Long.MAX_VALUE)),
                 asList(new QuantileDigest.Bucket(10, 4.5)));
+        assertEquals(digest.getHistogram(asList(20L, 30L)),
+                asList(new QuantileDigest.Bucket(10, 4.5), new QuantileDigest.Bucket(0, Double.NaN)));
     }
 
     @Test
@@ -760,6 +762,66 @@ public class TestQuantileDigest
         assertTrue(digest.equivalent(deserialize(serialize(digest))), format("Serialization roundtrip failed for input: %s", values));
     }
 
+    @Test(invocationCount = 100)
+    public void testSameResultsAsNodeLayout()
+            throws Exception
+    {
+        TestingTicker ticker = new TestingTicker();
+        QuantileDigest digest = new QuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker, true);
+        NodeQuantileDigest reference = new NodeQuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker, true);
+
+        QuantileDigest other = new QuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker, true);
+        NodeQuantileDigest otherReference = new NodeQuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker, true);
+
+        for (int i = 0; i < 5000; i++) {
+            long value = ThreadLocalRandom.current().nextLong(-100_000, 100_000);
+            if (i % 3 == 0) {
+                other.add(value);
+                otherReference.add(value);
+            }
+            else {
+                digest.add(value);
+                reference.add(value);
+            }
+            if (i % 1000 == 0) {
+                ticker.increment(30, TimeUnit.SECONDS);
+            }
+        }
+        digest.merge(other);
+        reference.merge(otherReference);
+
+        digest.validate();
+
+        List<Double> quantiles = asList(0.0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1.0);
+        List<Long> bucketUpperBounds = asList(-50_000L, 0L, 50_000L);
+        assertEquals(digest.getQuantiles(quantiles), reference.getQuantiles(quantiles));
+        assertEquals(digest.getHistogram(bucketUpperBounds), reference.getHistogram(bucketUpperBounds));
+        assertEquals(digest.getMin(), reference.getMin());
+        assertEquals(digest.getMax(), reference.getMax());
+        assertEquals(digest.getCount(), reference.getCount());
+        assertEquals(digest.getConfidenceFactor(), reference.getConfidenceFactor());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reference.serialize(new DataOutputStream(out));
+        assertEquals(serialize(digest), out.toByteArray());
+    }
+
+    @Test
+    public void testSameTrailingBucketsAsNodeLayout()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        NodeQuantileDigest reference = new NodeQuantileDigest(0.01);
+        for (int i = 0; i < 1000; i++) {
+            long value = ThreadLocalRandom.current().nextLong(0, 1000);
+            digest.add(value);
+            reference.add(value);
+        }
+
+        // the tree only covers values up to 1023, so the last buckets lie past its last node
+        List<Long> bucketUpperBounds = asList(500L, 2_000L, 3_000L);
+        assertEquals(digest.getHistogram(bucketUpperBounds), reference.getHistogram(bucketUpperBounds));
+    }
+
     private QuantileDigest deserialize(byte[] result)
             throws IOException
     {
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.airlift.stats;
+
+import io.airlift.testing.TestingTicker;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestSlidingWindowCounter
+{
+    @Test
+    public void testWindow()
+    {
+        TestingTicker ticker = new TestingTicker();
+        SlidingWindowCounter counter = new SlidingWindowCounter(60, ticker);
+
+        counter.add(10);
+        ticker.increment(30, TimeUnit.SECONDS);
+        counter.add(5);
+
+        assertEquals(counter.getCount(), 15.0);
+        assertEquals(counter.getRate(), 0.25);
+        assertEquals(counter.getCount(30), 5.0);
+        assertEquals(counter.getCount(31), 15.0);
+
+        // the first value expires exactly one window after it was added
+        ticker.increment(29, TimeUnit.SECONDS);
+        assertEquals(counter.getCount(), 15.0);
+        ticker.increment(1, TimeUnit.SECONDS);
+        assertEquals(counter.getCount(), 5.0);
+
+        ticker.increment(30, TimeUnit.SECONDS);
+        assertEquals(counter.getCount(), 0.0);
+    }
+
+    @Test
+    public void testReuseBuckets()
+    {
+        TestingTicker ticker = new TestingTicker();
+        SlidingWindowCounter counter = new SlidingWindowCounter(10, ticker);
+
+        for (int second = 0; second < 100; second++) {
+            counter.add(second);
+            ticker.increment(1, TimeUnit.SECONDS);
+        }
+
+        // the window ends at second 100, so only the values added in seconds 91 to 99 are left
+        assertEquals(counter.getCount(), 855.0);
+        assertEquals(counter.getCount(1), 0.0);
+        assertEquals(counter.getCount(2), 99.0);
+    }
+
+    @Test
+    public void testMerge()
+    {
+        TestingTicker ticker = new TestingTicker();
+        SlidingWindowCounter counter = new SlidingWindowCounter(60, ticker);
+        SlidingWindowCounter other = new SlidingWindowCounter(60, ticker);
+
+        counter.add(1);
+        other.add(2);
+        ticker.increment(45, TimeUnit.SECONDS);
+        other.add(3);
+        counter.merge(other);
+
+        assertEquals(counter.getCount(), 6.0);
+        ticker.increment(15, TimeUnit.SECONDS);
+        assertEquals(counter.getCount(), 3.0);
+
+        counter.reset();
+        assertEquals(counter.getCount(), 0.0);
+        counter.merge(other);
+        assertEquals(counter.getCount(), 3.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentWindow()
+    {
+        new SlidingWindowCounter(60).merge(new SlidingWindowCounter(300));
+    }
+
+    @Test
+    public void testConcurrentAdds()
+            throws Exception
+    {
+        int threads = 16;
+        int valuesPerThread = 10_000;
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(60, new TestingTicker());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        counter.add(1);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(counter.getCount(), (double) threads * valuesPerThread);
+    }
+}
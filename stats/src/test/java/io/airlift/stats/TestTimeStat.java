@@ -130,6 +130,70 @@ public class TestTimeStat
         assertEquals(allTime.getMax(), 1000.0);
     }
 
+    @Test
+    public void testLogLinearHistogram()
+    {
+        TimeStat stat = new TimeStat(ticker, TimeUnit.SECONDS, 2);
+        for (long i = 1; i <= VALUES; i++) {
+            stat.add(i, TimeUnit.MILLISECONDS);
+        }
+
+        TimeDistribution allTime = stat.getAllTime();
+        assertEquals(allTime.getCount(), (double) VALUES);
+        assertEquals(allTime.getMin(), 0.001);
+        assertEquals(allTime.getMax(), 1.0);
+        assertEquals(allTime.getMaxError(), 0.01);
+        assertTrue(fuzzyEquals(allTime.getP50(), 0.5, 0.5 * 0.01), "p50 " + allTime.getP50());
+        assertTrue(fuzzyEquals(allTime.getP99(), 0.99, 0.99 * 0.01), "p99 " + allTime.getP99());
+        assertEquals(allTime.getPercentiles().size(), 100);
+    }
+
+    @Test
+    public void testLogLinearHistogramDecay()
+    {
+        TimeStat stat = new TimeStat(ticker, TimeUnit.SECONDS, 2);
+        stat.add(1, TimeUnit.SECONDS);
+
+        // the previous window counts in full at the start of the next one and fades out over it
+        ticker.increment(1, TimeUnit.MINUTES);
+        assertEquals(stat.getOneMinute().getCount(), 1.0);
+        ticker.increment(30, TimeUnit.SECONDS);
+        assertEquals(stat.getOneMinute().getCount(), 0.5);
+        assertEquals(stat.getOneMinute().getMax(), 1.0);
+
+        ticker.increment(30, TimeUnit.SECONDS);
+        assertEquals(stat.getOneMinute().getCount(), 0.0);
+        assertEquals(stat.getOneMinute().getMax(), Double.NaN);
+        assertEquals(stat.getOneMinute().getP50(), Double.NaN);
+        assertEquals(stat.getFiveMinutes().getCount(), 1.0);
+        assertEquals(stat.getAllTime().getCount(), 1.0);
+    }
+
+    @Test
+    public void testLogLinearHistogramWindowReuse()
+    {
+        TimeStat stat = new TimeStat(ticker, TimeUnit.SECONDS, 2);
+        stat.add(1, TimeUnit.SECONDS);
+        ticker.increment(1, TimeUnit.MINUTES);
+        stat.add(2, TimeUnit.SECONDS);
+
+        // the histogram of the first window is emptied and records the third one
+        ticker.increment(1, TimeUnit.MINUTES);
+        stat.add(3, TimeUnit.SECONDS);
+        TimeDistribution oneMinute = stat.getOneMinute();
+        assertEquals(oneMinute.getCount(), 2.0);
+        assertEquals(oneMinute.getMin(), 2.0);
+        assertEquals(oneMinute.getMax(), 3.0);
+        assertTrue(fuzzyEquals(oneMinute.getPercentiles().get(0.0), 2.0, 2.0 * 0.01));
+        assertEquals(stat.getAllTime().getCount(), 3.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "significantDigits must be between 1 and 2")
+    public void testLogLinearHistogramSignificantDigits()
+    {
+        new TimeStat(ticker, TimeUnit.SECONDS, 3);
+    }
+
     private static void assertPercentile(String name, double value, List<Long> values, double percentile)
     {
         int index = (int) (values.size() * percentile);